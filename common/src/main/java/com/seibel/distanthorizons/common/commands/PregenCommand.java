@@ -22,7 +22,7 @@ import static net.minecraft.commands.Commands.literal;
 
 public class PregenCommand extends AbstractCommand
 {
-	private final PregenManager pregenManager = new PregenManager();
+	private final PregenManager pregenManager = PregenManager.INSTANCE;
 	
 	@Override
 	public LiteralArgumentBuilder<CommandSourceStack> buildCommand()
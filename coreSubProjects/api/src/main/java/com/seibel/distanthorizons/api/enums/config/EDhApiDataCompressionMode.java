@@ -23,13 +23,14 @@ package com.seibel.distanthorizons.api.enums.config;
  * UNCOMPRESSED <br>
  * LZ4 <br>
  * Z_STD <br>
+ * Z_STD_DICTIONARY <br>
  * Z_STD_STREAM <br>
  * LZMA2 <br><br>
  * 
  * Note: speed and compression ratios are examples
  * and should only be used for estimated comparisons.
  * 
- * @version 2024-3-16
+ * @version 2026-10-16
  * @since API 2.0.0
  */
 public enum EDhApiDataCompressionMode
@@ -62,6 +63,21 @@ public enum EDhApiDataCompressionMode
 	 */
 	Z_STD_BLOCK(4),
 	
+	/**
+	 * {@link EDhApiDataCompressionMode#Z_STD_BLOCK} using a dictionary 
+	 * trained from the level's existing LOD data. <br>
+	 * Smaller and faster to read than {@link EDhApiDataCompressionMode#Z_STD_BLOCK}
+	 * since most of each section's repeated structure is stored once in the dictionary. <br><br>
+	 * 
+	 * Until a dictionary has been trained for a level,
+	 * data will be written using {@link EDhApiDataCompressionMode#Z_STD_BLOCK} instead. <br>
+	 * Data sent over the network is always converted to {@link EDhApiDataCompressionMode#Z_STD_BLOCK}
+	 * since the receiver won't have the dictionary.
+	 * 
+	 * @since API 5.0.0
+	 */
+	Z_STD_DICTIONARY(5),
+	
 	/**
 	 * Similar to {@link EDhApiDataCompressionMode#Z_STD_BLOCK}
 	 * except slower. <br><br>
@@ -0,0 +1,441 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks;
+
+import com.seibel.distanthorizons.api.enums.config.EDhApiWorldCompressionMode;
+import com.seibel.distanthorizons.core.dataObjects.fullData.BlockBiomePalette;
+import com.seibel.distanthorizons.core.dataObjects.fullData.FullDataPointIdMap;
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.dependencyInjection.SingletonInjector;
+import com.seibel.distanthorizons.core.level.IDhClientLevel;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.sql.dto.FullDataSourceV2DTO;
+import com.seibel.distanthorizons.core.sql.repo.BlockBiomePaletteRepo;
+import com.seibel.distanthorizons.core.sql.repo.FullDataSourceV2Repo;
+import com.seibel.distanthorizons.core.util.ColorUtil;
+import com.seibel.distanthorizons.core.util.FullDataPointUtil;
+import com.seibel.distanthorizons.core.util.LodUtil;
+import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
+import com.seibel.distanthorizons.core.wrapperInterfaces.IWrapperFactory;
+import com.seibel.distanthorizons.core.wrapperInterfaces.block.IBlockStateWrapper;
+import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftRenderWrapper;
+import com.seibel.distanthorizons.core.wrapperInterfaces.world.IClientLevelWrapper;
+import com.seibel.distanthorizons.core.wrapperInterfaces.world.IDimensionTypeWrapper;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongComparator;
+import org.jetbrains.annotations.Nullable;
+import testItems.wrappers.TestBiomeWrapper;
+import testItems.wrappers.TestBlockStateWrapper;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Sets up everything the LOD pipeline needs to run outside of Minecraft
+ * and creates the data used by the benchmarks. <br><br>
+ *
+ * Synthetic data is deterministic so results can be compared between runs. <br>
+ * Recorded data can be used instead by setting the benchmark's "dataType" param to {@link BenchmarkEnvironment#RECORDED_DATA}
+ * and pointing the {@link BenchmarkEnvironment#DATABASE_PATH_PROPERTY} system property at a DH database file. <br><br>
+ *
+ * The Minecraft wrappers are stubbed via {@link Proxy}s,
+ * any method that isn't explicitly handled returns null, 0, or false.
+ */
+public class BenchmarkEnvironment
+{
+	/** used by the benchmarks' "dataType" param */
+	public static final String SYNTHETIC_DATA = "synthetic";
+	/** used by the benchmarks' "dataType" param, requires {@link BenchmarkEnvironment#DATABASE_PATH_PROPERTY} */
+	public static final String RECORDED_DATA = "recorded";
+	
+	/** Sections are read from this database when using {@link BenchmarkEnvironment#RECORDED_DATA}. */
+	public static final String DATABASE_PATH_PROPERTY = "dh.benchmark.database";
+	public static final String DATABASE_TYPE = "jdbc:sqlite";
+	
+	/** the largest number of recorded sections that will be loaded */
+	public static final int MAX_RECORDED_SECTION_COUNT = 64;
+	
+	public static final int MIN_HEIGHT = -64;
+	public static final int MAX_HEIGHT = 320;
+	public static final int SEA_LEVEL = 63;
+	
+	public static final String AIR = "minecraft:air";
+	public static final String GRASS = "minecraft:grass_block";
+	public static final String DIRT = "minecraft:dirt";
+	public static final String STONE = "minecraft:stone";
+	public static final String SAND = "minecraft:sand";
+	public static final String WATER = "minecraft:water";
+	public static final String PLAINS = "minecraft:plains";
+	public static final String OCEAN = "minecraft:ocean";
+	
+	private static boolean setupComplete = false;
+	
+	private static IClientLevelWrapper clientLevelWrapper;
+	private static IDhClientLevel clientLevel;
+	
+	
+	
+	//=======//
+	// setup //
+	//=======//
+	
+	/**
+	 * Must be called before any DH class that uses {@link SingletonInjector} is loaded,
+	 * since those classes get their dependencies in static fields.
+	 */
+	public static synchronized void setup()
+	{
+		if (setupComplete)
+		{
+			return;
+		}
+		setupComplete = true;
+		
+		
+		HashSet<IBlockStateWrapper> ignoredBlocks = new HashSet<>();
+		ignoredBlocks.add(new TestBlockStateWrapper(AIR));
+		
+		HashMap<String, Function<Object[], Object>> factoryMethods = new HashMap<>();
+		factoryMethods.put("deserializeBiomeWrapper", (args) -> new TestBiomeWrapper((String) args[0]));
+		factoryMethods.put("deserializeBiomeWrapperOrGetDefault", (args) -> new TestBiomeWrapper((String) args[0]));
+		factoryMethods.put("getPlainsBiomeWrapper", (args) -> new TestBiomeWrapper(PLAINS));
+		factoryMethods.put("deserializeBlockStateWrapper", (args) -> new TestBlockStateWrapper((String) args[0]));
+		factoryMethods.put("deserializeBlockStateWrapperOrGetDefault", (args) -> new TestBlockStateWrapper((String) args[0]));
+		factoryMethods.put("getAirBlockStateWrapper", (args) -> new TestBlockStateWrapper(AIR));
+		factoryMethods.put("getRendererIgnoredBlocks", (args) -> ignoredBlocks);
+		factoryMethods.put("getRendererIgnoredCaveBlocks", (args) -> ignoredBlocks);
+		SingletonInjector.INSTANCE.bind(IWrapperFactory.class, createStub(IWrapperFactory.class, factoryMethods));
+		
+		HashMap<String, Function<Object[], Object>> renderMethods = new HashMap<>();
+		renderMethods.put("getShade", (args) -> 1.0f);
+		SingletonInjector.INSTANCE.bind(IMinecraftRenderWrapper.class, createStub(IMinecraftRenderWrapper.class, renderMethods));
+		
+		
+		HashMap<String, Function<Object[], Object>> dimensionMethods = new HashMap<>();
+		dimensionMethods.put("getName", (args) -> "overworld");
+		dimensionMethods.put("hasSkyLight", (args) -> true);
+		dimensionMethods.put("getCoordinateScale", (args) -> 1.0);
+		IDimensionTypeWrapper dimensionType = createStub(IDimensionTypeWrapper.class, dimensionMethods);
+		
+		HashMap<String, Function<Object[], Object>> levelWrapperMethods = new HashMap<>();
+		levelWrapperMethods.put("getDimensionType", (args) -> dimensionType);
+		levelWrapperMethods.put("getDimensionName", (args) -> "overworld");
+		levelWrapperMethods.put("getDhIdentifier", (args) -> "benchmark");
+		levelWrapperMethods.put("hasSkyLight", (args) -> true);
+		levelWrapperMethods.put("getMinHeight", (args) -> MIN_HEIGHT);
+		levelWrapperMethods.put("getMaxHeight", (args) -> MAX_HEIGHT);
+		levelWrapperMethods.put("getHeight", (args) -> MAX_HEIGHT - MIN_HEIGHT);
+		levelWrapperMethods.put("getBlockColor", (args) -> getBlockColor((IBlockStateWrapper) args[3]));
+		levelWrapperMethods.put("getDirtBlockColor", (args) -> getBlockColor(new TestBlockStateWrapper(DIRT)));
+		clientLevelWrapper = createStub(IClientLevelWrapper.class, levelWrapperMethods);
+		
+		HashMap<String, Function<Object[], Object>> levelMethods = new HashMap<>();
+		levelMethods.put("getLevelWrapper", (args) -> clientLevelWrapper);
+		levelMethods.put("getClientLevelWrapper", (args) -> clientLevelWrapper);
+		clientLevel = createStub(IDhClientLevel.class, levelMethods);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> T createStub(Class<T> stubInterface, HashMap<String, Function<Object[], Object>> methodHandlers)
+	{
+		return (T) Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(), new Class<?>[] { stubInterface },
+			(proxy, method, args) ->
+			{
+				Function<Object[], Object> handler = methodHandlers.get(method.getName());
+				if (handler != null)
+				{
+					return handler.apply(args);
+				}
+				
+				switch (method.getName())
+				{
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "toString":
+						return stubInterface.getSimpleName() + " benchmark stub";
+					case "getDelayedSetupComplete":
+						return true;
+					
+					default:
+						return getDefaultReturnValue(method);
+				}
+			});
+	}
+	private static Object getDefaultReturnValue(Method method)
+	{
+		Class<?> returnType = method.getReturnType();
+		if (!returnType.isPrimitive() || returnType == void.class)
+		{
+			return null;
+		}
+		else if (returnType == boolean.class)
+		{
+			return false;
+		}
+		else if (returnType == float.class)
+		{
+			return 0.0f;
+		}
+		else if (returnType == double.class)
+		{
+			return 0.0;
+		}
+		else if (returnType == long.class)
+		{
+			return 0L;
+		}
+		else if (returnType == char.class)
+		{
+			return (char) 0;
+		}
+		else if (returnType == byte.class)
+		{
+			return (byte) 0;
+		}
+		else if (returnType == short.class)
+		{
+			return (short) 0;
+		}
+		else
+		{
+			return 0;
+		}
+	}
+	
+	private static int getBlockColor(IBlockStateWrapper blockState)
+	{
+		switch (blockState.getSerialString())
+		{
+			case GRASS:
+				return ColorUtil.rgbToInt(95, 159, 53);
+			case DIRT:
+				return ColorUtil.rgbToInt(134, 96, 67);
+			case STONE:
+				return ColorUtil.rgbToInt(125, 125, 125);
+			case SAND:
+				return ColorUtil.rgbToInt(219, 207, 163);
+			case WATER:
+				return ColorUtil.argbToInt(160, 63, 118, 228);
+			
+			default:
+				// recorded data can contain any block
+				return blockState.getSerialString().hashCode() | 0xFF000000;
+		}
+	}
+	
+	
+	
+	//=========//
+	// getters //
+	//=========//
+	
+	public static IClientLevelWrapper getClientLevelWrapper() { return clientLevelWrapper; }
+	public static IDhClientLevel getClientLevel() { return clientLevel; }
+	
+	@Nullable
+	public static File getRecordedDatabaseFile()
+	{
+		String path = System.getProperty(DATABASE_PATH_PROPERTY);
+		if (path == null || path.isEmpty())
+		{
+			return null;
+		}
+		
+		File file = new File(path);
+		if (!file.exists())
+		{
+			throw new IllegalArgumentException("Benchmark database ["+file.getAbsolutePath()+"] doesn't exist.");
+		}
+		return file;
+	}
+	
+	
+	
+	//==============//
+	// data sources //
+	//==============//
+	
+	/** 
+	 * @param dataType either {@link BenchmarkEnvironment#SYNTHETIC_DATA} or {@link BenchmarkEnvironment#RECORDED_DATA}
+	 * @return one or more block detail data sources
+	 */
+	public static List<FullDataSourceV2> createDataSources(String dataType) throws Exception
+	{
+		ArrayList<FullDataSourceV2> dataSourceList = new ArrayList<>();
+		if (dataType.equals(SYNTHETIC_DATA))
+		{
+			for (int x = 0; x < 2; x++)
+			{
+				for (int z = 0; z < 2; z++)
+				{
+					long pos = DhSectionPos.encode(DhSectionPos.SECTION_BLOCK_DETAIL_LEVEL, x, z);
+					dataSourceList.add(createSyntheticDataSource(pos, (x * 2L) + z));
+				}
+			}
+		}
+		else if (dataType.equals(RECORDED_DATA))
+		{
+			dataSourceList.addAll(loadRecordedDataSources());
+			if (dataSourceList.isEmpty())
+			{
+				throw new IllegalStateException("No recorded data found, make sure the system property ["+DATABASE_PATH_PROPERTY+"] points to a DH database.");
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown data type ["+dataType+"], expected ["+SYNTHETIC_DATA+"] or ["+RECORDED_DATA+"].");
+		}
+		
+		return dataSourceList;
+	}
+	
+	
+	
+	//================//
+	// synthetic data //
+	//================//
+	
+	/**
+	 * Creates rolling terrain with grass, dirt, and stone layers, sand beaches and water below sea level. <br>
+	 * The same seed and position will always produce the same data source.
+	 */
+	public static FullDataSourceV2 createSyntheticDataSource(long pos, long seed)
+	{
+		FullDataPointIdMap mapping = new FullDataPointIdMap(pos);
+		int airId = mapping.addIfNotPresentAndGetId(new TestBiomeWrapper(PLAINS), new TestBlockStateWrapper(AIR));
+		int grassId = mapping.addIfNotPresentAndGetId(new TestBiomeWrapper(PLAINS), new TestBlockStateWrapper(GRASS));
+		int dirtId = mapping.addIfNotPresentAndGetId(new TestBiomeWrapper(PLAINS), new TestBlockStateWrapper(DIRT));
+		int stoneId = mapping.addIfNotPresentAndGetId(new TestBiomeWrapper(PLAINS), new TestBlockStateWrapper(STONE));
+		int sandId = mapping.addIfNotPresentAndGetId(new TestBiomeWrapper(OCEAN), new TestBlockStateWrapper(SAND));
+		int waterId = mapping.addIfNotPresentAndGetId(new TestBiomeWrapper(OCEAN), new TestBlockStateWrapper(WATER));
+		
+		
+		Random random = new Random(seed);
+		// random phase offsets so different seeds produce different terrain
+		double phaseX = random.nextDouble() * Math.PI * 2;
+		double phaseZ = random.nextDouble() * Math.PI * 2;
+		
+		byte detailLevel = DhSectionPos.getDetailLevel(pos);
+		int blocksPerColumn = 1 << (detailLevel - DhSectionPos.SECTION_BLOCK_DETAIL_LEVEL);
+		int minBlockX = DhSectionPos.getMinCornerBlockX(pos);
+		int minBlockZ = DhSectionPos.getMinCornerBlockZ(pos);
+		
+		int seaLevel = SEA_LEVEL - MIN_HEIGHT;
+		int worldHeight = MAX_HEIGHT - MIN_HEIGHT;
+		
+		LongArrayList[] dataPoints = new LongArrayList[FullDataSourceV2.WIDTH * FullDataSourceV2.WIDTH];
+		try
+		{
+			for (int x = 0; x < FullDataSourceV2.WIDTH; x++)
+			{
+				for (int z = 0; z < FullDataSourceV2.WIDTH; z++)
+				{
+					double blockX = minBlockX + (x * blocksPerColumn);
+					double blockZ = minBlockZ + (z * blocksPerColumn);
+					int surfaceY = seaLevel
+						+ (int) (Math.sin(blockX / 96.0 + phaseX) * 24.0)
+						+ (int) (Math.cos(blockZ / 64.0 + phaseZ) * 16.0)
+						+ (int) (Math.sin((blockX + blockZ) / 24.0) * 4.0);
+					
+					
+					// data points go from the top down
+					LongArrayList column = new LongArrayList(6);
+					int topY = Math.max(surfaceY, seaLevel);
+					column.add(FullDataPointUtil.encode(airId, worldHeight - topY, topY, (byte) 0, LodUtil.MAX_MC_LIGHT));
+					
+					if (surfaceY < seaLevel)
+					{
+						column.add(FullDataPointUtil.encode(waterId, seaLevel - surfaceY, surfaceY, (byte) 0, (byte) 12));
+					}
+					
+					boolean isBeach = (surfaceY <= seaLevel + 2);
+					column.add(FullDataPointUtil.encode(isBeach ? sandId : grassId, 1, surfaceY - 1, (byte) 0, (byte) 12));
+					column.add(FullDataPointUtil.encode(dirtId, 3, surfaceY - 4, (byte) 0, (byte) 0));
+					column.add(FullDataPointUtil.encode(stoneId, surfaceY - 4, 0, (byte) 0, (byte) 0));
+					
+					FullDataSourceV2.throwIfDataColumnInWrongOrder(pos, column);
+					dataPoints[FullDataSourceV2.relativePosToIndex(x, z)] = column;
+				}
+			}
+		}
+		catch (DataCorruptedException e)
+		{
+			throw new IllegalStateException("Invalid synthetic data point, error: ["+e.getMessage()+"].", e);
+		}
+		
+		byte[] columnWorldCompressionMode = new byte[FullDataSourceV2.WIDTH * FullDataSourceV2.WIDTH];
+		Arrays.fill(columnWorldCompressionMode, EDhApiWorldCompressionMode.VISUALLY_EQUAL.value);
+		
+		return FullDataSourceV2.createWithData(pos, mapping, dataPoints, columnWorldCompressionMode);
+	}
+	
+	
+	
+	//===============//
+	// recorded data //
+	//===============//
+	
+	/**
+	 * Returns the highest detail sections from the recorded database,
+	 * or an empty list if no database was given.
+	 */
+	private static List<FullDataSourceV2> loadRecordedDataSources() throws Exception
+	{
+		ArrayList<FullDataSourceV2> dataSourceList = new ArrayList<>();
+		
+		File databaseFile = getRecordedDatabaseFile();
+		if (databaseFile == null)
+		{
+			return dataSourceList;
+		}
+		
+		try (FullDataSourceV2Repo repo = new FullDataSourceV2Repo(DATABASE_TYPE, databaseFile);
+			BlockBiomePalette palette = new BlockBiomePalette(new BlockBiomePaletteRepo(DATABASE_TYPE, databaseFile)))
+		{
+			LongArrayList positions = repo.getAllPositions();
+			// the highest detail sections are the most common, so they are the best representation of real data
+			positions.sort((LongComparator) (a, b) -> Byte.compare(DhSectionPos.getDetailLevel(a), DhSectionPos.getDetailLevel(b)));
+			
+			for (int i = 0; i < positions.size() && dataSourceList.size() < MAX_RECORDED_SECTION_COUNT; i++)
+			{
+				try (FullDataSourceV2DTO dto = repo.getByKey(positions.getLong(i)))
+				{
+					if (dto != null)
+					{
+						dataSourceList.add(dto.createDataSource(clientLevelWrapper, palette, null));
+					}
+				}
+			}
+		}
+		
+		return dataSourceList;
+	}
+	
+}
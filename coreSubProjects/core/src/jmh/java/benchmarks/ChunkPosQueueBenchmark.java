@@ -0,0 +1,173 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks;
+
+import benchmarks.reference.PriorityChunkPosQueue;
+import com.seibel.distanthorizons.core.api.internal.chunkUpdating.ChunkPosQueue;
+import com.seibel.distanthorizons.core.api.internal.chunkUpdating.ChunkUpdateData;
+import com.seibel.distanthorizons.core.pos.DhChunkPos;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ChunkPosQueue} compared to the heap based {@link PriorityChunkPosQueue} it replaced. <br><br>
+ *
+ * Each "flight step" simulates a player flying one chunk forward:
+ * the center moves, a line of newly loaded chunks is queued in front of the player,
+ * and the same number of updates are popped so the queue size stays roughly constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkPosQueueBenchmark
+{
+	/** roughly a 16 chunk vanilla render distance */
+	private static final int LOAD_RADIUS_IN_CHUNKS = 16;
+	
+	
+	@Param({ "500", "4000" })
+	public int queueSize;
+	
+	private ChunkPosQueue ringQueue;
+	private PriorityChunkPosQueue heapQueue;
+	
+	private final ChunkUpdateData updateData = new ChunkUpdateData(null, null, null, false);
+	private int ringStep = 0;
+	private int heapStep = 0;
+	
+	
+	
+	//=======//
+	// setup //
+	//=======//
+	
+	@Setup(Level.Trial)
+	public void setupTrial()
+	{
+		this.ringQueue = new ChunkPosQueue();
+		this.heapQueue = new PriorityChunkPosQueue();
+		
+		Random random = new Random(1234);
+		for (int i = 0; i < this.queueSize; i++)
+		{
+			int x = random.nextInt(LOAD_RADIUS_IN_CHUNKS * 8) - LOAD_RADIUS_IN_CHUNKS * 4;
+			int z = random.nextInt(LOAD_RADIUS_IN_CHUNKS * 8) - LOAD_RADIUS_IN_CHUNKS * 4;
+			this.ringQueue.addItem(DhChunkPos.encode(x, z), this.updateData);
+			this.heapQueue.addItem(new DhChunkPos(x, z), this.updateData);
+		}
+	}
+	
+	
+	
+	//============//
+	// benchmarks //
+	//============//
+	
+	@Benchmark
+	public void ringQueueFlightStep(Blackhole blackhole)
+	{
+		int centerX = this.ringStep++;
+		this.ringQueue.setCenter(DhChunkPos.encode(centerX, 0));
+		
+		int frontX = centerX + LOAD_RADIUS_IN_CHUNKS;
+		for (int z = -LOAD_RADIUS_IN_CHUNKS; z <= LOAD_RADIUS_IN_CHUNKS; z++)
+		{
+			this.ringQueue.addItem(DhChunkPos.encode(frontX, z), this.updateData);
+		}
+		
+		// pop from both ends like the queue manager does when it's full
+		for (int z = -LOAD_RADIUS_IN_CHUNKS; z <= LOAD_RADIUS_IN_CHUNKS; z += 2)
+		{
+			blackhole.consume(this.ringQueue.popClosest());
+			blackhole.consume(this.ringQueue.popFurthest());
+		}
+	}
+	
+	@Benchmark
+	public void heapQueueFlightStep(Blackhole blackhole)
+	{
+		int centerX = this.heapStep++;
+		this.heapQueue.setCenter(new DhChunkPos(centerX, 0));
+		
+		int frontX = centerX + LOAD_RADIUS_IN_CHUNKS;
+		for (int z = -LOAD_RADIUS_IN_CHUNKS; z <= LOAD_RADIUS_IN_CHUNKS; z++)
+		{
+			this.heapQueue.addItem(new DhChunkPos(frontX, z), this.updateData);
+		}
+		
+		for (int z = -LOAD_RADIUS_IN_CHUNKS; z <= LOAD_RADIUS_IN_CHUNKS; z += 2)
+		{
+			blackhole.consume(this.heapQueue.popClosest());
+			blackhole.consume(this.heapQueue.popFurthest());
+		}
+	}
+	
+	
+	
+	//======================//
+	// contended benchmarks //
+	//======================//
+	
+	/**
+	 * A single queue shared by every benchmark thread,
+	 * similar to the chunk update threads all pulling from the same queue.
+	 */
+	@State(Scope.Benchmark)
+	public static class SharedQueues
+	{
+		public final ChunkPosQueue ringQueue = new ChunkPosQueue();
+		public final PriorityChunkPosQueue heapQueue = new PriorityChunkPosQueue();
+		public final ChunkUpdateData updateData = new ChunkUpdateData(null, null, null, false);
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public void ringQueueContended(SharedQueues queues, Blackhole blackhole)
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int x = random.nextInt(LOAD_RADIUS_IN_CHUNKS * 2) - LOAD_RADIUS_IN_CHUNKS;
+		int z = random.nextInt(LOAD_RADIUS_IN_CHUNKS * 2) - LOAD_RADIUS_IN_CHUNKS;
+		
+		blackhole.consume(queues.ringQueue.contains(DhChunkPos.encode(x, z)));
+		queues.ringQueue.addItem(DhChunkPos.encode(x, z), queues.updateData);
+		blackhole.consume(queues.ringQueue.popClosest());
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public void heapQueueContended(SharedQueues queues, Blackhole blackhole)
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int x = random.nextInt(LOAD_RADIUS_IN_CHUNKS * 2) - LOAD_RADIUS_IN_CHUNKS;
+		int z = random.nextInt(LOAD_RADIUS_IN_CHUNKS * 2) - LOAD_RADIUS_IN_CHUNKS;
+		
+		blackhole.consume(queues.heapQueue.contains(new DhChunkPos(x, z)));
+		queues.heapQueue.addItem(new DhChunkPos(x, z), queues.updateData);
+		blackhole.consume(queues.heapQueue.popClosest());
+	}
+	
+}
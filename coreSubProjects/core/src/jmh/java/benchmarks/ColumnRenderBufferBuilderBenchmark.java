@@ -0,0 +1,104 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks;
+
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.dataObjects.render.ColumnRenderSource;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.ColumnRenderBufferBuilder;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.LodQuadBuilder;
+import com.seibel.distanthorizons.core.dataObjects.transformers.FullDataToRenderDataTransformer;
+import com.seibel.distanthorizons.core.enums.EDhDirection;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ColumnRenderBufferBuilder#makeLodRenderData},
+ * which includes merging the quads. <br>
+ * Adjacent sections aren't included, so each section's edges are always built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnRenderBufferBuilderBenchmark
+{
+	@Param({ BenchmarkEnvironment.SYNTHETIC_DATA })
+	public String dataType;
+	
+	@Param({ "true", "false" })
+	public boolean transparency;
+	
+	private ColumnRenderSource[] renderSources;
+	
+	private int index = 0;
+	
+	
+	
+	//=======//
+	// setup //
+	//=======//
+	
+	@Setup(Level.Trial)
+	public void setupTrial() throws Exception
+	{
+		BenchmarkEnvironment.setup();
+		
+		List<FullDataSourceV2> dataSources = BenchmarkEnvironment.createDataSources(this.dataType);
+		this.renderSources = new ColumnRenderSource[dataSources.size()];
+		for (int i = 0; i < dataSources.size(); i++)
+		{
+			this.renderSources[i] = FullDataToRenderDataTransformer.transformFullDataToRenderSource(dataSources.get(i), BenchmarkEnvironment.getClientLevelWrapper());
+			dataSources.get(i).close();
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDownTrial()
+	{
+		for (ColumnRenderSource renderSource : this.renderSources)
+		{
+			renderSource.close();
+		}
+	}
+	
+	
+	
+	//============//
+	// benchmarks //
+	//============//
+	
+	@Benchmark
+	public int makeLodRenderData()
+	{
+		this.index = (this.index + 1) % this.renderSources.length;
+		
+		LodQuadBuilder quadBuilder = new LodQuadBuilder(this.transparency, BenchmarkEnvironment.getClientLevelWrapper());
+		ColumnRenderBufferBuilder.makeLodRenderData(
+				quadBuilder, this.renderSources[this.index], BenchmarkEnvironment.getClientLevel(),
+				new ColumnRenderSource[EDhDirection.CARDINAL_COMPASS.length], new boolean[EDhDirection.CARDINAL_COMPASS.length]);
+		
+		return quadBuilder.getCurrentOpaqueQuadsCount() + quadBuilder.getCurrentTransparentQuadsCount();
+	}
+	
+}
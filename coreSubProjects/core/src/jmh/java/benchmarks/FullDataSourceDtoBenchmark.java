@@ -0,0 +1,133 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks;
+
+import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.sql.dto.FullDataSourceV2DTO;
+import com.seibel.distanthorizons.core.util.objects.dataStreams.ZstdDictionary;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding a {@link FullDataSourceV2} into a {@link FullDataSourceV2DTO}
+ * and decoding it back again for every {@link EDhApiDataCompressionMode}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FullDataSourceDtoBenchmark
+{
+	@Param({ BenchmarkEnvironment.SYNTHETIC_DATA })
+	public String dataType;
+	
+	/** all modes are tested if none are given */
+	@Param({})
+	public EDhApiDataCompressionMode compressionMode;
+	
+	private List<FullDataSourceV2> dataSources;
+	private FullDataSourceV2DTO[] dtos;
+	/** only used by {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY} */
+	private ZstdDictionary dictionary = null;
+	
+	private int index = 0;
+	
+	
+	
+	//=======//
+	// setup //
+	//=======//
+	
+	@Setup(Level.Trial)
+	public void setupTrial() throws Exception
+	{
+		BenchmarkEnvironment.setup();
+		
+		this.dataSources = BenchmarkEnvironment.createDataSources(this.dataType);
+		if (this.compressionMode == EDhApiDataCompressionMode.Z_STD_DICTIONARY)
+		{
+			// train from the same data being measured, the same as a level would
+			ArrayList<byte[]> samples = new ArrayList<>();
+			for (FullDataSourceV2 dataSource : this.dataSources)
+			{
+				try (FullDataSourceV2DTO dto = FullDataSourceV2DTO.CreateFromDataSource(dataSource, EDhApiDataCompressionMode.UNCOMPRESSED))
+				{
+					samples.addAll(dto.getUncompressedBlobs());
+				}
+			}
+			
+			this.dictionary = ZstdDictionary.train(samples);
+			if (this.dictionary == null)
+			{
+				throw new IllegalStateException("Unable to train a Zstd dictionary from ["+samples.size()+"] samples.");
+			}
+			this.dictionary.register();
+		}
+		
+		this.dtos = new FullDataSourceV2DTO[this.dataSources.size()];
+		for (int i = 0; i < this.dataSources.size(); i++)
+		{
+			this.dtos[i] = FullDataSourceV2DTO.CreateFromDataSource(this.dataSources.get(i), this.compressionMode, null, false, this.dictionary);
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDownTrial()
+	{
+		for (FullDataSourceV2DTO dto : this.dtos)
+		{
+			dto.close();
+		}
+	}
+	
+	
+	
+	//============//
+	// benchmarks //
+	//============//
+	
+	@Benchmark
+	public void write(Blackhole blackhole) throws Exception
+	{
+		this.index = (this.index + 1) % this.dataSources.size();
+		try (FullDataSourceV2DTO dto = FullDataSourceV2DTO.CreateFromDataSource(this.dataSources.get(this.index), this.compressionMode, null, false, this.dictionary))
+		{
+			blackhole.consume(dto.compressedDataByteArray.size());
+		}
+	}
+	
+	@Benchmark
+	public void read(Blackhole blackhole) throws Exception
+	{
+		this.index = (this.index + 1) % this.dtos.length;
+		try (FullDataSourceV2 dataSource = this.dtos[this.index].createDataSource(BenchmarkEnvironment.getClientLevelWrapper(), null))
+		{
+			blackhole.consume(dataSource.mapping.size());
+		}
+	}
+	
+}
@@ -0,0 +1,104 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks;
+
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FullDataSourceV2#updateFromDataSource(FullDataSourceV2)}
+ * when the input is the same detail level and when it is one detail level below. <br>
+ * A new target is copied before each call so every update has the same amount of work.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FullDataSourceUpdateBenchmark
+{
+	@Param({ BenchmarkEnvironment.SYNTHETIC_DATA })
+	public String dataType;
+	
+	private List<FullDataSourceV2> inputDataSources;
+	private FullDataSourceV2[] sameLevelBaseDataSources;
+	private FullDataSourceV2[] parentLevelBaseDataSources;
+	
+	private int index = 0;
+	private FullDataSourceV2 sameLevelTarget;
+	private FullDataSourceV2 parentLevelTarget;
+	
+	
+	
+	//=======//
+	// setup //
+	//=======//
+	
+	@Setup(Level.Trial)
+	public void setupTrial() throws Exception
+	{
+		BenchmarkEnvironment.setup();
+		
+		this.inputDataSources = BenchmarkEnvironment.createDataSources(this.dataType);
+		this.sameLevelBaseDataSources = new FullDataSourceV2[this.inputDataSources.size()];
+		this.parentLevelBaseDataSources = new FullDataSourceV2[this.inputDataSources.size()];
+		for (int i = 0; i < this.inputDataSources.size(); i++)
+		{
+			long pos = this.inputDataSources.get(i).getPos();
+			
+			// different seeds so the update has to change data
+			this.sameLevelBaseDataSources[i] = BenchmarkEnvironment.createSyntheticDataSource(pos, 1_000 + i);
+			this.parentLevelBaseDataSources[i] = BenchmarkEnvironment.createSyntheticDataSource(DhSectionPos.getParentPos(pos), 2_000 + i);
+		}
+	}
+	
+	@Setup(Level.Invocation)
+	public void setupInvocation()
+	{
+		this.index = (this.index + 1) % this.inputDataSources.size();
+		this.sameLevelTarget = FullDataSourceV2.createCopy(this.sameLevelBaseDataSources[this.index]);
+		this.parentLevelTarget = FullDataSourceV2.createCopy(this.parentLevelBaseDataSources[this.index]);
+	}
+	
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation()
+	{
+		this.sameLevelTarget.close();
+		this.parentLevelTarget.close();
+	}
+	
+	
+	
+	//============//
+	// benchmarks //
+	//============//
+	
+	@Benchmark
+	public boolean sameDetailLevel() { return this.sameLevelTarget.updateFromDataSource(this.inputDataSources.get(this.index)); }
+	
+	@Benchmark
+	public boolean oneDetailLevelBelow() { return this.parentLevelTarget.updateFromDataSource(this.inputDataSources.get(this.index)); }
+	
+}
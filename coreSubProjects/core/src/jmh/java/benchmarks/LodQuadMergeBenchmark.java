@@ -0,0 +1,188 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks;
+
+import benchmarks.reference.ObjectLodQuadBuilder;
+import com.seibel.distanthorizons.core.config.Config;
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.dataObjects.render.ColumnRenderSource;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.BufferQuadList;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.ColumnRenderBufferBuilder;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.LodQuadBuilder;
+import com.seibel.distanthorizons.core.dataObjects.transformers.FullDataToRenderDataTransformer;
+import com.seibel.distanthorizons.core.enums.EDhDirection;
+import com.seibel.distanthorizons.core.wrapperInterfaces.world.IClientLevelWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding and merging the quads for a section with {@link LodQuadBuilder}
+ * compared to the object based {@link ObjectLodQuadBuilder} it replaced. <br><br>
+ *
+ * The quads are recorded from {@link ColumnRenderBufferBuilder#makeLodRenderData}
+ * so both builders receive exactly the same input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LodQuadMergeBenchmark
+{
+	private static final EDhDirection[] DIRECTIONS = EDhDirection.values();
+	
+	private static final int ADJ_QUAD = 0;
+	private static final int UP_QUAD = 1;
+	private static final int DOWN_QUAD = 2;
+	
+	
+	@Param({ BenchmarkEnvironment.SYNTHETIC_DATA })
+	public String dataType;
+	
+	@Param({ "true", "false" })
+	public boolean transparency;
+	
+	/** one list of recorded quads per section */
+	private ArrayList<ArrayList<int[]>> recordedSections;
+	
+	private int index = 0;
+	
+	
+	
+	//=======//
+	// setup //
+	//=======//
+	
+	@Setup(Level.Trial)
+	public void setupTrial() throws Exception
+	{
+		BenchmarkEnvironment.setup();
+		
+		this.recordedSections = new ArrayList<>();
+		List<FullDataSourceV2> dataSources = BenchmarkEnvironment.createDataSources(this.dataType);
+		for (FullDataSourceV2 dataSource : dataSources)
+		{
+			try (ColumnRenderSource renderSource = FullDataToRenderDataTransformer.transformFullDataToRenderSource(dataSource, BenchmarkEnvironment.getClientLevelWrapper()))
+			{
+				RecordingLodQuadBuilder recordingBuilder = new RecordingLodQuadBuilder(this.transparency, BenchmarkEnvironment.getClientLevelWrapper());
+				ColumnRenderBufferBuilder.makeLodRenderData(
+						recordingBuilder, renderSource, BenchmarkEnvironment.getClientLevel(),
+						new ColumnRenderSource[EDhDirection.CARDINAL_COMPASS.length], new boolean[EDhDirection.CARDINAL_COMPASS.length]);
+				this.recordedSections.add(recordingBuilder.recordedQuads);
+			}
+			dataSource.close();
+		}
+	}
+	
+	
+	
+	//============//
+	// benchmarks //
+	//============//
+	
+	@Benchmark
+	public int bufferQuadList()
+	{
+		this.index = (this.index + 1) % this.recordedSections.size();
+		
+		LodQuadBuilder builder = new LodQuadBuilder(this.transparency, BenchmarkEnvironment.getClientLevelWrapper());
+		for (int[] quad : this.recordedSections.get(this.index))
+		{
+			switch (quad[0])
+			{
+				case ADJ_QUAD:
+					builder.addQuadAdj(DIRECTIONS[quad[1]], (short) quad[2], (short) quad[3], (short) quad[4], (short) quad[5], (short) quad[6], quad[7], (byte) quad[8], (byte) quad[9], (byte) quad[10]);
+					break;
+				case UP_QUAD:
+					builder.addQuadUp((short) quad[2], (short) quad[3], (short) quad[4], (short) quad[5], (short) quad[6], quad[7], (byte) quad[8], (byte) quad[9], (byte) quad[10]);
+					break;
+				default:
+					builder.addQuadDown((short) quad[2], (short) quad[3], (short) quad[4], (short) quad[5], (short) quad[6], quad[7], (byte) quad[8], (byte) quad[9], (byte) quad[10]);
+					break;
+			}
+		}
+		builder.mergeQuads();
+		
+		return builder.getCurrentOpaqueQuadsCount() + builder.getCurrentTransparentQuadsCount();
+	}
+	
+	@Benchmark
+	public int objectReference()
+	{
+		this.index = (this.index + 1) % this.recordedSections.size();
+		
+		ObjectLodQuadBuilder builder = new ObjectLodQuadBuilder(this.transparency,
+				BufferQuadList.getMaxQuadWidth(), Config.Client.Advanced.Debugging.showOverlappingQuadErrors.get());
+		for (int[] quad : this.recordedSections.get(this.index))
+		{
+			if (quad[0] == ADJ_QUAD)
+			{
+				builder.addQuadAdj(DIRECTIONS[quad[1]], (short) quad[2], (short) quad[3], (short) quad[4], (short) quad[5], (short) quad[6], quad[7], (byte) quad[8], (byte) quad[9], (byte) quad[10]);
+			}
+			else
+			{
+				builder.addQuadVertical(DIRECTIONS[quad[1]], (short) quad[2], (short) quad[3], (short) quad[4], (short) quad[5], (short) quad[6], quad[7], (byte) quad[8], (byte) quad[9], (byte) quad[10]);
+			}
+		}
+		builder.mergeQuads();
+		
+		return builder.getQuadCount();
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	/** Records every quad added so they can be replayed into each builder. */
+	private static class RecordingLodQuadBuilder extends LodQuadBuilder
+	{
+		public final ArrayList<int[]> recordedQuads = new ArrayList<>();
+		
+		public RecordingLodQuadBuilder(boolean doTransparency, IClientLevelWrapper clientLevelWrapper) { super(doTransparency, clientLevelWrapper); }
+		
+		@Override
+		public void addQuadAdj(EDhDirection dir, short x, short y, short z, short widthEastWest, short widthNorthSouthOrUpDown, int color, byte irisBlockMaterialId, byte skyLight, byte blockLight)
+		{
+			this.recordedQuads.add(new int[] { ADJ_QUAD, dir.ordinal(), x, y, z, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skyLight, blockLight });
+			super.addQuadAdj(dir, x, y, z, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skyLight, blockLight);
+		}
+		
+		@Override
+		public void addQuadUp(short minX, short maxY, short minZ, short widthEastWest, short widthNorthSouthOrUpDown, int color, byte irisBlockMaterialId, byte skylight, byte blocklight)
+		{
+			this.recordedQuads.add(new int[] { UP_QUAD, EDhDirection.UP.ordinal(), minX, maxY, minZ, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skylight, blocklight });
+			super.addQuadUp(minX, maxY, minZ, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skylight, blocklight);
+		}
+		
+		@Override
+		public void addQuadDown(short x, short y, short z, short width, short wz, int color, byte irisBlockMaterialId, byte skylight, byte blocklight)
+		{
+			this.recordedQuads.add(new int[] { DOWN_QUAD, EDhDirection.DOWN.ordinal(), x, y, z, width, wz, color, irisBlockMaterialId, skylight, blocklight });
+			super.addQuadDown(x, y, z, width, wz, color, irisBlockMaterialId, skylight, blocklight);
+		}
+	}
+	
+}
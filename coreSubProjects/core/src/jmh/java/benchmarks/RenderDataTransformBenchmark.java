@@ -0,0 +1,67 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks;
+
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.dataObjects.render.ColumnRenderSource;
+import com.seibel.distanthorizons.core.dataObjects.transformers.FullDataToRenderDataTransformer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Measures {@link FullDataToRenderDataTransformer#transformFullDataToRenderSource} */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderDataTransformBenchmark
+{
+	@Param({ BenchmarkEnvironment.SYNTHETIC_DATA })
+	public String dataType;
+	
+	private List<FullDataSourceV2> dataSources;
+	
+	private int index = 0;
+	
+	
+	
+	@Setup(Level.Trial)
+	public void setupTrial() throws Exception
+	{
+		BenchmarkEnvironment.setup();
+		this.dataSources = BenchmarkEnvironment.createDataSources(this.dataType);
+	}
+	
+	@Benchmark
+	public void transform(Blackhole blackhole)
+	{
+		this.index = (this.index + 1) % this.dataSources.size();
+		try (ColumnRenderSource renderSource = FullDataToRenderDataTransformer.transformFullDataToRenderSource(
+				this.dataSources.get(this.index), BenchmarkEnvironment.getClientLevelWrapper()))
+		{
+			blackhole.consume(renderSource);
+		}
+	}
+	
+}
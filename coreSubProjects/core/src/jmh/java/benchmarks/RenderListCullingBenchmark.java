@@ -0,0 +1,165 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks;
+
+import benchmarks.reference.QuadTreeRenderListBuilder;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.LodBufferContainer;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos;
+import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
+import com.seibel.distanthorizons.core.render.DhFrustumBounds;
+import com.seibel.distanthorizons.core.render.RenderSectionIndex;
+import com.seibel.distanthorizons.core.util.LodUtil;
+import com.seibel.distanthorizons.core.util.math.Mat4f;
+import com.seibel.distanthorizons.core.util.objects.quadTree.QuadTree;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures culling and sorting every loaded section with {@link RenderSectionIndex}
+ * compared to the quad tree walk {@link QuadTreeRenderListBuilder} it replaced. <br><br>
+ *
+ * Sections are laid out the same way the LOD quad tree does,
+ * with the detail level dropping as the distance from the player increases.
+ * Frustums are synthetic cameras rotated around the player so no Minecraft or GPU is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderListCullingBenchmark
+{
+	private static final int FRUSTUM_COUNT = 16;
+	
+	private static final int WORLD_MIN_Y = -64;
+	private static final int WORLD_MAX_Y = 320;
+	private static final float CAMERA_Y = 100;
+	
+	/** how far out sections stay at the highest detail level, each time this distance doubles the detail level drops by one */
+	private static final int DETAIL_DROP_OFF_DISTANCE_IN_BLOCKS = 256;
+	
+	
+	@Param({ "256", "512", "1024" })
+	public int renderDistanceInChunks;
+	
+	private RenderSectionIndex renderSectionIndex;
+	private QuadTreeRenderListBuilder quadTreeBuilder;
+	
+	private DhFrustumBounds[] frustums;
+	private final ArrayList<LodBufferContainer> outputList = new ArrayList<>();
+	
+	private int index = 0;
+	
+	
+	
+	//=======//
+	// setup //
+	//=======//
+	
+	@Setup(Level.Trial)
+	public void setupTrial() throws Exception
+	{
+		BenchmarkEnvironment.setup();
+		
+		int renderDistanceInBlocks = this.renderDistanceInChunks * LodUtil.CHUNK_WIDTH;
+		
+		QuadTree<LodBufferContainer> quadTree = new QuadTree<>(renderDistanceInBlocks * 2, new DhBlockPos2D(0, 0), DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL);
+		this.renderSectionIndex = new RenderSectionIndex();
+		LongIterator rootPosIterator = quadTree.rootNodePosIterator();
+		while (rootPosIterator.hasNext())
+		{
+			this.addSections(quadTree, rootPosIterator.nextLong(), renderDistanceInBlocks);
+		}
+		this.quadTreeBuilder = new QuadTreeRenderListBuilder(quadTree);
+		
+		
+		// cameras looking in a circle, tilted slightly down
+		this.frustums = new DhFrustumBounds[FRUSTUM_COUNT];
+		for (int i = 0; i < FRUSTUM_COUNT; i++)
+		{
+			float yaw = (float) (Math.PI * 2 * i / FRUSTUM_COUNT);
+			Matrix4f worldViewProjection = new Matrix4f()
+					.perspective((float) Math.toRadians(70), 16f / 9f, 0.05f, renderDistanceInBlocks * 1.5f)
+					.rotateX((float) Math.toRadians(15))
+					.rotateY(yaw)
+					.translate(0, -CAMERA_Y, 0);
+			
+			this.frustums[i] = new DhFrustumBounds();
+			this.frustums[i].update(WORLD_MIN_Y, WORLD_MAX_Y, new Mat4f(worldViewProjection));
+		}
+	}
+	/** recursively adds each section at the detail level it would render at */
+	private void addSections(QuadTree<LodBufferContainer> quadTree, long pos, int renderDistanceInBlocks)
+	{
+		if (!quadTree.isSectionPosInBounds(pos))
+		{
+			return;
+		}
+		
+		byte detailLevel = DhSectionPos.getDetailLevel(pos);
+		double distance = quadTree.getCenterBlockPos().dist(DhSectionPos.getCenterBlockPosX(pos), DhSectionPos.getCenterBlockPosZ(pos));
+		int expectedDetailLevel = DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL
+				+ (int) Math.max(0, Math.floor(Math.log(distance / DETAIL_DROP_OFF_DISTANCE_IN_BLOCKS) / Math.log(2)));
+		
+		if (detailLevel > expectedDetailLevel)
+		{
+			for (int i = 0; i < 4; i++)
+			{
+				this.addSections(quadTree, DhSectionPos.getChildByIndex(pos, i), renderDistanceInBlocks);
+			}
+		}
+		else if (distance <= renderDistanceInBlocks)
+		{
+			DhBlockPos minCornerBlockPos = new DhBlockPos(DhSectionPos.getMinCornerBlockX(pos), WORLD_MIN_Y, DhSectionPos.getMinCornerBlockZ(pos));
+			LodBufferContainer bufferContainer = new LodBufferContainer(pos, minCornerBlockPos);
+			
+			quadTree.setValue(pos, bufferContainer);
+			this.renderSectionIndex.put(pos, bufferContainer);
+		}
+	}
+	
+	
+	
+	//============//
+	// benchmarks //
+	//============//
+	
+	@Benchmark
+	public int renderSectionIndex()
+	{
+		this.index = (this.index + 1) % FRUSTUM_COUNT;
+		this.renderSectionIndex.cullAndSortNearToFar(this.frustums[this.index], 0, 0, this.outputList);
+		return this.outputList.size();
+	}
+	
+	@Benchmark
+	public int quadTreeReference()
+	{
+		this.index = (this.index + 1) % FRUSTUM_COUNT;
+		return this.quadTreeBuilder.buildRenderList(this.frustums[this.index]);
+	}
+	
+}
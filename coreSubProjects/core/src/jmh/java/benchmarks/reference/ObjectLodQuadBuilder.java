@@ -0,0 +1,389 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks.reference;
+
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.BufferMergeDirectionEnum;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.BufferQuadList;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.LodQuadBuilder;
+import com.seibel.distanthorizons.core.enums.EDhDirection;
+import com.seibel.distanthorizons.core.util.ColorUtil;
+
+import java.util.ArrayList;
+import java.util.ListIterator;
+import java.util.Objects;
+
+/**
+ * The object based quad storage and merging {@link LodQuadBuilder} used
+ * before {@link BufferQuadList} was added. <br>
+ * Only used as a baseline for benchmarking.
+ */
+public class ObjectLodQuadBuilder
+{
+	@SuppressWarnings("unchecked")
+	private final ArrayList<ObjectBufferQuad>[] opaqueQuads = (ArrayList<ObjectBufferQuad>[]) new ArrayList[6];
+	@SuppressWarnings("unchecked")
+	private final ArrayList<ObjectBufferQuad>[] transparentQuads = (ArrayList<ObjectBufferQuad>[]) new ArrayList[6];
+	
+	private final boolean doTransparency;
+	private final int maxQuadWidth;
+	private final boolean markOverlappingQuads;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public ObjectLodQuadBuilder(boolean doTransparency, int maxQuadWidth, boolean markOverlappingQuads)
+	{
+		this.doTransparency = doTransparency;
+		this.maxQuadWidth = maxQuadWidth;
+		this.markOverlappingQuads = markOverlappingQuads;
+		
+		for (int i = 0; i < 6; i++)
+		{
+			this.opaqueQuads[i] = new ArrayList<>();
+			this.transparentQuads[i] = new ArrayList<>();
+		}
+	}
+	
+	
+	
+	//===========//
+	// add quads //
+	//===========//
+	
+	public void addQuadAdj(
+			EDhDirection dir,
+			short x, short y, short z,
+			short widthEastWest, short widthNorthSouthOrUpDown,
+			int color, byte irisBlockMaterialId, byte skyLight, byte blockLight)
+	{
+		ArrayList<ObjectBufferQuad> quadList = this.getQuadList(dir, color);
+		ObjectBufferQuad quad = new ObjectBufferQuad(x, y, z, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skyLight, blockLight, dir);
+		if (!quadList.isEmpty()
+			&& (
+				quadList.get(quadList.size() - 1).tryMerge(quad, BufferMergeDirectionEnum.EastWest, this.maxQuadWidth, this.markOverlappingQuads)
+				|| quadList.get(quadList.size() - 1).tryMerge(quad, BufferMergeDirectionEnum.NorthSouthOrUpDown, this.maxQuadWidth, this.markOverlappingQuads))
+			)
+		{
+			return;
+		}
+		
+		quadList.add(quad);
+	}
+	
+	/** used for both {@link EDhDirection#UP} and {@link EDhDirection#DOWN} */
+	public void addQuadVertical(EDhDirection dir, short x, short y, short z, short widthEastWest, short widthNorthSouthOrUpDown, int color, byte irisBlockMaterialId, byte skylight, byte blocklight)
+	{
+		this.getQuadList(dir, color).add(new ObjectBufferQuad(x, y, z, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skylight, blocklight, dir));
+	}
+	
+	private ArrayList<ObjectBufferQuad> getQuadList(EDhDirection dir, int color)
+	{
+		return (this.doTransparency && ColorUtil.getAlpha(color) < 255)
+				? this.transparentQuads[dir.ordinal()]
+				: this.opaqueQuads[dir.ordinal()];
+	}
+	
+	
+	
+	//=========//
+	// merging //
+	//=========//
+	
+	public void mergeQuads()
+	{
+		for (int directionIndex = 0; directionIndex < 6; directionIndex++)
+		{
+			this.mergeQuadsInternal(this.opaqueQuads, directionIndex, BufferMergeDirectionEnum.EastWest);
+			if (this.doTransparency)
+			{
+				this.mergeQuadsInternal(this.transparentQuads, directionIndex, BufferMergeDirectionEnum.EastWest);
+			}
+			
+			if (directionIndex == EDhDirection.UP.ordinal() || directionIndex == EDhDirection.DOWN.ordinal())
+			{
+				this.mergeQuadsInternal(this.opaqueQuads, directionIndex, BufferMergeDirectionEnum.NorthSouthOrUpDown);
+				if (this.doTransparency)
+				{
+					this.mergeQuadsInternal(this.transparentQuads, directionIndex, BufferMergeDirectionEnum.NorthSouthOrUpDown);
+				}
+			}
+		}
+	}
+	private void mergeQuadsInternal(ArrayList<ObjectBufferQuad>[] list, int directionIndex, BufferMergeDirectionEnum mergeDirection)
+	{
+		if (list[directionIndex].size() <= 1)
+		{
+			return;
+		}
+		
+		list[directionIndex].sort((objOne, objTwo) -> objOne.compare(objTwo, mergeDirection));
+		
+		ListIterator<ObjectBufferQuad> iter = list[directionIndex].listIterator();
+		ObjectBufferQuad currentQuad = iter.next();
+		while (iter.hasNext())
+		{
+			ObjectBufferQuad nextQuad = iter.next();
+			if (currentQuad.tryMerge(nextQuad, mergeDirection, this.maxQuadWidth, this.markOverlappingQuads))
+			{
+				iter.set(null);
+			}
+			else
+			{
+				currentQuad = nextQuad;
+			}
+		}
+		list[directionIndex].removeIf(Objects::isNull);
+	}
+	
+	
+	
+	//=========//
+	// getters //
+	//=========//
+	
+	public int getQuadCount()
+	{
+		int count = 0;
+		for (int i = 0; i < 6; i++)
+		{
+			count += this.opaqueQuads[i].size();
+			count += this.transparentQuads[i].size();
+		}
+		return count;
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	private static final class ObjectBufferQuad
+	{
+		final short x;
+		final short y;
+		final short z;
+		
+		short widthEastWest;
+		short widthNorthSouthOrUpDown;
+		
+		final int color;
+		final byte irisBlockMaterialId;
+		final byte skyLight;
+		final byte blockLight;
+		final EDhDirection direction;
+		
+		boolean hasError = false;
+		
+		
+		
+		ObjectBufferQuad(
+				short x, short y, short z, short widthEastWest, short widthNorthSouthOrUpDown,
+				int color, byte irisBlockMaterialId, byte skylight, byte blockLight,
+				EDhDirection direction)
+		{
+			if (widthEastWest == 0 || widthNorthSouthOrUpDown == 0)
+				throw new IllegalArgumentException("Size 0 quad!");
+			if (widthEastWest < 0 || widthNorthSouthOrUpDown < 0)
+				throw new IllegalArgumentException("Negative sized quad!");
+			
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.widthEastWest = widthEastWest;
+			this.widthNorthSouthOrUpDown = widthNorthSouthOrUpDown;
+			this.color = color;
+			this.irisBlockMaterialId = irisBlockMaterialId;
+			this.skyLight = skylight;
+			this.blockLight = blockLight;
+			this.direction = direction;
+		}
+		
+		
+		
+		int compare(ObjectBufferQuad quad, BufferMergeDirectionEnum compareDirection)
+		{
+			if (compareDirection == BufferMergeDirectionEnum.EastWest)
+			{
+				switch (this.direction.axis)
+				{
+					case X:
+						return threeDimensionalCompare(this.x, this.y, this.z, quad.x, quad.y, quad.z);
+					case Y:
+						return threeDimensionalCompare(this.y, this.z, this.x, quad.y, quad.z, quad.x);
+					default:
+						return threeDimensionalCompare(this.z, this.y, this.x, quad.z, quad.y, quad.x);
+				}
+			}
+			else
+			{
+				switch (this.direction.axis)
+				{
+					case X:
+						return threeDimensionalCompare(this.x, this.z, this.y, quad.x, quad.z, quad.y);
+					case Y:
+						return threeDimensionalCompare(this.y, this.x, this.z, quad.y, quad.x, quad.z);
+					default:
+						return threeDimensionalCompare(this.z, this.x, this.y, quad.z, quad.x, quad.y);
+				}
+			}
+		}
+		private static int threeDimensionalCompare(short a0, short a1, short a2, short b0, short b1, short b2)
+		{
+			long a = (long) a0 << 48 | (long) a1 << 32 | (long) a2 << 16;
+			long b = (long) b0 << 48 | (long) b1 << 32 | (long) b2 << 16;
+			return Long.compare(a, b);
+		}
+		
+		boolean tryMerge(ObjectBufferQuad quad, BufferMergeDirectionEnum mergeDirection, int maxQuadWidth, boolean markOverlappingQuads)
+		{
+			if (quad.hasError || this.hasError || this.direction != quad.direction)
+				return false;
+			
+			if ((mergeDirection == BufferMergeDirectionEnum.EastWest && this.y != quad.y)
+				|| (mergeDirection == BufferMergeDirectionEnum.NorthSouthOrUpDown && this.x != quad.x))
+			{
+				return false;
+			}
+			
+			
+			short thisPerpendicularCompareStartPos;
+			short thisParallelCompareStartPos;
+			short otherPerpendicularCompareStartPos;
+			short otherParallelCompareStartPos;
+			switch (this.direction.axis)
+			{
+				default:
+				case X:
+					if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+					{
+						thisPerpendicularCompareStartPos = this.z;
+						thisParallelCompareStartPos = this.x;
+						otherPerpendicularCompareStartPos = quad.z;
+						otherParallelCompareStartPos = quad.x;
+					}
+					else
+					{
+						thisPerpendicularCompareStartPos = this.y;
+						thisParallelCompareStartPos = this.z;
+						otherPerpendicularCompareStartPos = quad.y;
+						otherParallelCompareStartPos = quad.z;
+					}
+					break;
+				
+				case Y:
+					if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+					{
+						thisPerpendicularCompareStartPos = this.x;
+						thisParallelCompareStartPos = this.z;
+						otherPerpendicularCompareStartPos = quad.x;
+						otherParallelCompareStartPos = quad.z;
+					}
+					else
+					{
+						thisPerpendicularCompareStartPos = this.z;
+						thisParallelCompareStartPos = this.y;
+						otherPerpendicularCompareStartPos = quad.z;
+						otherParallelCompareStartPos = quad.y;
+					}
+					break;
+				
+				case Z:
+					if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+					{
+						thisPerpendicularCompareStartPos = this.x;
+						thisParallelCompareStartPos = this.z;
+						otherPerpendicularCompareStartPos = quad.x;
+						otherParallelCompareStartPos = quad.z;
+					}
+					else
+					{
+						thisPerpendicularCompareStartPos = this.y;
+						thisParallelCompareStartPos = this.z;
+						otherPerpendicularCompareStartPos = quad.y;
+						otherParallelCompareStartPos = quad.z;
+					}
+					break;
+			}
+			
+			short thisPerpendicularCompareWidth = (mergeDirection == BufferMergeDirectionEnum.EastWest) ? this.widthEastWest : this.widthNorthSouthOrUpDown;
+			short thisParallelCompareWidth = (mergeDirection == BufferMergeDirectionEnum.EastWest) ? this.widthNorthSouthOrUpDown : this.widthEastWest;
+			short otherPerpendicularCompareWidth = (mergeDirection == BufferMergeDirectionEnum.EastWest) ? quad.widthEastWest : quad.widthNorthSouthOrUpDown;
+			short otherParallelCompareWidth = (mergeDirection == BufferMergeDirectionEnum.EastWest) ? quad.widthNorthSouthOrUpDown : quad.widthEastWest;
+			
+			
+			if (thisPerpendicularCompareWidth >= maxQuadWidth)
+			{
+				return false;
+			}
+			if (Math.floorDiv(otherPerpendicularCompareStartPos, maxQuadWidth) != Math.floorDiv(thisPerpendicularCompareStartPos, maxQuadWidth))
+			{
+				return false;
+			}
+			
+			
+			if (thisPerpendicularCompareStartPos + thisPerpendicularCompareWidth < otherPerpendicularCompareStartPos ||
+					thisParallelCompareStartPos != otherParallelCompareStartPos)
+			{
+				return false;
+			}
+			else if (thisPerpendicularCompareStartPos + thisPerpendicularCompareWidth > otherPerpendicularCompareStartPos)
+			{
+				if (thisPerpendicularCompareStartPos < otherPerpendicularCompareStartPos + otherPerpendicularCompareWidth
+					&& markOverlappingQuads)
+				{
+					quad.hasError = true;
+					this.hasError = true;
+				}
+				
+				return false;
+			}
+			
+			if (thisParallelCompareWidth != otherParallelCompareWidth)
+			{
+				return false;
+			}
+			
+			if (this.color != quad.color ||
+					this.irisBlockMaterialId != quad.irisBlockMaterialId ||
+					this.skyLight != quad.skyLight ||
+					this.blockLight != quad.blockLight)
+			{
+				return false;
+			}
+			
+			if (mergeDirection == BufferMergeDirectionEnum.NorthSouthOrUpDown)
+			{
+				this.widthNorthSouthOrUpDown += otherPerpendicularCompareWidth;
+			}
+			else
+			{
+				this.widthEastWest += otherPerpendicularCompareWidth;
+			}
+			
+			return true;
+		}
+	
+	}
+	
+}
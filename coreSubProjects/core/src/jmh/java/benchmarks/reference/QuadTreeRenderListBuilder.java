@@ -0,0 +1,109 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package benchmarks.reference;
+
+import com.seibel.distanthorizons.api.interfaces.override.rendering.IDhApiCullingFrustum;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.LodBufferContainer;
+import com.seibel.distanthorizons.core.pos.DhLodPos;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.render.RenderBufferHandler;
+import com.seibel.distanthorizons.core.render.RenderSectionIndex;
+import com.seibel.distanthorizons.core.util.objects.SortedArraySet;
+import com.seibel.distanthorizons.core.util.objects.quadTree.QuadNode;
+import com.seibel.distanthorizons.core.util.objects.quadTree.QuadTree;
+
+import java.util.Iterator;
+
+/**
+ * The quad tree walk {@link RenderBufferHandler#buildRenderList} used
+ * before {@link RenderSectionIndex} was added. <br>
+ * Only used as a baseline for benchmarking.
+ */
+public class QuadTreeRenderListBuilder
+{
+	private final QuadTree<LodBufferContainer> quadTree;
+	private final SortedArraySet<LodBufferContainer> loadedNearToFarBuffers;
+	
+	private int culledCount;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public QuadTreeRenderListBuilder(QuadTree<LodBufferContainer> quadTree)
+	{
+		this.quadTree = quadTree;
+		this.loadedNearToFarBuffers = new SortedArraySet<>((a, b) -> 0);
+	}
+	
+	
+	
+	//=================//
+	// render building //
+	//=================//
+	
+	/** @return the number of sections that will be rendered */
+	public int buildRenderList(IDhApiCullingFrustum frustum)
+	{
+		this.loadedNearToFarBuffers.clear();
+		this.culledCount = 0;
+		
+		Iterator<QuadNode<LodBufferContainer>> nodeIterator = this.quadTree.nodeIteratorWithStoppingFilter((QuadNode<LodBufferContainer> node) ->
+		{
+			if (node == null)
+			{
+				return true;
+			}
+			
+			if (node.value == null)
+			{
+				return false;
+			}
+			
+			DhLodPos lodBounds = DhSectionPos.getSectionBBoxPos(node.sectionPos);
+			int blockMinX = lodBounds.getMinX().toBlockWidth();
+			int blockMinZ = lodBounds.getMinZ().toBlockWidth();
+			int lodBlockWidth = lodBounds.getBlockWidth();
+			if (!frustum.intersects(blockMinX, blockMinZ, lodBlockWidth, lodBounds.detailLevel))
+			{
+				this.culledCount++;
+				return true;
+			}
+			
+			return false;
+		});
+		
+		while (nodeIterator.hasNext())
+		{
+			QuadNode<LodBufferContainer> node = nodeIterator.next();
+			if (node.value != null)
+			{
+				this.loadedNearToFarBuffers.add(node.value);
+			}
+		}
+		
+		return this.loadedNearToFarBuffers.size();
+	}
+	
+	public int getCulledCount() { return this.culledCount; }
+	
+}
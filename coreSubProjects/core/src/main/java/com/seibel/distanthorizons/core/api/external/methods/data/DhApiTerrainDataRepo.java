@@ -237,8 +237,11 @@ public class DhApiTerrainDataRepo implements IDhApiTerrainDataRepo
 			
 			if (dataSource == null)
 			{
-				// attempt to get/generate the data source for this section
-				dataSource = level.getFullDataProvider().getAsync(sectionPos).get();
+				// attempt to get/generate the data source for this section,
+				// without a cache only the requested column will be used so there's no reason to decode the rest
+				dataSource = (dataCache != null)
+						? level.getFullDataProvider().getAsync(sectionPos).get()
+						: level.getFullDataProvider().getColumnAsync(sectionPos, relativePos.x, relativePos.z).get();
 				if (dataSource == null)
 				{
 					return DhApiResult.createFail("Unable to find/generate any data at the " + DhSectionPos.class.getSimpleName() + " [" + DhSectionPos.toString(sectionPos) + "].");
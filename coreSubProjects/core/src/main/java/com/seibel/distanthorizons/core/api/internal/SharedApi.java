@@ -31,7 +31,6 @@ import com.seibel.distanthorizons.core.level.DhClientLevel;
 import com.seibel.distanthorizons.core.level.IDhLevel;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.logging.f3.F3Screen;
-import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
 import com.seibel.distanthorizons.core.pos.DhChunkPos;
 import com.seibel.distanthorizons.core.render.renderer.DebugRenderer;
 import com.seibel.distanthorizons.core.sql.repo.AbstractDhRepo;
@@ -195,10 +194,10 @@ public class SharedApi
 	 * This is important since asking MC for a chunk is slow and may block the render thread.
 	 */
 	public static boolean isChunkAtBlockPosAlreadyUpdating(int blockPosX, int blockPosZ)
-	{ return CHUNK_UPDATE_QUEUE_MANAGER.contains(new DhChunkPos(new DhBlockPos2D(blockPosX, blockPosZ))); }
+	{ return CHUNK_UPDATE_QUEUE_MANAGER.contains(DhChunkPos.encode(blockPosX >> 4, blockPosZ >> 4)); }
 	
 	public static boolean isChunkAtChunkPosAlreadyUpdating(int chunkPosX, int chunkPosZ)
-	{ return CHUNK_UPDATE_QUEUE_MANAGER.contains(new DhChunkPos(chunkPosX, chunkPosZ)); }
+	{ return CHUNK_UPDATE_QUEUE_MANAGER.contains(DhChunkPos.encode(chunkPosX, chunkPosZ)); }
 	
 	/** 
 	 * This is often fired when unloading a level.
@@ -514,6 +513,7 @@ public class SharedApi
 			{
 				int oldChunkHash = dhLevel.getChunkHash(chunkWrapper.getChunkPos()); // shouldn't happen on the render thread since it may take a few moments to run
 				int newChunkHash = chunkWrapper.getBlockBiomeHashCode();
+				preUpdateData.chunkHash = newChunkHash;
 
 				boolean hasNewChunkHash = (oldChunkHash != newChunkHash);
 				if (!hasNewChunkHash)
@@ -598,7 +598,8 @@ public class SharedApi
 
 			dhLevel.updateBeaconBeamsForChunk(chunkWrapper, nearbyChunkList);
 
-			int newChunkHash = chunkWrapper.getBlockBiomeHashCode();
+			// lighting doesn't change the hash, so the pre-update's hash can be re-used if present
+			int newChunkHash = (updateData.chunkHash != 0) ? updateData.chunkHash : chunkWrapper.getBlockBiomeHashCode();
 			dhLevel.updateChunkAsync(chunkWrapper, newChunkHash);
 			chunksProcessed++;
 		}
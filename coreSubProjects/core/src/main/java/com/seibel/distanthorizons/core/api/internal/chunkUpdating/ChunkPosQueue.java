@@ -1,19 +1,52 @@
 package com.seibel.distanthorizons.core.api.internal.chunkUpdating;
 
-import com.seibel.distanthorizons.core.api.internal.SharedApi;
 import com.seibel.distanthorizons.core.pos.DhChunkPos;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
-import java.util.Comparator;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Queue of chunk updates that can be popped closest or furthest first. <br><br>
+ *
+ * Positions are stored as packed longs (see {@link DhChunkPos#encode(int, int)})
+ * in rings one chunk wide around the center,
+ * so popping only has to look at the nearest/furthest non-empty ring
+ * and moving the center only has to move the positions that changed rings. <br>
+ * Anything further away than {@link ChunkPosQueue#RING_COUNT} chunks goes in the last ring. <br><br>
+ *
+ * Each ring and each slice of the update data map has its own lock
+ * so adding and popping from different threads doesn't block the whole queue.
+ * Because of that the pop order is best effort while the center is moving,
+ * the same as the old heap based queue.
+ */
 public class ChunkPosQueue
 {
-	private final PriorityBlockingQueue<DhChunkPos> closestQueue;
-	private final PriorityBlockingQueue<DhChunkPos> furthestQueue;
-	private final ConcurrentHashMap<DhChunkPos, ChunkUpdateData> updateDataByChunkPos;
+	/**
+	 * How many chunks out rings are tracked. <br>
+	 * Larger than any reasonable vanilla render distance.
+	 */
+	public static final int RING_COUNT = 128;
+	/** must be a power of 2 */
+	private static final int STRIPE_COUNT = 16;
 	
-	private DhChunkPos center;
+	
+	private final Ring[] rings = new Ring[RING_COUNT];
+	private final UpdateDataStripe[] stripes = new UpdateDataStripe[STRIPE_COUNT];
+	private final AtomicInteger queuedCount = new AtomicInteger(0);
+	
+	/**
+	 * Packed chunk pos. <br>
+	 * defaulting to 0,0 is fine since it'll be updated once we start adding items
+	 */
+	private volatile long center = DhChunkPos.encode(0, 0);
+	
+	/** only one thread should move positions between rings at a time */
+	private final ReentrantLock recenterLock = new ReentrantLock();
+	/** only used while holding the {@link ChunkPosQueue#recenterLock} */
+	private final LongArrayList movedPositions = new LongArrayList();
 	
 	
 	
@@ -23,11 +56,14 @@ public class ChunkPosQueue
 	
 	public ChunkPosQueue()
 	{
-		this.closestQueue = new PriorityBlockingQueue<>(500, Comparator.comparingDouble(pos -> pos.squaredDistance(this.center)));
-		this.furthestQueue = new PriorityBlockingQueue<>(500, Comparator.comparingDouble(pos -> ((DhChunkPos)pos).squaredDistance(this.center)).reversed());
-		this.updateDataByChunkPos = new ConcurrentHashMap<>();
-		// defaulting to 0,0 is fine since it'll be updated once we start adding items 
-		this.center = new DhChunkPos(0, 0);
+		for (int i = 0; i < RING_COUNT; i++)
+		{
+			this.rings[i] = new Ring();
+		}
+		for (int i = 0; i < STRIPE_COUNT; i++)
+		{
+			this.stripes[i] = new UpdateDataStripe();
+		}
 	}
 	
 	
@@ -36,30 +72,86 @@ public class ChunkPosQueue
 	// list methods //
 	//==============//
 	
-	public boolean contains(DhChunkPos pos) { return this.updateDataByChunkPos.containsKey(pos); }
+	public boolean contains(DhChunkPos pos) { return this.contains(pos.toLong()); }
+	public boolean contains(long pos)
+	{
+		UpdateDataStripe stripe = this.getStripe(pos);
+		stripe.lock.lock();
+		try
+		{
+			return stripe.updateDataByPos.containsKey(pos);
+		}
+		finally
+		{
+			stripe.lock.unlock();
+		}
+	}
 	
 	public void clear()
 	{
-		this.updateDataByChunkPos.clear();
-		this.closestQueue.clear();
-		this.furthestQueue.clear();
+		// The rings have to be cleared before the update data.
+		// Adding puts the update data in before the ring entry,
+		// so clearing the update data first could let a concurrent add put its data back
+		// and then have its ring entry cleared, leaving data that can never be popped.
+		// In this order a concurrent add can at worst leave a ring entry without data,
+		// which popping already skips.
+		for (Ring ring : this.rings)
+		{
+			ring.lock.lock();
+			try
+			{
+				ring.positions.clear();
+				ring.size = 0;
+			}
+			finally
+			{
+				ring.lock.unlock();
+			}
+		}
+		
+		for (UpdateDataStripe stripe : this.stripes)
+		{
+			stripe.lock.lock();
+			try
+			{
+				this.queuedCount.addAndGet(-stripe.updateDataByPos.size());
+				stripe.updateDataByPos.clear();
+			}
+			finally
+			{
+				stripe.lock.unlock();
+			}
+		}
 	}
 	
-	public void addItem(DhChunkPos pos, ChunkUpdateData updateData)
+	public boolean addItem(DhChunkPos pos, ChunkUpdateData updateData) { return this.addItem(pos.toLong(), updateData); }
+	/** @return false if the position was already queued */
+	public boolean addItem(long pos, ChunkUpdateData updateData)
 	{
-		if (this.updateDataByChunkPos.containsKey(pos))
+		UpdateDataStripe stripe = this.getStripe(pos);
+		stripe.lock.lock();
+		try
 		{
-			// Chunk is already present in queue, no need to insert
-			return;
+			if (stripe.updateDataByPos.containsKey(pos))
+			{
+				// Chunk is already present in queue, no need to insert
+				return false;
+			}
+			stripe.updateDataByPos.put(pos, updateData);
+			this.queuedCount.incrementAndGet();
+		}
+		finally
+		{
+			stripe.lock.unlock();
 		}
-		this.updateDataByChunkPos.put(pos, updateData);
-		this.closestQueue.add(pos);
-		this.furthestQueue.add(pos);
+		
+		this.rings[getRingIndex(pos, this.center)].add(pos);
+		return true;
 	}
 	
-	public int getQueuedCount() { return this.updateDataByChunkPos.size(); }
+	public int getQueuedCount() { return this.queuedCount.get(); }
 	
-	public boolean isEmpty() { return this.updateDataByChunkPos.isEmpty(); }
+	public boolean isEmpty() { return this.queuedCount.get() == 0; }
 	
 	
 	
@@ -67,59 +159,226 @@ public class ChunkPosQueue
 	// position methods //
 	//==================//
 	
-	public void setCenter(DhChunkPos newCenter)
+	public void setCenter(DhChunkPos newCenter) { this.setCenter(newCenter.toLong()); }
+	public void setCenter(long newCenter)
 	{
-		// if the rebuild time takes too long 
-		// (in James' testing a queue of 500 items only took around 0.1 milliseconds)
-		// this equation could be changed to only update after moving 2 or 4 chunks from the center
-		if (newCenter.equals(this.center))
+		if (newCenter == this.center)
 		{
 			return;
 		}
 		
-		this.center = newCenter;
-		
-		// rebuild the priority queues to match the new center
-		this.closestQueue.clear();
-		this.furthestQueue.clear();
-		for (DhChunkPos pos : this.updateDataByChunkPos.keySet())
+		this.recenterLock.lock();
+		try
+		{
+			if (newCenter == this.center)
+			{
+				return;
+			}
+			
+			// set first so anything added from here on goes into the new rings
+			this.center = newCenter;
+			
+			for (int ringIndex = 0; ringIndex < RING_COUNT; ringIndex++)
+			{
+				Ring ring = this.rings[ringIndex];
+				if (ring.size == 0)
+				{
+					continue;
+				}
+				
+				// pull out everything that's in a different ring now
+				this.movedPositions.clear();
+				ring.lock.lock();
+				try
+				{
+					LongArrayList positions = ring.positions;
+					for (int i = positions.size() - 1; i >= 0; i--)
+					{
+						long pos = positions.getLong(i);
+						if (getRingIndex(pos, newCenter) != ringIndex)
+						{
+							this.movedPositions.add(pos);
+							removeAt(positions, i);
+						}
+					}
+					ring.size = positions.size();
+				}
+				finally
+				{
+					ring.lock.unlock();
+				}
+				
+				// positions that move outwards will be checked again when we reach their ring,
+				// but since they're already in the right ring they won't be moved again
+				for (int i = 0; i < this.movedPositions.size(); i++)
+				{
+					long pos = this.movedPositions.getLong(i);
+					this.rings[getRingIndex(pos, newCenter)].add(pos);
+				}
+			}
+			this.movedPositions.clear();
+		}
+		finally
 		{
-			this.closestQueue.add(pos);
-			this.furthestQueue.add(pos);
+			this.recenterLock.unlock();
 		}
 	}
 	
 	public ChunkUpdateData popClosest()
 	{
-		if (this.closestQueue.isEmpty())
+		for (int ringIndex = 0; ringIndex < RING_COUNT; ringIndex++)
 		{
-			return null;
+			ChunkUpdateData updateData = this.popFromRing(this.rings[ringIndex], true);
+			if (updateData != null)
+			{
+				return updateData;
+			}
 		}
-		
-		DhChunkPos closest = this.closestQueue.poll();
-		if (closest == null)
+		return null;
+	}
+	public ChunkUpdateData popFurthest()
+	{
+		for (int ringIndex = RING_COUNT - 1; ringIndex >= 0; ringIndex--)
 		{
-			return null;
+			ChunkUpdateData updateData = this.popFromRing(this.rings[ringIndex], false);
+			if (updateData != null)
+			{
+				return updateData;
+			}
 		}
-		
-		this.furthestQueue.remove(closest);
-		return this.updateDataByChunkPos.remove(closest);
+		return null;
 	}
-	public ChunkUpdateData popFurthest()
+	/** @return null if the ring is empty */
+	private ChunkUpdateData popFromRing(Ring ring, boolean closest)
 	{
-		if (this.furthestQueue.isEmpty())
+		while (ring.size != 0)
 		{
-			return null;
+			long pos;
+			ring.lock.lock();
+			try
+			{
+				LongArrayList positions = ring.positions;
+				if (positions.isEmpty())
+				{
+					return null;
+				}
+				
+				// rings are only one chunk wide so they stay small,
+				// a linear search is enough to get the exact order inside them
+				long center = this.center;
+				int bestIndex = 0;
+				long bestDistance = getSquaredDistance(positions.getLong(0), center);
+				for (int i = 1; i < positions.size(); i++)
+				{
+					long distance = getSquaredDistance(positions.getLong(i), center);
+					if (closest ? (distance < bestDistance) : (distance > bestDistance))
+					{
+						bestDistance = distance;
+						bestIndex = i;
+					}
+				}
+				
+				pos = removeAt(positions, bestIndex);
+				ring.size = positions.size();
+			}
+			finally
+			{
+				ring.lock.unlock();
+			}
+			
+			// the data may be missing if the queue was cleared after the position was taken,
+			// in that case just try the next position
+			ChunkUpdateData updateData = this.removeUpdateData(pos);
+			if (updateData != null)
+			{
+				return updateData;
+			}
 		}
-		
-		DhChunkPos furthest = this.furthestQueue.poll();
-		if (furthest == null)
+		return null;
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	private ChunkUpdateData removeUpdateData(long pos)
+	{
+		UpdateDataStripe stripe = this.getStripe(pos);
+		stripe.lock.lock();
+		try
+		{
+			ChunkUpdateData updateData = stripe.updateDataByPos.remove(pos);
+			if (updateData != null)
+			{
+				this.queuedCount.decrementAndGet();
+			}
+			return updateData;
+		}
+		finally
 		{
-			return null;
+			stripe.lock.unlock();
 		}
+	}
+	
+	private UpdateDataStripe getStripe(long pos) { return this.stripes[(int) HashCommon.mix(pos) & (STRIPE_COUNT - 1)]; }
+	
+	private static int getRingIndex(long pos, long center)
+	{
+		int ringIndex = (int) Math.sqrt(getSquaredDistance(pos, center));
+		return Math.min(ringIndex, RING_COUNT - 1);
+	}
+	
+	private static long getSquaredDistance(long pos, long center)
+	{
+		long deltaX = DhChunkPos.getX(pos) - DhChunkPos.getX(center);
+		long deltaZ = DhChunkPos.getZ(pos) - DhChunkPos.getZ(center);
+		return deltaX * deltaX + deltaZ * deltaZ;
+	}
+	
+	/** swaps the last position into the removed slot since order inside a ring doesn't matter */
+	private static long removeAt(LongArrayList positions, int index)
+	{
+		long pos = positions.getLong(index);
+		int lastIndex = positions.size() - 1;
+		positions.set(index, positions.getLong(lastIndex));
+		positions.removeLong(lastIndex);
+		return pos;
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	private static class Ring
+	{
+		public final ReentrantLock lock = new ReentrantLock();
+		public final LongArrayList positions = new LongArrayList();
+		/** can be read without the lock to quickly skip empty rings */
+		public volatile int size = 0;
 		
-		this.closestQueue.remove(furthest);
-		return this.updateDataByChunkPos.remove(furthest);
+		public void add(long pos)
+		{
+			this.lock.lock();
+			try
+			{
+				this.positions.add(pos);
+				this.size = this.positions.size();
+			}
+			finally
+			{
+				this.lock.unlock();
+			}
+		}
 	}
+	
+	private static class UpdateDataStripe
+	{
+		public final ReentrantLock lock = new ReentrantLock();
+		public final Long2ObjectOpenHashMap<ChunkUpdateData> updateDataByPos = new Long2ObjectOpenHashMap<>();
+	}
+	
 }
-		
@@ -13,6 +13,11 @@ public class ChunkUpdateData
 	public ArrayList<IChunkWrapper> neighborChunkList;
 	public IDhLevel dhLevel;
 	public boolean canGetNeighboringChunks;
+	/** 
+	 * Set during the pre-update so the hash doesn't have to be calculated twice. <br>
+	 * 0 if it hasn't been calculated yet.
+	 */
+	public int chunkHash = 0;
 	
 	
 	
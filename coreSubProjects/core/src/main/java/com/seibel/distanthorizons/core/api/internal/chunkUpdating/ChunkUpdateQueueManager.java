@@ -45,8 +45,16 @@ public class ChunkUpdateQueueManager
 	
 	public boolean contains(DhChunkPos pos) 
 	{ 
-		return this.updateQueue.contains(pos)
+		return this.updateQueue.contains(pos.toLong())
 			|| this.ignoredChunkPosSet.contains(pos)	
+			|| this.preUpdateQueue.contains(pos.toLong()); 
+	}
+	/** @param pos see {@link DhChunkPos#encode(int, int)} */
+	public boolean contains(long pos) 
+	{ 
+		return this.updateQueue.contains(pos)
+			// the ignored set is almost always empty, so don't allocate a chunk pos unless needed
+			|| (!this.ignoredChunkPosSet.isEmpty() && this.ignoredChunkPosSet.contains(new DhChunkPos(DhChunkPos.getX(pos), DhChunkPos.getZ(pos))))
 			|| this.preUpdateQueue.contains(pos); 
 	}
 	
@@ -83,7 +91,7 @@ public class ChunkUpdateQueueManager
 				this.preUpdateQueue.popFurthest();
 			}
 		}
-		this.preUpdateQueue.addItem(pos, updateData);
+		this.preUpdateQueue.addItem(pos.toLong(), updateData);
 		
 		remainingSlots = this.maxSize - this.getQueuedCount();
 		if (remainingSlots <= 0)
@@ -102,7 +110,7 @@ public class ChunkUpdateQueueManager
 			this.updateQueue.popFurthest();
 		}
 		
-		this.updateQueue.addItem(pos,updateData);
+		this.updateQueue.addItem(pos.toLong(), updateData);
 		
 		remainingSlots = this.maxSize - this.getQueuedCount();
 		if (remainingSlots <= 0)
@@ -157,8 +165,9 @@ public class ChunkUpdateQueueManager
 	
 	public void setCenter(DhChunkPos newCenter)
 	{
-		this.updateQueue.setCenter(newCenter);
-		this.preUpdateQueue.setCenter(newCenter);
+		long newCenterPos = newCenter.toLong();
+		this.updateQueue.setCenter(newCenterPos);
+		this.preUpdateQueue.setCenter(newCenterPos);
 	}
 	
 	
@@ -1338,6 +1338,21 @@ public class Config
 					"")
 				.build();
 			
+			public static ConfigEntry<Integer> maxCoalescedGenerationChunkWidth = new ConfigEntry.Builder<Integer>()
+				.setAppearance(EConfigEntryAppearance.ONLY_IN_FILE)
+				.setMinDefaultMax(0, 8, 32)
+				.comment("" +
+					"The widest area in chunks that adjacent waiting generation requests \n" +
+					"can be merged into before being sent to the world generator. \n" +
+					"Merged requests share the chunks around their borders, \n" +
+					"reducing how many chunks need to be generated. \n" +
+					"\n" +
+					"Larger values can improve generation speed but \n" +
+					"use more memory per request and may take longer before anything is shown. \n" +
+					"Values below 8 disable merging. \n" +
+					"")
+				.build();
+			
 			
 		}
 		
@@ -1368,7 +1383,20 @@ public class Config
 					// only visible via the API since there is no reason to use any compressor except ZStandard as of 2025-11-24
 					.setAppearance(EConfigEntryAppearance.ONLY_IN_API)
 					.build();
-			
+
+			public static ConfigEntry<Boolean> columnarDataFormat = new ConfigEntry.Builder<Boolean>()
+					.set(false)
+					.setAppearance(EConfigEntryAppearance.ONLY_IN_FILE)
+					.comment(""
+							+ "If true LOD data will be saved in a bit-packed columnar format \n"
+							+ "before being compressed with the data compression mode. \n"
+							+ "Single columns can be read from this format without decoding \n"
+							+ "the whole section, which speeds up API terrain queries. \n"
+							+ "\n"
+							+ "Existing data is converted the next time it's modified. \n"
+							+ "")
+					.build();
+
 			public static ConfigEntry<EDhApiWorldCompressionMode> worldCompression = new ConfigEntry.Builder<EDhApiWorldCompressionMode>()
 					.set(EDhApiWorldCompressionMode.VISUALLY_EQUAL)
 					.comment(""
@@ -1389,6 +1417,61 @@ public class Config
 							+ "")
 					.build();
 			
+			public static ConfigEntry<Integer> decodedDataCacheSizeInMb = new ConfigEntry.Builder<Integer>()
+					.setMinDefaultMax(0, 64, 4096)
+					.setAppearance(EConfigEntryAppearance.ONLY_IN_FILE)
+					.comment(""
+							+ "How many megabytes of decompressed LOD data should be kept \n"
+							+ "in memory for each loaded level? \n"
+							+ "\n"
+							+ "Keeping recently used LOD data in memory prevents DH from \n"
+							+ "having to decompress the same data from the database \n"
+							+ "multiple times when building render data. \n"
+							+ "\n"
+							+ "Setting this to 0 disables the cache. \n"
+							+ "")
+					.build();
+			
+			public static ConfigEntry<Integer> dataUpdateSaveDelayInMs = new ConfigEntry.Builder<Integer>()
+					.setMinDefaultMax(0, 1_000, 30_000)
+					.setAppearance(EConfigEntryAppearance.ONLY_IN_FILE)
+					.comment(""
+							+ "How many milliseconds should updated LOD data be kept \n"
+							+ "in memory before it is compressed and saved to the database? \n"
+							+ "\n"
+							+ "Any other updates to the same LOD during that time are merged \n"
+							+ "in memory, so LODs that change often (IE when building or \n"
+							+ "near redstone machines) only have to be compressed once. \n"
+							+ "\n"
+							+ "Setting this to 0 saves every update immediately. \n"
+							+ "")
+					.build();
+			
+			public static ConfigEntry<Integer> databaseWriteBatchSize = new ConfigEntry.Builder<Integer>()
+					.setMinDefaultMax(1, 128, 4096)
+					.setAppearance(EConfigEntryAppearance.ONLY_IN_FILE)
+					.comment(""
+							+ "How many LOD saves can be queued before they are \n"
+							+ "written to the database in a single transaction? \n"
+							+ "\n"
+							+ "Higher numbers reduce disk overhead when lots of \n"
+							+ "chunks are being updated at once (IE during world generation). \n"
+							+ "\n"
+							+ "Setting this to 1 disables batching and writes each save immediately. \n"
+							+ "")
+					.build();
+			
+			public static ConfigEntry<Integer> databaseWriteBatchMaxDelayInMs = new ConfigEntry.Builder<Integer>()
+					.setMinDefaultMax(0, 1_000, 30_000)
+					.setAppearance(EConfigEntryAppearance.ONLY_IN_FILE)
+					.comment(""
+							+ "How many milliseconds can a queued LOD save wait \n"
+							+ "before it is written to the database? \n"
+							+ "\n"
+							+ "Only used if databaseWriteBatchSize is greater than 1. \n"
+							+ "")
+					.build();
+			
 		}
 		
 		public static class MultiThreading
@@ -1710,6 +1793,15 @@ public class Config
 						+ "Value of 0 disables the limit."
 						+ "")
 				.build();
+		public static ConfigEntry<Integer> payloadCacheSizeInMb = new ConfigEntry.Builder<Integer>()
+				.setMinDefaultMax(0, 64, 4096)
+				.setAppearance(EConfigEntryAppearance.ONLY_IN_FILE)
+				.comment(""
+						+ "How many megabytes of encoded LOD data should be kept in memory \n"
+						+ "so multiple players requesting the same LODs only require reading them once? \n"
+						+ "Value of 0 disables the cache."
+						+ "")
+				.build();
 		public static ConfigEntry<Boolean> enableAdaptiveTransferSpeed = new ConfigEntry.Builder<Boolean>()
 				.set(true)
 				.comment(""
@@ -0,0 +1,237 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.dataObjects.fullData;
+
+import com.seibel.distanthorizons.core.dataObjects.BlockBiomeWrapperPair;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.sql.dto.BlockBiomePaletteDTO;
+import com.seibel.distanthorizons.core.sql.repo.BlockBiomePaletteRepo;
+import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
+import com.seibel.distanthorizons.core.wrapperInterfaces.world.ILevelWrapper;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns stable database-wide IDs to {@link BlockBiomeWrapperPair}'s. <br><br>
+ * 
+ * This allows {@link FullDataPointIdMap}'s to be stored as a list of
+ * small varint IDs instead of re-writing every block and biome name for every section,
+ * and means each name only needs to be parsed once per session instead of once per section load. <br><br>
+ * 
+ * IDs are never removed or re-assigned, so they can be referenced by any data source in the same database.
+ * 
+ * @see FullDataPointIdMap
+ * @see BlockBiomePaletteRepo
+ */
+public class BlockBiomePalette implements AutoCloseable
+{
+	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
+	
+	
+	private final BlockBiomePaletteRepo repo;
+	
+	private final ConcurrentHashMap<String, Integer> idBySerialString = new ConcurrentHashMap<>();
+	/** the index is the palette ID, guarded by this */
+	private final ArrayList<String> serialStringById = new ArrayList<>();
+	/** 
+	 * the index is the palette ID, guarded by this. <br>
+	 * Entries are lazily deserialized so unused pairs don't need to be parsed.
+	 */
+	private final ArrayList<BlockBiomeWrapperPair> pairById = new ArrayList<>();
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public BlockBiomePalette(@NotNull BlockBiomePaletteRepo repo)
+	{
+		this.repo = repo;
+		
+		List<BlockBiomePaletteDTO> dtoList = this.repo.getAll();
+		for (BlockBiomePaletteDTO dto : dtoList)
+		{
+			if (dto.id < 0)
+			{
+				LOGGER.warn("Ignoring palette entry with invalid ID ["+dto.id+"] and value ["+dto.serialString+"].");
+				continue;
+			}
+			
+			// IDs should always be contiguous, but gaps are handled just in case
+			while (this.serialStringById.size() <= dto.id)
+			{
+				this.serialStringById.add(null);
+				this.pairById.add(null);
+			}
+			
+			this.serialStringById.set(dto.id, dto.serialString);
+			this.idBySerialString.put(dto.serialString, dto.id);
+		}
+		
+		LOGGER.debug("Loaded ["+this.idBySerialString.size()+"] block biome palette entries from ["+this.repo.databaseFile+"].");
+	}
+	
+	
+	
+	//=========//
+	// getters //
+	//=========//
+	
+	/** @throws DataCorruptedException if any ID isn't present in this palette */
+	public synchronized BlockBiomeWrapperPair[] getPairs(int[] ids, ILevelWrapper levelWrapper) throws DataCorruptedException
+	{
+		BlockBiomeWrapperPair[] pairs = new BlockBiomeWrapperPair[ids.length];
+		for (int i = 0; i < ids.length; i++)
+		{
+			int id = ids[i];
+			this.validateId(id);
+			
+			BlockBiomeWrapperPair pair = this.pairById.get(id);
+			if (pair == null)
+			{
+				pair = BlockBiomeWrapperPair.deserialize(this.serialStringById.get(id), levelWrapper);
+				this.pairById.set(id, pair);
+			}
+			pairs[i] = pair;
+		}
+		
+		return pairs;
+	}
+	
+	/** @throws DataCorruptedException if any ID isn't present in this palette */
+	public synchronized String[] getSerialStrings(int[] ids) throws DataCorruptedException
+	{
+		String[] serialStrings = new String[ids.length];
+		for (int i = 0; i < ids.length; i++)
+		{
+			this.validateId(ids[i]);
+			serialStrings[i] = this.serialStringById.get(ids[i]);
+		}
+		
+		return serialStrings;
+	}
+	private void validateId(int id) throws DataCorruptedException
+	{
+		if (id < 0 
+			|| id >= this.serialStringById.size()
+			|| this.serialStringById.get(id) == null)
+		{
+			throw new DataCorruptedException("Block biome palette ID ["+id+"] not found, palette size: ["+this.serialStringById.size()+"].");
+		}
+	}
+	
+	public int size() { return this.idBySerialString.size(); }
+	
+	
+	
+	//=========//
+	// setters //
+	//=========//
+	
+	/** 
+	 * Any pairs that don't have an ID yet will be 
+	 * added to the database before this method returns.
+	 * 
+	 * @return the palette ID for each pair in order
+	 * @throws IOException if new IDs couldn't be saved to the database
+	 */
+	public int[] getOrCreateIds(List<BlockBiomeWrapperPair> pairList) throws IOException
+	{
+		int[] ids = new int[pairList.size()];
+		
+		// most pairs should already be present, 
+		// so try getting everything without locking first
+		boolean missingIds = false;
+		for (int i = 0; i < pairList.size(); i++)
+		{
+			Integer id = this.idBySerialString.get(pairList.get(i).serialize());
+			if (id == null)
+			{
+				missingIds = true;
+				break;
+			}
+			ids[i] = id;
+		}
+		
+		if (missingIds)
+		{
+			this.createMissingIds(pairList, ids);
+		}
+		
+		return ids;
+	}
+	private synchronized void createMissingIds(List<BlockBiomeWrapperPair> pairList, int[] ids) throws IOException
+	{
+		ArrayList<BlockBiomePaletteDTO> newDtoList = new ArrayList<>();
+		for (int i = 0; i < pairList.size(); i++)
+		{
+			BlockBiomeWrapperPair pair = pairList.get(i);
+			String serialString = pair.serialize();
+			
+			Integer id = this.idBySerialString.get(serialString);
+			if (id == null)
+			{
+				id = this.serialStringById.size();
+				this.serialStringById.add(serialString);
+				this.pairById.add(pair);
+				this.idBySerialString.put(serialString, id);
+				
+				newDtoList.add(new BlockBiomePaletteDTO(id, serialString));
+			}
+			ids[i] = id;
+		}
+		
+		try
+		{
+			this.repo.insertAll(newDtoList);
+		}
+		catch (RuntimeException e)
+		{
+			// the new IDs can't be referenced if they aren't in the database
+			for (BlockBiomePaletteDTO dto : newDtoList)
+			{
+				this.idBySerialString.remove(dto.serialString);
+			}
+			int firstNewId = newDtoList.get(0).id;
+			this.serialStringById.subList(firstNewId, this.serialStringById.size()).clear();
+			this.pairById.subList(firstNewId, this.pairById.size()).clear();
+			
+			throw new IOException("Unable to save ["+newDtoList.size()+"] new palette entries, error: ["+e.getMessage()+"].", e);
+		}
+	}
+	
+	
+	
+	//================//
+	// base overrides //
+	//================//
+	
+	@Override
+	public void close() { this.repo.close(); }
+	
+	
+	
+}
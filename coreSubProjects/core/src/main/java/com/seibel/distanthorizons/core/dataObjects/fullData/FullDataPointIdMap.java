@@ -22,6 +22,7 @@ package com.seibel.distanthorizons.core.dataObjects.fullData;
 import com.seibel.distanthorizons.core.dataObjects.BlockBiomeWrapperPair;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.sql.dto.util.VarintUtil;
 import com.seibel.distanthorizons.core.util.LodUtil;
 import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
 import com.seibel.distanthorizons.core.util.objects.dataStreams.DhDataInputStream;
@@ -33,6 +34,7 @@ import com.seibel.distanthorizons.core.logging.DhLogger;
 
 import com.seibel.distanthorizons.core.util.FullDataPointUtil;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.util.*;
@@ -43,11 +45,9 @@ import java.util.concurrent.ConcurrentHashMap;
  * 
  * Used to map a numerical IDs to a Biome/BlockState pair. <br><br>
  * 
- * TODO the serializing of this map might be really big
- *  since it stringifies every block and biome name, which is quite bulky.
- *  It might be worth while to have a biome and block ID that then both get mapped
- *  to the data point ID to reduce file size.
- *  And/or it would be good to dynamically remove IDs that aren't currently in use.
+ * When a {@link BlockBiomePalette} is available this map is serialized as a list of 
+ * palette IDs, otherwise every block and biome name is written out in UTF. <br>
+ * The UTF format is self-contained, so it should be used for anything sent over the network. <br><br>
  * 
  * @author Leetom
  */
@@ -62,6 +62,11 @@ public class FullDataPointIdMap
 	private static final boolean RUN_SERIALIZATION_DUPLICATE_VALIDATION = false;
 	/** Distant Horizons - Block State Wrapper */
 	public static final String BLOCK_STATE_SEPARATOR_STRING = "_DH-BSW_";
+	/** 
+	 * Written in place of the entry count when the map is serialized with a {@link BlockBiomePalette}. <br>
+	 * The UTF format's entry count can never be negative, so the two formats can't be confused.
+	 */
+	private static final int PALETTE_FORMAT_FLAG = -1;
 	
 	
 	/** should only be used for debugging */
@@ -318,8 +323,27 @@ public class FullDataPointIdMap
 	//=============//
 	
 	/** Serializes all contained entries into the given stream, formatted in UTF */
-	public void serialize(DhDataOutputStream outputStream) throws IOException
+	public void serialize(DhDataOutputStream outputStream) throws IOException { this.serialize(outputStream, null); }
+	/** 
+	 * @param palette if null all entries will be formatted in UTF,
+	 *                otherwise only each entry's palette ID will be written.
+	 */
+	public void serialize(DhDataOutputStream outputStream, @Nullable BlockBiomePalette palette) throws IOException
 	{
+		if (palette != null)
+		{
+			int[] paletteIds = palette.getOrCreateIds(this.blockBiomePairList);
+			
+			outputStream.writeInt(PALETTE_FORMAT_FLAG);
+			VarintUtil.writeVarint(outputStream, paletteIds.length);
+			for (int paletteId : paletteIds)
+			{
+				VarintUtil.writeVarint(outputStream, paletteId);
+			}
+			return;
+		}
+		
+		
 		outputStream.writeInt(this.blockBiomePairList.size());
 		
 		// only used when debugging
@@ -347,9 +371,37 @@ public class FullDataPointIdMap
 	
 	/** Creates a new IdBiomeBlockStateMap from the given UTF formatted stream */
 	public static FullDataPointIdMap deserialize(DhDataInputStream inputStream, long pos, ILevelWrapper levelWrapper) throws IOException, InterruptedException, DataCorruptedException
+	{ return deserialize(inputStream, pos, levelWrapper, null); }
+	/** 
+	 * Creates a new IdBiomeBlockStateMap from the given stream.
+	 * 
+	 * @param palette must be the palette the map was serialized with, may be null if the stream is UTF formatted.
+	 * @throws DataCorruptedException if the stream is palette formatted and no palette was given
+	 */
+	public static FullDataPointIdMap deserialize(DhDataInputStream inputStream, long pos, ILevelWrapper levelWrapper, @Nullable BlockBiomePalette palette) throws IOException, InterruptedException, DataCorruptedException
 	{
 		int entityCount = inputStream.readInt();
-		if (entityCount < 0)
+		if (entityCount == PALETTE_FORMAT_FLAG)
+		{
+			if (palette == null)
+			{
+				throw new DataCorruptedException("FullDataPointIdMap for pos ["+DhSectionPos.toString(pos)+"] was serialized with a palette, but no palette was given to deserialize it.");
+			}
+			
+			FullDataPointIdMap newMap = new FullDataPointIdMap(pos);
+			BlockBiomeWrapperPair[] pairs = palette.getPairs(readPaletteIds(inputStream), levelWrapper);
+			for (int i = 0; i < pairs.length; i++)
+			{
+				newMap.blockBiomePairList.add(pairs[i]);
+				newMap.idMap.put(pairs[i], i);
+			}
+			
+			newMap.generateHashCode();
+			newMap.useIncrementalHash = true;
+			
+			return newMap;
+		}
+		else if (entityCount < 0)
 		{
 			throw new DataCorruptedException("FullDataPointIdMap deserialize entry count should have a number greater than or equal to 0, returned value ["+entityCount+"].");
 		}
@@ -401,6 +453,44 @@ public class FullDataPointIdMap
 		return newMap;
 	}
 	
+	/**
+	 * Re-writes a palette formatted stream in the self-contained UTF format. <br>
+	 * No block or biome parsing is done, so this doesn't require a level. 
+	 * 
+	 * @return false if the input was already UTF formatted, in which case nothing was written to the output
+	 */
+	public static boolean tryConvertPaletteFormatToUtf(DhDataInputStream inputStream, DhDataOutputStream outputStream, BlockBiomePalette palette) throws IOException, DataCorruptedException
+	{
+		if (inputStream.readInt() != PALETTE_FORMAT_FLAG)
+		{
+			return false;
+		}
+		
+		String[] serialStrings = palette.getSerialStrings(readPaletteIds(inputStream));
+		outputStream.writeInt(serialStrings.length);
+		for (String serialString : serialStrings)
+		{
+			outputStream.writeUTF(serialString);
+		}
+		return true;
+	}
+	
+	private static int[] readPaletteIds(DhDataInputStream inputStream) throws IOException, DataCorruptedException
+	{
+		int idCount = VarintUtil.readVarint(inputStream);
+		if (idCount < 0)
+		{
+			throw new DataCorruptedException("FullDataPointIdMap palette ID count should be greater than or equal to 0, returned value ["+idCount+"].");
+		}
+		
+		int[] paletteIds = new int[idCount];
+		for (int i = 0; i < idCount; i++)
+		{
+			paletteIds[i] = VarintUtil.readVarint(inputStream);
+		}
+		return paletteIds;
+	}
+	
 	
 	
 	//===========//
@@ -79,6 +79,9 @@ public class FullDataSourceV2
 	
 	public static final PhantomArrayListPool ARRAY_LIST_POOL = new PhantomArrayListPool("FullDataV2");
 	
+	/** @see FullDataSourceV2#storedCompressionModeValue */
+	public static final byte NOT_STORED_COMPRESSION_MODE = -1;
+	
 	
 	
 	private int cachedHashCode = 0;
@@ -119,6 +122,26 @@ public class FullDataSourceV2
 	/** should only be used by methods exposed via the DH API */
 	private boolean runApiChunkValidation = false;
 	
+	/** 
+	 * One bit per column, set whenever that column's data points are changed. <br>
+	 * Used so only the database blobs containing changed columns have to be re-written.
+	 * 
+	 * @see FullDataSourceV2#storedCompressionModeValue
+	 */
+	private final long[] changedColumnBits = new long[(WIDTH * WIDTH) / Long.SIZE];
+	/** 
+	 * The data compression mode value of the database row this data source's 
+	 * unchanged columns match. <br>
+	 * {@link FullDataSourceV2#NOT_STORED_COMPRESSION_MODE} if this data source doesn't match a database row,
+	 * in which case every column should be treated as changed.
+	 */
+	private byte storedCompressionModeValue = NOT_STORED_COMPRESSION_MODE;
+	/** 
+	 * The data format value of the database row this data source's unchanged columns match. <br>
+	 * Only valid if {@link FullDataSourceV2#storedCompressionModeValue} is set.
+	 */
+	private byte storedDataFormatValue = 0;
+	
 	
 	
 	//==============//
@@ -141,6 +164,85 @@ public class FullDataSourceV2
 	public static FullDataSourceV2 createWithData(long pos, FullDataPointIdMap mapping, LongArrayList[] data, byte[] columnWorldCompressionMode)
 	{ return new FullDataSourceV2(pos, mapping, data, columnWorldCompressionMode, false); }
 
+	/**
+	 * Creates a deep copy of the given data source. <br>
+	 * The source isn't modified, so it can be safely read by multiple threads at once. <br><br>
+	 *
+	 * This is significantly cheaper than decoding a data source from the database
+	 * since no decompression or block/biome string parsing is needed.
+	 */
+	public static FullDataSourceV2 createCopy(@NotNull FullDataSourceV2 source)
+	{
+		FullDataSourceV2 copy = createEmpty(source.pos);
+		// addAll allows duplicates so every ID will stay the same
+		copy.mapping.addAll(source.mapping);
+
+		for (int i = 0; i < WIDTH * WIDTH; i++)
+		{
+			copy.dataPoints[i].addAll(source.dataPoints[i]);
+		}
+		copy.columnWorldCompressionMode.clear();
+		copy.columnWorldCompressionMode.addAll(source.columnWorldCompressionMode);
+
+		copy.populatedColumnCount = source.populatedColumnCount;
+		copy.lastModifiedUnixDateTime = source.lastModifiedUnixDateTime;
+		copy.createdUnixDateTime = source.createdUnixDateTime;
+		copy.isEmpty = source.isEmpty;
+		copy.applyToParent = source.applyToParent;
+		
+		System.arraycopy(source.changedColumnBits, 0, copy.changedColumnBits, 0, source.changedColumnBits.length);
+		copy.storedCompressionModeValue = source.storedCompressionModeValue;
+		copy.storedDataFormatValue = source.storedDataFormatValue;
+
+		return copy;
+	}
+
+	/**
+	 * Creates a copy of the given data source that only contains
+	 * the data row/column for the given compass-cardinal direction. <br>
+	 * The returned data source is formatted the same as one loaded via
+	 * {@link FullDataSourceProviderV2#getAdjForDirection(long, EDhDirection)}.
+	 */
+	public static FullDataSourceV2 createAdjacentCopy(@NotNull FullDataSourceV2 source, EDhDirection direction)
+	{
+		long encodedMinMaxPos = FullDataMinMaxPosUtil.getEncodedMinMaxPos(direction);
+		int minX = FullDataMinMaxPosUtil.getAdjMinX(encodedMinMaxPos);
+		int maxX = FullDataMinMaxPosUtil.getAdjMaxX(encodedMinMaxPos);
+		int minZ = FullDataMinMaxPosUtil.getAdjMinZ(encodedMinMaxPos);
+		int maxZ = FullDataMinMaxPosUtil.getAdjMaxZ(encodedMinMaxPos);
+
+		FullDataSourceV2 copy = createEmpty(source.pos);
+		copy.mapping.addAll(source.mapping);
+
+		for (int relX = 0; relX < WIDTH; relX++)
+		{
+			for (int relZ = 0; relZ < WIDTH; relZ++)
+			{
+				int index = relativePosToIndex(relX, relZ);
+				if (relX >= minX && relX < maxX
+					&& relZ >= minZ && relZ < maxZ)
+				{
+					copy.dataPoints[index].addAll(source.dataPoints[index]);
+					copy.columnWorldCompressionMode.set(index, source.columnWorldCompressionMode.getByte(index));
+				}
+				else
+				{
+					copy.dataPoints[index].add(FullDataPointUtil.EMPTY_DATA_POINT);
+				}
+			}
+		}
+
+		// every column has at least one (potentially empty) datapoint,
+		// this matches how adjacent data sources are loaded from the database
+		copy.populatedColumnCount = WIDTH * WIDTH;
+		copy.lastModifiedUnixDateTime = source.lastModifiedUnixDateTime;
+		copy.createdUnixDateTime = source.createdUnixDateTime;
+		copy.isEmpty = false;
+		copy.applyToParent = source.applyToParent;
+
+		return copy;
+	}
+
 	private FullDataSourceV2(
 			long pos,
 			FullDataPointIdMap mapping, @Nullable LongArrayList[] data,
@@ -355,7 +457,13 @@ public class FullDataSourceV2
 						if (dataColumn != null
 							&& dataColumn.size() > 1)
 						{
+							// culling only ever removes data points
+							int oldSize = dataColumn.size();
 							FullDataOcclusionCuller.cullHiddenDatapointsInColumn(this, x, z);
+							if (dataColumn.size() != oldSize)
+							{
+								this.markColumnChanged(relativePosToIndex(x, z));
+							}
 						}
 					}
 				}
@@ -363,7 +471,11 @@ public class FullDataSourceV2
 
 			// Remove unreferenced mapping entries to prevent unbounded growth
 			// after merging child LODs into parent LODs
-			this.mapping.compact(this.dataPoints);
+			if (this.mapping.compact(this.dataPoints))
+			{
+				// compacting changes the IDs in every column
+				this.markAllColumnsChanged();
+			}
 
 			// update the hash code
 			this.generateHashCode();
@@ -397,20 +509,21 @@ public class FullDataSourceV2
 				}
 
 				// check if the data changed
+				boolean columnChanged = false;
 				if (this.dataPoints[index] == null)
 				{
 					// no data was present previously
 					this.dataPoints[index] = new LongArrayList(inputDataArray);
-					dataChanged = true;
+					columnChanged = true;
 				}
 				else if (this.dataPoints[index].size() != inputDataArray.size())
 				{
 					// data is present, but the size is different
-					dataChanged = true;
+					columnChanged = true;
 				}
 
 				int oldDataHash = 0;
-				if (!dataChanged)
+				if (!columnChanged)
 				{
 					// some old data existed with the same length,
 					// we'll have to compare the caches
@@ -434,16 +547,22 @@ public class FullDataSourceV2
 					throwIfDataColumnInWrongOrder(inputDataSource.pos, this.dataPoints[index]);
 				}
 
-				if (!dataChanged)
+				if (!columnChanged)
 				{
 					// check if the identical length data column hashes are the same
 					// hashes need to be compared after the ID's have been remapped otherwise the ID's won't match even if the data is the same
 					if (oldDataHash != this.dataPoints[index].hashCode())
 					{
 						// the hashes are different, something was changed
-						dataChanged = true;
+						columnChanged = true;
 					}
 				}
+				
+				if (columnChanged)
+				{
+					this.markColumnChanged(index);
+					dataChanged = true;
+				}
 
 				// always overwrite the compression mode since we're replacing this column
 				this.columnWorldCompressionMode.set(index, inputDataSource.columnWorldCompressionMode.getByte(index));
@@ -495,19 +614,20 @@ public class FullDataSourceV2
 				LongArrayList mergedInputDataArray = mergeInputTwoByTwoDataColumn(inputDataSource, x, z);
 				
 				// check if the data changed
+				boolean columnChanged = false;
 				if (this.dataPoints[recipientIndex] == null)
 				{
 					// no data was present previously
-					dataChanged = true;
+					columnChanged = true;
 				}
 				else if (this.dataPoints[recipientIndex].size() != mergedInputDataArray.size())
 				{
 					// data is present, but the size is different
-					dataChanged = true;
+					columnChanged = true;
 				}
 				
 				int oldDataHash = 0;
-				if (!dataChanged)
+				if (!columnChanged)
 				{
 					// some old data existed with the same length,
 					// we'll have to compare the caches
@@ -534,16 +654,22 @@ public class FullDataSourceV2
 
 
 
-				if (!dataChanged)
+				if (!columnChanged)
 				{
 					// check if the identical length data column hashes are the same
 					// hashes need to be compared after the ID's have been remapped otherwise the ID's won't match even if the data is the same
 					if (oldDataHash != this.dataPoints[recipientIndex].hashCode())
 					{
 						// the hashes are different, something was changed
-						dataChanged = true;
+						columnChanged = true;
 					}
 				}
+				
+				if (columnChanged)
+				{
+					this.markColumnChanged(recipientIndex);
+					dataChanged = true;
+				}
 
 				this.isEmpty = false;
 			}
@@ -912,11 +1038,63 @@ public class FullDataSourceV2
 				LongArrayList dataColumn = this.getColumnAtRelPos(relX, relZ);
 				dataColumn.clear();
 				dataColumn.add(FullDataPointUtil.EMPTY_DATA_POINT);
+				this.markColumnChanged(relativePosToIndex(relX, relZ));
 			}
 		}
 	}
 	
 	
+	
+	//=========================//
+	// changed column tracking //
+	//=========================//
+	
+	private void markColumnChanged(int index) { this.changedColumnBits[index / Long.SIZE] |= (1L << (index % Long.SIZE)); }
+	private void markAllColumnsChanged() { Arrays.fill(this.changedColumnBits, -1L); }
+	
+	/** @return true if any column in the given relative range (max exclusive) was changed since {@link FullDataSourceV2#markAsStored(byte, byte)} was last called. */
+	public boolean anyColumnChangedInRange(int minX, int maxX, int minZ, int maxZ)
+	{
+		for (int x = minX; x < maxX; x++)
+		{
+			for (int z = minZ; z < maxZ; z++)
+			{
+				int index = relativePosToIndex(x, z);
+				if ((this.changedColumnBits[index / Long.SIZE] & (1L << (index % Long.SIZE))) != 0)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/** 
+	 * Should be called after this data source has been read from or written to the database
+	 * so future changes can be tracked. 
+	 * 
+	 * @param compressionModeValue the data compression mode used by the database row
+	 * @param dataFormatValue the data format used by the database row
+	 */
+	public void markAsStored(byte compressionModeValue, byte dataFormatValue)
+	{
+		Arrays.fill(this.changedColumnBits, 0L);
+		this.storedCompressionModeValue = compressionModeValue;
+		this.storedDataFormatValue = dataFormatValue;
+	}
+	
+	/** 
+	 * @return true if this data source was read from or written to the database 
+	 *          using the given data compression mode and data format values.
+	 */
+	public boolean isStoredWithEncoding(byte compressionModeValue, byte dataFormatValue)
+	{
+		return this.storedCompressionModeValue != NOT_STORED_COMPRESSION_MODE 
+				&& this.storedCompressionModeValue == compressionModeValue
+				&& this.storedDataFormatValue == dataFormatValue;
+	}
+	
+	
 	//================//
 	// helper methods //
 	//================//
@@ -1063,6 +1241,7 @@ public class FullDataSourceV2
 		}
 
 		this.columnWorldCompressionMode.set(index, worldCompressionMode.value);
+		this.markColumnChanged(index);
 		
 		
 		if (RUN_UPDATE_DEV_VALIDATION)
@@ -0,0 +1,466 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding;
+
+import com.seibel.distanthorizons.core.config.Config;
+import com.seibel.distanthorizons.core.enums.EDhDirection;
+import com.seibel.distanthorizons.core.util.LodUtil;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+
+import java.util.Arrays;
+
+/**
+ * Holds render-able quads that all face the same direction. <br><br>
+ *
+ * Quads are stored as a struct-of-arrays instead of individual objects
+ * since a dense section can produce hundreds of thousands of quads,
+ * and each quad only lives until the section's vertex buffers are built.
+ *
+ * @see LodQuadBuilder
+ */
+public final class BufferQuadList
+{
+	/**
+	 * The maximum number of blocks wide a quad can be. <br><br>
+	 *
+	 * This could be increased beyond 2048, for use with
+	 * extremely low detail levels if the need arises.
+	 */
+	public static final int NORMAL_MAX_QUAD_WIDTH = 2048;
+	/**
+	 * The maximum number of blocks wide a quad can be
+	 * when {@link Config.Client.Advanced.Graphics.Experimental#earthCurveRatio earthCurveRatio}
+	 * is enabled.
+	 */
+	public static final int MAX_QUAD_WIDTH_FOR_EARTH_CURVATURE = LodUtil.CHUNK_WIDTH;
+	
+	private static final int DEFAULT_CAPACITY = 64;
+	
+	
+	public final EDhDirection direction;
+	
+	private int size = 0;
+	
+	// each array index represents a single quad
+	public short[] x;
+	public short[] y;
+	public short[] z;
+	
+	public short[] widthEastWest;
+	/** This is both North/South and Up/Down since the merging logic is the same either way */
+	public short[] widthNorthSouthOrUpDown;
+	
+	public int[] color;
+	/** used by the Iris shader mod to determine how each LOD should be rendered */
+	public byte[] irisBlockMaterialId;
+	
+	public byte[] skyLight;
+	public byte[] blockLight;
+	
+	public boolean[] hasError;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public BufferQuadList(EDhDirection direction)
+	{
+		this.direction = direction;
+		
+		this.x = new short[DEFAULT_CAPACITY];
+		this.y = new short[DEFAULT_CAPACITY];
+		this.z = new short[DEFAULT_CAPACITY];
+		this.widthEastWest = new short[DEFAULT_CAPACITY];
+		this.widthNorthSouthOrUpDown = new short[DEFAULT_CAPACITY];
+		this.color = new int[DEFAULT_CAPACITY];
+		this.irisBlockMaterialId = new byte[DEFAULT_CAPACITY];
+		this.skyLight = new byte[DEFAULT_CAPACITY];
+		this.blockLight = new byte[DEFAULT_CAPACITY];
+		this.hasError = new boolean[DEFAULT_CAPACITY];
+	}
+	
+	
+	
+	//=========//
+	// getters //
+	//=========//
+	
+	public int size() { return this.size; }
+	public boolean isEmpty() { return this.size == 0; }
+	
+	
+	
+	//=========//
+	// setters //
+	//=========//
+	
+	/** @return the new quad's index */
+	public int add(
+			short x, short y, short z, short widthEastWest, short widthNorthSouthOrUpDown,
+			int color, byte irisBlockMaterialId, byte skylight, byte blockLight)
+	{
+		if (widthEastWest == 0 || widthNorthSouthOrUpDown == 0)
+			throw new IllegalArgumentException("Size 0 quad!");
+		if (widthEastWest < 0 || widthNorthSouthOrUpDown < 0)
+			throw new IllegalArgumentException("Negative sized quad!");
+		
+		if (this.size == this.x.length)
+		{
+			this.grow(this.size * 2);
+		}
+		
+		int index = this.size;
+		this.x[index] = x;
+		this.y[index] = y;
+		this.z[index] = z;
+		this.widthEastWest[index] = widthEastWest;
+		this.widthNorthSouthOrUpDown[index] = widthNorthSouthOrUpDown;
+		this.color[index] = color;
+		this.irisBlockMaterialId[index] = irisBlockMaterialId;
+		this.skyLight[index] = skylight;
+		this.blockLight[index] = blockLight;
+		this.hasError[index] = false;
+		
+		this.size++;
+		return index;
+	}
+	
+	/** Removes the most recently added quad. */
+	public void removeLast() { this.size--; }
+	
+	private void grow(int newCapacity)
+	{
+		this.x = Arrays.copyOf(this.x, newCapacity);
+		this.y = Arrays.copyOf(this.y, newCapacity);
+		this.z = Arrays.copyOf(this.z, newCapacity);
+		this.widthEastWest = Arrays.copyOf(this.widthEastWest, newCapacity);
+		this.widthNorthSouthOrUpDown = Arrays.copyOf(this.widthNorthSouthOrUpDown, newCapacity);
+		this.color = Arrays.copyOf(this.color, newCapacity);
+		this.irisBlockMaterialId = Arrays.copyOf(this.irisBlockMaterialId, newCapacity);
+		this.skyLight = Arrays.copyOf(this.skyLight, newCapacity);
+		this.blockLight = Arrays.copyOf(this.blockLight, newCapacity);
+		this.hasError = Arrays.copyOf(this.hasError, newCapacity);
+	}
+	
+	
+	
+	//=========//
+	// merging //
+	//=========//
+	
+	/** @return the max quad width based on the current config */
+	public static int getMaxQuadWidth()
+	{
+		// quad width should only be limited when earth curvature is enabled
+		return (Config.Client.Advanced.Graphics.Experimental.earthCurveRatio.get() != 0)
+				? MAX_QUAD_WIDTH_FOR_EARTH_CURVATURE
+				: NORMAL_MAX_QUAD_WIDTH;
+	}
+	
+	/**
+	 * Sorts this list's quads along the given direction
+	 * and then merges each run of adjacent matching quads into a single quad. <br>
+	 * Sorting is stable, so quads at the same position keep their insertion order.
+	 *
+	 * @return the number of quads that were removed by merging
+	 */
+	public int sortAndMerge(BufferMergeDirectionEnum mergeDirection, int maxQuadWidth, boolean markOverlappingQuads)
+	{
+		if (this.size <= 1)
+		{
+			return 0;
+		}
+		
+		this.sort(mergeDirection);
+		
+		// merge and compact in a single pass,
+		// writeIndex is the quad currently being merged into
+		int writeIndex = 0;
+		for (int readIndex = 1; readIndex < this.size; readIndex++)
+		{
+			if (!this.tryMerge(writeIndex, readIndex, mergeDirection, maxQuadWidth, markOverlappingQuads))
+			{
+				// merge fail, move on to the next quad
+				writeIndex++;
+				if (writeIndex != readIndex)
+				{
+					this.copy(readIndex, writeIndex);
+				}
+			}
+		}
+		
+		int mergeCount = this.size - (writeIndex + 1);
+		this.size = writeIndex + 1;
+		return mergeCount;
+	}
+	private void sort(BufferMergeDirectionEnum mergeDirection)
+	{
+		long[] sortKeys = new long[this.size];
+		int[] sortedIndices = new int[this.size];
+		for (int i = 0; i < this.size; i++)
+		{
+			sortKeys[i] = this.getSortKey(i, mergeDirection);
+			sortedIndices[i] = i;
+		}
+		
+		LongArrays.radixSortIndirect(sortedIndices, sortKeys, true);
+		
+		
+		// reorder every array based on the sorted indices
+		short[] newX = new short[this.x.length];
+		short[] newY = new short[this.y.length];
+		short[] newZ = new short[this.z.length];
+		short[] newWidthEastWest = new short[this.widthEastWest.length];
+		short[] newWidthNorthSouthOrUpDown = new short[this.widthNorthSouthOrUpDown.length];
+		int[] newColor = new int[this.color.length];
+		byte[] newIrisBlockMaterialId = new byte[this.irisBlockMaterialId.length];
+		byte[] newSkyLight = new byte[this.skyLight.length];
+		byte[] newBlockLight = new byte[this.blockLight.length];
+		boolean[] newHasError = new boolean[this.hasError.length];
+		for (int i = 0; i < this.size; i++)
+		{
+			int oldIndex = sortedIndices[i];
+			newX[i] = this.x[oldIndex];
+			newY[i] = this.y[oldIndex];
+			newZ[i] = this.z[oldIndex];
+			newWidthEastWest[i] = this.widthEastWest[oldIndex];
+			newWidthNorthSouthOrUpDown[i] = this.widthNorthSouthOrUpDown[oldIndex];
+			newColor[i] = this.color[oldIndex];
+			newIrisBlockMaterialId[i] = this.irisBlockMaterialId[oldIndex];
+			newSkyLight[i] = this.skyLight[oldIndex];
+			newBlockLight[i] = this.blockLight[oldIndex];
+			newHasError[i] = this.hasError[oldIndex];
+		}
+		
+		this.x = newX;
+		this.y = newY;
+		this.z = newZ;
+		this.widthEastWest = newWidthEastWest;
+		this.widthNorthSouthOrUpDown = newWidthNorthSouthOrUpDown;
+		this.color = newColor;
+		this.irisBlockMaterialId = newIrisBlockMaterialId;
+		this.skyLight = newSkyLight;
+		this.blockLight = newBlockLight;
+		this.hasError = newHasError;
+	}
+	private void copy(int fromIndex, int toIndex)
+	{
+		this.x[toIndex] = this.x[fromIndex];
+		this.y[toIndex] = this.y[fromIndex];
+		this.z[toIndex] = this.z[fromIndex];
+		this.widthEastWest[toIndex] = this.widthEastWest[fromIndex];
+		this.widthNorthSouthOrUpDown[toIndex] = this.widthNorthSouthOrUpDown[fromIndex];
+		this.color[toIndex] = this.color[fromIndex];
+		this.irisBlockMaterialId[toIndex] = this.irisBlockMaterialId[fromIndex];
+		this.skyLight[toIndex] = this.skyLight[fromIndex];
+		this.blockLight[toIndex] = this.blockLight[fromIndex];
+		this.hasError[toIndex] = this.hasError[fromIndex];
+	}
+	
+	/**
+	 * Quads are sorted by the axis perpendicular to their face first,
+	 * followed by the axis perpendicular to the merge direction.
+	 */
+	private long getSortKey(int index, BufferMergeDirectionEnum mergeDirection)
+	{
+		short x = this.x[index];
+		short y = this.y[index];
+		short z = this.z[index];
+		
+		if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+		{
+			switch (this.direction.axis)
+			{
+				case X:
+					return threeDimensionalSortKey(x, y, z);
+				case Y:
+					return threeDimensionalSortKey(y, z, x);
+				case Z:
+					return threeDimensionalSortKey(z, y, x);
+				
+				default:
+					throw new IllegalArgumentException("Invalid Axis enum: [" + this.direction.axis + "].");
+			}
+		}
+		else
+		{
+			switch (this.direction.axis)
+			{
+				case X:
+					return threeDimensionalSortKey(x, z, y);
+				case Y:
+					return threeDimensionalSortKey(y, x, z);
+				case Z:
+					return threeDimensionalSortKey(z, x, y);
+				
+				default:
+					throw new IllegalArgumentException("Invalid Axis enum: [" + this.direction.axis + "].");
+			}
+		}
+	}
+	/**
+	 * Combines a 3D point into a single sortable value. <br>
+	 * The X, Y, and Z coordinates can be passed into parameters 0, 1, and 2 in any order,
+	 * with the 0th parameter being the most significant when comparing.
+	 */
+	private static long threeDimensionalSortKey(short a0, short a1, short a2) { return (long) a0 << 48 | (long) a1 << 32 | (long) a2 << 16; }
+	
+	
+	/**
+	 * Attempts to merge the quad at otherIndex into the quad at thisIndex.
+	 *
+	 * @return true if the quads were merged, false otherwise.
+	 */
+	public boolean tryMerge(int thisIndex, int otherIndex, BufferMergeDirectionEnum mergeDirection, int maxQuadWidth, boolean markOverlappingQuads)
+	{
+		if (this.hasError[otherIndex] || this.hasError[thisIndex])
+			return false;
+		
+		// make sure these quads share the same perpendicular axis
+		if ((mergeDirection == BufferMergeDirectionEnum.EastWest && this.y[thisIndex] != this.y[otherIndex])
+			|| (mergeDirection == BufferMergeDirectionEnum.NorthSouthOrUpDown && this.x[thisIndex] != this.x[otherIndex]))
+		{
+			return false;
+		}
+		
+		
+		// get the position of each quad to compare against
+		short[] perpendicularStartPosArray; // edge perpendicular to the merge direction
+		short[] parallelStartPosArray; // edge parallel to the merge direction
+		switch (this.direction.axis)
+		{
+			default: // shouldn't normally happen, just here to make the compiler happy
+			case X:
+				if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+				{
+					perpendicularStartPosArray = this.z;
+					parallelStartPosArray = this.x;
+				}
+				else //if (mergeDirection == MergeDirection.NorthSouthOrUpDown)
+				{
+					perpendicularStartPosArray = this.y;
+					parallelStartPosArray = this.z;
+				}
+				break;
+			
+			case Y:
+				if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+				{
+					perpendicularStartPosArray = this.x;
+					parallelStartPosArray = this.z;
+				}
+				else //if (mergeDirection == MergeDirection.NorthSouthOrUpDown)
+				{
+					perpendicularStartPosArray = this.z;
+					parallelStartPosArray = this.y;
+				}
+				break;
+			
+			case Z:
+				if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+				{
+					perpendicularStartPosArray = this.x;
+					parallelStartPosArray = this.z;
+				}
+				else //if (mergeDirection == MergeDirection.NorthSouthOrUpDown)
+				{
+					perpendicularStartPosArray = this.y;
+					parallelStartPosArray = this.z;
+				}
+				break;
+		}
+		short thisPerpendicularCompareStartPos = perpendicularStartPosArray[thisIndex];
+		short thisParallelCompareStartPos = parallelStartPosArray[thisIndex];
+		short otherPerpendicularCompareStartPos = perpendicularStartPosArray[otherIndex];
+		short otherParallelCompareStartPos = parallelStartPosArray[otherIndex];
+		
+		// get the width of this quad in the relevant axis
+		short[] perpendicularWidthArray = (mergeDirection == BufferMergeDirectionEnum.EastWest) ? this.widthEastWest : this.widthNorthSouthOrUpDown;
+		short[] parallelWidthArray = (mergeDirection == BufferMergeDirectionEnum.EastWest) ? this.widthNorthSouthOrUpDown : this.widthEastWest;
+		short thisPerpendicularCompareWidth = perpendicularWidthArray[thisIndex];
+		short thisParallelCompareWidth = parallelWidthArray[thisIndex];
+		short otherPerpendicularCompareWidth = perpendicularWidthArray[otherIndex];
+		short otherParallelCompareWidth = parallelWidthArray[otherIndex];
+		
+		
+		// FIXME: TEMP: Hard limit for width
+		if (thisPerpendicularCompareWidth >= maxQuadWidth)
+		{
+			return false;
+		}
+		if (Math.floorDiv(otherPerpendicularCompareStartPos, maxQuadWidth)
+				!= Math.floorDiv(thisPerpendicularCompareStartPos, maxQuadWidth))
+		{
+			return false;
+		}
+		
+		
+		// check if these quads are adjacent
+		if (thisPerpendicularCompareStartPos + thisPerpendicularCompareWidth < otherPerpendicularCompareStartPos ||
+				thisParallelCompareStartPos != otherParallelCompareStartPos)
+		{
+			// these quads aren't adjacent, they can't be merged
+			return false;
+		}
+		else if (thisPerpendicularCompareStartPos + thisPerpendicularCompareWidth > otherPerpendicularCompareStartPos)
+		{
+			if (thisPerpendicularCompareStartPos < otherPerpendicularCompareStartPos + otherPerpendicularCompareWidth)
+			{
+				// these quads are overlapping, they can't be merged
+				
+				// Overlapping quads appear to render correctly, why are we marking them as errored?
+				// Is it possible the wrong quad will be extended thus the wrong color is rendered?
+				// Or is that the height/depth might be wrong?
+				if (markOverlappingQuads)
+				{
+					this.hasError[otherIndex] = true;
+					this.hasError[thisIndex] = true;
+				}
+			}
+			
+			return false;
+		}
+		
+		// only merge quads that have the same width edges
+		if (thisParallelCompareWidth != otherParallelCompareWidth)
+		{
+			return false;
+		}
+		
+		// do the quads' color, light, etc. match?
+		if (this.color[thisIndex] != this.color[otherIndex] ||
+				this.irisBlockMaterialId[thisIndex] != this.irisBlockMaterialId[otherIndex] ||
+				this.skyLight[thisIndex] != this.skyLight[otherIndex] ||
+				this.blockLight[thisIndex] != this.blockLight[otherIndex])
+		{
+			// we can only merge identically colored/lit quads
+			return false;
+		}
+		
+		// merge the two quads
+		perpendicularWidthArray[thisIndex] += otherPerpendicularCompareWidth;
+		
+		// merge successful
+		return true;
+	}
+	
+}
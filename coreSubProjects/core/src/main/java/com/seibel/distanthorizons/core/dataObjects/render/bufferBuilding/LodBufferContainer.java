@@ -21,13 +21,13 @@ package com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding;
 
 import com.seibel.distanthorizons.core.logging.DhLogger;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.pooling.NativeByteBufferPool;
 import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos;
 import com.seibel.distanthorizons.core.render.glObject.GLProxy;
 import com.seibel.distanthorizons.core.render.glObject.buffer.GLVertexBuffer;
 import com.seibel.distanthorizons.core.util.LodUtil;
 import com.seibel.distanthorizons.core.util.objects.StatsMap;
 import com.seibel.distanthorizons.api.enums.config.EDhApiGpuUploadMethod;
-import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -49,6 +49,13 @@ public class LodBufferContainer implements AutoCloseable
 	public static final int MAX_QUADS_PER_BUFFER = MAX_VBO_BYTE_SIZE / QUADS_BYTE_SIZE;
 	public static final int FULL_SIZED_BUFFER = MAX_QUADS_PER_BUFFER * QUADS_BYTE_SIZE;
 	
+	/** 
+	 * Holds the off-heap staging buffers vertex data is written to before being uploaded. <br>
+	 * Most sections only need a few hundred quads, so buffers are sized to the section's quad count
+	 * instead of always using {@link LodBufferContainer#FULL_SIZED_BUFFER}.
+	 */
+	public static final NativeByteBufferPool VERTEX_BUFFER_POOL = new NativeByteBufferPool("Vertex Staging", 16 * 1024, FULL_SIZED_BUFFER, 64L * 1024 * 1024);
+	
 	
 	/** the position closest to minimum X/Z infinity and the level's lowest Y */
 	public final DhBlockPos minCornerBlockPos;
@@ -143,16 +150,16 @@ public class LodBufferContainer implements AutoCloseable
 			}
 			finally
 			{
-				// all the buffers must be manually freed to prevent memory leaks
+				// all the buffers must be manually returned to prevent memory leaks
 				
 				for (ByteBuffer buffer : opaqueBuffers)
 				{
-					MemoryUtil.memFree(buffer);
+					VERTEX_BUFFER_POOL.release(buffer);
 				}
 				
 				for (ByteBuffer buffer : transparentBuffers)
 				{
-					MemoryUtil.memFree(buffer);
+					VERTEX_BUFFER_POOL.release(buffer);
 				}
 			}
 		});
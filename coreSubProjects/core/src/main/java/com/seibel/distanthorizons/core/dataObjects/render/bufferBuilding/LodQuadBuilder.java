@@ -35,7 +35,6 @@ import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftCli
 import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftRenderWrapper;
 import com.seibel.distanthorizons.core.wrapperInterfaces.world.IClientLevelWrapper;
 import com.seibel.distanthorizons.coreapi.util.MathUtil;
-import org.lwjgl.system.MemoryUtil;
 
 /**
  * Used to create the quads before they are converted to render-able buffers. <br><br>
@@ -47,10 +46,8 @@ public class LodQuadBuilder
 	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
 	private static final IMinecraftRenderWrapper MC_RENDER = SingletonInjector.INSTANCE.get(IMinecraftRenderWrapper.class);
 	
-	@SuppressWarnings("unchecked")
-	private final ArrayList<BufferQuad>[] opaqueQuads = (ArrayList<BufferQuad>[]) new ArrayList[6];
-	@SuppressWarnings("unchecked")
-	private final ArrayList<BufferQuad>[] transparentQuads = (ArrayList<BufferQuad>[]) new ArrayList[6];
+	private final BufferQuadList[] opaqueQuads = new BufferQuadList[6];
+	private final BufferQuadList[] transparentQuads = new BufferQuadList[6];
 	
 	private final boolean doTransparency;
 	private final IClientLevelWrapper clientLevelWrapper;
@@ -119,10 +116,11 @@ public class LodQuadBuilder
 	public LodQuadBuilder(boolean doTransparency, IClientLevelWrapper clientLevelWrapper)
 	{
 		this.doTransparency = doTransparency;
+		EDhDirection[] directions = EDhDirection.values();
 		for (int i = 0; i < 6; i++)
 		{
-			this.opaqueQuads[i] = new ArrayList<>();
-			this.transparentQuads[i] = new ArrayList<>();
+			this.opaqueQuads[i] = new BufferQuadList(directions[i]);
+			this.transparentQuads[i] = new BufferQuadList(directions[i]);
 		}
 		
 		this.clientLevelWrapper = clientLevelWrapper;
@@ -150,7 +148,7 @@ public class LodQuadBuilder
 		}
 		
 		
-		ArrayList<BufferQuad> quadList;
+		BufferQuadList quadList;
 		if (this.doTransparency && ColorUtil.getAlpha(color) < 255)
 		{
 			quadList = this.transparentQuads[dir.ordinal()];
@@ -160,40 +158,40 @@ public class LodQuadBuilder
 			quadList = this.opaqueQuads[dir.ordinal()]; 
 		}
 		
-		BufferQuad quad = new BufferQuad(x, y, z, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skyLight, blockLight, dir);
-		if (!quadList.isEmpty()
-			&& (
-				quadList.get(quadList.size() - 1).tryMerge(quad, BufferMergeDirectionEnum.EastWest)
-				|| quadList.get(quadList.size() - 1).tryMerge(quad, BufferMergeDirectionEnum.NorthSouthOrUpDown))
-			)
+		// add the quad first so it can be merged into the previous quad in-place,
+		// if the merge succeeds the new quad is removed again
+		int quadIndex = quadList.add(x, y, z, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skyLight, blockLight);
+		if (quadIndex != 0)
 		{
-			this.premergeCount++;
-			return;
+			int maxQuadWidth = BufferQuadList.getMaxQuadWidth();
+			boolean markOverlappingQuads = Config.Client.Advanced.Debugging.showOverlappingQuadErrors.get();
+			if (quadList.tryMerge(quadIndex - 1, quadIndex, BufferMergeDirectionEnum.EastWest, maxQuadWidth, markOverlappingQuads)
+				|| quadList.tryMerge(quadIndex - 1, quadIndex, BufferMergeDirectionEnum.NorthSouthOrUpDown, maxQuadWidth, markOverlappingQuads))
+			{
+				quadList.removeLast();
+				this.premergeCount++;
+			}
 		}
-		
-		quadList.add(quad);
 	}
 	
 	// XZ
 	public void addQuadUp(short minX, short maxY, short minZ, short widthEastWest, short widthNorthSouthOrUpDown, int color, byte irisBlockMaterialId, byte skylight, byte blocklight) // TODO argument names are wrong
 	{
 		boolean isTransparent = (this.doTransparency && ColorUtil.getAlpha(color) < 255);
-		ArrayList<BufferQuad> quadList = isTransparent 
+		BufferQuadList quadList = isTransparent 
 				? this.transparentQuads[EDhDirection.UP.ordinal()] 
 				: this.opaqueQuads[EDhDirection.UP.ordinal()];
 		
-		BufferQuad quad = new BufferQuad(minX, maxY, minZ, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skylight, blocklight, EDhDirection.UP);
-		quadList.add(quad);
+		quadList.add(minX, maxY, minZ, widthEastWest, widthNorthSouthOrUpDown, color, irisBlockMaterialId, skylight, blocklight);
 	}
 	
 	public void addQuadDown(short x, short y, short z, short width, short wz, int color, byte irisBlockMaterialId, byte skylight, byte blocklight)
 	{
-		ArrayList<BufferQuad> quadArray = (this.doTransparency && ColorUtil.getAlpha(color) < 255)
+		BufferQuadList quadList = (this.doTransparency && ColorUtil.getAlpha(color) < 255)
 				? this.transparentQuads[EDhDirection.DOWN.ordinal()]
 				: this.opaqueQuads[EDhDirection.DOWN.ordinal()];
 		
-		BufferQuad quad = new BufferQuad(x, y, z, width, wz, color, irisBlockMaterialId, skylight, blocklight, EDhDirection.DOWN);
-		quadArray.add(quad);
+		quadList.add(x, y, z, width, wz, color, irisBlockMaterialId, skylight, blocklight);
 	}
 	
 	
@@ -212,22 +210,26 @@ public class LodQuadBuilder
 			return;
 		}
 		
+		// config values are only read once since they're needed for every merge attempt
+		int maxQuadWidth = BufferQuadList.getMaxQuadWidth();
+		boolean markOverlappingQuads = Config.Client.Advanced.Debugging.showOverlappingQuadErrors.get();
+		
 		for (int directionIndex = 0; directionIndex < 6; directionIndex++)
 		{
-			mergeCount += mergeQuadsInternal(this.opaqueQuads, directionIndex, BufferMergeDirectionEnum.EastWest);
+			mergeCount += this.opaqueQuads[directionIndex].sortAndMerge(BufferMergeDirectionEnum.EastWest, maxQuadWidth, markOverlappingQuads);
 			if (this.doTransparency)
 			{
-				mergeCount += mergeQuadsInternal(this.transparentQuads, directionIndex, BufferMergeDirectionEnum.EastWest);
+				mergeCount += this.transparentQuads[directionIndex].sortAndMerge(BufferMergeDirectionEnum.EastWest, maxQuadWidth, markOverlappingQuads);
 			}
 			
 			
 			// only run the second merge if the face is the top or bottom
 			if (directionIndex == EDhDirection.UP.ordinal() || directionIndex == EDhDirection.DOWN.ordinal())
 			{
-				mergeCount += mergeQuadsInternal(this.opaqueQuads, directionIndex, BufferMergeDirectionEnum.NorthSouthOrUpDown);
+				mergeCount += this.opaqueQuads[directionIndex].sortAndMerge(BufferMergeDirectionEnum.NorthSouthOrUpDown, maxQuadWidth, markOverlappingQuads);
 				if (this.doTransparency)
 				{
-					mergeCount += mergeQuadsInternal(this.transparentQuads, directionIndex, BufferMergeDirectionEnum.NorthSouthOrUpDown);
+					mergeCount += this.transparentQuads[directionIndex].sortAndMerge(BufferMergeDirectionEnum.NorthSouthOrUpDown, maxQuadWidth, markOverlappingQuads);
 				}
 			}
 		}
@@ -236,50 +238,23 @@ public class LodQuadBuilder
 		//LOGGER.trace("Merged "+mergeCount+"/"+preQuadsCount+"("+(mergeCount / (double) preQuadsCount)+") quads");
 	}
 	
-	/** Merges all of this builder's quads for the given directionIndex (up, down, left, etc.) in the given direction */
-	private static long mergeQuadsInternal(ArrayList<BufferQuad>[] list, int directionIndex, BufferMergeDirectionEnum mergeDirection)
-	{
-		if (list[directionIndex].size() <= 1)
-		{
-			return 0;
-		}
-		
-		list[directionIndex].sort((objOne, objTwo) -> objOne.compare(objTwo, mergeDirection));
-		
-		long mergeCount = 0;
-		ListIterator<BufferQuad> iter = list[directionIndex].listIterator();
-		BufferQuad currentQuad = iter.next();
-		while (iter.hasNext())
-		{
-			BufferQuad nextQuad = iter.next();
-			
-			if (currentQuad.tryMerge(nextQuad, mergeDirection))
-			{
-				// merge successful, attempt to merge the next quad
-				mergeCount++;
-				iter.set(null);
-			}
-			else
-			{
-				// merge fail, move on to the next quad
-				currentQuad = nextQuad;
-			}
-		}
-		list[directionIndex].removeIf(Objects::isNull);
-		return mergeCount;
-	}
-	
-	
-	
 	//==============//
 	// buffer setup //
 	//==============//
 	
+	/** The returned buffers must be returned to {@link LodBufferContainer#VERTEX_BUFFER_POOL}. */
 	public ArrayList<ByteBuffer> makeOpaqueVertexBuffers() { return this.makeVertexBuffers(this.opaqueQuads); }
+	/** The returned buffers must be returned to {@link LodBufferContainer#VERTEX_BUFFER_POOL}. */
 	public ArrayList<ByteBuffer> makeTransparentVertexBuffers() { return this.makeVertexBuffers(this.transparentQuads); }
-	private ArrayList<ByteBuffer> makeVertexBuffers(ArrayList<BufferQuad>[] quadList)
+	private ArrayList<ByteBuffer> makeVertexBuffers(BufferQuadList[] quadList)
 	{
-		ArrayList<ByteBuffer> byteBufferList = new ArrayList<>(3);
+		int remainingQuadCount = 0;
+		for (BufferQuadList directionQuadList : quadList)
+		{
+			remainingQuadCount += directionQuadList.size();
+		}
+		
+		ArrayList<ByteBuffer> byteBufferList = new ArrayList<>(MathUtil.ceilDiv(remainingQuadCount, LodBufferContainer.MAX_QUADS_PER_BUFFER));
 		
 		ByteBuffer buffer = null;
 		for (int directionIndex = 0; directionIndex < 6; directionIndex++)
@@ -294,14 +269,17 @@ public class LodQuadBuilder
 			for (int quadIndex = 0; quadIndex < quadList[directionIndex].size(); quadIndex++)
 			{
 				// if this is the first iteration or the buffer is full, 
-				// create a new buffer
+				// get a new buffer only big enough for the remaining quads
 				if (buffer == null || !buffer.hasRemaining())
 				{
-					buffer = MemoryUtil.memAlloc(LodBufferContainer.FULL_SIZED_BUFFER);
+					int bufferQuadCount = Math.min(remainingQuadCount, LodBufferContainer.MAX_QUADS_PER_BUFFER);
+					remainingQuadCount -= bufferQuadCount;
+					
+					buffer = LodBufferContainer.VERTEX_BUFFER_POOL.checkout(bufferQuadCount * LodBufferContainer.QUADS_BYTE_SIZE);
 					byteBufferList.add(buffer);
 				}
 				
-				this.putQuad(buffer, quadList[directionIndex].get(quadIndex));
+				this.putQuad(buffer, quadList[directionIndex], quadIndex);
 			}
 		}
 		
@@ -315,13 +293,23 @@ public class LodQuadBuilder
 		
 		return byteBufferList;
 	}
-	private void putQuad(ByteBuffer bb, BufferQuad quad)
+	private void putQuad(ByteBuffer bb, BufferQuadList quadList, int quadIndex)
 	{
-		int[][] quadBase = DIRECTION_VERTEX_IBO_QUAD[quad.direction.ordinal()];
-		short widthEastWest = quad.widthEastWest;
-		short widthNorthSouth = quad.widthNorthSouthOrUpDown;
-		byte normalIndex = (byte) quad.direction.ordinal();
-		EDhDirection.Axis axis = quad.direction.axis;
+		EDhDirection direction = quadList.direction;
+		short quadX = quadList.x[quadIndex];
+		short quadY = quadList.y[quadIndex];
+		short quadZ = quadList.z[quadIndex];
+		int quadColor = quadList.color[quadIndex];
+		byte irisBlockMaterialId = quadList.irisBlockMaterialId[quadIndex];
+		byte skyLight = quadList.skyLight[quadIndex];
+		byte blockLight = quadList.blockLight[quadIndex];
+		boolean hasError = quadList.hasError[quadIndex];
+		
+		int[][] quadBase = DIRECTION_VERTEX_IBO_QUAD[direction.ordinal()];
+		short widthEastWest = quadList.widthEastWest[quadIndex];
+		short widthNorthSouth = quadList.widthNorthSouthOrUpDown[quadIndex];
+		byte normalIndex = (byte) direction.ordinal();
+		EDhDirection.Axis axis = direction.axis;
 		for (int i = 0; i < quadBase.length; i++)
 		{
 			short dx, dy, dz;
@@ -357,10 +345,10 @@ public class LodQuadBuilder
 			}
 			
 			
-			int color = quad.color;
+			int color = quadColor;
 			
 			// use custom side color logic for grass blocks
-			if (quad.irisBlockMaterialId == EDhApiBlockMaterial.GRASS.index)
+			if (irisBlockMaterialId == EDhApiBlockMaterial.GRASS.index)
 			{
 				// only use dirt colors if debug rendering is disabled
 				if (this.debugRenderingMode == EDhApiDebugRendering.OFF)
@@ -369,18 +357,18 @@ public class LodQuadBuilder
 					if (this.grassSideRenderingMode != EDhApiGrassSideRendering.AS_GRASS)
 					{
 						// only change the vertex color if it's on the side or bottom
-						if (quad.direction.axis.isHorizontal() || quad.direction == EDhDirection.DOWN)
+						if (direction.axis.isHorizontal() || direction == EDhDirection.DOWN)
 						{
 							if (this.grassSideRenderingMode == EDhApiGrassSideRendering.AS_DIRT
 									// if we want the color to fade, only apply the dirt color to the bottom vertices
 									|| (this.grassSideRenderingMode == EDhApiGrassSideRendering.FADE_TO_DIRT && quadBase[i][1] == 0)
 									// always render the bottom as dirt
-									|| quad.direction == EDhDirection.DOWN)
+									|| direction == EDhDirection.DOWN)
 							{
 								// for horizontal and bottom faces of grass blocks, use the  dirt color to
 								// prevent green cliff walls
 								color = this.clientLevelWrapper.getDirtBlockColor();
-								color = ColorUtil.applyShade(color, MC_RENDER.getShade(quad.direction));
+								color = ColorUtil.applyShade(color, MC_RENDER.getShade(direction));
 							}
 						}
 					}
@@ -388,12 +376,12 @@ public class LodQuadBuilder
 			}
 			
 			
-			this.putVertex(bb, (short) (quad.x + dx), (short) (quad.y + dy), (short) (quad.z + dz),
-					quad.hasError ? ColorUtil.RED : color,
-					quad.hasError ? 0 : normalIndex,
-					quad.hasError ? 0 : quad.irisBlockMaterialId,
-					quad.hasError ? 15 : quad.skyLight,
-					quad.hasError ? 15 : quad.blockLight,
+			this.putVertex(bb, (short) (quadX + dx), (short) (quadY + dy), (short) (quadZ + dz),
+					hasError ? ColorUtil.RED : color,
+					hasError ? 0 : normalIndex,
+					hasError ? 0 : irisBlockMaterialId,
+					hasError ? 15 : skyLight,
+					hasError ? 15 : blockLight,
 					mx, my, mz);
 		}
 	}
@@ -444,7 +432,7 @@ public class LodQuadBuilder
 	public int getCurrentOpaqueQuadsCount()
 	{
 		int i = 0;
-		for (ArrayList<BufferQuad> quadList : this.opaqueQuads)
+		for (BufferQuadList quadList : this.opaqueQuads)
 		{
 			i += quadList.size();
 		}
@@ -459,7 +447,7 @@ public class LodQuadBuilder
 		}
 		
 		int i = 0;
-		for (ArrayList<BufferQuad> quadList : this.transparentQuads)
+		for (BufferQuadList quadList : this.transparentQuads)
 		{
 			i += quadList.size();
 		}
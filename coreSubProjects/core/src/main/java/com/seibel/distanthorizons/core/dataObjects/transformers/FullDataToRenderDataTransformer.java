@@ -37,7 +37,6 @@ import com.seibel.distanthorizons.core.wrapperInterfaces.block.IBlockStateWrappe
 import com.seibel.distanthorizons.core.wrapperInterfaces.world.IBiomeWrapper;
 import com.seibel.distanthorizons.core.wrapperInterfaces.world.IClientLevelWrapper;
 import com.seibel.distanthorizons.coreapi.util.BitShiftUtil;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import com.seibel.distanthorizons.core.logging.DhLogger;
@@ -126,6 +125,9 @@ public class FullDataToRenderDataTransformer
 		int baseX = DhSectionPos.getMinCornerBlockX(pos);
 		int baseZ = DhSectionPos.getMinCornerBlockZ(pos);
 		
+		// built once so each column only needs to do array lookups
+		RenderAttributeTable attributeTable = new RenderAttributeTable(levelWrapper, fullDataSource);
+		
 		for (int x = 0; x < FullDataSourceV2.WIDTH; x++)
 		{
 			for (int z = 0; z < FullDataSourceV2.WIDTH; z++)
@@ -134,7 +136,7 @@ public class FullDataToRenderDataTransformer
 				LongArrayList dataColumn = fullDataSource.getColumnAtRelPos(x, z);
 				
 				updateOrReplaceRenderDataViewColumnWithFullDataColumn(
-						levelWrapper, fullDataSource, 
+						levelWrapper, fullDataSource, attributeTable,
 						// bitshift is to account for LODs with a detail level greater than 0 so the block pos is correct
 						baseX + BitShiftUtil.pow(x,dataDetail), baseZ + BitShiftUtil.pow(z,dataDetail), 
 						columnArrayView, dataColumn);
@@ -146,12 +148,27 @@ public class FullDataToRenderDataTransformer
 		return columnSource;
 	}
 	
-	/** Updates the given {@link ColumnArrayView} to match the incoming Full data {@link LongArrayList} */
+	/** 
+	 * Updates the given {@link ColumnArrayView} to match the incoming Full data {@link LongArrayList}. <br>
+	 * If multiple columns from the same data source are being updated 
+	 * it's faster to create a single {@link RenderAttributeTable} and pass it into each call.
+	 */
 	public static void updateOrReplaceRenderDataViewColumnWithFullDataColumn(
 			IClientLevelWrapper levelWrapper,
 			FullDataSourceV2 fullDataSource, int blockX, int blockZ, 
 			ColumnArrayView columnArrayView, 
 			LongArrayList fullDataColumn)
+	{
+		updateOrReplaceRenderDataViewColumnWithFullDataColumn(
+				levelWrapper, fullDataSource, new RenderAttributeTable(levelWrapper, fullDataSource),
+				blockX, blockZ, columnArrayView, fullDataColumn);
+	}
+	private static void updateOrReplaceRenderDataViewColumnWithFullDataColumn(
+			IClientLevelWrapper levelWrapper,
+			FullDataSourceV2 fullDataSource, RenderAttributeTable attributeTable,
+			int blockX, int blockZ, 
+			ColumnArrayView columnArrayView, 
+			LongArrayList fullDataColumn)
 	{
 		// we can't do anything if the full data is missing or empty
 		if (fullDataColumn == null 
@@ -164,7 +181,7 @@ public class FullDataToRenderDataTransformer
 		if (fullDataLength <= columnArrayView.verticalSize())
 		{
 			// Directly use the arrayView since it fits.
-			setRenderColumnView(levelWrapper, fullDataSource, blockX, blockZ, columnArrayView, fullDataColumn);
+			setRenderColumnView(levelWrapper, fullDataSource, attributeTable, blockX, blockZ, columnArrayView, fullDataColumn);
 		}
 		else
 		{
@@ -175,7 +192,7 @@ public class FullDataToRenderDataTransformer
 			{
 				// expand the ColumnArrayView to fit the new larger max vertical size
 				ColumnArrayView newColumnArrayView = new ColumnArrayView(dataArrayList, fullDataLength, 0, fullDataLength);
-				setRenderColumnView(levelWrapper, fullDataSource, blockX, blockZ, newColumnArrayView, fullDataColumn);
+				setRenderColumnView(levelWrapper, fullDataSource, attributeTable, blockX, blockZ, newColumnArrayView, fullDataColumn);
 				
 				columnArrayView.changeVerticalSizeFrom(newColumnArrayView);
 			}
@@ -187,74 +204,10 @@ public class FullDataToRenderDataTransformer
 	}
 	private static void setRenderColumnView(
 			IClientLevelWrapper levelWrapper, FullDataSourceV2 fullDataSource,
+			RenderAttributeTable attributeTable,
 			int blockX, int blockZ,
 			ColumnArrayView renderColumnData, LongArrayList fullColumnData)
 	{
-		//===============//
-		// config values //
-		//===============//
-		
-		boolean ignoreNonCollidingBlocks = (Config.Client.Advanced.Graphics.Quality.blocksToIgnore.get() == EDhApiBlocksToAvoid.NON_COLLIDING);
-		boolean colorBelowWithAvoidedBlocks = Config.Client.Advanced.Graphics.Quality.tintWithAvoidedBlocks.get();
-		
-		HashSet<IBlockStateWrapper> blockStatesToIgnore = WRAPPER_FACTORY.getRendererIgnoredBlocks(levelWrapper);
-		HashSet<IBlockStateWrapper> caveBlockStatesToIgnore = WRAPPER_FACTORY.getRendererIgnoredCaveBlocks(levelWrapper);
-
-		// Build ID-based filter sets for fast primitive int lookups (avoids expensive wrapper comparisons)
-		// This is done once per transform call and amortized across thousands of data points
-		IntOpenHashSet blockIdsToIgnore = new IntOpenHashSet(blockStatesToIgnore.size());
-		IntOpenHashSet caveBlockIds = new IntOpenHashSet(caveBlockStatesToIgnore.size());
-
-		// Populate ID sets by scanning the mapping and checking if each block/biome pair should be filtered
-		for (int id = 0; id < fullDataSource.mapping.size(); id++)
-		{
-			try
-			{
-				IBlockStateWrapper blockState = fullDataSource.mapping.getBlockStateWrapper(id);
-
-				// Check if this block should be ignored
-				if (blockStatesToIgnore.contains(blockState))
-				{
-					blockIdsToIgnore.add(id);
-				}
-
-				// Check if this is a cave block
-				if (caveBlockStatesToIgnore.contains(blockState))
-				{
-					caveBlockIds.add(id);
-				}
-			}
-			catch (IndexOutOfBoundsException e)
-			{
-				// Skip invalid IDs (shouldn't happen but be defensive)
-				continue;
-			}
-		}
-
-		// Get or create level-specific snow layer cache (avoids repeated expensive deserialization)
-		Set<IBlockStateWrapper> snowLayerBlockStates = SNOW_LAYER_CACHE.computeIfAbsent(levelWrapper, level ->
-		{
-			HashSet<IBlockStateWrapper> set = new HashSet<>();
-			// Ignore snow layers 1-3, everything above should be considered a full block
-			for (int layers = 1; layers <= 3; layers++)
-			{
-				set.add(WRAPPER_FACTORY.deserializeBlockStateWrapperOrGetDefault(
-					"minecraft:snow_STATE_{layers:" + layers + "}", level));
-			}
-			return set;
-		});
-		
-		int caveCullingMaxY = Config.Client.Advanced.Graphics.Culling.caveCullingHeight.get() - levelWrapper.getMinHeight();
-		boolean caveCullingEnabled = 
-			Config.Client.Advanced.Graphics.Culling.enableCaveCulling.get()
-			&& (
-				// dimensions with a ceiling will be all caves so we don't want cave culling
-				!levelWrapper.hasCeiling()
-				// the end has a lot of overhangs with 0 lighting above the void, which look broken with
-				// the current cave culling logic (this could probably be improved, but just skipping it works best for now)
-				&& !levelWrapper.getDimensionType().isTheEnd()
-			);
-		
 		boolean isColumnVoid = true;
 		
 		int colorToApplyToNextBlock = -1;
@@ -271,7 +224,8 @@ public class FullDataToRenderDataTransformer
 		// convert full data to render data //
 		//==================================//
 		
-		FullDataPointIdMap fullDataMapping = fullDataSource.mapping;
+		byte[] attributeFlags = attributeTable.flags;
+		int mappingSize = attributeFlags.length;
 		
 		DhBlockPosMutable mutableBlockPos = new DhBlockPosMutable(blockX, 0, blockZ);
 		
@@ -287,17 +241,10 @@ public class FullDataToRenderDataTransformer
 			int blockLight = FullDataPointUtil.getBlockLight(fullData);
 			int skyLight = FullDataPointUtil.getSkyLight(fullData);
 			
-			mutableBlockPos.setY(bottomY + levelWrapper.getMinHeight());
-			
-			IBiomeWrapper biome;
-			IBlockStateWrapper block;
-			try
-			{
-				biome = fullDataMapping.getBiomeWrapper(id);
-				block = fullDataMapping.getBlockStateWrapper(id);
-			}
-			catch (IndexOutOfBoundsException e)
+			if (id >= mappingSize
+				|| (attributeFlags[id] & RenderAttributeTable.INVALID_FLAG) != 0)
 			{
+				FullDataPointIdMap fullDataMapping = fullDataSource.mapping;
 				if (!BROKEN_POS_SET.contains(fullDataMapping.getPos()))
 				{
 					BROKEN_POS_SET.add(fullDataMapping.getPos());
@@ -305,13 +252,13 @@ public class FullDataToRenderDataTransformer
 					LOGGER.warn("Unable to get data point with id ["+id+"] " +
 							"(Max possible ID: ["+fullDataMapping.getMaxValidId()+"]) " +
 							"for pos ["+fullDataMapping.getPos()+"] in level ["+levelId+"]. " +
-							"Error: ["+e.getMessage()+"]. " +
 							"Further errors for this position won't be logged.");
 				}
 				
 				// don't render broken data
 				continue;
 			}
+			byte flags = attributeFlags[id];
 			
 			
 			
@@ -319,17 +266,16 @@ public class FullDataToRenderDataTransformer
 			// ignored block and  //
 			// cave culling check //
 			//====================//
-
-			// Use ID-based filtering for 20× faster primitive int comparison vs wrapper contains()
-			boolean ignoreBlock = blockIdsToIgnore.contains(id);
-			boolean caveBlock = caveBlockIds.contains(id); // TODO caves should also ignore transparent/non-solid blocks (IE grass and plants) wthout each being defined
+			
+			boolean ignoreBlock = (flags & RenderAttributeTable.IGNORED_FLAG) != 0;
+			boolean caveBlock = (flags & RenderAttributeTable.CAVE_FLAG) != 0; // TODO caves should also ignore transparent/non-solid blocks (IE grass and plants) wthout each being defined
 			if (caveBlock)
 			{
-				if (caveCullingEnabled
+				if (attributeTable.caveCullingEnabled
 						// assume this data point is underground if it has no sky-light
 						&& skyLight == LodUtil.MIN_MC_LIGHT
 						// ignore caves above a certain height to prevent floating islands from having walls underneath them
-						&& topY < caveCullingMaxY
+						&& topY < attributeTable.caveCullingMaxY
 						// cave culling shouldn't happen when at the top of the world
 						&& renderDataIndex != 0 && fullDataIndex != 0
 						// cave culling can't happen when at the bottom of the world
@@ -372,13 +318,11 @@ public class FullDataToRenderDataTransformer
 			//=======================//
 			
 			boolean ignoreNonSolidBlock =
-				ignoreNonCollidingBlocks
-				&& !block.isSolid()
-				&& !block.isLiquid()
-				&& block.getOpacity() != LodUtil.BLOCK_FULLY_OPAQUE;
+				attributeTable.ignoreNonCollidingBlocks
+				&& (flags & RenderAttributeTable.NON_COLLIDING_FLAG) != 0;
 			
 			// merge snow into the block below it
-			if (snowLayerBlockStates.contains(block))
+			if ((flags & RenderAttributeTable.SNOW_LAYER_FLAG) != 0)
 			{
 				// sometimes a snow datapoint will be multiple blocks tall,
 				// in that case we just want to drop the top by 1
@@ -392,9 +336,10 @@ public class FullDataToRenderDataTransformer
 			
 			if (ignoreNonSolidBlock)
 			{
-				if (colorBelowWithAvoidedBlocks)
+				if (attributeTable.colorBelowWithAvoidedBlocks)
 				{
-					int tempColor = levelWrapper.getBlockColor(mutableBlockPos, biome, fullDataSource, block);
+					mutableBlockPos.setY(bottomY + levelWrapper.getMinHeight());
+					int tempColor = attributeTable.getColor(id, mutableBlockPos);
 					
 					// don't transfer the color when alpha is 0
 					// this prevents issues if grass is transparent
@@ -415,7 +360,8 @@ public class FullDataToRenderDataTransformer
 			if (colorToApplyToNextBlock == -1)
 			{
 				// use this block's color
-				color = levelWrapper.getBlockColor(mutableBlockPos, biome, fullDataSource, block);
+				mutableBlockPos.setY(bottomY + levelWrapper.getMinHeight());
+				color = attributeTable.getColor(id, mutableBlockPos);
 			}
 			else
 			{
@@ -446,7 +392,7 @@ public class FullDataToRenderDataTransformer
 			{
 				// add the block
 				isColumnVoid = false;
-				long columnData = RenderDataPointUtil.createDataPoint(bottomY + blockHeight, bottomY, color, skyLight, blockLight, block.getMaterialId());
+				long columnData = RenderDataPointUtil.createDataPoint(bottomY + blockHeight, bottomY, color, skyLight, blockLight, attributeTable.materialIds[id]);
 				renderColumnData.set(renderDataIndex, columnData);
 				renderDataIndex++;
 			}
@@ -463,4 +409,159 @@ public class FullDataToRenderDataTransformer
 	
 	
 	
+	//================//
+	// helper classes //
+	//================//
+	
+	/** 
+	 * Holds everything the transformer needs to know about each ID in a {@link FullDataPointIdMap},
+	 * indexed by ID. <br>
+	 * Building this once per data source means the per-column loop doesn't need to 
+	 * do any set lookups or wrapper calls, except the first time each ID's color is needed.
+	 */
+	private static class RenderAttributeTable
+	{
+		public static final byte INVALID_FLAG = 1;
+		public static final byte IGNORED_FLAG = 1 << 1;
+		public static final byte CAVE_FLAG = 1 << 2;
+		public static final byte SNOW_LAYER_FLAG = 1 << 3;
+		/** non-solid, non-liquid and not fully opaque */
+		public static final byte NON_COLLIDING_FLAG = 1 << 4;
+		public static final byte COLOR_RESOLVED_FLAG = 1 << 5;
+		
+		
+		public final byte[] flags;
+		public final byte[] materialIds;
+		private final int[] colors;
+		private final IBlockStateWrapper[] blockStates;
+		private final IBiomeWrapper[] biomes;
+		
+		private final IClientLevelWrapper levelWrapper;
+		private final FullDataSourceV2 fullDataSource;
+		
+		// config values //
+		public final boolean ignoreNonCollidingBlocks;
+		public final boolean colorBelowWithAvoidedBlocks;
+		public final boolean caveCullingEnabled;
+		public final int caveCullingMaxY;
+		
+		
+		
+		public RenderAttributeTable(IClientLevelWrapper levelWrapper, FullDataSourceV2 fullDataSource)
+		{
+			this.levelWrapper = levelWrapper;
+			this.fullDataSource = fullDataSource;
+			
+			
+			//===============//
+			// config values //
+			//===============//
+			
+			this.ignoreNonCollidingBlocks = (Config.Client.Advanced.Graphics.Quality.blocksToIgnore.get() == EDhApiBlocksToAvoid.NON_COLLIDING);
+			this.colorBelowWithAvoidedBlocks = Config.Client.Advanced.Graphics.Quality.tintWithAvoidedBlocks.get();
+			
+			this.caveCullingMaxY = Config.Client.Advanced.Graphics.Culling.caveCullingHeight.get() - levelWrapper.getMinHeight();
+			this.caveCullingEnabled =
+				Config.Client.Advanced.Graphics.Culling.enableCaveCulling.get()
+				&& (
+					// dimensions with a ceiling will be all caves so we don't want cave culling
+					!levelWrapper.hasCeiling()
+					// the end has a lot of overhangs with 0 lighting above the void, which look broken with
+					// the current cave culling logic (this could probably be improved, but just skipping it works best for now)
+					&& !levelWrapper.getDimensionType().isTheEnd()
+				);
+			
+			HashSet<IBlockStateWrapper> blockStatesToIgnore = WRAPPER_FACTORY.getRendererIgnoredBlocks(levelWrapper);
+			HashSet<IBlockStateWrapper> caveBlockStatesToIgnore = WRAPPER_FACTORY.getRendererIgnoredCaveBlocks(levelWrapper);
+			
+			// Get or create level-specific snow layer cache (avoids repeated expensive deserialization)
+			Set<IBlockStateWrapper> snowLayerBlockStates = SNOW_LAYER_CACHE.computeIfAbsent(levelWrapper, level ->
+			{
+				HashSet<IBlockStateWrapper> set = new HashSet<>();
+				// Ignore snow layers 1-3, everything above should be considered a full block
+				for (int layers = 1; layers <= 3; layers++)
+				{
+					set.add(WRAPPER_FACTORY.deserializeBlockStateWrapperOrGetDefault(
+						"minecraft:snow_STATE_{layers:" + layers + "}", level));
+				}
+				return set;
+			});
+			
+			
+			
+			//============//
+			// ID lookups //
+			//============//
+			
+			FullDataPointIdMap mapping = fullDataSource.mapping;
+			int size = mapping.size();
+			this.flags = new byte[size];
+			this.materialIds = new byte[size];
+			this.colors = new int[size];
+			this.blockStates = new IBlockStateWrapper[size];
+			this.biomes = new IBiomeWrapper[size];
+			
+			for (int id = 0; id < size; id++)
+			{
+				IBlockStateWrapper blockState;
+				IBiomeWrapper biome;
+				try
+				{
+					blockState = mapping.getBlockStateWrapper(id);
+					biome = mapping.getBiomeWrapper(id);
+				}
+				catch (IndexOutOfBoundsException e)
+				{
+					// shouldn't happen, but be defensive
+					this.flags[id] = INVALID_FLAG;
+					continue;
+				}
+				
+				byte idFlags = 0;
+				if (blockStatesToIgnore.contains(blockState))
+				{
+					idFlags |= IGNORED_FLAG;
+				}
+				if (caveBlockStatesToIgnore.contains(blockState))
+				{
+					idFlags |= CAVE_FLAG;
+				}
+				if (snowLayerBlockStates.contains(blockState))
+				{
+					idFlags |= SNOW_LAYER_FLAG;
+				}
+				if (!blockState.isSolid()
+					&& !blockState.isLiquid()
+					&& blockState.getOpacity() != LodUtil.BLOCK_FULLY_OPAQUE)
+				{
+					idFlags |= NON_COLLIDING_FLAG;
+				}
+				
+				this.flags[id] = idFlags;
+				this.materialIds[id] = blockState.getMaterialId();
+				this.blockStates[id] = blockState;
+				this.biomes[id] = biome;
+			}
+		}
+		
+		
+		
+		/** 
+		 * Block colors only depend on the block state and biome,
+		 * so each ID's color is only resolved once.
+		 */
+		public int getColor(int id, DhBlockPosMutable blockPos)
+		{
+			if ((this.flags[id] & COLOR_RESOLVED_FLAG) == 0)
+			{
+				this.colors[id] = this.levelWrapper.getBlockColor(blockPos, this.biomes[id], this.fullDataSource, this.blockStates[id]);
+				this.flags[id] |= COLOR_RESOLVED_FLAG;
+			}
+			return this.colors[id];
+		}
+		
+	}
+	
+	
+	
 }
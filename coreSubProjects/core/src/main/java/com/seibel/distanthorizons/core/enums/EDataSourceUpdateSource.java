@@ -0,0 +1,38 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.enums;
+
+/**
+ * Where a full data update came from, 
+ * lets update listeners treat bulk world generation differently from everything else. <br><br>
+ * 
+ * WORLD_GENERATION, <br>
+ * PARENT_PROPAGATION, <br>
+ * OTHER <br>
+ */
+public enum EDataSourceUpdateSource
+{
+	/** a section was generated by a world generator */
+	WORLD_GENERATION,
+	/** a parent section was updated from its children */
+	PARENT_PROPAGATION,
+	/** IE chunk updates from players, network updates or API calls */
+	OTHER
+}
@@ -22,6 +22,7 @@ package com.seibel.distanthorizons.core.file.fullDatafile;
 import com.seibel.distanthorizons.core.api.internal.SharedApi;
 import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.enums.EDataSourceUpdateSource;
 import com.seibel.distanthorizons.core.file.fullDatafile.V2.FullDataSourceProviderV2;
 import com.seibel.distanthorizons.core.file.fullDatafile.V2.FullDataUpdatePropagatorV2;
 import com.seibel.distanthorizons.core.file.structure.ISaveStructure;
@@ -85,7 +86,7 @@ public class GeneratedFullDataSourceProvider extends FullDataSourceProviderV2 im
 	{
 		super(level, saveStructure, saveDirOverride);
 		
-		this.addDataSourceUpdateListener((@NotNull FullDataSourceV2 updatedData) ->
+		this.addDataSourceUpdateListener((@NotNull FullDataSourceV2 updatedData, EDataSourceUpdateSource updateSource) ->
 		{
 			this.onWorldGenTaskComplete(WorldGenResult.CreateSuccess(updatedData.getPos()), null);
 		});
@@ -329,7 +330,7 @@ public class GeneratedFullDataSourceProvider extends FullDataSourceProviderV2 im
 
 		// Check if this position exists AND is complete.
 		// Incomplete sections in the database still need generation.
-		if (this.repo.existsAndIsComplete(pos))
+		if (this.existsAndIsComplete(pos))
 		{
 			return new LongArrayList();
 		}
@@ -349,7 +350,7 @@ public class GeneratedFullDataSourceProvider extends FullDataSourceProviderV2 im
 		}
 
 		// Batch query to get all complete positions at once (single DB round-trip)
-		LongOpenHashSet completePositions = this.repo.getCompletePositions(allChildPositions);
+		LongOpenHashSet completePositions = this.getCompletePositions(allChildPositions);
 
 		// Build generation list from positions not in the complete set
 		LongArrayList generationList = new LongArrayList();
@@ -409,7 +410,7 @@ public class GeneratedFullDataSourceProvider extends FullDataSourceProviderV2 im
 		public CompletableFuture<Boolean> shouldGenerateSplitChild(long pos)
 		{
 			// Should generate if it doesn't exist or is incomplete.
-			return CompletableFuture.completedFuture(!GeneratedFullDataSourceProvider.this.repo.existsAndIsComplete(pos));
+			return CompletableFuture.completedFuture(!GeneratedFullDataSourceProvider.this.existsAndIsComplete(pos));
 		}
 		
 	}
@@ -420,7 +421,7 @@ public class GeneratedFullDataSourceProvider extends FullDataSourceProviderV2 im
 		// allows us to reduce cross-chunk lighting issues by lighting the whole 4x4 LOD at once
 		DhLightingEngine.INSTANCE.bakeDataSourceSkyLight(fullDataSource, LodUtil.MAX_MC_LIGHT);
 		
-		return this.updateDataSourceAsync(fullDataSource);
+		return this.updateDataSourceAsync(fullDataSource, EDataSourceUpdateSource.WORLD_GENERATION);
 	}
 	
 	
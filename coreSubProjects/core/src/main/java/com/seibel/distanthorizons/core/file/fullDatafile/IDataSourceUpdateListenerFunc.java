@@ -1,7 +1,9 @@
 package com.seibel.distanthorizons.core.file.fullDatafile;
 
+import com.seibel.distanthorizons.core.enums.EDataSourceUpdateSource;
+
 @FunctionalInterface
 public interface IDataSourceUpdateListenerFunc<TDataSource>
 {
-	void OnDataSourceUpdated(TDataSource updatedFullDataSource);
+	void OnDataSourceUpdated(TDataSource updatedFullDataSource, EDataSourceUpdateSource updateSource);
 }
@@ -0,0 +1,627 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.file.fullDatafile.V2;
+
+import com.seibel.distanthorizons.core.config.Config;
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.logging.f3.F3Screen;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.coreapi.util.StringUtil;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps recently used, already decoded {@link FullDataSourceV2}'s in memory
+ * so the same section doesn't have to be decompressed and have its
+ * ID mapping re-parsed every time it's requested. <br><br>
+ *
+ * Entries are evicted least-recently-used first once the estimated
+ * memory use goes above {@link Config.Common.LodBuilding#decodedDataCacheSizeInMb}. <br><br>
+ *
+ * Cached data sources are never copied, instead
+ * a reference counted, read-only {@link CacheLease} is returned which must be closed once
+ * the caller is done reading.
+ * Data sources that are evicted or invalidated while leased are only closed
+ * (and their pooled arrays returned) after the last lease is closed. <br><br>
+ *
+ * Any write to the database for a given position must call {@link FullDataSourceCacheV2#invalidate(long)}
+ * or {@link FullDataSourceCacheV2#tryReplace(FullDataSourceV2)},
+ * otherwise stale data will be returned.
+ *
+ * @see FullDataSourceProviderV2
+ */
+public class FullDataSourceCacheV2 implements AutoCloseable
+{
+	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
+
+	/** rough size of a {@link LongArrayList} object without its backing array */
+	private static final int LONG_ARRAY_LIST_OVERHEAD_IN_BYTES = 32;
+	/** rough size of a single ID mapping entry, including the hash map node */
+	private static final int MAPPING_ENTRY_OVERHEAD_IN_BYTES = 64;
+
+
+
+	/** access ordered so the first entry will always be the least recently used */
+	private final LinkedHashMap<Long, CacheEntry> entryByPos = new LinkedHashMap<>(256, 0.75f, true);
+	/**
+	 * Only contains positions that are currently being read from the database. <br>
+	 * Used to prevent data sources that were read from the database
+	 * before that position was invalidated from being put into the cache afterward.
+	 */
+	private final HashMap<Long, InFlightRead> inFlightReadByPos = new HashMap<>();
+	/** guards {@link FullDataSourceCacheV2#entryByPos}, {@link FullDataSourceCacheV2#inFlightReadByPos} and each entry's reference count */
+	private final ReentrantLock cacheLock = new ReentrantLock();
+
+	private long cachedSizeInBytes = 0;
+	private boolean isClosed = false;
+
+	// stats //
+	private final AtomicLong hitCountRef = new AtomicLong(0);
+	private final AtomicLong missCountRef = new AtomicLong(0);
+	private final AtomicLong evictionCountRef = new AtomicLong(0);
+	private final AtomicLong invalidationCountRef = new AtomicLong(0);
+
+
+
+	//=============//
+	// constructor //
+	//=============//
+
+	public FullDataSourceCacheV2() { }
+
+
+
+	//=========//
+	// getters //
+	//=========//
+
+	public boolean isEnabled() { return getMaxSizeInBytes() > 0; }
+
+	/**
+	 * @return null if the position isn't cached. <br>
+	 *          If not null the lease must be closed after use.
+	 */
+	@Nullable
+	public CacheLease tryAcquire(long pos)
+	{
+		this.cacheLock.lock();
+		try
+		{
+			CacheEntry entry = this.entryByPos.get(pos);
+			if (entry == null)
+			{
+				this.missCountRef.incrementAndGet();
+				return null;
+			}
+
+			this.hitCountRef.incrementAndGet();
+			entry.referenceCount++;
+			return new CacheLease(entry, null);
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+	}
+
+	/**
+	 * Should be called before reading a data source from the database,
+	 * the returned ticket is then used to put the read data source into the cache. <br>
+	 * The ticket must be closed once the read is finished.
+	 */
+	public ReadTicket startRead(long pos)
+	{
+		this.cacheLock.lock();
+		try
+		{
+			InFlightRead inFlightRead = this.inFlightReadByPos.get(pos);
+			if (inFlightRead == null)
+			{
+				inFlightRead = new InFlightRead();
+				this.inFlightReadByPos.put(pos, inFlightRead);
+			}
+			inFlightRead.readerCount++;
+
+			return new ReadTicket(pos, inFlightRead, inFlightRead.version);
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+	}
+
+	/**
+	 * Wraps a data source that isn't stored in this cache so it can be
+	 * returned alongside cached data sources. <br>
+	 * The data source will be closed when the lease is closed.
+	 */
+	public CacheLease createUnsharedLease(@NotNull FullDataSourceV2 dataSource) { return new CacheLease(null, dataSource); }
+
+
+
+	//=========//
+	// setters //
+	//=========//
+
+	/**
+	 * Takes ownership of a data source that was just written to the database,
+	 * replacing any previously cached data for that position. <br><br>
+	 *
+	 * If true is returned the data source belongs to the cache and must not be modified or closed by the caller,
+	 * if false the caller is still responsible for closing it.
+	 */
+	public boolean tryReplace(@NotNull FullDataSourceV2 dataSource)
+	{
+		long pos = dataSource.getPos();
+		this.cacheLock.lock();
+		try
+		{
+			this.invalidateInternal(pos);
+			if (this.tryAddEntry(dataSource) == null)
+			{
+				return false;
+			}
+
+			// the new entry may be evicted (and closed) immediately, but either way it now belongs to the cache
+			this.evictUntilUnderSizeLimit(getMaxSizeInBytes());
+			return true;
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+	}
+
+	/** Should be called whenever the database is modified for the given position. */
+	public void invalidate(long pos)
+	{
+		this.cacheLock.lock();
+		try
+		{
+			this.invalidateInternal(pos);
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+	}
+	/** Should only be called while {@link FullDataSourceCacheV2#cacheLock} is held */
+	private void invalidateInternal(long pos)
+	{
+		// any read that's currently in progress may have read the old data
+		InFlightRead inFlightRead = this.inFlightReadByPos.get(pos);
+		if (inFlightRead != null)
+		{
+			inFlightRead.version++;
+		}
+
+		CacheEntry entry = this.entryByPos.remove(pos);
+		if (entry != null)
+		{
+			this.invalidationCountRef.incrementAndGet();
+			this.removeEntry(entry);
+		}
+	}
+
+	/**
+	 * Should be called when only the apply to parent flag was cleared in the database,
+	 * since none of the data changed the cached entry can be kept.
+	 */
+	public void clearApplyToParent(long pos)
+	{
+		this.cacheLock.lock();
+		try
+		{
+			CacheEntry entry = this.entryByPos.get(pos);
+			if (entry != null)
+			{
+				// lease holders only read the voxel data, at worst a copy made at the same time
+				// keeps the old flag and causes one redundant parent update
+				entry.dataSource.applyToParent = false;
+			}
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+	}
+
+	/** Removes everything from this cache. */
+	public void clear()
+	{
+		this.cacheLock.lock();
+		try
+		{
+			for (InFlightRead inFlightRead : this.inFlightReadByPos.values())
+			{
+				inFlightRead.version++;
+			}
+
+			Iterator<CacheEntry> iterator = this.entryByPos.values().iterator();
+			while (iterator.hasNext())
+			{
+				CacheEntry entry = iterator.next();
+				iterator.remove();
+				this.removeEntry(entry);
+			}
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+	}
+
+	/**
+	 * Should only be called while {@link FullDataSourceCacheV2#cacheLock} is held. <br>
+	 * If successful the returned entry is owned by the cache.
+	 *
+	 * @return null if the data source can't be cached
+	 */
+	@Nullable
+	private CacheEntry tryAddEntry(FullDataSourceV2 dataSource)
+	{
+		long maxSizeInBytes = getMaxSizeInBytes();
+		if (this.isClosed
+			|| maxSizeInBytes <= 0
+			|| dataSource.isEmpty
+			|| this.entryByPos.containsKey(dataSource.getPos()))
+		{
+			return null;
+		}
+
+		long estimatedSizeInBytes = estimateSizeInBytes(dataSource);
+		if (estimatedSizeInBytes > maxSizeInBytes)
+		{
+			// this data source would just evict everything and then itself
+			return null;
+		}
+
+		CacheEntry entry = new CacheEntry(dataSource, estimatedSizeInBytes);
+		this.entryByPos.put(dataSource.getPos(), entry);
+		this.cachedSizeInBytes += estimatedSizeInBytes;
+		return entry;
+	}
+
+
+
+	//==========//
+	// eviction //
+	//==========//
+
+	/** Should only be called while {@link FullDataSourceCacheV2#cacheLock} is held */
+	private void evictUntilUnderSizeLimit(long maxSizeInBytes)
+	{
+		Iterator<Map.Entry<Long, CacheEntry>> iterator = this.entryByPos.entrySet().iterator();
+		while (this.cachedSizeInBytes > maxSizeInBytes
+				&& iterator.hasNext())
+		{
+			CacheEntry entry = iterator.next().getValue();
+			iterator.remove();
+			this.evictionCountRef.incrementAndGet();
+			this.removeEntry(entry);
+		}
+	}
+
+	/**
+	 * Should only be called while {@link FullDataSourceCacheV2#cacheLock} is held
+	 * and after the entry has been removed from {@link FullDataSourceCacheV2#entryByPos}.
+	 */
+	private void removeEntry(CacheEntry entry)
+	{
+		this.cachedSizeInBytes -= entry.sizeInBytes;
+		entry.removed = true;
+
+		// leased data sources will be closed when the last lease is returned
+		if (entry.referenceCount == 0)
+		{
+			entry.dataSource.close();
+		}
+	}
+
+	private void release(CacheEntry entry)
+	{
+		this.cacheLock.lock();
+		try
+		{
+			entry.referenceCount--;
+			if (entry.referenceCount == 0
+				&& entry.removed)
+			{
+				entry.dataSource.close();
+			}
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+	}
+
+
+
+	//================//
+	// helper methods //
+	//================//
+
+	private static long getMaxSizeInBytes() { return Config.Common.LodBuilding.decodedDataCacheSizeInMb.get() * 1024L * 1024L; }
+
+	/** Rough estimate, only intended for keeping the cache under its memory budget. */
+	public static long estimateSizeInBytes(FullDataSourceV2 dataSource)
+	{
+		long sizeInBytes = 0;
+		for (int i = 0; i < dataSource.dataPoints.length; i++)
+		{
+			LongArrayList column = dataSource.dataPoints[i];
+			sizeInBytes += LONG_ARRAY_LIST_OVERHEAD_IN_BYTES;
+			if (column != null)
+			{
+				sizeInBytes += (long) column.size() * Long.BYTES;
+			}
+		}
+
+		sizeInBytes += dataSource.columnWorldCompressionMode.size();
+		sizeInBytes += (long) dataSource.mapping.size() * MAPPING_ENTRY_OVERHEAD_IN_BYTES;
+		return sizeInBytes;
+	}
+
+
+
+	//===========//
+	// debugging //
+	//===========//
+
+	public void addDebugMenuStringsToList(List<String> messageList)
+	{
+		int entryCount;
+		long sizeInBytes;
+		this.cacheLock.lock();
+		try
+		{
+			entryCount = this.entryByPos.size();
+			sizeInBytes = this.cachedSizeInBytes;
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+
+		long hitCount = this.hitCountRef.get();
+		long missCount = this.missCountRef.get();
+		long totalCount = hitCount + missCount;
+		String hitPercent = (totalCount != 0) ? (hitCount * 100 / totalCount) + "%" : "-";
+
+		messageList.add("Decoded Cache: " + F3Screen.NUMBER_FORMAT.format(entryCount) + " ~" + StringUtil.convertBytesToHumanReadable(sizeInBytes)
+				+ ", Hit: " + hitPercent
+				+ ", Evicted: " + F3Screen.NUMBER_FORMAT.format(this.evictionCountRef.get())
+				+ ", Invalidated: " + F3Screen.NUMBER_FORMAT.format(this.invalidationCountRef.get()));
+	}
+
+
+
+	//================//
+	// base overrides //
+	//================//
+
+	@Override
+	public void close()
+	{
+		this.cacheLock.lock();
+		try
+		{
+			this.isClosed = true;
+		}
+		finally
+		{
+			this.cacheLock.unlock();
+		}
+
+		this.clear();
+		LOGGER.debug("Closed decoded data source cache, hits: ["+this.hitCountRef.get()+"], misses: ["+this.missCountRef.get()+"].");
+	}
+
+
+
+	//================//
+	// helper classes //
+	//================//
+
+	/**
+	 * Gives read-only access to a {@link FullDataSourceV2}. <br>
+	 * Shared leases point to a data source stored in the cache,
+	 * unshared leases wrap a data source that only this lease holder can see. <br>
+	 * In either case the data source must not be modified or closed by the lease holder.
+	 */
+	public class CacheLease implements AutoCloseable
+	{
+		/** null for unshared leases */
+		@Nullable
+		private final CacheEntry entry;
+		/** null for shared leases or after ownership was taken */
+		@Nullable
+		private FullDataSourceV2 unsharedDataSource;
+		private final long pos;
+		private boolean released = false;
+
+		private CacheLease(@Nullable CacheEntry entry, @Nullable FullDataSourceV2 unsharedDataSource)
+		{
+			this.entry = entry;
+			this.unsharedDataSource = unsharedDataSource;
+			this.pos = (entry != null) ? entry.dataSource.getPos() : unsharedDataSource.getPos();
+		}
+
+		/** Must not be modified or closed. */
+		public FullDataSourceV2 getDataSource() { return (this.entry != null) ? this.entry.dataSource : this.unsharedDataSource; }
+
+		/** @return true if the data source is stored in the cache and may be read by other threads at the same time */
+		public boolean isShared() { return this.entry != null; }
+
+		/**
+		 * Only valid for unshared leases. <br>
+		 * Afterward the caller owns the data source and is responsible for closing it,
+		 * closing this lease will no longer close the data source.
+		 */
+		public FullDataSourceV2 takeUnsharedDataSource()
+		{
+			if (this.unsharedDataSource == null)
+			{
+				throw new IllegalStateException("Cache lease for pos ["+DhSectionPos.toString(this.pos)+"] doesn't own an unshared data source.");
+			}
+
+			FullDataSourceV2 dataSource = this.unsharedDataSource;
+			this.unsharedDataSource = null;
+			return dataSource;
+		}
+
+		@Override
+		public void close()
+		{
+			if (this.released)
+			{
+				LOGGER.warn("Cache lease for pos ["+DhSectionPos.toString(this.pos)+"] closed multiple times.");
+				return;
+			}
+
+			this.released = true;
+			if (this.entry != null)
+			{
+				FullDataSourceCacheV2.this.release(this.entry);
+			}
+			else if (this.unsharedDataSource != null)
+			{
+				this.unsharedDataSource.close();
+			}
+		}
+	}
+
+	/**
+	 * Returned by {@link FullDataSourceCacheV2#startRead(long)}
+	 * and used to put data sources read from the database into the cache.
+	 */
+	public class ReadTicket implements AutoCloseable
+	{
+		private final long pos;
+		private final InFlightRead inFlightRead;
+		/** the {@link InFlightRead#version} when this read was started */
+		private final long startVersion;
+		private boolean closed = false;
+
+		private ReadTicket(long pos, InFlightRead inFlightRead, long startVersion)
+		{
+			this.pos = pos;
+			this.inFlightRead = inFlightRead;
+			this.startVersion = startVersion;
+		}
+
+		/**
+		 * Takes ownership of the given data source. <br>
+		 * If the position wasn't invalidated since this read was started the data source
+		 * is stored in the cache and a shared lease is returned,
+		 * otherwise it's wrapped in an unshared lease.
+		 */
+		public CacheLease putAndAcquire(@NotNull FullDataSourceV2 dataSource)
+		{
+			FullDataSourceCacheV2 cache = FullDataSourceCacheV2.this;
+			cache.cacheLock.lock();
+			try
+			{
+				if (this.inFlightRead.version == this.startVersion)
+				{
+					CacheEntry entry = cache.tryAddEntry(dataSource);
+					if (entry != null)
+					{
+						// leased before evicting so the new entry can't be closed out from under us
+						entry.referenceCount++;
+						cache.evictUntilUnderSizeLimit(getMaxSizeInBytes());
+						return new CacheLease(entry, null);
+					}
+				}
+			}
+			finally
+			{
+				cache.cacheLock.unlock();
+			}
+
+			return cache.createUnsharedLease(dataSource);
+		}
+
+		@Override
+		public void close()
+		{
+			if (this.closed)
+			{
+				return;
+			}
+			this.closed = true;
+
+			FullDataSourceCacheV2 cache = FullDataSourceCacheV2.this;
+			cache.cacheLock.lock();
+			try
+			{
+				this.inFlightRead.readerCount--;
+				if (this.inFlightRead.readerCount == 0)
+				{
+					cache.inFlightReadByPos.remove(this.pos);
+				}
+			}
+			finally
+			{
+				cache.cacheLock.unlock();
+			}
+		}
+	}
+
+	private static class InFlightRead
+	{
+		/** incremented every time this position is invalidated while a read is in progress */
+		public long version = 0;
+		public int readerCount = 0;
+	}
+
+	private static class CacheEntry
+	{
+		public final FullDataSourceV2 dataSource;
+		public final long sizeInBytes;
+
+		/** should only be modified while the cache lock is held */
+		public int referenceCount = 0;
+		/** true once this entry has been evicted or invalidated */
+		public boolean removed = false;
+
+
+		public CacheEntry(FullDataSourceV2 dataSource, long sizeInBytes)
+		{
+			this.dataSource = dataSource;
+			this.sizeInBytes = sizeInBytes;
+		}
+	}
+
+
+
+}
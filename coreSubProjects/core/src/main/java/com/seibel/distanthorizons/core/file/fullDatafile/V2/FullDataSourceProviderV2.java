@@ -21,10 +21,13 @@ package com.seibel.distanthorizons.core.file.fullDatafile.V2;
 
 import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
 import com.seibel.distanthorizons.core.config.Config;
+import com.seibel.distanthorizons.core.dataObjects.fullData.BlockBiomePalette;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.enums.EDataSourceUpdateSource;
 import com.seibel.distanthorizons.core.enums.EDhDirection;
 import com.seibel.distanthorizons.core.file.fullDatafile.IDataSourceUpdateListenerFunc;
 import com.seibel.distanthorizons.core.file.structure.ISaveStructure;
+import com.seibel.distanthorizons.core.generation.PregenManager;
 import com.seibel.distanthorizons.core.generation.tasks.WorldGenResult;
 import com.seibel.distanthorizons.core.level.IDhLevel;
 import com.seibel.distanthorizons.core.logging.DhLogger;
@@ -34,11 +37,14 @@ import com.seibel.distanthorizons.core.render.renderer.DebugRenderer;
 import com.seibel.distanthorizons.core.render.renderer.IDebugRenderable;
 import com.seibel.distanthorizons.core.sql.dto.FullDataSourceV2DTO;
 import com.seibel.distanthorizons.core.sql.repo.AbstractDhRepo;
+import com.seibel.distanthorizons.core.sql.repo.BlockBiomePaletteRepo;
 import com.seibel.distanthorizons.core.sql.repo.FullDataSourceV2Repo;
+import com.seibel.distanthorizons.core.sql.repo.ZstdDictionaryRepo;
 import com.seibel.distanthorizons.core.util.LodUtil;
 import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
 import com.seibel.distanthorizons.core.util.threading.ThreadPoolUtil;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -78,6 +84,22 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 	
 	
 	public final FullDataSourceV2Repo repo;
+	/** 
+	 * Shared by every data source in {@link FullDataSourceProviderV2#repo}. <br>
+	 * Any DTO read from the repo must be converted via {@link FullDataSourceV2DTO#convertMappingToSelfContainedFormat} 
+	 * before it can be used outside this provider.
+	 */
+	public final BlockBiomePalette palette;
+	/** 
+	 * Holds recently decoded data sources so they don't have to be re-read from {@link FullDataSourceProviderV2#repo}. <br>
+	 * Must be invalidated whenever the repo is written to.
+	 */
+	public final FullDataSourceCacheV2 cache = new FullDataSourceCacheV2();
+	/** 
+	 * Dictionaries used by any DTO in {@link FullDataSourceProviderV2#repo} that was written with 
+	 * {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY}.
+	 */
+	public final FullDataZstdDictionaryHandlerV2 dictionaryHandler;
 	
 	
 	protected final AtomicBoolean isShutdownRef = new AtomicBoolean(false);
@@ -99,10 +121,14 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 	public FullDataSourceProviderV2(IDhLevel level, ISaveStructure saveStructure, @Nullable File saveDirOverride) throws SQLException, IOException
 	{
 		this.saveDir = (saveDirOverride == null) ? saveStructure.getSaveFolder(level.getLevelWrapper()) : saveDirOverride;
-		this.repo = new FullDataSourceV2Repo(AbstractDhRepo.DEFAULT_DATABASE_TYPE, new File(this.saveDir.getPath() + File.separator + ISaveStructure.DATABASE_NAME));
+		File databaseFile = new File(this.saveDir.getPath() + File.separator + ISaveStructure.DATABASE_NAME);
+		// only this level's pregen should change how its data is batched
+		this.repo = new FullDataSourceV2Repo(AbstractDhRepo.DEFAULT_DATABASE_TYPE, databaseFile, () -> PregenManager.INSTANCE.isRunningForLevel(level));
+		this.palette = new BlockBiomePalette(new BlockBiomePaletteRepo(AbstractDhRepo.DEFAULT_DATABASE_TYPE, databaseFile));
 		this.level = level;
 		
 		this.levelId = this.level.getLevelWrapper().getDhIdentifier();
+		this.dictionaryHandler = new FullDataZstdDictionaryHandlerV2(new ZstdDictionaryRepo(AbstractDhRepo.DEFAULT_DATABASE_TYPE, databaseFile), this.repo, this.levelId);
 		
 		this.dataUpdater = new FullDataUpdaterV2(this, this.levelId);
 		this.updatePropagator = new FullDataUpdatePropagatorV2(this, this.dataUpdater, this.levelId);
@@ -128,7 +154,7 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 	{
 		synchronized (this.dataUpdater.dateSourceUpdateListeners)
 		{
-			this.dataUpdater.dateSourceUpdateListeners.add(listener);
+			this.dataUpdater.dateSourceUpdateListeners.remove(listener);
 		}
 	}
 	
@@ -139,9 +165,11 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 	//================//
 	
 	protected FullDataSourceV2 createDataSourceFromDto(FullDataSourceV2DTO dto) throws InterruptedException, IOException, DataCorruptedException
-	{ return dto.createDataSource(this.level.getLevelWrapper(), null); }
+	{ return dto.createDataSource(this.level.getLevelWrapper(), this.palette, null); }
 	protected FullDataSourceV2 createAdjDataSourceFromDto(FullDataSourceV2DTO dto, EDhDirection direction) throws InterruptedException, IOException, DataCorruptedException
-	{ return dto.createDataSource(this.level.getLevelWrapper(), direction); }
+	{ return dto.createDataSource(this.level.getLevelWrapper(), this.palette, direction); }
+	protected FullDataSourceV2 createColumnDataSourceFromDto(FullDataSourceV2DTO dto, int relX, int relZ) throws InterruptedException, IOException, DataCorruptedException
+	{ return dto.createColumnDataSource(this.level.getLevelWrapper(), this.palette, relX, relZ); }
 	
 	
 	
@@ -181,33 +209,74 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 	}
 	/**
 	 * Should only be used in internal file handler methods where we are already running on a file handler thread.
-	 * Can return null if the repo is in the process of being shut down
+	 * Can return null if the repo is in the process of being shut down. <br>
+	 * The returned data source belongs to the caller and can be modified.
 	 * @see FullDataSourceProviderV2#getAsync(long)
+	 * @see FullDataSourceProviderV2#getReadOnly(long)
 	 */
 	@Nullable
 	public FullDataSourceV2 get(long pos)
+	{
+		try (FullDataSourceCacheV2.CacheLease lease = this.getReadOnly(pos))
+		{
+			if (lease == null)
+			{
+				return null;
+			}
+			
+			// the cached data source is shared, so the caller gets their own copy
+			return lease.isShared() ? FullDataSourceV2.createCopy(lease.getDataSource()) : lease.takeUnsharedDataSource();
+		}
+	}
+	/**
+	 * Same as {@link FullDataSourceProviderV2#get(long)} except cached data sources
+	 * are returned directly instead of being copied. <br>
+	 * Should be used by callers that only read the data source. <br><br>
+	 * 
+	 * Can return null if the repo is in the process of being shut down. <br>
+	 * If not null the lease must be closed after use.
+	 */
+	@Nullable
+	public FullDataSourceCacheV2.CacheLease getReadOnly(long pos)
 	{
 		if (this.isShutdownRef.get())
 		{
 			return null;
 		}
 		
-		try(FullDataSourceV2DTO dto = this.repo.getByKey(pos))
+		// recently updated data may not have been saved yet
+		FullDataSourceV2 unsavedDataSource = this.dataUpdater.tryCopyUnsavedDataSource(pos, null);
+		if (unsavedDataSource != null)
+		{
+			return this.cache.createUnsharedLease(unsavedDataSource);
+		}
+		
+		FullDataSourceCacheV2.CacheLease cachedLease = this.cache.tryAcquire(pos);
+		if (cachedLease != null)
+		{
+			return cachedLease;
+		}
+		
+		// the ticket must be started before reading the DTO 
+		// so a concurrent write can't be overwritten by stale data
+		try(FullDataSourceCacheV2.ReadTicket readTicket = this.cache.startRead(pos);
+			FullDataSourceV2DTO dto = this.repo.getByKey(pos))
 		{
 			if (dto == null)
 			{
-				return FullDataSourceV2.createEmpty(pos);
+				return this.cache.createUnsharedLease(FullDataSourceV2.createEmpty(pos));
 			}
 			
 			try
 			{
 				FullDataSourceV2 dataSource = this.createDataSourceFromDto(dto);
-				return dataSource;
+				return readTicket.putAndAcquire(dataSource);
 			}
 			catch (DataCorruptedException e)
 			{
 				this.tryLogCorruptedDataError(DhSectionPos.toString(pos), e);
 				this.repo.deleteWithKey(pos);
+				this.cache.invalidate(pos);
 			}
 		}
 		catch (InterruptedException ignore) { }
@@ -279,6 +348,22 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 			return null;
 		}
 		
+		FullDataSourceV2 unsavedDataSource = this.dataUpdater.tryCopyUnsavedDataSource(pos, direction);
+		if (unsavedDataSource != null)
+		{
+			return unsavedDataSource;
+		}
+		
+		// if the full data source is already decoded
+		// copying the strip is cheaper than decompressing the adjacent blob
+		try (FullDataSourceCacheV2.CacheLease lease = this.cache.tryAcquire(pos))
+		{
+			if (lease != null)
+			{
+				return FullDataSourceV2.createAdjacentCopy(lease.getDataSource(), direction);
+			}
+		}
+		
 		try(FullDataSourceV2DTO dto = this.repo.getAdjByPosAndDirection(pos, direction))
 		{
 			if (dto == null)
@@ -295,6 +380,106 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 			{
 				this.tryLogCorruptedDataError(DhSectionPos.toString(pos), e);
 				this.repo.deleteWithKey(pos);
+				this.cache.invalidate(pos);
+			}
+		}
+		catch (InterruptedException ignore) { }
+		catch (IOException e)
+		{
+			LOGGER.warn("File read Error for pos ["+DhSectionPos.toString(pos)+"], error: "+e.getMessage(), e);
+		}
+		
+		// an error occurred
+		return null;
+	}
+	
+	/**
+	 * Lease version of {@link FullDataSourceProviderV2#getAdjForDirection(long, EDhDirection)}
+	 * so it can be used interchangeably with {@link FullDataSourceProviderV2#getReadOnly(long)}. <br>
+	 * Adjacent data is always a new data source, so the returned lease is never shared.
+	 */
+	@Nullable
+	public FullDataSourceCacheV2.CacheLease getAdjForDirectionReadOnly(long pos, EDhDirection direction)
+	{
+		FullDataSourceV2 dataSource = this.getAdjForDirection(pos, direction);
+		return (dataSource != null) ? this.cache.createUnsharedLease(dataSource) : null;
+	}
+	
+	/** 
+	 * Async version of {@link FullDataSourceProviderV2#getColumn(long, int, int)}.
+	 * @see FullDataSourceProviderV2#getAsync(long)
+	 */
+	public CompletableFuture<FullDataSourceV2> getColumnAsync(long pos, int relX, int relZ)
+	{
+		if (this.isShutdownRef.get())
+		{
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		AbstractExecutorService executor = ThreadPoolUtil.getFileHandlerExecutor();
+		if (executor == null || executor.isTerminated())
+		{
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		
+		try
+		{
+			return CompletableFuture.supplyAsync(() -> this.getColumn(pos, relX, relZ), executor);
+		}
+		catch (RejectedExecutionException ignore)
+		{
+			// the thread pool was probably shut down because it's size is being changed, just wait a sec and it should be back
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+	/** 
+	 * Only guarantees that the data column at the given relative position is populated,
+	 * the rest of the returned data source may be empty. <br>
+	 * This is generally used for API terrain queries
+	 * where only a single column is needed. <br><br>
+	 * 
+	 * Rows stored with {@link FullDataSourceV2DTO#DATA_FORMAT_COLUMNAR} only decode the requested column,
+	 * other rows still have to decode the blob containing the column.
+	 */
+	@Nullable
+	public FullDataSourceV2 getColumn(long pos, int relX, int relZ)
+	{
+		if (this.isShutdownRef.get())
+		{
+			return null;
+		}
+		
+		FullDataSourceV2 unsavedDataSource = this.dataUpdater.tryCopyUnsavedDataSource(pos, null);
+		if (unsavedDataSource != null)
+		{
+			return unsavedDataSource;
+		}
+		
+		try (FullDataSourceCacheV2.CacheLease lease = this.cache.tryAcquire(pos))
+		{
+			if (lease != null)
+			{
+				return FullDataSourceV2.createCopy(lease.getDataSource());
+			}
+		}
+		
+		try(FullDataSourceV2DTO dto = this.repo.getColumnBlobByPos(pos, relX, relZ))
+		{
+			if (dto == null)
+			{
+				return FullDataSourceV2.createEmpty(pos);
+			}
+			
+			try
+			{
+				return this.createColumnDataSourceFromDto(dto, relX, relZ);
+			}
+			catch (DataCorruptedException e)
+			{
+				this.tryLogCorruptedDataError(DhSectionPos.toString(pos), e);
+				this.repo.deleteWithKey(pos);
+				this.cache.invalidate(pos);
 			}
 		}
 		catch (InterruptedException ignore) { }
@@ -372,7 +557,37 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 	//=============//
 	
 	public CompletableFuture<Void> updateDataSourceAsync(@NotNull FullDataSourceV2 inputData)
-	{ return this.dataUpdater.updateDataSourceAsync(inputData); }
+	{ return this.updateDataSourceAsync(inputData, EDataSourceUpdateSource.OTHER); }
+	public CompletableFuture<Void> updateDataSourceAsync(@NotNull FullDataSourceV2 inputData, EDataSourceUpdateSource updateSource)
+	{ return this.dataUpdater.updateDataSourceAsync(inputData, updateSource); }
+	
+	
+	
+	//====================//
+	// completion queries //
+	//====================//
+	
+	/** Includes updates that haven't been saved to the database yet. */
+	public boolean existsAndIsComplete(long pos)
+	{ return this.dataUpdater.hasCompleteUnsavedDataSource(pos) || this.repo.existsAndIsComplete(pos); }
+	
+	/** 
+	 * Includes updates that haven't been saved to the database yet.
+	 * @see FullDataSourceV2Repo#getCompletePositions(LongArrayList) 
+	 */
+	public LongOpenHashSet getCompletePositions(LongArrayList positions)
+	{
+		LongOpenHashSet completePositions = this.repo.getCompletePositions(positions);
+		for (int i = 0; i < positions.size(); i++)
+		{
+			long pos = positions.getLong(i);
+			if (this.dataUpdater.hasCompleteUnsavedDataSource(pos))
+			{
+				completePositions.add(pos);
+			}
+		}
+		return completePositions;
+	}
 	
 	
 	
@@ -388,8 +603,76 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 			return null;
 		}
 		
+		// the timestamp is set when the data is saved
+		this.dataUpdater.saveUnsavedDataSource(pos);
 		return this.repo.getTimestampForPos(pos); 
 	}
+	/**
+	 * Batched version of {@link #getTimestampForPos(long)},
+	 * returns the timestamp for every section in the given range using a single query. <br>
+	 * Positions without any LOD data won't be in the returned map.
+	 *
+	 * @param endPosX exclusive
+	 * @param endPosZ exclusive
+	 */
+	public Map<Long, Long> getTimestampsForRange(byte detailLevel, int startPosX, int startPosZ, int endPosX, int endPosZ)
+	{
+		if (this.isShutdownRef.get())
+		{
+			return new HashMap<>();
+		}
+		
+		// the timestamp is set when the data is saved
+		for (int x = startPosX; x < endPosX; x++)
+		{
+			for (int z = startPosZ; z < endPosZ; z++)
+			{
+				this.dataUpdater.saveUnsavedDataSource(DhSectionPos.encode(detailLevel, x, z));
+			}
+		}
+		return this.repo.getTimestampsForRange(detailLevel, startPosX, startPosZ, endPosX, endPosZ);
+	}
+	
+	/**
+	 * Returns the compressed data as it's stored in the database,
+	 * the data columns aren't decompressed. <br>
+	 * Used to send LODs over the network without having to re-compress them. <br>
+	 * Only the small mapping blob is re-written so it doesn't reference this provider's {@link BlockBiomePalette}. <br><br>
+	 * 
+	 * The returned DTO must be closed. <br>
+	 * Can return null if the position doesn't exist or the repo is being shut down.
+	 */
+	@Nullable
+	public FullDataSourceV2DTO getStoredDto(long pos)
+	{
+		if (this.isShutdownRef.get())
+		{
+			return null;
+		}
+		
+		this.dataUpdater.saveUnsavedDataSource(pos);
+		FullDataSourceV2DTO dto = this.repo.getByKey(pos);
+		if (dto == null)
+		{
+			return null;
+		}
+		
+		try
+		{
+			// the receiver won't have this level's palette or dictionary
+			// and always expects the default data format
+			dto.convertToDictionaryFreeCompression();
+			dto.convertDataFormat(FullDataSourceV2DTO.DATA_FORMAT_V2);
+			dto.convertMappingToSelfContainedFormat(this.palette);
+			return dto;
+		}
+		catch (IOException | DataCorruptedException e)
+		{
+			this.tryLogCorruptedDataError(DhSectionPos.toString(pos), e);
+			dto.close();
+			return null;
+		}
+	}
 	
 	
 	
@@ -400,6 +683,11 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 	public void addDebugMenuStringsToList(List<String> messageList)
 	{
 		// V1 migration removed - new worlds only
+		
+		this.dataUpdater.addDebugMenuStringsToList(messageList);
+		this.updatePropagator.addDebugMenuStringsToList(messageList);
+		this.cache.addDebugMenuStringsToList(messageList);
+		this.repo.addDebugMenuStringsToList(messageList);
 	}
 	
 	
@@ -422,10 +710,14 @@ public class FullDataSourceProviderV2 implements IDebugRenderable, AutoCloseable
 
 		this.isShutdownRef.set(true);
 
+		// saves any un-saved updates, so must be closed before the repo
 		this.dataUpdater.close();
 		this.updatePropagator.close();
-
+		
+		this.cache.close();
 		this.repo.close();
+		this.palette.close();
+		this.dictionaryHandler.close();
 	}
 	
 	
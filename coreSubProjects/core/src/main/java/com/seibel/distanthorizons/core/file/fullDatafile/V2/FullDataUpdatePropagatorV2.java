@@ -2,68 +2,102 @@ package com.seibel.distanthorizons.core.file.fullDatafile.V2;
 
 import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.enums.EDataSourceUpdateSource;
 import com.seibel.distanthorizons.core.dependencyInjection.SingletonInjector;
 import com.seibel.distanthorizons.core.logging.DhLogger;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.logging.f3.F3Screen;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos;
+import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
 import com.seibel.distanthorizons.core.render.renderer.DebugRenderer;
 import com.seibel.distanthorizons.core.render.renderer.IDebugRenderable;
+import com.seibel.distanthorizons.core.util.BoolUtil;
 import com.seibel.distanthorizons.core.util.ThreadUtil;
 import com.seibel.distanthorizons.core.util.threading.PriorityTaskPicker;
 import com.seibel.distanthorizons.core.util.threading.ThreadPoolUtil;
 import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftClientWrapper;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import org.jetbrains.annotations.Nullable;
+import it.unimi.dsi.fastutil.longs.LongComparator;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Applies updated data sources to their parents so every detail level stays up to date. <br><br>
+ *
+ * Positions that need to be applied to their parent are tracked in memory,
+ * they're added whenever {@link FullDataUpdaterV2} modifies a data source with {@link FullDataSourceV2#applyToParent} set.
+ * Positions are processed one detail level at a time, lowest first,
+ * so each wave of parents is updated while the children it was built from
+ * are still decoded in {@link FullDataUpdaterV2}'s unsaved data. <br><br>
+ *
+ * The ApplyToParent database column is only read when the level is loaded,
+ * to recover updates that weren't propagated before the level was closed or the game crashed.
+ */
 public class FullDataUpdatePropagatorV2 implements IDebugRenderable, AutoCloseable
 {
 	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
 	
 	private static final IMinecraftClientWrapper MC_CLIENT = SingletonInjector.INSTANCE.get(IMinecraftClientWrapper.class);
 	
-	/** indicates how long the update queue thread should wait between queuing ticks */
+	/**
+	 * The longest the update queue thread will wait before checking for new updates. <br>
+	 * Generally the thread will be woken up sooner when a position is updated or a parent update finishes.
+	 */
 	protected static final int PROPAGATE_QUEUE_THREAD_DELAY_IN_MS = 250;
 	
 	public static final int NUMBER_OF_PARENT_UPDATE_TASKS_PER_THREAD = 5;
 	
 	/** how many parent update tasks can be in the queue at once */
-	public static int getMaxPropagateTaskCount() 
+	public static int getMaxPropagateTaskCount()
 	{ return NUMBER_OF_PARENT_UPDATE_TASKS_PER_THREAD * Config.Common.MultiThreading.numberOfThreads.get(); }
 	
 	
 	
 	/**
-	 * Tracks which positions are currently being updated
+	 * Tracks which parent positions are currently being updated
 	 * to prevent duplicate concurrent updates.
 	 */
 	private final Set<Long> updatingPosSet = ConcurrentHashMap.newKeySet();
 	
-	// TODO only run thread if modifications happened recently
 	/**
-	 * Will be null on the dedicated server since updates don't need to be propagated,
-	 * only the highest detail level is needed.
+	 * Positions that need to be applied to their parent, indexed by detail level. <br>
+	 * The root detail level isn't included since it doesn't have a parent. <br>
+	 * Guarded by {@link FullDataUpdatePropagatorV2#dirtyPosLock}.
 	 */
-	@Nullable
+	private final LongOpenHashSet[] dirtyPosSetByDetailLevel = new LongOpenHashSet[FullDataSourceProviderV2.ROOT_SECTION_DETAIL_LEVEL];
+	private final ReentrantLock dirtyPosLock = new ReentrantLock();
+	/** signaled when a position is marked dirty or a parent update finishes */
+	private final Condition wakeUpCondition = this.dirtyPosLock.newCondition();
+	/** guarded by {@link FullDataUpdatePropagatorV2#dirtyPosLock} */
+	private boolean wakeUpRequested = false;
+	
 	public final ThreadPoolExecutor updateQueueProcessor;
 	
-	private final AtomicBoolean isShutdownRef = new AtomicBoolean(false);
 	private final String levelId;
 	
 	
 	private final FullDataSourceProviderV2 provider;
 	private final FullDataUpdaterV2 dataUpdater;
 	
+	// stats //
+	private final AtomicLong appliedChildCountRef = new AtomicLong(0);
+	private final AtomicLong recoveredPosCountRef = new AtomicLong(0);
+	
 	
 	
 	//=============//
@@ -76,6 +110,13 @@ public class FullDataUpdatePropagatorV2 implements IDebugRenderable, AutoCloseab
 		this.dataUpdater = dataUpdater;
 		this.levelId = levelId;
 		
+		for (int i = 0; i < this.dirtyPosSetByDetailLevel.length; i++)
+		{
+			this.dirtyPosSetByDetailLevel[i] = new LongOpenHashSet();
+		}
+		
+		this.provider.addDataSourceUpdateListener(this::onDataSourceUpdated);
+		
 		// update propagation doesn't need to be run on the server since only the highest detail level is needed
 		this.updateQueueProcessor = ThreadUtil.makeSingleThreadPool("Update Propagate Queue [" + this.levelId + "]");
 		this.updateQueueProcessor.execute(this::runUpdateQueue);
@@ -83,37 +124,211 @@ public class FullDataUpdatePropagatorV2 implements IDebugRenderable, AutoCloseab
 	
 	
 	
+	//=================//
+	// dirty positions //
+	//=================//
+	
+	private void onDataSourceUpdated(FullDataSourceV2 updatedDataSource, EDataSourceUpdateSource updateSource)
+	{
+		if (BoolUtil.falseIfNull(updatedDataSource.applyToParent))
+		{
+			this.markDirty(updatedDataSource.getPos());
+		}
+	}
+	
+	/** Queues the given position to be applied to its parent. */
+	public void markDirty(long pos)
+	{
+		byte detailLevel = DhSectionPos.getDetailLevel(pos);
+		if (detailLevel < FullDataSourceProviderV2.LEAF_SECTION_DETAIL_LEVEL
+			|| detailLevel >= FullDataSourceProviderV2.ROOT_SECTION_DETAIL_LEVEL)
+		{
+			// the root doesn't have a parent
+			return;
+		}
+		
+		this.dirtyPosLock.lock();
+		try
+		{
+			this.dirtyPosSetByDetailLevel[detailLevel].add(pos);
+			this.wakeUpLocked();
+		}
+		finally
+		{
+			this.dirtyPosLock.unlock();
+		}
+	}
+	
+	private void wakeUp()
+	{
+		this.dirtyPosLock.lock();
+		try
+		{
+			this.wakeUpLocked();
+		}
+		finally
+		{
+			this.dirtyPosLock.unlock();
+		}
+	}
+	/** {@link FullDataUpdatePropagatorV2#dirtyPosLock} must be held */
+	private void wakeUpLocked()
+	{
+		this.wakeUpRequested = true;
+		this.wakeUpCondition.signal();
+	}
+	
+	/** Re-loads any positions that were waiting to be applied to their parent when this level was last closed. */
+	private void recoverPersistedDirtyPositions()
+	{
+		LongArrayList persistedPosList = this.provider.repo.getPositionsToUpdate(0, 0, Integer.MAX_VALUE);
+		for (int i = 0; i < persistedPosList.size(); i++)
+		{
+			this.markDirty(persistedPosList.getLong(i));
+		}
+		
+		this.recoveredPosCountRef.set(persistedPosList.size());
+		if (!persistedPosList.isEmpty())
+		{
+			LOGGER.info("Recovered [" + persistedPosList.size() + "] parent updates for level [" + this.levelId + "].");
+		}
+	}
+	
+	/**
+	 * Removes and returns the closest dirty positions from the lowest detail level
+	 * that has positions whose parent isn't already being updated. <br>
+	 * Every dirty sibling of a returned parent is returned with it.
+	 *
+	 * @return the child positions grouped by their parent position
+	 */
+	private HashMap<Long, LongArrayList> takeDirtyPositions(DhBlockPos2D targetBlockPos, int maxParentCount)
+	{
+		HashMap<Long, LongArrayList> childPosListByParentPos = new HashMap<>();
+		
+		this.dirtyPosLock.lock();
+		try
+		{
+			for (LongOpenHashSet dirtyPosSet : this.dirtyPosSetByDetailLevel)
+			{
+				if (dirtyPosSet.isEmpty())
+				{
+					continue;
+				}
+				
+				// parents that are currently being updated will be handled once they finish
+				LongArrayList candidatePosList = new LongArrayList(dirtyPosSet.size());
+				LongIterator iterator = dirtyPosSet.iterator();
+				while (iterator.hasNext())
+				{
+					long pos = iterator.nextLong();
+					if (!this.updatingPosSet.contains(DhSectionPos.getParentPos(pos)))
+					{
+						candidatePosList.add(pos);
+					}
+				}
+				
+				if (candidatePosList.isEmpty())
+				{
+					continue;
+				}
+				
+				// update positions closest to the player first
+				// to make world gen appear faster
+				candidatePosList.sort((LongComparator) (a, b) -> Integer.compare(
+						DhSectionPos.getManhattanBlockDistance(a, targetBlockPos),
+						DhSectionPos.getManhattanBlockDistance(b, targetBlockPos)));
+				
+				for (int i = 0; i < candidatePosList.size(); i++)
+				{
+					long pos = candidatePosList.getLong(i);
+					long parentPos = DhSectionPos.getParentPos(pos);
+					
+					LongArrayList childPosList = childPosListByParentPos.get(parentPos);
+					if (childPosList == null)
+					{
+						if (childPosListByParentPos.size() >= maxParentCount)
+						{
+							// keep going, siblings of already selected parents can still be added
+							continue;
+						}
+						
+						childPosList = new LongArrayList(4);
+						childPosListByParentPos.put(parentPos, childPosList);
+					}
+					
+					childPosList.add(pos);
+					dirtyPosSet.remove(pos);
+				}
+				
+				// only one detail level is handled at a time
+				// so parents are updated after all of their children
+				break;
+			}
+		}
+		finally
+		{
+			this.dirtyPosLock.unlock();
+		}
+		
+		return childPosListByParentPos;
+	}
+	
+	
+	
 	//================//
 	// parent updates //
 	//================//
 	
 	private void runUpdateQueue()
 	{
+		try
+		{
+			this.recoverPersistedDirtyPositions();
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("Unable to recover parent updates for level [" + this.levelId + "]. Error: " + e.getMessage(), e);
+		}
+		
+		
 		while (!Thread.interrupted())
 		{
 			try
 			{
-				Thread.sleep(PROPAGATE_QUEUE_THREAD_DELAY_IN_MS);
+				boolean tasksQueued = false;
 				
 				PriorityTaskPicker.Executor executor = ThreadPoolUtil.getUpdatePropagatorExecutor();
-				if (executor == null || executor.isTerminated())
+				if (executor != null && !executor.isTerminated())
 				{
-					continue;
+					// update positions closest to the player (if not on a server)
+					// to make world gen appear faster
+					DhBlockPos targetBlockPos = DhBlockPos.ZERO;
+					if (MC_CLIENT != null
+						&& MC_CLIENT.playerExists())
+					{
+						targetBlockPos = MC_CLIENT.getPlayerBlockPos();
+					}
+					
+					tasksQueued = this.queueParentUpdates(executor, new DhBlockPos2D(targetBlockPos));
 				}
 				
-				// TODO it might be worth skipping this logic if no parent updates happened
-				
-				// update positions closest to the player (if not on a server)
-				// to make world gen appear faster
-				DhBlockPos targetBlockPos = DhBlockPos.ZERO;
-				if (MC_CLIENT != null 
-					&& MC_CLIENT.playerExists())
+				if (!tasksQueued)
 				{
-					targetBlockPos = MC_CLIENT.getPlayerBlockPos();
+					// wait for a new update or for a running update to finish
+					this.dirtyPosLock.lock();
+					try
+					{
+						if (!this.wakeUpRequested)
+						{
+							this.wakeUpCondition.await(PROPAGATE_QUEUE_THREAD_DELAY_IN_MS, TimeUnit.MILLISECONDS);
+						}
+						this.wakeUpRequested = false;
+					}
+					finally
+					{
+						this.dirtyPosLock.unlock();
+					}
 				}
-				
-				this.runParentUpdates(executor, targetBlockPos);
-
 			}
 			catch (InterruptedException ignored)
 			{
@@ -125,135 +340,158 @@ public class FullDataUpdatePropagatorV2 implements IDebugRenderable, AutoCloseab
 			}
 		}
 	}
-	/** will always apply updates */
-	private void runParentUpdates(PriorityTaskPicker.Executor executor, DhBlockPos targetBlockPos)
+	/** @return true if any parent updates were queued */
+	private boolean queueParentUpdates(PriorityTaskPicker.Executor executor, DhBlockPos2D targetBlockPos)
 	{
 		int maxUpdateTaskCount = getMaxPropagateTaskCount();
 		
-		// queue parent updates
-		if (executor.getQueueSize() < maxUpdateTaskCount
-			&& this.updatingPosSet.size() < maxUpdateTaskCount)
+		int availableTaskCount = Math.min(
+				maxUpdateTaskCount - executor.getQueueSize(),
+				maxUpdateTaskCount - this.updatingPosSet.size());
+		if (availableTaskCount <= 0)
+		{
+			return false;
+		}
+		
+		
+		boolean tasksQueued = false;
+		HashMap<Long, LongArrayList> childPosListByParentPos = this.takeDirtyPositions(targetBlockPos, availableTaskCount);
+		for (Map.Entry<Long, LongArrayList> entry : childPosListByParentPos.entrySet())
 		{
-			// get the positions that need to be applied to their parents
-			LongArrayList parentUpdatePosList = this.provider.repo.getPositionsToUpdate(targetBlockPos.getX(), targetBlockPos.getZ(), maxUpdateTaskCount);
+			long parentPos = entry.getKey();
+			LongArrayList childPosList = entry.getValue();
 			
-			// combine updates together based on their parent
-			// Initial capacity hint: expect ~1/4 as many parents as children (quadtree)
-			HashMap<Long, HashSet<Long>> updatePosByParentPos = new HashMap<>(Math.max(16, parentUpdatePosList.size() / 4));
-			for (Long pos : parentUpdatePosList)
+			if (!this.updatingPosSet.add(parentPos))
 			{
-				updatePosByParentPos.compute(DhSectionPos.getParentPos(pos), (parentPos, updatePosSet) ->
-				{
-					if (updatePosSet == null)
-					{
-						// Expect ~4 children per parent on average
-						updatePosSet = new HashSet<>(8);
-					}
-					updatePosSet.add(pos);
-					return updatePosSet;
-				});
+				// shouldn't happen since this is the only thread that queues updates,
+				// but just in case, try again later
+				this.remarkDirty(childPosList);
+				continue;
 			}
 			
-			// queue the updates
-			for (Long parentUpdatePos : updatePosByParentPos.keySet())
+			try
 			{
-				// stop if there are already a bunch of updates queued
-				if (this.updatingPosSet.size() > maxUpdateTaskCount
-					|| executor.getQueueSize() > maxUpdateTaskCount
-					|| !this.updatingPosSet.add(parentUpdatePos))
-				{
-					break;
-				}
-				
+				executor.execute(() -> this.applyChildrenToParent(parentPos, childPosList));
+				tasksQueued = true;
+			}
+			catch (RejectedExecutionException ignore)
+			{
+				// the executor was shut down, it should be back up shortly and able to accept new jobs
+				this.updatingPosSet.remove(parentPos);
+				this.remarkDirty(childPosList);
+			}
+			catch (Exception e)
+			{
+				this.updatingPosSet.remove(parentPos);
+				this.remarkDirty(childPosList);
+				throw e;
+			}
+		}
+		
+		return tasksQueued;
+	}
+	private void remarkDirty(LongArrayList posList)
+	{
+		for (int i = 0; i < posList.size(); i++)
+		{
+			this.markDirty(posList.getLong(i));
+		}
+	}
+	
+	private void applyChildrenToParent(long parentPos, LongArrayList childPosList)
+	{
+		ArrayList<FullDataSourceCacheV2.CacheLease> childLeases = new ArrayList<>(childPosList.size());
+		ArrayList<FullDataSourceV2> childDataSources = new ArrayList<>(childPosList.size());
+		try
+		{
+			// recently updated children will be copied from the updater's
+			// unsaved data instead of being decoded,
+			// children are only read so cached data sources aren't copied
+			for (int i = 0; i < childPosList.size(); i++)
+			{
+				long childPos = childPosList.getLong(i);
 				try
 				{
-					executor.execute(() ->
+					FullDataSourceCacheV2.CacheLease childLease = this.provider.getReadOnly(childPos);
+					// can return null when the file handler is being shut down
+					if (childLease != null)
 					{
-						ReentrantLock parentWriteLock = this.dataUpdater.updateLockProvider.getLock(parentUpdatePos);
-						boolean parentLocked = false;
-						try
-						{
-							//LOGGER.info("updating parent: "+parentUpdatePos);
-							
-							// Locking the parent before the children should prevent deadlocks.
-							// TryLock is used instead of lock so this thread can handle a different update.
-							if (parentWriteLock.tryLock())
-							{
-								parentLocked = true;
-								this.dataUpdater.lockedPosSet.add(parentUpdatePos);
-								
-								try (FullDataSourceV2 parentDataSource = this.provider.get(parentUpdatePos)) // TODO can we cache anything in memory to speed up the propagation process? Compression/Disk IO is by far the slowest part of this process
-								{
-									// will return null if the file handler is shutting down
-									if (parentDataSource != null)
-									{
-										// apply each child pos to the parent
-										for (Long childPos : updatePosByParentPos.get(parentUpdatePos))
-										{
-											ReentrantLock childReadLock = this.dataUpdater.updateLockProvider.getLock(childPos);
-											try
-											{
-												childReadLock.lock();
-												this.dataUpdater.lockedPosSet.add(childPos);
-												
-												try (FullDataSourceV2 childDataSource = this.provider.get(childPos))
-												{
-													// can return null when the file handler is being shut down
-													if (childDataSource != null)
-													{
-														parentDataSource.updateFromDataSource(childDataSource);
-													}
-												}
-											}
-											catch (Exception e)
-											{
-												LOGGER.error("Unexpected in parent update propagation for parent pos: ["+DhSectionPos.toString(parentUpdatePos)+"], child pos: [" + DhSectionPos.toString(parentUpdatePos) + "], Error: [" + e.getMessage() + "].", e);
-											}
-											finally
-											{
-												this.provider.repo.setApplyToParent(childPos, false);
-												
-												childReadLock.unlock();
-												this.dataUpdater.lockedPosSet.remove(childPos);
-											}
-										}
-										
-										
-										if (DhSectionPos.getDetailLevel(parentUpdatePos) < FullDataSourceProviderV2.ROOT_SECTION_DETAIL_LEVEL)
-										{
-											parentDataSource.applyToParent = true;
-										}
-										
-										this.dataUpdater.updateDataSource(parentDataSource);
-									}
-								}
-							}
-						}
-						finally
-						{
-							if (parentLocked)
-							{
-								parentWriteLock.unlock();
-								this.dataUpdater.lockedPosSet.remove(parentUpdatePos);
-							}
-							
-							this.updatingPosSet.remove(parentUpdatePos);
-						}
-					});
+						childLeases.add(childLease);
+						childDataSources.add(childLease.getDataSource());
+					}
 				}
-				catch (RejectedExecutionException ignore)
-				{ /* the executor was shut down, it should be back up shortly and able to accept new jobs */ }
 				catch (Exception e)
 				{
-					this.updatingPosSet.remove(parentUpdatePos);
-					throw e;
+					LOGGER.error("Unexpected error getting child pos: [" + DhSectionPos.toString(childPos) + "] for parent pos: ["+DhSectionPos.toString(parentPos)+"], Error: [" + e.getMessage() + "].", e);
 				}
 			}
+			
+			if (!childDataSources.isEmpty())
+			{
+				// the parent will be marked dirty by the updater's listener if it changed
+				this.dataUpdater.updateParentFromChildren(parentPos, childDataSources);
+				this.appliedChildCountRef.addAndGet(childDataSources.size());
+			}
+			
+			// the persisted flag is only needed to recover from crashes
+			for (int i = 0; i < childPosList.size(); i++)
+			{
+				long childPos = childPosList.getLong(i);
+				this.dataUpdater.clearApplyToParent(childPos);
+			}
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("Unexpected error in parent update propagation for parent pos: ["+DhSectionPos.toString(parentPos)+"], it will be retried. Error: [" + e.getMessage() + "].", e);
+			
+			// the children were removed from the dirty set when this update was queued,
+			// if they aren't re-added the parent would never receive their changes
+			this.remarkDirty(childPosList);
+		}
+		finally
+		{
+			for (FullDataSourceCacheV2.CacheLease childLease : childLeases)
+			{
+				childLease.close();
+			}
+			
+			this.updatingPosSet.remove(parentPos);
+			
+			// positions waiting on this parent can now be queued
+			this.wakeUp();
 		}
 	}
-
-
-
+	
+	
+	
+	//=======//
+	// debug //
+	//=======//
+	
+	public void addDebugMenuStringsToList(List<String> messageList)
+	{
+		int dirtyPosCount = 0;
+		this.dirtyPosLock.lock();
+		try
+		{
+			for (LongOpenHashSet dirtyPosSet : this.dirtyPosSetByDetailLevel)
+			{
+				dirtyPosCount += dirtyPosSet.size();
+			}
+		}
+		finally
+		{
+			this.dirtyPosLock.unlock();
+		}
+		
+		messageList.add("Parent Updates: " + F3Screen.NUMBER_FORMAT.format(dirtyPosCount)
+				+ ", updating " + F3Screen.NUMBER_FORMAT.format(this.updatingPosSet.size())
+				+ ", applied " + F3Screen.NUMBER_FORMAT.format(this.appliedChildCountRef.get())
+				+ ", recovered " + F3Screen.NUMBER_FORMAT.format(this.recoveredPosCountRef.get()));
+	}
+	
+	
+	
 	//===========//
 	// overrides //
 	//===========//
@@ -267,12 +505,7 @@ public class FullDataUpdatePropagatorV2 implements IDebugRenderable, AutoCloseab
 	
 	@Override
 	public void close()
-	{
-		if (this.updateQueueProcessor != null)
-		{
-			this.updateQueueProcessor.shutdownNow();
-		}
-	}
+	{ this.updateQueueProcessor.shutdownNow(); }
 	
 	
 	
@@ -3,30 +3,70 @@ package com.seibel.distanthorizons.core.file.fullDatafile.V2;
 import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
 import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.enums.EDataSourceUpdateSource;
+import com.seibel.distanthorizons.core.enums.EDhDirection;
 import com.seibel.distanthorizons.core.file.fullDatafile.IDataSourceUpdateListenerFunc;
 import com.seibel.distanthorizons.core.logging.DhLogger;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.logging.f3.F3Screen;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.render.renderer.DebugRenderer;
 import com.seibel.distanthorizons.core.render.renderer.IDebugRenderable;
 import com.seibel.distanthorizons.core.sql.dto.FullDataSourceV2DTO;
+import com.seibel.distanthorizons.core.util.BoolUtil;
+import com.seibel.distanthorizons.core.util.objects.dataStreams.ZstdDictionary;
+import com.seibel.distanthorizons.core.util.ThreadUtil;
 import com.seibel.distanthorizons.core.util.threading.PositionalLockProvider;
 import com.seibel.distanthorizons.core.util.threading.ThreadPoolUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
+/**
+ * Applies updates to {@link FullDataSourceV2}'s. <br><br>
+ * 
+ * Updated data sources are kept decoded in memory and are only
+ * encoded and saved to the database once {@link Config.Common.LodBuilding#dataUpdateSaveDelayInMs}
+ * has passed since their first unsaved update.
+ * This way a section that receives a lot of updates in a short time
+ * (IE a player building or a redstone machine)
+ * is only decompressed and re-compressed once. <br>
+ * Unsaved data is returned by {@link FullDataSourceProviderV2}'s getters
+ * so readers never see stale data.
+ */
 public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 {
 	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
 	
+	/** 
+	 * An updater won't save its data sources unless something triggers it, 
+	 * so a shared thread checks for expired data sources.
+	 */
+	private static final ThreadPoolExecutor BACKGROUND_SAVE_THREAD = ThreadUtil.makeSingleDaemonThreadPool("Full data updater saver");
+	private static final Set<WeakReference<FullDataUpdaterV2>> UPDATER_SET = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	/** how long between expired save checks */
+	private static final int SAVE_CHECK_TIME_IN_MS = 250;
+	/** 
+	 * If more data sources are waiting to be saved the oldest will be saved immediately. <br>
+	 * Prevents memory use from growing unbounded when a lot of different positions
+	 * are being updated at once (IE during world generation).
+	 */
+	private static final int MAX_UNSAVED_DATA_SOURCE_COUNT = 128;
+	
 	protected final PositionalLockProvider updateLockProvider = new PositionalLockProvider();
 	/**
 	 * generally just used for debugging,
@@ -42,17 +82,33 @@ public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 	
 	private final FullDataSourceProviderV2 provider;
 	
+	/** 
+	 * Data sources that have been updated but not saved to the database yet. <br>
+	 * Entries should only be added, modified or removed while the position's update lock is held.
+	 */
+	private final ConcurrentHashMap<Long, UnsavedDataSource> unsavedDataSourceByPos = new ConcurrentHashMap<>();
+	
+	// stats //
+	private final AtomicLong savedCountRef = new AtomicLong(0);
+	private final AtomicLong coalescedUpdateCountRef = new AtomicLong(0);
+	
 	
 	
 	//=============//
 	// constructor //
 	//=============//
 	
+	static
+	{
+		BACKGROUND_SAVE_THREAD.execute(() -> runSaveLoop());
+	}
+	
 	public FullDataUpdaterV2(FullDataSourceProviderV2 provider, String levelId)
 	{
 		this.provider = provider;
 		this.levelId = levelId;
 		
+		UPDATER_SET.add(new WeakReference<>(this));
 	}
 	
 	
@@ -63,9 +119,11 @@ public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 	
 	/**
 	 * Can be used if you don't want to lock the current thread
-	 * Otherwise the sync version {@link FullDataUpdaterV2#updateDataSource(FullDataSourceV2)} may be a better choice.
+	 * Otherwise the sync version {@link FullDataUpdaterV2#updateDataSource(FullDataSourceV2, EDataSourceUpdateSource)} may be a better choice.
+	 * 
+	 * @param updateSource passed to the update listeners
 	 */
-	public CompletableFuture<Void> updateDataSourceAsync(@NotNull FullDataSourceV2 inputDataSource)
+	public CompletableFuture<Void> updateDataSourceAsync(@NotNull FullDataSourceV2 inputDataSource, EDataSourceUpdateSource updateSource)
 	{
 		if (this.isShutdownRef.get())
 		{
@@ -86,7 +144,7 @@ public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 			{
 				try
 				{
-					this.updateDataSource(inputDataSource);
+					this.updateDataSource(inputDataSource, updateSource);
 				}
 				catch (Exception e)
 				{
@@ -106,16 +164,57 @@ public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 		}
 	}
 	
-	/** After this method returns the inputData will be written to file. */
-	public void updateDataSource(@NotNull FullDataSourceV2 inputData)
+	/** 
+	 * After this method returns the inputData will be visible to {@link FullDataSourceProviderV2}'s getters, 
+	 * it will be written to file after {@link Config.Common.LodBuilding#dataUpdateSaveDelayInMs}.
+	 */
+	public void updateDataSource(@NotNull FullDataSourceV2 inputData, EDataSourceUpdateSource updateSource)
+	{ this.updateDataSourceAtPos(inputData.getPos(), updateSource, (recipientDataSource) -> recipientDataSource.updateFromDataSource(inputData)); }
+	
+	/**
+	 * Applies each child to the given parent position in a single update. <br>
+	 * Unlike calling {@link FullDataUpdaterV2#updateDataSource(FullDataSourceV2, EDataSourceUpdateSource)} with a pre-merged parent
+	 * the parent only has to be decoded once (or not at all if it has unsaved changes).
+	 * 
+	 * @param childDataSources must all be one detail level below the parent. 
+	 *                         They won't be closed by this method.
+	 * @return true if the parent was modified
+	 */
+	public boolean updateParentFromChildren(long parentPos, @NotNull List<FullDataSourceV2> childDataSources)
+	{
+		return this.updateDataSourceAtPos(parentPos, EDataSourceUpdateSource.PARENT_PROPAGATION, (parentDataSource) ->
+		{
+			boolean alreadyApplyingToParent = BoolUtil.falseIfNull(parentDataSource.applyToParent);
+			
+			boolean dataModified = false;
+			for (FullDataSourceV2 childDataSource : childDataSources)
+			{
+				dataModified |= parentDataSource.updateFromDataSource(childDataSource);
+			}
+			
+			// each child update overwrites the flag, so it needs to be set based on all of them
+			parentDataSource.applyToParent = 
+					(dataModified || alreadyApplyingToParent)
+					&& (DhSectionPos.getDetailLevel(parentPos) < FullDataSourceProviderV2.ROOT_SECTION_DETAIL_LEVEL);
+			return dataModified;
+		});
+	}
+	
+	/** 
+	 * @param updateFunc applied to the position's current data source while the position is locked, 
+	 *                   should return true if the data source was modified.
+	 * @return true if the data source was modified
+	 * @throws RuntimeException if the update failed, so callers can retry it
+	 */
+	private boolean updateDataSourceAtPos(long updatePos, EDataSourceUpdateSource updateSource, @NotNull Predicate<FullDataSourceV2> updateFunc)
 	{
 		if (this.isShutdownRef.get())
 		{
-			return;
+			return false;
 		}
 		
 		
-		long updatePos = inputData.getPos();
+		boolean dataModified = false;
 		
 		// a lock is necessary to prevent two threads from writing to the same position at once,
 		// if that happens only the second update will apply and the LOD will end up with hole(s)
@@ -127,56 +226,82 @@ public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 			this.lockedPosSet.add(updatePos);
 			
 			
-			// get or create the data source
-			try (FullDataSourceV2 recipientDataSource = this.provider.get(updatePos))
+			// get or create the data source,
+			// if the position was recently updated it will already be decoded
+			UnsavedDataSource unsavedDataSource = this.unsavedDataSourceByPos.get(updatePos);
+			FullDataSourceV2 recipientDataSource = (unsavedDataSource != null) ? unsavedDataSource.dataSource : this.provider.get(updatePos);
+			if (recipientDataSource == null)
 			{
-				if (recipientDataSource != null) // will be null if the repo was shut down
+				// will be null if the repo was shut down
+				return false;
+			}
+			
+			try
+			{
+				dataModified = updateFunc.test(recipientDataSource);
+				if (dataModified)
 				{
-					boolean dataModified = recipientDataSource.updateFromDataSource(inputData);
-					if (dataModified)
+					if (unsavedDataSource == null)
 					{
-						// save the updated data to the database
-						try (FullDataSourceV2DTO dto = this.createDtoFromDataSource(recipientDataSource))
-						{
-							if (dto != null)
-							{
-								this.provider.repo.save(dto);
-							}
-						}
-						
-						
-						synchronized (this.dateSourceUpdateListeners)
+						unsavedDataSource = new UnsavedDataSource(recipientDataSource);
+						this.unsavedDataSourceByPos.put(updatePos, unsavedDataSource);
+					}
+					else
+					{
+						this.coalescedUpdateCountRef.incrementAndGet();
+					}
+					
+					
+					synchronized (this.dateSourceUpdateListeners)
+					{
+						for (IDataSourceUpdateListenerFunc<FullDataSourceV2> listener : this.dateSourceUpdateListeners)
 						{
-							for (IDataSourceUpdateListenerFunc<FullDataSourceV2> listener : this.dateSourceUpdateListeners)
+							if (listener != null)
 							{
-								if (listener != null)
-								{
-									listener.OnDataSourceUpdated(recipientDataSource);
-								}
+								listener.OnDataSourceUpdated(recipientDataSource, updateSource);
 							}
 						}
 					}
+					
+					
+					// save immediately if delayed saving is disabled 
+					// or if we're shutting down, since the final flush may have already run
+					if (Config.Common.LodBuilding.dataUpdateSaveDelayInMs.get() <= 0
+						|| this.isShutdownRef.get())
+					{
+						this.saveUnsavedDataSource(updatePos);
+					}
+				}
+			}
+			finally
+			{
+				// data sources that weren't modified aren't kept in memory
+				if (unsavedDataSource == null)
+				{
+					recipientDataSource.close();
 				}
 			}
-		}
-		catch (Exception e)
-		{
-			LOGGER.error("Error updating pos ["+DhSectionPos.toString(updatePos)+"], error: "+e.getMessage(), e);
 		}
 		finally
 		{
 			updateLock.unlock();
 			this.lockedPosSet.remove(updatePos);
 		}
+		
+		this.saveOldestWhileOverLimit();
+		return dataModified;
 	}
 	
 	private FullDataSourceV2DTO createDtoFromDataSource(FullDataSourceV2 dataSource)
 	{
 		try
 		{
-			// when creating new data use the compressor currently selected in the config
+			// when creating new data use the compressor and format currently selected in the config,
+			// if those match the stored row only the blobs with changed columns need to be re-encoded
 			EDhApiDataCompressionMode compressionModeEnum = Config.Common.LodBuilding.dataCompression.get();
-			return FullDataSourceV2DTO.CreateFromDataSource(dataSource, compressionModeEnum);
+			byte dataFormatValue = Config.Common.LodBuilding.columnarDataFormat.get() ? FullDataSourceV2DTO.DATA_FORMAT_COLUMNAR : FullDataSourceV2DTO.DATA_FORMAT_V2;
+			ZstdDictionary dictionary = this.provider.dictionaryHandler.getDictionaryForWriting();
+			return FullDataSourceV2DTO.CreateFromDataSource(dataSource, compressionModeEnum, this.provider.palette, true, dictionary, dataFormatValue);
 		}
 		catch (IOException e)
 		{
@@ -187,6 +312,251 @@ public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 	
 	
 	
+	//==================//
+	// unsaved handling //
+	//==================//
+	
+	/**
+	 * Returns a copy of the given position's unsaved data. <br>
+	 * If adjDirection isn't null only the data adjacent to that direction is copied,
+	 * the same as {@link FullDataSourceV2#createAdjacentCopy}. <br><br>
+	 * 
+	 * The returned data source must be closed.
+	 * 
+	 * @return null if the position doesn't have any unsaved updates
+	 */
+	@Nullable
+	public FullDataSourceV2 tryCopyUnsavedDataSource(long pos, @Nullable EDhDirection adjDirection)
+	{
+		// most positions won't have any unsaved data,
+		// checking before locking prevents reads from waiting on unrelated updates
+		if (!this.unsavedDataSourceByPos.containsKey(pos))
+		{
+			return null;
+		}
+		
+		ReentrantLock updateLock = this.updateLockProvider.getLock(pos);
+		try
+		{
+			updateLock.lock();
+			
+			// the data source may have been saved while we were waiting for the lock
+			UnsavedDataSource unsavedDataSource = this.unsavedDataSourceByPos.get(pos);
+			if (unsavedDataSource == null)
+			{
+				return null;
+			}
+			
+			return (adjDirection == null) 
+					? FullDataSourceV2.createCopy(unsavedDataSource.dataSource) 
+					: FullDataSourceV2.createAdjacentCopy(unsavedDataSource.dataSource, adjDirection);
+		}
+		finally
+		{
+			updateLock.unlock();
+		}
+	}
+	
+	/** @return true if the given position has unsaved data and every column in it has been populated */
+	public boolean hasCompleteUnsavedDataSource(long pos)
+	{
+		UnsavedDataSource unsavedDataSource = this.unsavedDataSourceByPos.get(pos);
+		return unsavedDataSource != null && unsavedDataSource.dataSource.isComplete();
+	}
+	
+	/** 
+	 * Encodes and saves the given position if it has unsaved data, does nothing otherwise. <br>
+	 * Can be used before reading data directly from the database. <br><br>
+	 * 
+	 * If the save fails the data is kept in memory and retried 
+	 * once {@link Config.Common.LodBuilding#dataUpdateSaveDelayInMs} has passed again.
+	 * 
+	 * @return false if the position has unsaved data that couldn't be saved
+	 */
+	public boolean saveUnsavedDataSource(long pos)
+	{
+		if (!this.unsavedDataSourceByPos.containsKey(pos))
+		{
+			return true;
+		}
+		
+		ReentrantLock updateLock = this.updateLockProvider.getLock(pos);
+		try
+		{
+			updateLock.lock();
+			
+			UnsavedDataSource unsavedDataSource = this.unsavedDataSourceByPos.get(pos);
+			if (unsavedDataSource == null)
+			{
+				// another thread already saved this position
+				return true;
+			}
+			
+			try (FullDataSourceV2DTO dto = this.createDtoFromDataSource(unsavedDataSource.dataSource))
+			{
+				if (dto == null)
+				{
+					// the error was already logged
+					this.delayRetry(pos, unsavedDataSource);
+					return false;
+				}
+				
+				this.provider.repo.save(dto);
+				unsavedDataSource.dataSource.markAsStored(dto.compressionModeValue, dto.dataFormatValue);
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("Unable to save pos ["+DhSectionPos.toString(pos)+"], the save will be retried. Error: ["+e.getMessage()+"].", e);
+				this.delayRetry(pos, unsavedDataSource);
+				return false;
+			}
+			
+			// the data source must be readable from the database (or cache) before it's removed
+			this.unsavedDataSourceByPos.remove(pos);
+			this.savedCountRef.incrementAndGet();
+			
+			// the saved data is still decoded, so hand it to the cache for the next read
+			if (!this.provider.cache.tryReplace(unsavedDataSource.dataSource))
+			{
+				unsavedDataSource.dataSource.close();
+			}
+			return true;
+		}
+		finally
+		{
+			updateLock.unlock();
+		}
+	}
+	
+	/** 
+	 * Keeps the position's unsaved data, but restarts its save delay 
+	 * so a failing position isn't retried every save check. <br>
+	 * Must be called while holding the position's update lock.
+	 */
+	private void delayRetry(long pos, UnsavedDataSource unsavedDataSource)
+	{ this.unsavedDataSourceByPos.put(pos, new UnsavedDataSource(unsavedDataSource.dataSource)); }
+	
+	/** 
+	 * Clears the apply to parent flag for both the unsaved data source (if present)
+	 * and the database. <br>
+	 * Should be called once the position has been applied to its parent.
+	 */
+	public void clearApplyToParent(long pos)
+	{
+		ReentrantLock updateLock = this.updateLockProvider.getLock(pos);
+		try
+		{
+			updateLock.lock();
+			
+			UnsavedDataSource unsavedDataSource = this.unsavedDataSourceByPos.get(pos);
+			if (unsavedDataSource != null)
+			{
+				unsavedDataSource.dataSource.applyToParent = false;
+			}
+			
+			this.provider.repo.setApplyToParent(pos, false);
+			// only the flag changed, so the cached data doesn't need to be invalidated
+			this.provider.cache.clearApplyToParent(pos);
+		}
+		finally
+		{
+			updateLock.unlock();
+		}
+	}
+	
+	/** Saves every data source that's waited longer than {@link Config.Common.LodBuilding#dataUpdateSaveDelayInMs}. */
+	private void saveExpiredDataSources()
+	{
+		long saveDelayInMs = Config.Common.LodBuilding.dataUpdateSaveDelayInMs.get();
+		long currentTimeMs = System.currentTimeMillis();
+		for (Map.Entry<Long, UnsavedDataSource> entry : this.unsavedDataSourceByPos.entrySet())
+		{
+			if (currentTimeMs - entry.getValue().firstUpdateTimeMs >= saveDelayInMs)
+			{
+				this.saveUnsavedDataSource(entry.getKey());
+			}
+		}
+	}
+	
+	private void saveOldestWhileOverLimit()
+	{
+		while (this.unsavedDataSourceByPos.size() > MAX_UNSAVED_DATA_SOURCE_COUNT)
+		{
+			long oldestPos = 0;
+			long oldestTimeMs = Long.MAX_VALUE;
+			for (Map.Entry<Long, UnsavedDataSource> entry : this.unsavedDataSourceByPos.entrySet())
+			{
+				if (entry.getValue().firstUpdateTimeMs < oldestTimeMs)
+				{
+					oldestPos = entry.getKey();
+					oldestTimeMs = entry.getValue().firstUpdateTimeMs;
+				}
+			}
+			
+			if (oldestTimeMs == Long.MAX_VALUE)
+			{
+				// another thread emptied the map
+				break;
+			}
+			
+			if (!this.saveUnsavedDataSource(oldestPos))
+			{
+				// the failed data source is kept in memory, 
+				// trying again immediately would just fail again
+				break;
+			}
+		}
+	}
+	
+	/** Saves every unsaved data source. */
+	public void flush()
+	{
+		for (Long pos : this.unsavedDataSourceByPos.keySet())
+		{
+			this.saveUnsavedDataSource(pos);
+		}
+	}
+	
+	
+	
+	//===========//
+	// save loop //
+	//===========//
+	
+	private static void runSaveLoop()
+	{
+		while (true)
+		{
+			try
+			{
+				try
+				{
+					Thread.sleep(SAVE_CHECK_TIME_IN_MS);
+				}
+				catch (InterruptedException ignore) { }
+				
+				UPDATER_SET.forEach((updaterRef) ->
+				{
+					FullDataUpdaterV2 updater = updaterRef.get();
+					if (updater == null)
+					{
+						// shouldn't be necessary, but if we forget to manually close an updater, this will prevent leaking
+						UPDATER_SET.remove(updaterRef);
+					}
+					else
+					{
+						updater.saveExpiredDataSources();
+					}
+				});
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("Unexpected error in full data updater save thread: [" + e.getMessage() + "].", e);
+			}
+		}
+	}
+	
+	
 	
 	//==================//
 	// debugger methods //
@@ -220,6 +590,15 @@ public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 	
 	
 	
+	public void addDebugMenuStringsToList(List<String> messageList)
+	{
+		messageList.add("Unsaved Updates: " + F3Screen.NUMBER_FORMAT.format(this.unsavedDataSourceByPos.size()) 
+				+ ", saved " + F3Screen.NUMBER_FORMAT.format(this.savedCountRef.get()) 
+				+ ", coalesced " + F3Screen.NUMBER_FORMAT.format(this.coalescedUpdateCountRef.get()));
+	}
+	
+	
+	
 	//===========//
 	// overrides //
 	//===========//
@@ -234,11 +613,66 @@ public class FullDataUpdaterV2 implements IDebugRenderable, AutoCloseable
 				.forEach((pos, updateCountRef) -> { renderer.renderBox(new DebugRenderer.Box(pos, -32f, 80f + (updateCountRef.get() * 16f), 0.20f, Color.WHITE)); });
 	}
 	
+	/** Saves any unsaved data sources. */
 	@Override
 	public void close()
 	{
 		this.isShutdownRef.set(true);
+		
+		UPDATER_SET.removeIf((updaterRef) ->
+		{
+			FullDataUpdaterV2 updater = updaterRef.get();
+			return updater != null && updater.equals(this);
+		});
+		
+		this.flush();
+		
+		// anything that still couldn't be saved would otherwise leak its pooled arrays
+		for (Long pos : this.unsavedDataSourceByPos.keySet())
+		{
+			ReentrantLock updateLock = this.updateLockProvider.getLock(pos);
+			try
+			{
+				updateLock.lock();
+				
+				UnsavedDataSource unsavedDataSource = this.unsavedDataSourceByPos.remove(pos);
+				if (unsavedDataSource != null)
+				{
+					LOGGER.warn("Unable to save pos ["+DhSectionPos.toString(pos)+"] before shutting down, its latest updates will be lost.");
+					unsavedDataSource.dataSource.close();
+				}
+			}
+			finally
+			{
+				updateLock.unlock();
+			}
+		}
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	private static class UnsavedDataSource
+	{
+		@NotNull
+		public final FullDataSourceV2 dataSource;
+		/** 
+		 * the unix millisecond time of the first update since this data source was last saved,
+		 * measuring from the first update means constantly changing data is still saved regularly
+		 */
+		public final long firstUpdateTimeMs;
+		
+		
+		public UnsavedDataSource(@NotNull FullDataSourceV2 dataSource)
+		{
+			this.dataSource = dataSource;
+			this.firstUpdateTimeMs = System.currentTimeMillis();
+		}
 	}
 	
 	
+	
 }
@@ -0,0 +1,304 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.file.fullDatafile.V2;
+
+import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
+import com.seibel.distanthorizons.core.config.Config;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.sql.dto.FullDataSourceV2DTO;
+import com.seibel.distanthorizons.core.sql.dto.ZstdDictionaryDTO;
+import com.seibel.distanthorizons.core.sql.repo.FullDataSourceV2Repo;
+import com.seibel.distanthorizons.core.sql.repo.ZstdDictionaryRepo;
+import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
+import com.seibel.distanthorizons.core.util.objects.dataStreams.ZstdDictionary;
+import com.seibel.distanthorizons.core.util.threading.ThreadPoolUtil;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads and trains the {@link ZstdDictionary}'s used by {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY}. <br><br>
+ * 
+ * Each level gets its own dictionary, trained in the background from a random sample
+ * of that level's existing data sources the first time one is needed.
+ * Until then data is written using {@link EDhApiDataCompressionMode#Z_STD_BLOCK}. <br><br>
+ * 
+ * Every dictionary that was ever trained for a level is loaded on startup
+ * so data sources compressed with older dictionaries can still be read.
+ * 
+ * @see ZstdDictionaryRepo
+ */
+public class FullDataZstdDictionaryHandlerV2 implements AutoCloseable
+{
+	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
+	
+	/** how many data sources are sampled when training, each contributes up to 7 data blobs */
+	public static final int TRAINING_DATA_SOURCE_COUNT = 1_024;
+	/** with fewer blobs than this the dictionary would be too specific to the few sections it was trained on */
+	public static final int MIN_TRAINING_BLOB_COUNT = 1_000;
+	/** how long to wait before trying again if there wasn't enough data to train with */
+	private static final long TRAINING_RETRY_DELAY_IN_MS = TimeUnit.MINUTES.toMillis(5);
+	
+	
+	private final ZstdDictionaryRepo repo;
+	private final FullDataSourceV2Repo fullDataRepo;
+	private final String levelId;
+	
+	/** the newest dictionary, used for all new data. Null until a dictionary has been trained. */
+	@Nullable
+	private volatile ZstdDictionary currentDictionary = null;
+	/** every dictionary this level has registered, so they can be unregistered when the level closes. Guarded by itself. */
+	private final ArrayList<ZstdDictionary> registeredDictionaries = new ArrayList<>();
+	
+	private final AtomicBoolean trainingRunningRef = new AtomicBoolean(false);
+	private volatile long nextTrainingAttemptUnixDateTime = 0;
+	private volatile boolean isShutdown = false;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public FullDataZstdDictionaryHandlerV2(@NotNull ZstdDictionaryRepo repo, @NotNull FullDataSourceV2Repo fullDataRepo, String levelId)
+	{
+		this.repo = repo;
+		this.fullDataRepo = fullDataRepo;
+		this.levelId = levelId;
+		
+		// ordered oldest first, so the last one loaded will be the newest
+		List<ZstdDictionaryDTO> dtoList = this.repo.getAll();
+		for (ZstdDictionaryDTO dto : dtoList)
+		{
+			try
+			{
+				ZstdDictionary dictionary = new ZstdDictionary(dto.id, dto.dictionaryBytes);
+				this.register(dictionary);
+				this.currentDictionary = dictionary;
+			}
+			catch (RuntimeException e)
+			{
+				// any data compressed with this dictionary will be treated as corrupt
+				LOGGER.error("Unable to load Zstd dictionary ["+dto.id+"] for level ["+this.levelId+"], error: ["+e.getMessage()+"].", e);
+			}
+		}
+		
+		LOGGER.debug("Loaded ["+dtoList.size()+"] Zstd dictionaries for level ["+this.levelId+"].");
+	}
+	
+	
+	
+	//=========//
+	// getters //
+	//=========//
+	
+	/** 
+	 * Starts training a dictionary in the background if the config uses 
+	 * {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY} and none exists yet.
+	 * 
+	 * @return null if the config isn't set to {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY} 
+	 *          or no dictionary has been trained yet.
+	 */
+	@Nullable
+	public ZstdDictionary getDictionaryForWriting()
+	{
+		if (Config.Common.LodBuilding.dataCompression.get() != EDhApiDataCompressionMode.Z_STD_DICTIONARY)
+		{
+			return null;
+		}
+		
+		ZstdDictionary dictionary = this.currentDictionary;
+		if (dictionary == null)
+		{
+			this.tryStartTraining();
+		}
+		return dictionary;
+	}
+	
+	
+	
+	//==========//
+	// training //
+	//==========//
+	
+	private void tryStartTraining()
+	{
+		if (this.isShutdown 
+			|| System.currentTimeMillis() < this.nextTrainingAttemptUnixDateTime
+			|| !this.trainingRunningRef.compareAndSet(false, true))
+		{
+			return;
+		}
+		
+		AbstractExecutorService executor = ThreadPoolUtil.getFileHandlerExecutor();
+		if (executor == null || executor.isTerminated())
+		{
+			this.trainingRunningRef.set(false);
+			return;
+		}
+		
+		try
+		{
+			executor.execute(this::trainDictionary);
+		}
+		catch (RejectedExecutionException ignore)
+		{
+			// the thread pool was probably shut down because it's size is being changed, 
+			// we'll try again next time a dictionary is requested
+			this.trainingRunningRef.set(false);
+		}
+	}
+	
+	private void trainDictionary()
+	{
+		try
+		{
+			// samples are decompressed using whatever mode they were stored with
+			ArrayList<byte[]> samples = new ArrayList<>();
+			int totalSampleSizeInBytes = 0;
+			
+			LongArrayList positions = this.fullDataRepo.getRandomPositions(TRAINING_DATA_SOURCE_COUNT);
+			for (int i = 0; i < positions.size() && totalSampleSizeInBytes < ZstdDictionary.MAX_TOTAL_SAMPLE_SIZE_IN_BYTES; i++)
+			{
+				if (this.isShutdown)
+				{
+					return;
+				}
+				
+				try (FullDataSourceV2DTO dto = this.fullDataRepo.getByKey(positions.getLong(i)))
+				{
+					if (dto == null)
+					{
+						continue;
+					}
+					
+					for (byte[] blob : dto.getUncompressedBlobs())
+					{
+						samples.add(blob);
+						totalSampleSizeInBytes += blob.length;
+					}
+				}
+				catch (IOException | DataCorruptedException e)
+				{
+					// corrupt data will be handled when it's loaded normally,
+					// it just shouldn't be used for training
+				}
+			}
+			
+			if (samples.size() < MIN_TRAINING_BLOB_COUNT)
+			{
+				LOGGER.debug("Not enough data to train a Zstd dictionary for level ["+this.levelId+"], found ["+samples.size()+"/"+MIN_TRAINING_BLOB_COUNT+"] data blobs.");
+				this.nextTrainingAttemptUnixDateTime = System.currentTimeMillis() + TRAINING_RETRY_DELAY_IN_MS;
+				return;
+			}
+			
+			ZstdDictionary dictionary = ZstdDictionary.train(samples);
+			if (dictionary == null || this.isShutdown)
+			{
+				this.nextTrainingAttemptUnixDateTime = System.currentTimeMillis() + TRAINING_RETRY_DELAY_IN_MS;
+				return;
+			}
+			
+			// the dictionary must be saved before it's used,
+			// otherwise anything compressed with it would be unreadable after a restart
+			this.repo.save(new ZstdDictionaryDTO(dictionary.id, dictionary.dictionaryBytes, samples.size(), System.currentTimeMillis()));
+			if (!this.repo.existsWithKey(dictionary.id))
+			{
+				// can happen if the database was closed while saving
+				return;
+			}
+			
+			if (!this.register(dictionary))
+			{
+				// the level was closed while training
+				return;
+			}
+			this.currentDictionary = dictionary;
+			LOGGER.info("Trained Zstd dictionary ["+dictionary.id+"] for level ["+this.levelId+"] using ["+samples.size()+"] data blobs.");
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("Unexpected error training Zstd dictionary for level ["+this.levelId+"], error: ["+e.getMessage()+"].", e);
+			this.nextTrainingAttemptUnixDateTime = System.currentTimeMillis() + TRAINING_RETRY_DELAY_IN_MS;
+		}
+		finally
+		{
+			this.trainingRunningRef.set(false);
+		}
+	}
+	
+	
+	
+	//==============//
+	// registration //
+	//==============//
+	
+	/** @return false if this handler has been closed and the dictionary wasn't registered */
+	private boolean register(ZstdDictionary dictionary)
+	{
+		synchronized (this.registeredDictionaries)
+		{
+			if (this.isShutdown)
+			{
+				return false;
+			}
+			
+			dictionary.register();
+			this.registeredDictionaries.add(dictionary);
+			return true;
+		}
+	}
+	
+	
+	
+	//================//
+	// base overrides //
+	//================//
+	
+	@Override
+	public void close() 
+	{
+		synchronized (this.registeredDictionaries)
+		{
+			this.isShutdown = true;
+			
+			// the dictionary registry is static, so it would otherwise keep every level's dictionaries loaded
+			for (ZstdDictionary dictionary : this.registeredDictionaries)
+			{
+				dictionary.unregister();
+			}
+			this.registeredDictionaries.clear();
+		}
+		
+		this.repo.close(); 
+	}
+	
+	
+	
+}
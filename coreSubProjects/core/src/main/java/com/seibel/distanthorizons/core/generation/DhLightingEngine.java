@@ -20,26 +20,19 @@
 package com.seibel.distanthorizons.core.generation;
 
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
-import com.seibel.distanthorizons.core.enums.EDhDirection;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
-import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos;
-import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPosMutable;
 import com.seibel.distanthorizons.core.pos.DhChunkPos;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.render.renderer.DebugRenderer;
 import com.seibel.distanthorizons.core.util.FullDataPointUtil;
 import com.seibel.distanthorizons.core.util.LodUtil;
-import com.seibel.distanthorizons.core.wrapperInterfaces.block.IBlockStateWrapper;
 import com.seibel.distanthorizons.core.wrapperInterfaces.chunk.IChunkWrapper;
-import com.seibel.distanthorizons.core.wrapperInterfaces.misc.IMutableBlockPosWrapper;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import com.seibel.distanthorizons.core.logging.DhLogger;
 
 import java.awt.*;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -53,12 +46,10 @@ public class DhLightingEngine
 	public static final DhLightingEngine INSTANCE = new DhLightingEngine();
 	
 	/** 
-	 * Minor garbage collection optimization. <br>
-	 * Since these objects are always mutated anyway, using a {@link ThreadLocal} will allow us to
-	 * only create as many of these {@link DhBlockPos} as necessary.
+	 * Each kernel holds a few MB of flat arrays that are reused for every chunk,
+	 * using a {@link ThreadLocal} allows lighting multiple chunks at once without any locking.
 	 */
-	private static final ThreadLocal<DhBlockPosMutable> PRIMARY_BLOCK_POS_REF = ThreadLocal.withInitial(() -> new DhBlockPosMutable());
-	private static final ThreadLocal<DhBlockPosMutable> SECONDARY_BLOCK_POS_REF = ThreadLocal.withInitial(() -> new DhBlockPosMutable());
+	private static final ThreadLocal<ChunkLightingKernel> LIGHTING_KERNEL_REF = ThreadLocal.withInitial(() -> new ChunkLightingKernel());
 	
 	/** if enabled will render each block light value when the chunk lighting engine is run */
 	private static final boolean RENDER_BLOCK_LIGHT_WIREFRAME = false;
@@ -128,128 +119,29 @@ public class DhLightingEngine
 		DhChunkPos centerChunkPos = centerChunk.getChunkPos();
 		AdjacentChunkHolder adjacentChunkHolder = new AdjacentChunkHolder(centerChunk);
 		
+		// find all adjacent chunks,
+		// currently a 3x3 grid
+		for (int chunkIndex = 0; chunkIndex < nearbyChunkList.size(); chunkIndex++) // using iterators in high traffic areas can cause GC issues due to allocating a bunch of iterators, use an indexed for-loop instead
+		{
+			IChunkWrapper neighborChunk = nearbyChunkList.get(chunkIndex);
+			if (neighborChunk != null
+				// chunks outside the 3x3 grid are ignored by the holder, 
+				// only the first chunk found for each position is used
+				&& adjacentChunkHolder.getByBlockPos(neighborChunk.getMinBlockX(), neighborChunk.getMinBlockZ()) == null)
+			{
+				adjacentChunkHolder.add(neighborChunk);
+			}
+		}
+		
+		
 		// how many positions we've walked over, can be used for profiling/debugging
 		int posIterations = 0;
-			
-		// try-finally to handle the stableArray resources
-		StableLightPosStack blockLightWorldPosQueue = null;
-		StableLightPosStack skyLightWorldPosQueue = null;
+		
+		// try-finally to make sure the kernel is always reset
+		ChunkLightingKernel kernel = LIGHTING_KERNEL_REF.get();
 		try
 		{
-			blockLightWorldPosQueue = StableLightPosStack.borrowStableLightPosArray();
-			skyLightWorldPosQueue = StableLightPosStack.borrowStableLightPosArray();
-			
-			
-			
-			// generate the list of chunk pos we need,
-			// currently a 3x3 grid
-			HashSet<DhChunkPos> requestedAdjacentPositions = new HashSet<>(9);
-			for (int xOffset = -1; xOffset <= 1; xOffset++)
-			{
-				for (int zOffset = -1; zOffset <= 1; zOffset++)
-				{
-					DhChunkPos adjacentPos = new DhChunkPos(centerChunkPos.getX() + xOffset, centerChunkPos.getZ() + zOffset);
-					requestedAdjacentPositions.add(adjacentPos);
-				}
-			}
-			
-			
-			// find all adjacent chunks
-			// and get any necessary info from them
-			for (int chunkIndex = 0; chunkIndex < nearbyChunkList.size(); chunkIndex++) // using iterators in high traffic areas can cause GC issues due to allocating a bunch of iterators, use an indexed for-loop instead
-			{
-				IChunkWrapper neighborChunk = nearbyChunkList.get(chunkIndex);
-				if (neighborChunk != null 
-					&& requestedAdjacentPositions.contains(neighborChunk.getChunkPos()))
-				{
-					// remove the newly found position
-					requestedAdjacentPositions.remove(neighborChunk.getChunkPos());
-					
-					// add the adjacent chunk
-					adjacentChunkHolder.add(neighborChunk);
-					
-					// get and set the adjacent chunk's initial block lights
-					final DhBlockPosMutable relLightBlockPos = PRIMARY_BLOCK_POS_REF.get();
-					
-					
-					
-					//==================//
-					// set block lights //
-					//==================//
-					
-					if (updateBlockLight)
-					{
-						ArrayList<DhBlockPos> blockLightPosList = neighborChunk.getWorldBlockLightPosList();
-						for (int blockLightIndex = 0; blockLightIndex < blockLightPosList.size(); blockLightIndex++) // using iterators in high traffic areas can cause GC issues due to allocating a bunch of iterators, use an indexed for-loop instead
-						{
-							DhBlockPos blockLightPos = blockLightPosList.get(blockLightIndex);
-							blockLightPos.mutateToChunkRelativePos(relLightBlockPos);
-							
-							// get the light
-							IBlockStateWrapper blockState = neighborChunk.getBlockState(relLightBlockPos);
-							int lightValue = blockState.getLightEmission();
-							blockLightWorldPosQueue.push(blockLightPos.getX(), blockLightPos.getY(), blockLightPos.getZ(), lightValue);
-							
-							// set the light
-							neighborChunk.setDhBlockLight(relLightBlockPos.getX(), relLightBlockPos.getY(), relLightBlockPos.getZ(), lightValue);
-						}
-					}
-					
-					
-					
-					//================//
-					// set sky lights //
-					//================//
-					
-					// get and set the adjacent chunk's initial skylights,
-					// if the dimension has skylights
-					if (updateSkyLight 
-						&& maxSkyLight > 0)
-					{
-						IMutableBlockPosWrapper mcBlockPos = neighborChunk.getMutableBlockPosWrapper();
-						IBlockStateWrapper previousBlockState = null;
-						
-						int maxY = neighborChunk.getMaxNonEmptyHeight();
-						int minY = neighborChunk.getInclusiveMinBuildHeight();
-						
-						// get the adjacent chunk's sky lights
-						for (int relX = 0; relX < LodUtil.CHUNK_WIDTH; relX++) // relative block pos
-						{
-							for (int relZ = 0; relZ < LodUtil.CHUNK_WIDTH; relZ++)
-							{
-								// set each pos sky light all the way down until an opaque block is hit
-								for (int y = maxY; y >= minY; y--)
-								{
-									IBlockStateWrapper block = previousBlockState = neighborChunk.getBlockState(relX, y, relZ, mcBlockPos, previousBlockState);
-									if (block != null && block.getOpacity() != LodUtil.BLOCK_FULLY_TRANSPARENT)
-									{
-										// keep moving down until we find a non-transparent block
-										break;
-									}
-									
-									
-									// add sky light to the queue
-									DhBlockPos skyLightPos = new DhBlockPos(neighborChunk.getMinBlockX() + relX, y, neighborChunk.getMinBlockZ() + relZ);
-									skyLightWorldPosQueue.push(skyLightPos.getX(), skyLightPos.getY(), skyLightPos.getZ(), maxSkyLight);
-									
-									// set the chunk's sky light
-									skyLightPos.mutateToChunkRelativePos(relLightBlockPos);
-									neighborChunk.setDhSkyLight(relLightBlockPos.getX(), relLightBlockPos.getY(), relLightBlockPos.getZ(), maxSkyLight);
-								}
-							}
-						}
-					}
-				}
-				
-				
-				if (requestedAdjacentPositions.isEmpty())
-				{
-					// we found every chunk we needed, we don't need to keep iterating
-					break;
-				}
-			}
-			
-			
+			kernel.load(adjacentChunkHolder);
 			
 			// block light
 			if (updateBlockLight)
@@ -257,10 +149,15 @@ public class DhLightingEngine
 				// done to prevent a rare issue where the light values are incorrectly set to -1
 				centerChunk.clearDhBlockLighting();
 				
-				posIterations += this.propagateChunkLightPosList(blockLightWorldPosQueue, adjacentChunkHolder,
-					(neighbourChunk, relBlockPos) -> neighbourChunk.getDhBlockLight(relBlockPos.getX(), relBlockPos.getY(), relBlockPos.getZ()),
-					(neighbourChunk, relBlockPos, newLightValue) -> neighbourChunk.setDhBlockLight(relBlockPos.getX(), relBlockPos.getY(), relBlockPos.getZ(), newLightValue),
-					true);
+				kernel.seedBlockLights();
+				posIterations += kernel.propagate(true);
+				kernel.writeBack(true);
+				
+				// can be enabled if troubleshooting lighting issues
+				if (RENDER_BLOCK_LIGHT_WIREFRAME)
+				{
+					RenderDhLightValuesAsWireframe(adjacentChunkHolder, true);
+				}
 			}
 			
 			// sky light
@@ -268,10 +165,18 @@ public class DhLightingEngine
 			{
 				centerChunk.clearDhSkyLighting();
 				
-				posIterations += this.propagateChunkLightPosList(skyLightWorldPosQueue, adjacentChunkHolder,
-					(neighbourChunk, relBlockPos) -> neighbourChunk.getDhSkyLight(relBlockPos.getX(), relBlockPos.getY(), relBlockPos.getZ()),
-					(neighbourChunk, relBlockPos, newLightValue) -> neighbourChunk.setDhSkyLight(relBlockPos.getX(), relBlockPos.getY(), relBlockPos.getZ(), newLightValue),
-					false);
+				// only seed sky lights if the dimension has them
+				if (maxSkyLight > 0)
+				{
+					kernel.seedSkyLights(maxSkyLight);
+				}
+				posIterations += kernel.propagate(false);
+				kernel.writeBack(false);
+				
+				if (RENDER_SKY_LIGHT_WIREFRAME)
+				{
+					RenderDhLightValuesAsWireframe(adjacentChunkHolder, false);
+				}
 			}
 		}
 		catch (Exception e)
@@ -280,8 +185,7 @@ public class DhLightingEngine
 		}
 		finally
 		{
-			StableLightPosStack.returnStableLightPosArray(blockLightWorldPosQueue);
-			StableLightPosStack.returnStableLightPosArray(skyLightWorldPosQueue);
+			kernel.clear();
 		}
 		
 		
@@ -297,219 +201,161 @@ public class DhLightingEngine
 		return posIterations;
 	}
 	
-	/** Applies each {@link LightPos} from the queue to the given set of {@link IChunkWrapper}'s. */
-	private int propagateChunkLightPosList(
-			StableLightPosStack lightPosQueue, AdjacentChunkHolder adjacentChunkHolder,
-			IGetLightFunc getLightFunc, ISetLightFunc setLightFunc,
-			boolean propagatingBlockLights)
+	
+	
+	//======================//
+	// data source lighting //
+	//======================//
+	
+	/**
+	 * Bakes sky light into every data point in the given data source. <br><br>
+	 * 
+	 * Light is spread over flat primitive copies of the columns in three steps: <br>
+	 * 1. A vertical sweep down each column lights the transparent data points that can see the sky. <br>
+	 * 2. Horizontal relaxation passes over the whole grid spread that light sideways
+	 * and down through any transparent data points below the newly lit ones.
+	 * Each pass moves light at least one column, so at most {@link LodUtil#MAX_MC_LIGHT} passes are needed. <br>
+	 * 3. Opaque data points copy the light from the data point above them. <br><br>
+	 * 
+	 * This gives the same result as the original recursive version, except when light reaches a stack of 
+	 * transparent data points under an opaque one. There the recursive version's result depended on the 
+	 * order columns were visited in, this version doesn't and is never darker.
+	 * 
+	 * @author BuilderB0y (original recursive version)
+	 */
+	public void bakeDataSourceSkyLight(FullDataSourceV2 dataSource, int maxSkyLight)
 	{
-		// these objects are saved so they can be mutated throughout the method,
-		// this reduces the number of allocations necessary, reducing GC pressure
-		final LightPos lightPos = new LightPos(0, 0, 0, 0);
-		final DhBlockPosMutable neighbourBlockPos = PRIMARY_BLOCK_POS_REF.get();
-		final DhBlockPosMutable relNeighbourBlockPos = SECONDARY_BLOCK_POS_REF.get();
-		
-		// it doesn't matter what chunk we get the mutable block pos from
-		IMutableBlockPosWrapper mcBlockPos = null;
-		for (int i = 0; i < adjacentChunkHolder.chunkArray.length; i++)
+		// create a cache of all the IDs which are completely transparent.
+		// FullDataPointIdMap is thread-safe with locks, and is also a map lookup,
+		// and both of these things add a bit of overhead which is not necessary
+		// in this context.
+		// note: since IDs map to both biomes and blocks, there can be more than
+		// one ID which corresponds to air.
+		BitSet airIDs = new BitSet(dataSource.mapping.size());
+		for (int id = 0, size = dataSource.mapping.size(); id < size; id++)
 		{
-			IChunkWrapper chunkWrapper = adjacentChunkHolder.chunkArray[i];
-			if (chunkWrapper != null)
+			if (dataSource.mapping.getBlockStateWrapper(id).getOpacity() == 0)
 			{
-				mcBlockPos = chunkWrapper.getMutableBlockPosWrapper();
-				break;
+				airIDs.set(id, true);
 			}
 		}
-		if (mcBlockPos == null)
+		
+		
+		// flatten every column into primitive arrays,
+		// each column's data points are stored top-down starting at columnStartIndex[relX + relZ * WIDTH]
+		int[] columnStartIndex = new int[FullDataSourceV2.WIDTH * FullDataSourceV2.WIDTH + 1];
+		for (int relZ = 0; relZ < FullDataSourceV2.WIDTH; relZ++)
 		{
-			LodUtil.assertNotReach("How did we try to light a chunk with no chunks?");
+			for (int relX = 0; relX < FullDataSourceV2.WIDTH; relX++)
+			{
+				int gridIndex = relX + (relZ * FullDataSourceV2.WIDTH);
+				LongArrayList column = dataSource.getColumnAtRelPos(relX, relZ);
+				columnStartIndex[gridIndex + 1] = columnStartIndex[gridIndex] + (column != null ? column.size() : 0);
+			}
 		}
 		
-		IBlockStateWrapper previousBlockState = null;
+		int pointCount = columnStartIndex[columnStartIndex.length - 1];
+		long[] dataPoints = new long[pointCount];
+		byte[] skyLights = new byte[pointCount];
+		boolean[] transparent = new boolean[pointCount];
+		// transparent data points directly below an opaque one keep their existing light.
+		// that light is passed down the column but isn't spread sideways
+		// and the point's skyLights value only changes if it's lit brighter than that.
+		byte[] keptSkyLights = new byte[pointCount];
+		
 		
 		
-		int iterations = 0;
+		//================//
+		// vertical sweep //
+		//================//
 		
-		// update each light level
-		for (int currentLightLevel = LodUtil.MAX_MC_LIGHT; currentLightLevel >= LodUtil.MIN_MC_LIGHT; currentLightLevel--)
+		for (int relZ = 0; relZ < FullDataSourceV2.WIDTH; relZ++)
 		{
-			// Walking down from the top light level to the bottom can reduce iterating over
-			// the same positions multiple times.
-			// At best this seems to behave at roughly 2x the speed of just blindly putting light pos 
-			// in a queue and at worse slightly faster than the blind queue.
-			
-			lightPos.lightValue = currentLightLevel;
-			
-			// update each light position
-			while (!lightPosQueue.isLightLevelEmpty(currentLightLevel))
+			for (int relX = 0; relX < FullDataSourceV2.WIDTH; relX++)
 			{
-				// since we don't care about the order the positions are processed,
-				// we can grab the last position instead of the first for a slight performance increase (this way the array doesn't need to be shifted over every loop)
-				lightPosQueue.popMutate(lightPos, currentLightLevel);
-				iterations++;
-				
-				int lightValue = lightPos.lightValue;
-				
+				LongArrayList column = dataSource.getColumnAtRelPos(relX, relZ);
+				if (column == null)
+				{
+					continue;
+				}
 				
-				// propagate the lighting in each cardinal direction, IE: -x, +x, -y, +y, -z, +z
-				for (EDhDirection direction : EDhDirection.ALL) // since this is an array instead of an ArrayList this advanced for-loop shouldn't cause any GC issues
+				int startIndex = columnStartIndex[relX + (relZ * FullDataSourceV2.WIDTH)];
+				for (int index = 0, size = column.size(); index < size; index++)
 				{
-					lightPos.mutateOffset(direction, neighbourBlockPos);
-					neighbourBlockPos.mutateToChunkRelativePos(relNeighbourBlockPos);
-					
-					
-					// only continue if the light position is inside one of our chunks
-					IChunkWrapper neighbourChunk = adjacentChunkHolder.getByBlockPos(neighbourBlockPos.getX(), neighbourBlockPos.getZ());
-					if (neighbourChunk == null)
-					{
-						// the light pos is outside our generator's range, ignore it
-						continue;
-					}
-					
-					if (relNeighbourBlockPos.getY() < neighbourChunk.getMinNonEmptyHeight()
-						|| relNeighbourBlockPos.getY() >= neighbourChunk.getExclusiveMaxBuildHeight())
-					{
-						// the light pos is outside the chunk's min/max height,
-						// this can happen if given a chunk that hasn't finished generating
-						continue;
-					}
-					
-					
-					int currentBlockLight = getLightFunc.getLight(neighbourChunk, relNeighbourBlockPos);
-					if (currentBlockLight >= (lightValue - 1))
-					{
-						// short circuit for when the light value at this position
-						// is already greater-than what we could set it
-						continue;
-					}
-					
+					int pointIndex = startIndex + index;
+					long dataPoint = column.getLong(index);
+					dataPoints[pointIndex] = dataPoint;
+					transparent[pointIndex] = airIDs.get(FullDataPointUtil.getId(dataPoint));
 					
-					IBlockStateWrapper neighbourBlockState = neighbourChunk.getBlockState(relNeighbourBlockPos, mcBlockPos, previousBlockState);
-					previousBlockState = neighbourBlockState;
-					
-					// Math.max(1, ...) is used so that the propagated light level always drops by at least 1, preventing infinite cycles.
-					int targetLightLevel = lightValue - Math.max(1, neighbourBlockState.getOpacity());
-					if (targetLightLevel > currentBlockLight)
+					int skyLight = FullDataPointUtil.getSkyLight(dataPoint);
+					if (transparent[pointIndex])
 					{
-						// this position is darker than the new light value, update/set it
-						setLightFunc.setLight(neighbourChunk, relNeighbourBlockPos, targetLightLevel);
-						
-						// now that light has been propagated to this blockPos
-						// we need to queue it up so its neighbours can be propagated as well
-						lightPosQueue.push(neighbourBlockPos.getX(), neighbourBlockPos.getY(), neighbourBlockPos.getZ(), targetLightLevel);
+						if (index == 0)
+						{
+							// top-most data point in the column.
+							skyLight = maxSkyLight;
+						}
+						else if (transparent[pointIndex - 1])
+						{
+							// transparent data points don't absorb any light,
+							// so the light above can be copied as-is.
+							skyLight = Math.max(keptSkyLights[pointIndex - 1], skyLights[pointIndex - 1]);
+						}
+						else
+						{
+							// the data point above is opaque, so no light can come from above.
+							// keep the existing light, this point may still be lit sideways by the relaxation passes.
+							keptSkyLights[pointIndex] = (byte) skyLight;
+							skyLight = LodUtil.MIN_MC_LIGHT;
+						}
 					}
+					skyLights[pointIndex] = (byte) skyLight;
 				}
 			}
 		}
 		
-		for (int currentLightLevel = LodUtil.MAX_MC_LIGHT; currentLightLevel >= LodUtil.MIN_MC_LIGHT; currentLightLevel--)
-		{
-			if (!lightPosQueue.isLightLevelEmpty(currentLightLevel))
-			{
-				LodUtil.assertNotReach("Non empty light pos queue for light level ["+currentLightLevel+"] after light engine running");
-			}
-		}
-		
-		
 		
-		// can be enabled if troubleshooting lighting issues
-		if (RENDER_BLOCK_LIGHT_WIREFRAME 
-			&& propagatingBlockLights)
-		{
-			RenderDhLightValuesAsWireframe(adjacentChunkHolder, true);
-		}
-		else if (RENDER_SKY_LIGHT_WIREFRAME 
-			&& !propagatingBlockLights)
-		{
-			RenderDhLightValuesAsWireframe(adjacentChunkHolder, false);
-		}
 		
+		//=======================//
+		// horizontal relaxation //
+		//=======================//
 		
-		// propagation complete
-		return iterations;
-	}
-	
-	
-	
-	//======================//
-	// data source lighting //
-	//======================//
-	
-	/** @author BuilderB0y */
-	public void bakeDataSourceSkyLight(FullDataSourceV2 dataSource, int maxSkyLight)
-	{
-		// create a cache of all the IDs which are completely transparent.
-		// FullDataPointIdMap is thread-safe with locks, and is also a map lookup,
-		// and both of these things add a bit of overhead which is not necessary
-		// in this context.
-		// note: since IDs map to both biomes and blocks, there can be more than
-		// one ID which corresponds to air.
-		BitSet airIDs = new BitSet(dataSource.mapping.size());
-		for (int id = 0, size = dataSource.mapping.size(); id < size; id++)
+		for (int pass = 0; pass < LodUtil.MAX_MC_LIGHT; pass++)
 		{
-			if (dataSource.mapping.getBlockStateWrapper(id).getOpacity() == 0)
+			boolean lightChanged = false;
+			for (int relZ = 0; relZ < FullDataSourceV2.WIDTH; relZ++)
 			{
-				airIDs.set(id, true);
+				for (int relX = 0; relX < FullDataSourceV2.WIDTH; relX++)
+				{
+					lightChanged |= relaxDataSourceColumn(relX, relZ, columnStartIndex, dataPoints, skyLights, keptSkyLights, transparent);
+				}
+			}
+			
+			if (!lightChanged)
+			{
+				// every column is stable
+				break;
 			}
 		}
 		
 		
-		for (int z = 0; z < FullDataSourceV2.WIDTH; z++)
+		// copy the transparent data point's light back into the data source
+		for (int relZ = 0; relZ < FullDataSourceV2.WIDTH; relZ++)
 		{
-			for (int x = 0; x < FullDataSourceV2.WIDTH; x++)
+			for (int relX = 0; relX < FullDataSourceV2.WIDTH; relX++)
 			{
-				LongArrayList dataPoints = dataSource.getColumnAtRelPos(x, z);
-				if (dataPoints != null && !dataPoints.isEmpty())
+				LongArrayList column = dataSource.getColumnAtRelPos(relX, relZ);
+				if (column == null)
 				{
-					// iterate through the data points in this column top-down
-					// until we reach light level 0 in some way. at this point,
-					// no more propagation needs to be performed for this column.
-					int size = dataPoints.size();
-					for (int index = 0; index < size; index++)
-					{
-						long point = dataPoints.getLong(index);
-						// if the data point in the column is transparent,
-						// then fill it with light and then propagate 
-						// that light both horizontally and downwards.
-						if (airIDs.get(FullDataPointUtil.getId(point)))
-						{
-							int skylight;
-							if (index == 0)
-							{
-								// top-most data point in the column.
-								skylight = maxSkyLight;
-							}
-							else
-							{
-								// handle down propagation here. sort of.
-								// down propagation is also handled partially elsewhere.
-								// basically if the data point above is transparent,
-								// we copy its light level.
-								// otherwise, if the data point above is opaque,
-								// then no light can propagate downwards from it.
-								// therefore, this data point should be light level 0*
-								// and no more propagation needs to be performed for this column.
-								//
-								// *unless light propagates into it horizontally,
-								// but that is handled separately.
-								long above = dataPoints.getLong(index - 1);
-								if (airIDs.get(FullDataPointUtil.getId(above)))
-								{
-									skylight = FullDataPointUtil.getSkyLight(above);
-								}
-								else
-								{
-									continue;
-								}
-							}
-							
-							// update the data point to contain the correct starting skylight level.
-							point = FullDataPointUtil.setSkyLight(point, skylight);
-							dataPoints.set(index, point);
-							// now for the propagation.
-							this.recursivelyLightAdjacentDataPoints(dataSource, airIDs, x, z, point);
-						}
-					}
+					continue;
+				}
+				
+				int startIndex = columnStartIndex[relX + (relZ * FullDataSourceV2.WIDTH)];
+				for (int index = 0, size = column.size(); index < size; index++)
+				{
+					int pointIndex = startIndex + index;
+					int skyLight = Math.max(keptSkyLights[pointIndex], skyLights[pointIndex]);
+					column.set(index, FullDataPointUtil.setSkyLight(dataPoints[pointIndex], skyLight));
 				}
 			}
 		}
@@ -578,90 +424,106 @@ public class DhLightingEngine
 		}
 	}
 	
-	/** @author BuilderB0y */
-	public void recursivelyLightAdjacentDataPoints(
-			FullDataSourceV2 chunk,
-			BitSet airIDs,
-			int relativeX,
-			int relativeZ,
-			long dataPoint
-		)
+	/**
+	 * Pulls light into the transparent data points of the given column from the 4 adjacent columns,
+	 * then passes any newly lit data point's light down through the transparent data points directly below it.
+	 * 
+	 * @return true if any light value in the column changed
+	 */
+	private static boolean relaxDataSourceColumn(
+			int relX, int relZ, 
+			int[] columnStartIndex, long[] dataPoints, byte[] skyLights, byte[] keptSkyLights, boolean[] transparent)
 	{
-		int lightLevel = FullDataPointUtil.getSkyLight(dataPoint);
-		// early exit condition:
-		// in this case, propagating light is guaranteed to be 0 at adjacent positions,
-		// and therefore we do not need to waste time propagating it.
-		if (lightLevel <= 1)
+		int gridIndex = relX + (relZ * FullDataSourceV2.WIDTH);
+		int startIndex = columnStartIndex[gridIndex];
+		int endIndex = columnStartIndex[gridIndex + 1];
+		if (startIndex == endIndex)
 		{
-			return;
+			return false;
 		}
 		
 		
-		
-		int minY = FullDataPointUtil.getBottomY(dataPoint);
-		int maxY = FullDataPointUtil.getHeight(dataPoint) + minY;
-		// try to propagate in all 4 directions.
+		boolean lightChanged = false;
 		for (int offsetIndex = 0; offsetIndex < ADJACENT_DIRECTION_OFFSETS.length; )
 		{
-			int adjacentX = relativeX + ADJACENT_DIRECTION_OFFSETS[offsetIndex++];
-			int adjacentZ = relativeZ + ADJACENT_DIRECTION_OFFSETS[offsetIndex++];
+			int adjacentX = relX + ADJACENT_DIRECTION_OFFSETS[offsetIndex++];
+			int adjacentZ = relZ + ADJACENT_DIRECTION_OFFSETS[offsetIndex++];
+			if (adjacentX < 0 || adjacentX >= FullDataSourceV2.WIDTH || adjacentZ < 0 || adjacentZ >= FullDataSourceV2.WIDTH)
+			{
+				continue;
+			}
 			
-			// check if the adjacent position is within the bounds of this data source...
-			if (adjacentX >= 0 && adjacentX < FullDataSourceV2.WIDTH && adjacentZ >= 0 && adjacentZ < FullDataSourceV2.WIDTH)
+			int adjacentGridIndex = adjacentX + (adjacentZ * FullDataSourceV2.WIDTH);
+			int adjacentIndex = columnStartIndex[adjacentGridIndex];
+			int adjacentEndIndex = columnStartIndex[adjacentGridIndex + 1];
+			
+			// both columns are sorted top-down,
+			// so every overlapping pair can be found by walking down both columns at once
+			int index = startIndex;
+			while (index < endIndex && adjacentIndex < adjacentEndIndex)
 			{
-				LongArrayList adjacentDataPoints = chunk.getColumnAtRelPos(adjacentX, adjacentZ);
-				// ...and also check to make sure we have some data points
-				// (potentially transparent ones) to propagate through in the adjacent column.
-				if (adjacentDataPoints != null)
+				long dataPoint = dataPoints[index];
+				int minY = FullDataPointUtil.getBottomY(dataPoint);
+				int maxY = FullDataPointUtil.getHeight(dataPoint) + minY;
+				
+				long adjacentDataPoint = dataPoints[adjacentIndex];
+				int adjacentMinY = FullDataPointUtil.getBottomY(adjacentDataPoint);
+				int adjacentMaxY = FullDataPointUtil.getHeight(adjacentDataPoint) + adjacentMinY;
+				
+				if (adjacentMinY >= maxY)
 				{
-					// try to find adjacent data points we can propagate into.
-					// we go top-down for this, which will be important for some
-					// later conditions.
-					int size = adjacentDataPoints.size();
-					for (int adjacentIndex = 0; adjacentIndex < size; adjacentIndex++)
-					{
-						long adjacentDataPoint = adjacentDataPoints.getLong(adjacentIndex);
-						int adjacentMinY = FullDataPointUtil.getBottomY(adjacentDataPoint);
-						int adjacentMaxY = FullDataPointUtil.getHeight(adjacentDataPoint) + adjacentMinY;
-						if (adjacentMinY >= maxY)
-						{
-							// if the adjacent data point is completely above this one,
-							// then there is no overlap between this one and the adjacent one,
-							// and therefore light cannot propagate here.
-							// try to propagate to the next data point down from the adjacent one.
-							continue;
-						}
-						else if (adjacentMaxY <= minY)
-						{
-							// if the adjacent data point is completely below this one,
-							// then it also has no overlap and can't propagate,
-							// but since we're going top-down, neither can any subsequent adjacent data points.
-							break;
-						}
-						else if (!airIDs.get(FullDataPointUtil.getId(adjacentDataPoint)))
-						{
-							// assume for now that we cannot propagate into non-transparent data points.
-							continue;
-						}
-						else
-						{
-							// now we can try to propagate.
-							int adjacentLightLevel = FullDataPointUtil.getSkyLight(adjacentDataPoint);
-							// if the resulting light level after propagation would INCREASE
-							// the light level of the adjacent data point, then propagate to it.
-							// otherwise, don't do that.
-							if (lightLevel - 1 > adjacentLightLevel)
-							{
-								adjacentDataPoint = FullDataPointUtil.setSkyLight(adjacentDataPoint, lightLevel - 1);
-								adjacentDataPoints.set(adjacentIndex, adjacentDataPoint);
-								// if propagation succeeded, recursively propagate again starting at the adjacent data point.
-								this.recursivelyLightAdjacentDataPoints(chunk, airIDs, adjacentX, adjacentZ, adjacentDataPoint);
-							}
-						}
-					}
+					// the adjacent data point is completely above this one
+					adjacentIndex++;
+					continue;
+				}
+				else if (adjacentMaxY <= minY)
+				{
+					// the adjacent data point is completely below this one
+					index++;
+					continue;
+				}
+				
+				
+				// light can only travel between transparent data points
+				// and drops by 1 for each column it moves.
+				// kept light isn't spread, but light has to be brighter than it to replace it.
+				if (transparent[index] 
+					&& transparent[adjacentIndex]
+					&& skyLights[adjacentIndex] - 1 > Math.max(keptSkyLights[index], skyLights[index]))
+				{
+					skyLights[index] = (byte) (skyLights[adjacentIndex] - 1);
+					lightChanged = true;
+				}
+				
+				// whichever data point has the higher bottom can't overlap 
+				// anything further down the other column
+				if (adjacentMinY >= minY)
+				{
+					adjacentIndex++;
+				}
+				else
+				{
+					index++;
+				}
+			}
+		}
+		
+		
+		// light passes straight down through transparent data points
+		for (int index = startIndex + 1; index < endIndex; index++)
+		{
+			if (transparent[index] && transparent[index - 1])
+			{
+				byte aboveSkyLight = (byte) Math.max(keptSkyLights[index - 1], skyLights[index - 1]);
+				if (aboveSkyLight > skyLights[index])
+				{
+					skyLights[index] = aboveSkyLight;
+					lightChanged = true;
 				}
 			}
 		}
+		
+		return lightChanged;
 	}
 	
 	
@@ -741,160 +603,4 @@ public class DhLightingEngine
 	
 	
 	
-	//================//
-	// helper classes //
-	//================//
-	
-	@FunctionalInterface
-	interface IGetLightFunc { int getLight(IChunkWrapper chunk, DhBlockPos pos); }
-	
-	@FunctionalInterface
-	interface ISetLightFunc { void setLight(IChunkWrapper chunk, DhBlockPos pos, int lightValue); }
-	
-	private static class LightPos extends DhBlockPosMutable
-	{
-		public int lightValue;
-		
-		public LightPos(int x, int y, int z, int lightValue)
-		{
-			super(x, y, z);
-			this.lightValue = lightValue;
-		}
-		
-		
-		@Override
-		public String toString() { return this.lightValue+" - ["+ this.x +", "+ this.y +", "+ this.z +"]"; }
-		
-		
-	}
-	
-	/** 
-	 * Holds all potential {@link LightPos} objects a lighting task may need.
-	 * This is done so existing {@link LightPos} objects can be repurposed instead of destroyed,
-	 * reducing garbage collector load.
-	 */
-	private static class StableLightPosStack
-	{
-		/** necessary to prevent multiple threads from modifying the cache at once */
-		private static final ReentrantLock cacheLock = new ReentrantLock();
-		private static final Queue<StableLightPosStack> lightArrayCache = new ArrayDeque<>();
-		
-		/** the index of the last item in the array, -1 if empty */
-		private int[] indexByLightLevel = new int[LodUtil.MAX_MC_LIGHT + 1];
-
-		/** x, y, z */
-		public static final int INTS_PER_LIGHT_POS = 3;
-		
-		private final IntArrayList[] lightPositionsByLightLevel = new IntArrayList[LodUtil.MAX_MC_LIGHT + 1];
-		
-		
-		public StableLightPosStack()
-		{
-			for (int i = 0; i < this.lightPositionsByLightLevel.length; i++)
-			{
-				// When tested with a normal 1.20 world James saw a maximum of 36,709 block and 2,355 sky lights,
-				// so 40,000 should be a good starting point that can contain most lighting tasks.
-				this.lightPositionsByLightLevel[i] = new IntArrayList(40_000 * INTS_PER_LIGHT_POS);
-				this.indexByLightLevel[i] = -1;
-			}
-		}
-		
-		
-		
-		//================//
-		// cache handling //
-		//================//
-		
-		private static StableLightPosStack borrowStableLightPosArray()
-		{
-			try
-			{
-				// prevent multiple threads modifying the cache at once
-				cacheLock.lock();
-				
-				return lightArrayCache.isEmpty() ? new StableLightPosStack() : lightArrayCache.remove();
-			}
-			finally
-			{
-				cacheLock.unlock();
-			}
-		}
-		
-		private static void returnStableLightPosArray(StableLightPosStack stableArray)
-		{
-			try
-			{
-				// prevent multiple threads modifying the cache at once
-				cacheLock.lock();
-				
-				if (stableArray != null)
-				{
-					lightArrayCache.add(stableArray);
-				}
-			}
-			finally
-			{
-				cacheLock.unlock();
-			}
-		}
-		
-		
-		
-		//===============//
-		// stack methods //
-		//===============//
-		
-		public boolean isLightLevelEmpty(int lightLevel) { return this.indexByLightLevel[lightLevel] == -1; }
-		//public int size() { return this.index+1; }
-		
-		public void push(int blockX, int blockY, int blockZ, int lightLevel)
-		{
-			IntArrayList lightPositions = this.lightPositionsByLightLevel[lightLevel];
-			
-			this.indexByLightLevel[lightLevel]++;
-			int subIndex = this.indexByLightLevel[lightLevel] * INTS_PER_LIGHT_POS;
-			if (subIndex < lightPositions.size())
-			{
-				lightPositions.set(subIndex, blockX);
-				lightPositions.set(subIndex + 1, blockY);
-				lightPositions.set(subIndex + 2, blockZ);
-			}
-			else
-			{
-				// add a new pos
-				lightPositions.add(blockX);
-				lightPositions.add(blockY);
-				lightPositions.add(blockZ);
-			}
-		}
-		
-		/** mutates the given {@link LightPos} to match the next {@link LightPos} in the queue. */
-		public void popMutate(LightPos pos, int lightLevel)
-		{
-			int subIndex = this.indexByLightLevel[lightLevel] * INTS_PER_LIGHT_POS;
-			IntArrayList lightPositions = this.lightPositionsByLightLevel[lightLevel];
-			
-			pos.setX(lightPositions.getInt(subIndex));
-			pos.setY(lightPositions.getInt(subIndex + 1));
-			pos.setZ(lightPositions.getInt(subIndex + 2));
-			
-			this.indexByLightLevel[lightLevel]--;
-		}
-		
-		@Override
-		public String toString() 
-		{ 
-			StringBuilder builder = new StringBuilder();
-			
-			for (int i = 0; i < this.indexByLightLevel.length; i++)
-			{
-				builder.append("light: ").append(i)
-					.append(" size: ").append(this.indexByLightLevel[i]).append("/").append(this.lightPositionsByLightLevel[i].size() / INTS_PER_LIGHT_POS).append("\n");
-			}
-			
-			return builder.toString();
-		}
-		
-	}
-	
 }
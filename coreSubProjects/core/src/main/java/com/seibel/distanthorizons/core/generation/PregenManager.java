@@ -7,49 +7,164 @@ import com.seibel.distanthorizons.core.api.internal.SharedApi;
 import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dependencyInjection.SingletonInjector;
 import com.seibel.distanthorizons.core.file.fullDatafile.GeneratedFullDataSourceProvider;
+import com.seibel.distanthorizons.core.generation.tasks.WorldGenResult;
+import com.seibel.distanthorizons.core.level.AbstractDhServerLevel;
+import com.seibel.distanthorizons.core.level.IDhClientLevel;
+import com.seibel.distanthorizons.core.level.IDhLevel;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
+import com.seibel.distanthorizons.core.sql.dto.PregenJobDTO;
+import com.seibel.distanthorizons.core.sql.repo.PregenJobRepo;
 import com.seibel.distanthorizons.core.util.FormatUtil;
 import com.seibel.distanthorizons.core.util.LodUtil;
+import com.seibel.distanthorizons.core.util.TimerUtil;
 import com.seibel.distanthorizons.core.util.objects.RollingAverage;
+import com.seibel.distanthorizons.core.world.IDhServerWorld;
 import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftSharedWrapper;
 import com.seibel.distanthorizons.core.wrapperInterfaces.world.IServerLevelWrapper;
 import com.seibel.distanthorizons.core.logging.DhLogger;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import org.jetbrains.annotations.Nullable;
 
 import java.text.MessageFormat;
 import java.time.Duration;
+import java.util.Timer;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Generates every section in a square around an origin,
+ * starting at the origin and spiraling outward. <br><br>
+ *
+ * Progress is saved to the level's database (see {@link PregenJobRepo})
+ * so a pregen continues where it left off when the level is loaded again,
+ * IE after the server restarts. <br><br>
+ *
+ * While a pregen is running throughput is favored over responsiveness: <br>
+ * - more world gen tasks are kept in progress at once <br>
+ * - database writes are batched into larger transactions <br>
+ * - generated LODs aren't re-rendered until the pregen ends <br>
+ * - world gen continues even if no players are online <br>
+ */
 public class PregenManager
 {
 	protected static final DhLogger LOGGER = new DhLoggerBuilder().build();
 	
 	private static final IMinecraftSharedWrapper MC_SERVER = SingletonInjector.INSTANCE.get(IMinecraftSharedWrapper.class);
 	
+	public static final PregenManager INSTANCE = new PregenManager();
+	
+	/** how many world gen tasks can be in progress per world gen thread while a pregen is running */
+	public static final int THROUGHPUT_MODE_IN_PROGRESS_TASKS_PER_THREAD = 2;
+	/** the minimum number of LOD saves that are written in a single transaction while a pregen is running */
+	public static final int THROUGHPUT_MODE_DATABASE_WRITE_BATCH_SIZE = 512;
+	/** the minimum time a LOD save can wait before being written while a pregen is running */
+	public static final int THROUGHPUT_MODE_DATABASE_WRITE_MAX_DELAY_IN_MS = 5_000;
+	
+	/** how many sections can be waiting on the world generator per world gen thread */
+	private static final int PENDING_SECTIONS_PER_THREAD = 4;
+	/** 
+	 * how many times a section will be queued before it's skipped, 
+	 * skipped sections are retried the next time the pregen is resumed 
+	 */
+	private static final int MAX_GENERATION_ATTEMPTS = 3;
+	/** how often the pregen checks if more sections can be queued */
+	private static final int TICK_INTERVAL_IN_MS = 1_000;
+	private static final long PROGRESS_SAVE_INTERVAL_IN_MS = TimeUnit.SECONDS.toMillis(10);
+	
+	
 	private final AtomicReference<PregenState> pregenFuture = new AtomicReference<>();
 	
 	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	private PregenManager() { }
+	
+	
+	
+	//===================//
+	// starting/stopping //
+	//===================//
+	
+	/** If this level already has a saved pregen with the same origin and radius, it will be continued. */
 	public CompletableFuture<Void> startPregen(
 			IServerLevelWrapper levelWrapper,
 			DhBlockPos2D origin,
 			int chunkRadius
 	)
 	{
-		PregenState pregenState = new PregenState(
-				(GeneratedFullDataSourceProvider) SharedApi.tryGetDhServerWorld().getLevel(levelWrapper).getFullDataProvider(),
-				DhSectionPos.convertToDetailLevel(
-						DhSectionPos.encode(LodUtil.BLOCK_DETAIL_LEVEL, origin.x, origin.z),
-						DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL
-				),
-				(int) Math.pow(Math.ceil((double) chunkRadius / 4 * 2), 2)
+		AbstractDhServerLevel level = getLoadedLevel(levelWrapper);
+		if (level == null)
+		{
+			CompletableFuture<Void> failedFuture = new CompletableFuture<>();
+			failedFuture.completeExceptionally(new IllegalStateException("Level ["+levelWrapper+"] isn't loaded."));
+			return failedFuture;
+		}
+		
+		long originSectionPos = DhSectionPos.convertToDetailLevel(
+				DhSectionPos.encode(LodUtil.BLOCK_DETAIL_LEVEL, origin.x, origin.z),
+				DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL
 		);
 		
+		int startSpiralIndex = 0;
+		PregenJobDTO savedJob = getSavedJob(level);
+		if (savedJob != null
+			&& savedJob.originPosX == DhSectionPos.getX(originSectionPos)
+			&& savedJob.originPosZ == DhSectionPos.getZ(originSectionPos)
+			&& savedJob.chunkRadius == chunkRadius)
+		{
+			LOGGER.info("Continuing previous pregen for level ["+levelWrapper+"].");
+			startSpiralIndex = savedJob.completedSpiralIndex;
+		}
+		
+		return this.startPregen(level, originSectionPos, chunkRadius, startSpiralIndex);
+	}
+	
+	/** Continues the pregen that was running when this level was last closed, if there was one. */
+	public void tryResumePregen(IServerLevelWrapper levelWrapper)
+	{
+		AbstractDhServerLevel level = getLoadedLevel(levelWrapper);
+		if (level == null)
+		{
+			return;
+		}
+		
+		PregenJobDTO savedJob = getSavedJob(level);
+		if (savedJob == null)
+		{
+			return;
+		}
+		
+		LOGGER.info("Resuming pregen for level ["+levelWrapper+"] with a radius of ["+savedJob.chunkRadius+"] chunks.");
+		long originSectionPos = DhSectionPos.encode(DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL, savedJob.originPosX, savedJob.originPosZ);
+		this.startPregen(level, originSectionPos, savedJob.chunkRadius, savedJob.completedSpiralIndex)
+			.whenComplete((result, throwable) ->
+			{
+				if (throwable == null)
+				{
+					LOGGER.info("Pregen for level ["+levelWrapper+"] is complete.");
+				}
+				else if (!(throwable instanceof CancellationException))
+				{
+					LOGGER.warn("Unable to resume pregen for level ["+levelWrapper+"], error: ["+throwable.getMessage()+"].");
+				}
+			});
+	}
+	
+	private CompletableFuture<Void> startPregen(AbstractDhServerLevel level, long originSectionPos, int chunkRadius, int startSpiralIndex)
+	{
+		PregenState pregenState = new PregenState(level, originSectionPos, chunkRadius, startSpiralIndex);
+		
 		if (!this.pregenFuture.compareAndSet(null, pregenState))
 		{
 			pregenState.completeExceptionally(new IllegalStateException("Pregen is already running."));
@@ -57,18 +172,61 @@ public class PregenManager
 		}
 		
 		pregenState.whenComplete((result, throwable) -> {
-			this.pregenFuture.set(null);
+			this.pregenFuture.compareAndSet(pregenState, null);
+			pregenState.onFinished(throwable);
 		});
 		
-		pregenState.fillPendingQueue();
+		pregenState.start();
 		return pregenState;
 	}
 	
+	/** 
+	 * Stops the pregen without removing its saved progress,
+	 * so it will be resumed the next time this level is loaded.
+	 */
+	public void pauseIfRunningForLevel(IDhLevel level)
+	{
+		PregenState pregenState = this.pregenFuture.get();
+		if (pregenState != null && pregenState.level == level)
+		{
+			pregenState.pause();
+		}
+	}
+	
+	
+	
+	//=========//
+	// getters //
+	//=========//
+	
 	public CompletableFuture<Void> getRunningPregen()
 	{
 		return this.pregenFuture.get();
 	}
 	
+	public boolean isRunning() { return this.pregenFuture.get() != null; }
+	
+	public boolean isRunningForLevel(IDhLevel level)
+	{
+		PregenState pregenState = this.pregenFuture.get();
+		return pregenState != null && pregenState.level == level;
+	}
+	
+	/** @return null if no pregen is running for the given level */
+	@Nullable
+	public DhBlockPos2D getTargetPosForLevel(IDhLevel level)
+	{
+		PregenState pregenState = this.pregenFuture.get();
+		if (pregenState == null || pregenState.level != level)
+		{
+			return null;
+		}
+		
+		return new DhBlockPos2D(
+				DhSectionPos.getCenterBlockPosX(pregenState.originSectionPos),
+				DhSectionPos.getCenterBlockPosZ(pregenState.originSectionPos));
+	}
+	
 	@Nullable
 	public String getStatusString()
 	{
@@ -82,60 +240,241 @@ public class PregenManager
 	}
 	
 	
+	
+	//================//
+	// static helpers //
+	//================//
+	
+	@Nullable
+	private static AbstractDhServerLevel getLoadedLevel(IServerLevelWrapper levelWrapper)
+	{
+		IDhServerWorld serverWorld = SharedApi.tryGetDhServerWorld();
+		if (serverWorld == null)
+		{
+			return null;
+		}
+		
+		IDhLevel level = serverWorld.getLevel(levelWrapper);
+		return (level instanceof AbstractDhServerLevel) ? (AbstractDhServerLevel) level : null;
+	}
+	
+	@Nullable
+	private static PregenJobDTO getSavedJob(AbstractDhServerLevel level)
+	{
+		if (level.pregenJobRepo == null)
+		{
+			return null;
+		}
+		
+		return level.pregenJobRepo.getByKey(PregenJobDTO.LEVEL_JOB_ID);
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
 	private static class PregenState extends CompletableFuture<Void>
 	{
+		private final AbstractDhServerLevel level;
 		private final GeneratedFullDataSourceProvider fullDataSourceProvider;
 		private final long originSectionPos;
+		private final int chunkRadius;
 		private final int sectionsToGenerate;
 		
-		private final AtomicInteger nextSectionSpiralIndex = new AtomicInteger(0);
+		private final AtomicInteger nextSectionSpiralIndex;
+		
+		private final Object progressLock = new Object();
+		/** every spiral index below this has finished, guarded by {@link PregenState#progressLock} */
+		private int completedSpiralIndex;
+		/** spiral indexes above {@link PregenState#completedSpiralIndex} that finished out of order, guarded by {@link PregenState#progressLock} */
+		private final IntOpenHashSet outOfOrderCompletedSpiralIndexes = new IntOpenHashSet();
+		/** spiral indexes that failed or expired and should be queued again, guarded by {@link PregenState#progressLock} */
+		private final IntArrayFIFOQueue retrySpiralIndexes = new IntArrayFIFOQueue();
+		/** spiral index -> failed attempt count, guarded by {@link PregenState#progressLock} */
+		private final Int2IntOpenHashMap failedAttemptCountBySpiralIndex = new Int2IntOpenHashMap();
+		/** 
+		 * The lowest spiral index that failed {@link PregenManager#MAX_GENERATION_ATTEMPTS} times,
+		 * the saved progress never goes past this so it's retried when the pregen is resumed.
+		 * Guarded by {@link PregenState#progressLock}.
+		 */
+		private int lowestSkippedFailedSpiralIndex = Integer.MAX_VALUE;
+		private final AtomicLong lastProgressSaveTime = new AtomicLong(System.currentTimeMillis());
+		
+		/** if true the saved progress will be kept when this pregen stops */
+		private volatile boolean paused = false;
+		@Nullable
+		private volatile Timer tickTimer = null;
 		
 		private final AtomicLong lastTaskFinishTime = new AtomicLong(System.currentTimeMillis());
 		private final RollingAverage averageTaskCompletionIntervalMs = new RollingAverage(1000);
 		
+		// per stage stats //
+		private final RollingAverage averageLookupTimeMs = new RollingAverage(1000);
+		private final RollingAverage averageGenerationTimeMs = new RollingAverage(1000);
+		private final AtomicInteger generatedSectionCount = new AtomicInteger(0);
+		private final AtomicInteger skippedSectionCount = new AtomicInteger(0);
+		private final AtomicInteger failedSectionCount = new AtomicInteger(0);
+		
 		private final AtomicLong lastLogTime = new AtomicLong();
 		
 		private final DynamicNumberFormat generatedRadius = new DynamicNumberFormat(3);
 		private final DynamicNumberFormat generatedPercentage = new DynamicNumberFormat(5);
 		
 		
+		/** 
+		 * section pos -> pending generation <br>
+		 * Entries should be removed with {@link PregenState#finishPendingGeneration(long, PendingGeneration, boolean)}
+		 * so a late result for an expired attempt can't remove its retry.
+		 */
 		@SuppressWarnings("DataFlowIssue")
-		private final Cache<Long, Long> pendingGenerations = CacheBuilder.newBuilder()
+		private final Cache<Long, PendingGeneration> pendingGenerations = CacheBuilder.newBuilder()
 				.expireAfterWrite(2, TimeUnit.MINUTES)
-				.<Long, Long>removalListener(removalNotification -> {
-					if (removalNotification.getCause() == RemovalCause.EXPIRED)
+				.<Long, PendingGeneration>removalListener(removalNotification -> {
+					// stopping the pregen clears the cache,
+					// those sections weren't generated so they shouldn't count as complete
+					if (this.isDone())
 					{
-						LOGGER.warn("Generation for section " + DhSectionPos.toString(removalNotification.getKey()) + " has expired!");
+						return;
 					}
 					
-					long timeSincePreviousTaskFinish = System.currentTimeMillis() - this.lastTaskFinishTime.getAndSet(System.currentTimeMillis());
-					this.averageTaskCompletionIntervalMs.add(timeSincePreviousTaskFinish);
+					PendingGeneration pendingGeneration = removalNotification.getValue();
+					if (pendingGeneration.succeeded)
+					{
+						long timeSincePreviousTaskFinish = System.currentTimeMillis() - this.lastTaskFinishTime.getAndSet(System.currentTimeMillis());
+						this.averageTaskCompletionIntervalMs.add(timeSincePreviousTaskFinish);
+						
+						PregenState.this.onSpiralIndexComplete(pendingGeneration.spiralIndex);
+					}
+					else
+					{
+						if (removalNotification.getCause() == RemovalCause.EXPIRED)
+						{
+							LOGGER.warn("Generation for section " + DhSectionPos.toString(removalNotification.getKey()) + " has expired!");
+						}
+						
+						PregenState.this.onSpiralIndexFailed(pendingGeneration.spiralIndex);
+					}
 					
 					PregenState.this.fillPendingQueue();
 				})
 				.build();
 		
 		
-		public PregenState(GeneratedFullDataSourceProvider fullDataSourceProvider, long originSectionPos, int sectionsToGenerate)
+		
+		//=============//
+		// constructor //
+		//=============//
+		
+		public PregenState(AbstractDhServerLevel level, long originSectionPos, int chunkRadius, int startSpiralIndex)
 		{
-			this.fullDataSourceProvider = fullDataSourceProvider;
+			this.level = level;
+			this.fullDataSourceProvider = (GeneratedFullDataSourceProvider) level.getFullDataProvider();
 			this.originSectionPos = originSectionPos;
-			this.sectionsToGenerate = sectionsToGenerate;
+			this.chunkRadius = chunkRadius;
+			this.sectionsToGenerate = (int) Math.pow(Math.ceil((double) chunkRadius / 4 * 2), 2);
+			
+			this.nextSectionSpiralIndex = new AtomicInteger(startSpiralIndex);
+			this.completedSpiralIndex = startSpiralIndex;
 		}
 		
 		
-		private void fillPendingQueue()
+		
+		//===================//
+		// starting/stopping //
+		//===================//
+		
+		private void start()
+		{
+			// saved right away so the pregen can be resumed even if the server stops before the first progress save
+			this.trySaveProgress();
+			
+			if (this.completedSpiralIndex >= this.sectionsToGenerate)
+			{
+				this.complete(null);
+				return;
+			}
+			
+			Timer timer = TimerUtil.CreateTimer("Pregen Ticker");
+			this.tickTimer = timer;
+			timer.scheduleAtFixedRate(TimerUtil.createTimerTask(this::tick), 0, TICK_INTERVAL_IN_MS);
+		}
+		
+		private void pause()
 		{
-			while (!this.isDone() && this.pendingGenerations.size() < Config.Common.MultiThreading.numberOfThreads.get())
+			this.paused = true;
+			this.cancel(false);
+		}
+		
+		/** called after this future completes, either successfully or not */
+		private void onFinished(@Nullable Throwable throwable)
+		{
+			Timer timer = this.tickTimer;
+			if (timer != null)
 			{
-				int nextSpiralIndex = this.nextSectionSpiralIndex.getAndIncrement();
-				if (nextSpiralIndex > this.sectionsToGenerate)
+				timer.cancel();
+			}
+			this.pendingGenerations.invalidateAll();
+			
+			try
+			{
+				PregenJobRepo repo = this.level.pregenJobRepo;
+				if (this.paused)
 				{
-					this.complete(null);
-					return;
+					this.trySaveProgress();
+					LOGGER.info("Pregen paused, "+this.getStatusString());
+				}
+				else if (throwable == null || throwable instanceof CancellationException)
+				{
+					// the pregen either finished or was stopped, there's nothing to resume.
+					// Keeping the job when sections were skipped would resume it on every load
+					// and it would never finish if those sections always fail.
+					if (repo != null)
+					{
+						repo.deleteWithKey(PregenJobDTO.LEVEL_JOB_ID);
+					}
+					
+					if (throwable == null && this.hasSkippedFailedSections())
+					{
+						LOGGER.warn("Pregen finished but some sections failed to generate, "
+								+ "run the same pregen again to retry them (generated sections will be skipped). "+this.getStatusString());
+					}
 				}
+				else
+				{
+					// keep the progress so the pregen can be continued later
+					this.trySaveProgress();
+				}
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("Unable to update saved pregen progress, error: ["+e.getMessage()+"].", e);
+			}
+			
+			
+			// LODs weren't re-rendered while the pregen was running
+			if (!this.paused && this.level instanceof IDhClientLevel)
+			{
+				((IDhClientLevel) this.level).clearRenderCache();
+			}
+		}
+		
+		
+		
+		//=========//
+		// ticking //
+		//=========//
+		
+		private void tick()
+		{
+			try
+			{
+				// expired entries are only removed when the cache is modified or cleaned up
+				this.pendingGenerations.cleanUp();
 				
-				long nextSectionPos = this.sectionPosOnSpiral(nextSpiralIndex);
+				// the world generator may not have been running when we last tried
+				this.fillPendingQueue();
 				
 				long lastLogTime = this.lastLogTime.get();
 				if (System.currentTimeMillis() - lastLogTime >= TimeUnit.SECONDS.toMillis(Config.Common.WorldGenerator.generationProgressDisplayIntervalInSeconds.get())
@@ -144,29 +483,100 @@ public class PregenManager
 					LOGGER.info(this.getStatusString());
 				}
 				
-				this.pendingGenerations.put(nextSectionPos, System.currentTimeMillis());
+				long lastSaveTime = this.lastProgressSaveTime.get();
+				if (System.currentTimeMillis() - lastSaveTime >= PROGRESS_SAVE_INTERVAL_IN_MS
+						&& this.lastProgressSaveTime.compareAndSet(lastSaveTime, System.currentTimeMillis()))
+				{
+					this.trySaveProgress();
+				}
+			}
+			catch (Exception e)
+			{
+				// an uncaught exception would stop the timer
+				LOGGER.error("Unexpected pregen error: ["+e.getMessage()+"].", e);
+			}
+		}
+		
+		private void fillPendingQueue()
+		{
+			int maxPendingCount = PENDING_SECTIONS_PER_THREAD * Math.max(Config.Common.MultiThreading.numberOfThreads.get(), 1);
+			while (!this.isDone() && this.pendingGenerations.size() < maxPendingCount)
+			{
+				// the world generator may not be running yet or may already be busy,
+				// the ticker will try again later
+				if (!this.fullDataSourceProvider.canQueueRetrieval())
+				{
+					return;
+				}
+				
+				// failed sections are retried before moving further out
+				int nextSpiralIndex = this.pollRetrySpiralIndex();
+				if (nextSpiralIndex == -1)
+				{
+					nextSpiralIndex = this.nextSectionSpiralIndex.get();
+					if (nextSpiralIndex >= this.sectionsToGenerate)
+					{
+						// everything has been queued,
+						// the pregen will complete once the remaining sections finish
+						return;
+					}
+					if (!this.nextSectionSpiralIndex.compareAndSet(nextSpiralIndex, nextSpiralIndex + 1))
+					{
+						// another thread queued this index
+						continue;
+					}
+				}
+				
+				long nextSectionPos = this.sectionPosOnSpiral(nextSpiralIndex);
+				
+				PendingGeneration pendingGeneration = new PendingGeneration(nextSpiralIndex);
+				this.pendingGenerations.put(nextSectionPos, pendingGeneration);
+				long lookupStartTimeMs = System.currentTimeMillis();
 				this.fullDataSourceProvider.getAsync(nextSectionPos)
 					.thenAccept(fullDataSource ->
 				{
+					this.averageLookupTimeMs.add(System.currentTimeMillis() - lookupStartTimeMs);
+					
 					// Under the new design, existence in database = complete section.
 					// If we got a non-empty data source, it's fully generated.
 					if (fullDataSource != null && !fullDataSource.isEmpty)
 					{
-						this.pendingGenerations.invalidate(fullDataSource.getPos());
+						this.skippedSectionCount.incrementAndGet();
+						this.finishPendingGeneration(nextSectionPos, pendingGeneration, true);
 					}
 					else
 					{
 						long posToGenerate = fullDataSource != null ? fullDataSource.getPos() : nextSectionPos;
-						this.fullDataSourceProvider.queuePositionForRetrieval(posToGenerate).thenAccept(result -> {
-							if (!result.success)
+						long generationStartTimeMs = System.currentTimeMillis();
+						CompletableFuture<WorldGenResult> generationFuture = this.fullDataSourceProvider.queuePositionForRetrieval(posToGenerate);
+						if (generationFuture == null)
+						{
+							// the world generator was stopped after canQueueRetrieval() was checked
+							this.failedSectionCount.incrementAndGet();
+							LOGGER.warn("Unable to queue section " + DhSectionPos.toString(posToGenerate) + " for generation, the world generator isn't running.");
+							this.finishPendingGeneration(nextSectionPos, pendingGeneration, false);
+						}
+						else
+						{
+							generationFuture.whenComplete((result, throwable) -> 
 							{
-								LOGGER.warn("Failed to generate section " + DhSectionPos.toString(result.pos));
-							}
-
-							this.pendingGenerations.invalidate(result.pos);
-						});
+								boolean success = (throwable == null && result.success);
+								if (!success)
+								{
+									this.failedSectionCount.incrementAndGet();
+									LOGGER.warn("Failed to generate section " + DhSectionPos.toString(posToGenerate));
+								}
+								else
+								{
+									this.generatedSectionCount.incrementAndGet();
+									this.averageGenerationTimeMs.add(System.currentTimeMillis() - generationStartTimeMs);
+								}
+								
+								this.finishPendingGeneration(nextSectionPos, pendingGeneration, success);
+							});
+						}
 					}
-
+					
 					if (fullDataSource != null)
 					{
 						fullDataSource.close();
@@ -175,24 +585,146 @@ public class PregenManager
 			}
 		}
 		
+		
+		
+		/** 
+		 * Only removes the given pending generation, 
+		 * if it already expired and was re-queued the newer attempt is left alone. 
+		 */
+		private void finishPendingGeneration(long sectionPos, PendingGeneration pendingGeneration, boolean success)
+		{
+			pendingGeneration.succeeded = success;
+			this.pendingGenerations.asMap().remove(sectionPos, pendingGeneration);
+		}
+		
+		/** @return -1 if there aren't any spiral indexes waiting to be retried */
+		private int pollRetrySpiralIndex()
+		{
+			synchronized (this.progressLock)
+			{
+				return this.retrySpiralIndexes.isEmpty() ? -1 : this.retrySpiralIndexes.dequeueInt();
+			}
+		}
+		
+		
+		
+		//==========//
+		// progress //
+		//==========//
+		
+		/** 
+		 * Failed and expired sections are re-queued so they don't advance the saved progress. <br>
+		 * Sections that keep failing are skipped so the pregen can finish, 
+		 * but the saved progress stays below them so they're retried when the pregen is resumed.
+		 */
+		private void onSpiralIndexFailed(int spiralIndex)
+		{
+			synchronized (this.progressLock)
+			{
+				int failedAttemptCount = this.failedAttemptCountBySpiralIndex.addTo(spiralIndex, 1) + 1;
+				if (failedAttemptCount < MAX_GENERATION_ATTEMPTS)
+				{
+					this.retrySpiralIndexes.enqueue(spiralIndex);
+					return;
+				}
+				
+				this.failedAttemptCountBySpiralIndex.remove(spiralIndex);
+				this.lowestSkippedFailedSpiralIndex = Math.min(this.lowestSkippedFailedSpiralIndex, spiralIndex);
+			}
+			
+			LOGGER.warn("Section " + DhSectionPos.toString(this.sectionPosOnSpiral(spiralIndex)) + " failed to generate [" + MAX_GENERATION_ATTEMPTS + "] times, it will be retried if the pregen is resumed or run again.");
+			this.onSpiralIndexComplete(spiralIndex);
+		}
+		
+		private boolean hasSkippedFailedSections()
+		{
+			synchronized (this.progressLock)
+			{
+				return this.lowestSkippedFailedSpiralIndex != Integer.MAX_VALUE;
+			}
+		}
+		
+		private void onSpiralIndexComplete(int spiralIndex)
+		{
+			boolean allSectionsComplete;
+			synchronized (this.progressLock)
+			{
+				this.outOfOrderCompletedSpiralIndexes.add(spiralIndex);
+				while (this.outOfOrderCompletedSpiralIndexes.remove(this.completedSpiralIndex))
+				{
+					this.completedSpiralIndex++;
+				}
+				
+				allSectionsComplete = this.completedSpiralIndex >= this.sectionsToGenerate;
+			}
+			
+			if (allSectionsComplete)
+			{
+				this.complete(null);
+			}
+		}
+		
+		/** 
+		 * Only the completed spiral index is saved, 
+		 * so any sections that finished out of order will be checked again when resuming.
+		 * Since those sections are already in the database they will be skipped quickly.
+		 */
+		private void trySaveProgress()
+		{
+			PregenJobRepo repo = this.level.pregenJobRepo;
+			if (repo == null)
+			{
+				return;
+			}
+			
+			int completedSpiralIndex;
+			synchronized (this.progressLock)
+			{
+				// skipped sections haven't been generated, so they need to be checked again when resuming
+				completedSpiralIndex = Math.min(this.completedSpiralIndex, this.lowestSkippedFailedSpiralIndex);
+			}
+			
+			repo.save(new PregenJobDTO(
+					DhSectionPos.getX(this.originSectionPos), DhSectionPos.getZ(this.originSectionPos),
+					this.chunkRadius, completedSpiralIndex));
+		}
+		
 		public String getStatusString()
 		{
-			this.generatedRadius.update(Math.sqrt(this.nextSectionSpiralIndex.get()) / 2 * 4);
-			this.generatedPercentage.update((double) this.nextSectionSpiralIndex.get() / this.sectionsToGenerate);
+			int completedSpiralIndex;
+			synchronized (this.progressLock)
+			{
+				completedSpiralIndex = this.completedSpiralIndex;
+			}
+			
+			this.generatedRadius.update(Math.sqrt(completedSpiralIndex) / 2 * 4);
+			this.generatedPercentage.update((double) completedSpiralIndex / this.sectionsToGenerate);
 			
 			double chunksToGenerate = Math.ceil(Math.sqrt(this.sectionsToGenerate) / 2 * 4 * 10) / 10; // ceil to nearest 0.1
 			int chunkRatePerSecond = (int) (1000 / this.averageTaskCompletionIntervalMs.getAverage() * 4 * 4);
-			double etaMs = this.averageTaskCompletionIntervalMs.getAverage() * (this.sectionsToGenerate - this.nextSectionSpiralIndex.get());
+			double etaMs = this.averageTaskCompletionIntervalMs.getAverage() * (this.sectionsToGenerate - completedSpiralIndex);
 			
-			return MessageFormat.format("Generated radius: {0,number,#.###} / {1,number,#.#} chunks ({2} cps, {3,number,#.###%}), ETA: {4}",
+			return MessageFormat.format("Generated radius: {0,number,#.###} / {1,number,#.#} chunks ({2} cps, {3,number,#.###%}), ETA: {4}, " +
+							"sections generated/skipped/failed: {5}/{6}/{7}, avg lookup: {8,number,#.#}ms, avg generation: {9,number,#.#}ms",
 					this.generatedRadius.getValue(),
 					chunksToGenerate,
 					chunkRatePerSecond,
 					this.generatedPercentage.getValue(),
-					FormatUtil.formatEta(Duration.ofMillis((long) etaMs))
+					FormatUtil.formatEta(Duration.ofMillis((long) etaMs)),
+					this.generatedSectionCount.get(),
+					this.skippedSectionCount.get(),
+					this.failedSectionCount.get(),
+					this.averageLookupTimeMs.getAverage(),
+					this.averageGenerationTimeMs.getAverage()
 			);
 		}
 		
+		
+		
+		//=========//
+		// helpers //
+		//=========//
+		
 		private long sectionPosOnSpiral(int index)
 		{
 			if (index == 0)
@@ -227,6 +759,15 @@ public class PregenManager
 		
 	}
 	
+	private static class PendingGeneration
+	{
+		public final int spiralIndex;
+		/** set before the generation is removed from the pending cache */
+		public volatile boolean succeeded = false;
+		
+		public PendingGeneration(int spiralIndex) { this.spiralIndex = spiralIndex; }
+	}
+	
 	private static class DynamicNumberFormat
 	{
 		private final int maxPrecision;
@@ -31,12 +31,12 @@ import com.seibel.distanthorizons.core.generation.tasks.InProgressWorldGenTaskGr
 import com.seibel.distanthorizons.core.generation.tasks.WorldGenResult;
 import com.seibel.distanthorizons.core.generation.tasks.WorldGenTask;
 import com.seibel.distanthorizons.core.generation.tasks.WorldGenTaskGroup;
+import com.seibel.distanthorizons.core.generation.tasks.WorldGenTaskSpatialIndex;
 import com.seibel.distanthorizons.core.level.IDhServerLevel;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
 import com.seibel.distanthorizons.core.pos.DhChunkPos;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
-import com.seibel.distanthorizons.core.pos.Pos2D;
 import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dataObjects.transformers.LodDataBuilder;
 import com.seibel.distanthorizons.core.render.renderer.DebugRenderer;
@@ -56,6 +56,7 @@ import com.seibel.distanthorizons.core.wrapperInterfaces.IWrapperFactory;
 import com.seibel.distanthorizons.core.wrapperInterfaces.chunk.IChunkWrapper;
 import com.seibel.distanthorizons.coreapi.util.BitShiftUtil;
 import com.seibel.distanthorizons.core.logging.DhLogger;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 import java.awt.*;
 import java.util.*;
@@ -68,18 +69,9 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
 	private static final IWrapperFactory WRAPPER_FACTORY = SingletonInjector.INSTANCE.get(IWrapperFactory.class);
 
-	/**
-	 * Distance bucket boundaries in sections (Chebyshev distance).
-	 * Bucket 0: [0, 8), Bucket 1: [8, 16), Bucket 2: [16, 32),
-	 * Bucket 3: [32, 64), Bucket 4: [64, 128), Bucket 5: [128, infinity)
-	 */
-	private static final int[] BUCKET_BOUNDARIES = {8, 16, 32, 64, 128};
-	private static final int BUCKET_COUNT = BUCKET_BOUNDARIES.length + 1;
-	/** Rebucket all tasks when player moves more than this many sections */
-	private static final int REBUCKET_MOVEMENT_THRESHOLD = 16;
 	/**
 	 * Maximum number of waiting tasks before distance-aware eviction kicks in.
-	 * When queue size exceeds this, new tasks will evict further tasks.
+	 * When queue size exceeds this, new tasks will evict the furthest task if it is further than the new one.
 	 */
 	private static final int MAX_WAITING_TASKS_BEFORE_EVICTION = 500;
 
@@ -87,19 +79,8 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 	private final IDhApiWorldGenerator generator;
 	private final IDhServerLevel level;
 
-	/** contains the positions that need to be generated */
-	private final ConcurrentHashMap<Long, WorldGenTask> waitingTasks = new ConcurrentHashMap<>();
-
-	/**
-	 * Distance-based buckets for prioritized task selection.
-	 * Each bucket contains task positions within a distance range.
-	 * Lower bucket indices = closer to player = higher priority.
-	 */
-	@SuppressWarnings("unchecked")
-	private final ConcurrentHashMap<Long, WorldGenTask>[] distanceBuckets = new ConcurrentHashMap[BUCKET_COUNT];
-
-	/** Last position used for bucketing, to detect when rebucketing is needed */
-	private volatile Pos2D lastBucketTargetPos = null;
+	/** contains the positions that need to be generated, sorted spatially for prioritized task selection */
+	private final WorldGenTaskSpatialIndex waitingTasks = new WorldGenTaskSpatialIndex();
 
 	private final ConcurrentHashMap<Long, InProgressWorldGenTaskGroup> inProgressGenTasksByLodPos = new ConcurrentHashMap<>();
 
@@ -143,193 +124,12 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 		this.lowestDataDetail = generator.getLargestDataDetailLevel();
 		this.highestDataDetail = generator.getSmallestDataDetailLevel();
 
-		// Initialize distance buckets
-		for (int i = 0; i < BUCKET_COUNT; i++)
-		{
-			this.distanceBuckets[i] = new ConcurrentHashMap<>();
-		}
-
 		DebugRenderer.register(this, Config.Client.Advanced.Debugging.DebugWireframe.showWorldGenQueue);
 		LOGGER.info("Created world gen queue");
 	}
 
 
 
-	//=================//
-	// bucket helpers  //
-	//=================//
-
-	/**
-	 * Calculates which bucket a task should be in based on Chebyshev distance.
-	 * @param taskPos the section position of the task
-	 * @param targetPos the current player position
-	 * @return bucket index (0 = closest, BUCKET_COUNT-1 = furthest)
-	 */
-	private int calculateBucketIndex(long taskPos, Pos2D targetPos)
-	{
-		Pos2D sectionPos = DhSectionPos.getSectionBBoxPos(taskPos).getCenterBlockPos().toPos2D();
-		int dist = sectionPos.chebyshevDist(targetPos);
-
-		// Convert block distance to section distance (divide by 16)
-		int sectionDist = dist >> 4;
-
-		for (int i = 0; i < BUCKET_BOUNDARIES.length; i++)
-		{
-			if (sectionDist < BUCKET_BOUNDARIES[i])
-			{
-				return i;
-			}
-		}
-		return BUCKET_COUNT - 1;
-	}
-
-	/**
-	 * Adds a task to its appropriate distance bucket.
-	 * @param task the task to add
-	 * @param targetPos the current player position for distance calculation
-	 */
-	private void addTaskToBucket(WorldGenTask task, Pos2D targetPos)
-	{
-		int bucketIndex = this.calculateBucketIndex(task.pos, targetPos);
-		this.distanceBuckets[bucketIndex].put(task.pos, task);
-	}
-
-	/**
-	 * Removes a task from all buckets (since we may not know which bucket it's in).
-	 * @param taskPos the position of the task to remove
-	 */
-	private void removeTaskFromBuckets(long taskPos)
-	{
-		for (int i = 0; i < BUCKET_COUNT; i++)
-		{
-			this.distanceBuckets[i].remove(taskPos);
-		}
-	}
-
-	/**
-	 * Rebuckets all waiting tasks based on the new target position.
-	 * Called when player moves more than REBUCKET_MOVEMENT_THRESHOLD sections.
-	 * @param newTargetPos the new player position
-	 */
-	private void rebucketAllTasks(Pos2D newTargetPos)
-	{
-		// Clear all buckets
-		for (int i = 0; i < BUCKET_COUNT; i++)
-		{
-			this.distanceBuckets[i].clear();
-		}
-
-		// Re-add all waiting tasks to appropriate buckets
-		this.waitingTasks.values().forEach(task -> this.addTaskToBucket(task, newTargetPos));
-
-		this.lastBucketTargetPos = newTargetPos;
-	}
-
-	/**
-	 * Checks if rebucketing is needed based on player movement.
-	 * @param currentTargetPos the current player position
-	 * @return true if rebucketing is needed
-	 */
-	private boolean needsRebucketing(Pos2D currentTargetPos)
-	{
-		Pos2D lastPos = this.lastBucketTargetPos;
-		if (lastPos == null)
-		{
-			return true;
-		}
-
-		// Check if player has moved more than threshold (in blocks, convert to sections)
-		int movementDist = lastPos.chebyshevDist(currentTargetPos);
-		int sectionMovement = movementDist >> 4;
-		return sectionMovement >= REBUCKET_MOVEMENT_THRESHOLD;
-	}
-
-	/**
-	 * Attempts to evict a task from a bucket further than the given bucket index.
-	 * Used to make room for closer tasks when the queue is at capacity.
-	 * @param closerThanBucket only evict from buckets with higher index than this
-	 * @return true if a task was evicted, false if no suitable task was found
-	 */
-	private boolean tryEvictFromFurtherBucket(int closerThanBucket)
-	{
-		// Iterate from furthest bucket to closest (but still further than the new task)
-		for (int i = BUCKET_COUNT - 1; i > closerThanBucket; i--)
-		{
-			ConcurrentHashMap<Long, WorldGenTask> bucket = this.distanceBuckets[i];
-			if (!bucket.isEmpty())
-			{
-				// Pick any task from this bucket to evict
-				Iterator<Map.Entry<Long, WorldGenTask>> iterator = bucket.entrySet().iterator();
-				if (iterator.hasNext())
-				{
-					Map.Entry<Long, WorldGenTask> entry = iterator.next();
-					long posToEvict = entry.getKey();
-					WorldGenTask evictedTask = entry.getValue();
-
-					// Remove from both bucket and main map
-					bucket.remove(posToEvict, evictedTask);
-					WorldGenTask removed = this.waitingTasks.remove(posToEvict);
-					if (removed != null)
-					{
-						// Cancel the evicted task's future
-						removed.future.complete(WorldGenResult.CreateFail());
-						return true;
-					}
-				}
-			}
-		}
-		return false;
-	}
-
-	/**
-	 * Selects the best task from a bucket using view frustum priority.
-	 * Tasks in front of the player are prioritized over tasks behind.
-	 * @param bucket the bucket to select from
-	 * @param targetPos the current player position
-	 * @param lookDir the player's look direction (may be null)
-	 * @return the best task, or null if the bucket is empty
-	 */
-	private WorldGenTask selectBestTaskFromBucket(
-			ConcurrentHashMap<Long, WorldGenTask> bucket,
-			Pos2D targetPos,
-			Vec3f lookDir)
-	{
-		// Use reduceEntries within the bucket (which is much smaller than the full queue)
-		TaskDistancePair bestPair = bucket.reduceEntries(64,
-				entry -> {
-					Pos2D taskPos = DhSectionPos.getSectionBBoxPos(entry.getValue().pos).getCenterBlockPos().toPos2D();
-					int baseDist = taskPos.chebyshevDist(targetPos);
-
-					// Apply view frustum priority if look direction is available
-					if (lookDir != null && baseDist > 0)
-					{
-						float dx = taskPos.getX() - targetPos.getX();
-						float dz = taskPos.getY() - targetPos.getY();
-						float distSquared = dx * dx + dz * dz;
-						if (distSquared > 0)
-						{
-							float invLen = (float) (1.0 / Math.sqrt(distSquared));
-							dx *= invLen;
-							dz *= invLen;
-
-							// Dot product with look direction
-							float dot = dx * lookDir.x + dz * lookDir.z;
-
-							// Map dot product [-1, 1] to distance multiplier [1.5, 1.0]
-							float multiplier = 1.0f + 0.25f * (1.0f - dot);
-							return new TaskDistancePair(entry.getValue(), (int)(baseDist * multiplier));
-						}
-					}
-
-					return new TaskDistancePair(entry.getValue(), baseDist);
-				},
-				(a, b) -> (a.dist < b.dist) ? a : b);
-
-		return bestPair != null ? bestPair.task : null;
-	}
-
-
-
 	//=================//
 	// world generator //
 	// task handling   //
@@ -362,25 +162,21 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 		CompletableFuture<WorldGenResult> future = new CompletableFuture<>();
 		WorldGenTask task = new WorldGenTask(pos, requiredDataDetail, tracker, future);
 
-		// Add to distance bucket for priority-based selection
-		Pos2D targetPos = this.generationTargetPos.toPos2D();
-		int newTaskBucket = this.calculateBucketIndex(pos, targetPos);
-
 		// Distance-aware eviction: if queue is at capacity, evict a further task
 		if (this.waitingTasks.size() >= MAX_WAITING_TASKS_BEFORE_EVICTION)
 		{
-			// Only add this task if we can evict a further one, or if this is the furthest bucket
-			if (newTaskBucket < BUCKET_COUNT - 1)
+			DhBlockPos2D targetPos = this.generationTargetPos;
+			long newTaskDistance = WorldGenTaskSpatialIndex.getChebyshevBlockDistance(pos, targetPos.x, targetPos.z);
+			WorldGenTask evictedTask = this.waitingTasks.pollFurthestIfFurtherThan(targetPos.x, targetPos.z, newTaskDistance);
+			if (evictedTask != null)
 			{
-				// Try to evict from a bucket further than ours
-				this.tryEvictFromFurtherBucket(newTaskBucket);
+				evictedTask.future.complete(WorldGenResult.CreateFail());
 			}
-			// If eviction failed and we're in the furthest bucket, the task still gets added
+			// If nothing was further away the task still gets added
 			// (we don't reject tasks, we just try to maintain priority)
 		}
 
-		this.waitingTasks.put(pos, task);
-		this.addTaskToBucket(task, targetPos);
+		this.waitingTasks.put(task);
 
 		return future;
 	}
@@ -388,14 +184,7 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 	@Override
 	public void removeRetrievalRequestIf(DhSectionPos.ICancelablePrimitiveLongConsumer removeIf)
 	{
-		this.waitingTasks.forEachKey(100, (genPos) ->
-		{
-			if (removeIf.accept(genPos))
-			{
-				this.waitingTasks.remove(genPos);
-				this.removeTaskFromBuckets(genPos);
-			}
-		});
+		this.waitingTasks.removeIf(removeIf);
 	}
 	
 	
@@ -472,6 +261,11 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 		
 		// queue more tasks if any of the threads are available
 		int worldGenThreadCount = Math.max(Config.Common.MultiThreading.numberOfThreads.get(), 1);
+		if (PregenManager.INSTANCE.isRunningForLevel(this.level))
+		{
+			// keep extra tasks in progress so the threads never wait on the queue
+			worldGenThreadCount *= PregenManager.THROUGHPUT_MODE_IN_PROGRESS_TASKS_PER_THREAD;
+		}
 		return this.inProgressGenTasksByLodPos.size() > worldGenThreadCount;
 	}
 	/**
@@ -480,59 +274,31 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 	 */
 	private boolean tryStartNextWorldGenTask(DhBlockPos2D targetPos)
 	{
-		if (this.waitingTasks.isEmpty())
-		{
-			return false;
-		}
-
-		Pos2D targetPos2D = targetPos.toPos2D();
-
-		// Check if we need to rebucket tasks due to player movement
-		if (this.needsRebucketing(targetPos2D))
-		{
-			this.rebucketAllTasks(targetPos2D);
-		}
-
-		// Find the first non-empty bucket (closest to player)
-		ConcurrentHashMap<Long, WorldGenTask> selectedBucket = null;
-		for (int i = 0; i < BUCKET_COUNT; i++)
-		{
-			if (!this.distanceBuckets[i].isEmpty())
-			{
-				selectedBucket = this.distanceBuckets[i];
-				break;
-			}
-		}
-
-		if (selectedBucket == null)
-		{
-			// No tasks in any bucket - this can happen due to concurrency
-			return false;
-		}
-
-		// Select the best task from this bucket using view frustum priority
-		Vec3f currentLookDir = this.lookDirection;
-		WorldGenTask closestTask = this.selectBestTaskFromBucket(selectedBucket, targetPos2D, currentLookDir);
-
+		// remove the best task, we are going to start it and don't want to run it multiple times
+		// (tasks in front of the player are prioritized over tasks behind)
+		WorldGenTask closestTask = this.waitingTasks.pollBest(targetPos.x, targetPos.z, this.lookDirection);
 		if (closestTask == null)
 		{
-			// Bucket became empty due to concurrency
+			// no tasks are waiting
 			return false;
 		}
-
-		// remove the task we found, we are going to start it and don't want to run it multiple times
-		this.waitingTasks.remove(closestTask.pos, closestTask);
-		this.removeTaskFromBuckets(closestTask.pos);
 		
 		// do we need to modify this task to generate it?
 		if (this.canGenerateDetailLevel(DhSectionPos.getDetailLevel(closestTask.pos)))
 		{
 			// detail level is correct for generation, start generation
 			
-			WorldGenTaskGroup closestTaskGroup = new WorldGenTaskGroup(closestTask.pos, (byte)(closestTask.pos - DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL));
-			closestTaskGroup.worldGenTasks.add(closestTask);
+			byte dataDetail = (byte) (DhSectionPos.getDetailLevel(closestTask.pos) - DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL);
+			
+			// merge in any waiting neighbors so they can be generated in a single request
+			LinkedList<WorldGenTask> groupTasks = new LinkedList<>();
+			groupTasks.add(closestTask);
+			long groupPos = this.coalesceAdjacentTasks(closestTask, dataDetail, groupTasks);
+			
+			WorldGenTaskGroup closestTaskGroup = new WorldGenTaskGroup(groupPos, dataDetail);
+			closestTaskGroup.worldGenTasks.addAll(groupTasks);
 			
-			if (!this.inProgressGenTasksByLodPos.containsKey(closestTask.pos))
+			if (!this.inProgressGenTasksByLodPos.containsKey(closestTaskGroup.pos))
 			{
 				// no task exists for this position, start one
 				InProgressWorldGenTaskGroup newTaskGroup = new InProgressWorldGenTaskGroup(closestTaskGroup);
@@ -561,15 +327,13 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 			LinkedList<CompletableFuture<WorldGenResult>> childFutures = new LinkedList<>();
 			long sectionPos = closestTask.pos;
 			WorldGenTask finalClosestTask = closestTask;
-			Pos2D finalTargetPos2D = targetPos2D;
 			DhSectionPos.forEachChild(sectionPos, (childDhSectionPos) ->
 			{
 				CompletableFuture<WorldGenResult> newFuture = new CompletableFuture<>();
 				childFutures.add(newFuture);
 
 				WorldGenTask newGenTask = new WorldGenTask(childDhSectionPos, DhSectionPos.getDetailLevel(childDhSectionPos), finalClosestTask.taskTracker, newFuture);
-				this.waitingTasks.put(newGenTask.pos, newGenTask);
-				this.addTaskToBucket(newGenTask, finalTargetPos2D);
+				this.waitingTasks.put(newGenTask);
 			});
 			
 			// send the child futures to the future recipient, to notify them of the new tasks
@@ -579,6 +343,65 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 			return true;
 		}
 	}
+	/**
+	 * Removes the waiting tasks next to the given task
+	 * and adds them to the given list, so they can all be generated in a single request. <br>
+	 * Neighbors are only merged when every task at the same detail level in the parent position is waiting. <br><br>
+	 *
+	 * Generating neighboring tasks together lets them share the
+	 * chunks around their borders that would otherwise be generated once per task.
+	 *
+	 * @return the position covering every task in the list,
+	 * 		the given task's position if no neighbors were merged
+	 */
+	private long coalesceAdjacentTasks(WorldGenTask task, byte dataDetail, LinkedList<WorldGenTask> groupTasks)
+	{
+		// data sources are generated per section, so there aren't any shared chunks to save
+		EDhApiWorldGeneratorReturnType returnType = this.generator.getReturnType();
+		if (returnType != EDhApiWorldGeneratorReturnType.VANILLA_CHUNKS
+			&& returnType != EDhApiWorldGeneratorReturnType.API_CHUNKS)
+		{
+			return task.pos;
+		}
+		
+		int maxChunkWidth = Config.Common.WorldGenerator.maxCoalescedGenerationChunkWidth.get();
+		byte taskDetailLevel = DhSectionPos.getDetailLevel(task.pos);
+		
+		long groupPos = task.pos;
+		LongArrayList neighborPositions = new LongArrayList();
+		while (true)
+		{
+			long parentPos = DhSectionPos.getParentPos(groupPos);
+			int parentChunkWidth = BitShiftUtil.powerOfTwo(DhSectionPos.getDetailLevel(parentPos) - dataDetail - 4); // minus 4 is equal to dividing by 16 to convert to chunk scale
+			if (parentChunkWidth > maxChunkWidth
+				|| this.inProgressGenTasksByLodPos.containsKey(parentPos))
+			{
+				return groupPos;
+			}
+			
+			// every position in the parent that isn't already in the group
+			neighborPositions.clear();
+			final long finalGroupPos = groupPos;
+			DhSectionPos.forEachChildAtDetailLevel(parentPos, taskDetailLevel, (childPos) ->
+			{
+				if (!DhSectionPos.contains(finalGroupPos, childPos))
+				{
+					neighborPositions.add(childPos);
+				}
+			});
+			
+			// only merge if the whole parent can be filled,
+			// otherwise we'd generate chunks nobody asked for
+			ArrayList<WorldGenTask> neighborTasks = this.waitingTasks.removeAllIfPresent(neighborPositions);
+			if (neighborTasks == null)
+			{
+				return groupPos;
+			}
+			
+			groupTasks.addAll(neighborTasks);
+			groupPos = parentPos;
+		}
+	}
 	private void startWorldGenTaskGroup(InProgressWorldGenTaskGroup newTaskGroup)
 	{
 		byte taskDetailLevel = newTaskGroup.group.dataDetail;
@@ -616,7 +439,7 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 				}
 				else
 				{
-					newTaskGroup.group.worldGenTasks.forEach(worldGenTask -> worldGenTask.future.complete(WorldGenResult.CreateSuccess(taskPos)));
+					newTaskGroup.group.worldGenTasks.forEach(worldGenTask -> worldGenTask.future.complete(WorldGenResult.CreateSuccess(worldGenTask.pos)));
 				}
 				boolean worked = this.inProgressGenTasksByLodPos.remove(taskPos, newTaskGroup);
 				LodUtil.assertTrue(worked, "Unable to find in progress generator task with position ["+DhSectionPos.toString(taskPos)+"]");
@@ -801,14 +624,14 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 	@Override
 	public int getQueuedChunkCount()
 	{
-		int chunkCount = 0;
-		for (long pos : this.waitingTasks.keySet())
+		int[] chunkCountRef = new int[1];
+		this.waitingTasks.forEachPos((pos) ->
 		{
 			int chunkWidth = DhSectionPos.getBlockWidth(pos) / LodUtil.CHUNK_WIDTH;
-			chunkCount += (chunkWidth * chunkWidth);
-		}
+			chunkCountRef[0] += (chunkWidth * chunkWidth);
+		});
 		
-		return chunkCount;
+		return chunkCountRef[0];
 	}
 	
 	
@@ -885,7 +708,7 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 		}
 		
 		this.inProgressGenTasksByLodPos.values().forEach((inProgressWorldGenTaskGroup) -> inProgressWorldGenTaskGroup.genFuture.cancel(true));
-		this.waitingTasks.values().forEach((worldGenTask) -> worldGenTask.future.cancel(true));
+		this.waitingTasks.forEachTask((worldGenTask) -> worldGenTask.future.cancel(true));
 		
 		
 		this.generator.close();
@@ -924,7 +747,7 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 		
 		
 		// blue - queued
-		this.waitingTasks.keySet().forEach((pos) -> 
+		this.waitingTasks.forEachPos((pos) -> 
 		{ 
 			renderer.renderBox(
 					new DebugRenderer.Box(pos, levelMinY, maxY, 0.05f, Color.blue)); 
@@ -950,23 +773,4 @@ public class WorldGenerationQueue implements IFullDataSourceRetrievalQueue, IDeb
 		return (this.highestDataDetail <= requestedDetailLevel && requestedDetailLevel <= this.lowestDataDetail);
 	}
 	
-	
-	
-	//================//
-	// helper classes //
-	//================//
-	
-	private static class TaskDistancePair
-	{
-		public final WorldGenTask task;
-		public final int dist;
-		
-		public TaskDistancePair(WorldGenTask task, int dist)
-		{
-			this.task = task;
-			this.dist = dist;
-		}
-		
-	}
-	
 }
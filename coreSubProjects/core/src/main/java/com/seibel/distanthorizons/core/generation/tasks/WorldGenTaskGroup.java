@@ -20,6 +20,7 @@
 package com.seibel.distanthorizons.core.generation.tasks;
 
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
 
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -45,12 +46,23 @@ public final class WorldGenTaskGroup
 		this.dataDetail = dataDetail;
 	}
 	
+	/**
+	 * If multiple neighboring tasks were merged into this group
+	 * each data source is only sent to the task that contains it.
+	 */
 	public void consumeDataSource(FullDataSourceV2 dataSource)
 	{
+		boolean isMergedGroup = this.worldGenTasks.size() > 1;
+		
 		Iterator<WorldGenTask> tasks = this.worldGenTasks.iterator();
 		while (tasks.hasNext())
 		{
 			WorldGenTask task = tasks.next();
+			if (isMergedGroup && !DhSectionPos.contains(task.pos, dataSource.getPos()))
+			{
+				continue;
+			}
+			
 			Consumer<FullDataSourceV2> dataSourceConsumer = task.taskTracker.getDataSourceConsumer();
 			if (dataSourceConsumer == null)
 			{
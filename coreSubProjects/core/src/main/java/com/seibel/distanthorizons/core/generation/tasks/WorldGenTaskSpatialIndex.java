@@ -0,0 +1,436 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.generation.tasks;
+
+import com.seibel.distanthorizons.core.generation.WorldGenerationQueue;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.util.math.Vec3f;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Holds the {@link WorldGenTask}s waiting to be run by the {@link WorldGenerationQueue}
+ * and finds the highest priority one without checking every task. <br><br>
+ *
+ * Tasks are stored in a grid of {@link WorldGenTaskSpatialIndex#CELL_WIDTH_IN_BLOCKS} wide cells
+ * based on their center block position. Above the grid is a quad tree of task counts
+ * so a best first search only has to look at the cells that could contain a better task
+ * than the best one found so far. <br><br>
+ *
+ * All positions are absolute, so the generation target can move
+ * without anything having to be re-sorted. <br><br>
+ *
+ * Thread safe.
+ */
+public class WorldGenTaskSpatialIndex
+{
+	/** 512 blocks (32 chunks) */
+	private static final int CELL_WIDTH_SHIFT = 9;
+	public static final int CELL_WIDTH_IN_BLOCKS = 1 << CELL_WIDTH_SHIFT;
+	/**
+	 * The top level covers 2^(9+16) = ~33 million blocks,
+	 * so the whole Minecraft world fits in just a few top nodes.
+	 */
+	private static final int MAX_LEVEL = 16;
+	
+	
+	private final Long2ObjectOpenHashMap<WorldGenTask> tasksByPos = new Long2ObjectOpenHashMap<>();
+	/** level 0 of the tree */
+	private final Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<WorldGenTask>> tasksByCell = new Long2ObjectOpenHashMap<>();
+	/**
+	 * The number of tasks under each node for levels 1 through {@link WorldGenTaskSpatialIndex#MAX_LEVEL}. <br>
+	 * Index 0 is unused since {@link WorldGenTaskSpatialIndex#tasksByCell} holds that level.
+	 */
+	private final Long2IntOpenHashMap[] taskCountByNode = new Long2IntOpenHashMap[MAX_LEVEL + 1];
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public WorldGenTaskSpatialIndex()
+	{
+		for (int level = 1; level <= MAX_LEVEL; level++)
+		{
+			this.taskCountByNode[level] = new Long2IntOpenHashMap();
+		}
+	}
+	
+	
+	
+	//=====================//
+	// adding and removing //
+	//=====================//
+	
+	/** @return the task that was previously at this position, null if none */
+	@Nullable
+	public synchronized WorldGenTask put(WorldGenTask task)
+	{
+		long cellKey = getCellKey(task.pos);
+		WorldGenTask previousTask = this.tasksByPos.put(task.pos, task);
+		
+		Long2ObjectOpenHashMap<WorldGenTask> cell = this.tasksByCell.get(cellKey);
+		if (cell == null)
+		{
+			cell = new Long2ObjectOpenHashMap<>();
+			this.tasksByCell.put(cellKey, cell);
+		}
+		cell.put(task.pos, task);
+		
+		if (previousTask == null)
+		{
+			this.addToNodeCounts(cellKey, 1);
+		}
+		
+		return previousTask;
+	}
+	
+	/** @return the removed task, null if nothing was at this position */
+	@Nullable
+	public synchronized WorldGenTask remove(long pos)
+	{
+		WorldGenTask removedTask = this.tasksByPos.remove(pos);
+		if (removedTask == null)
+		{
+			return null;
+		}
+		
+		long cellKey = getCellKey(pos);
+		Long2ObjectOpenHashMap<WorldGenTask> cell = this.tasksByCell.get(cellKey);
+		cell.remove(pos);
+		if (cell.isEmpty())
+		{
+			this.tasksByCell.remove(cellKey);
+		}
+		
+		this.addToNodeCounts(cellKey, -1);
+		return removedTask;
+	}
+	
+	/**
+	 * Removes every task whose position is accepted by the given function.
+	 * @return the number of removed tasks
+	 */
+	public synchronized int removeIf(DhSectionPos.ICancelablePrimitiveLongConsumer removeIf)
+	{
+		LongArrayList positionsToRemove = new LongArrayList();
+		LongIterator posIterator = this.tasksByPos.keySet().iterator();
+		while (posIterator.hasNext())
+		{
+			long pos = posIterator.nextLong();
+			if (removeIf.accept(pos))
+			{
+				positionsToRemove.add(pos);
+			}
+		}
+		
+		for (int i = 0; i < positionsToRemove.size(); i++)
+		{
+			this.remove(positionsToRemove.getLong(i));
+		}
+		return positionsToRemove.size();
+	}
+	
+	/**
+	 * Removes the tasks at every given position,
+	 * but only if all of them are present. <br>
+	 * Used to merge neighboring tasks into a single generation request.
+	 *
+	 * @return the removed tasks in the same order as the given positions,
+	 * 		null if any position didn't have a task, in which case nothing is removed
+	 */
+	@Nullable
+	public synchronized ArrayList<WorldGenTask> removeAllIfPresent(LongArrayList positions)
+	{
+		for (int i = 0; i < positions.size(); i++)
+		{
+			if (!this.tasksByPos.containsKey(positions.getLong(i)))
+			{
+				return null;
+			}
+		}
+		
+		ArrayList<WorldGenTask> removedTasks = new ArrayList<>(positions.size());
+		for (int i = 0; i < positions.size(); i++)
+		{
+			removedTasks.add(this.remove(positions.getLong(i)));
+		}
+		return removedTasks;
+	}
+	
+	private void addToNodeCounts(long cellKey, int change)
+	{
+		int x = getKeyX(cellKey);
+		int z = getKeyZ(cellKey);
+		for (int level = 1; level <= MAX_LEVEL; level++)
+		{
+			x >>= 1;
+			z >>= 1;
+			
+			long nodeKey = createKey(x, z);
+			Long2IntOpenHashMap counts = this.taskCountByNode[level];
+			int newCount = counts.addTo(nodeKey, change) + change;
+			if (newCount <= 0)
+			{
+				counts.remove(nodeKey);
+			}
+		}
+	}
+	
+	
+	
+	//=========//
+	// polling //
+	//=========//
+	
+	/**
+	 * Removes and returns the task with the lowest {@link WorldGenTaskSpatialIndex#getPriorityScore} score.
+	 * @return null if there aren't any tasks
+	 */
+	@Nullable
+	public synchronized WorldGenTask pollBest(int targetBlockX, int targetBlockZ, @Nullable Vec3f lookDirection)
+	{
+		WorldGenTask bestTask = this.search(targetBlockX, targetBlockZ, lookDirection, false);
+		if (bestTask != null)
+		{
+			this.remove(bestTask.pos);
+		}
+		return bestTask;
+	}
+	
+	/**
+	 * Removes and returns the task furthest from the target if it is further than the given distance. <br>
+	 * Used to make room for closer tasks.
+	 * @return null if no task is further than the given distance
+	 */
+	@Nullable
+	public synchronized WorldGenTask pollFurthestIfFurtherThan(int targetBlockX, int targetBlockZ, long minChebyshevBlockDistance)
+	{
+		WorldGenTask furthestTask = this.search(targetBlockX, targetBlockZ, null, true);
+		if (furthestTask == null
+			|| getChebyshevBlockDistance(furthestTask.pos, targetBlockX, targetBlockZ) <= minChebyshevBlockDistance)
+		{
+			return null;
+		}
+		
+		this.remove(furthestTask.pos);
+		return furthestTask;
+	}
+	
+	/**
+	 * Best first search down the tree. <br>
+	 * Nodes are visited in order of the best score any task inside them could have,
+	 * and the search stops once no remaining node could beat the best task found.
+	 *
+	 * @param furthest if true the task with the largest chebyshev distance is returned instead
+	 */
+	@Nullable
+	private WorldGenTask search(int targetBlockX, int targetBlockZ, @Nullable Vec3f lookDirection, boolean furthest)
+	{
+		if (this.tasksByPos.isEmpty())
+		{
+			return null;
+		}
+		
+		PriorityQueue<SearchNode> nodeQueue = new PriorityQueue<>();
+		LongIterator topNodeIterator = this.taskCountByNode[MAX_LEVEL].keySet().iterator();
+		while (topNodeIterator.hasNext())
+		{
+			nodeQueue.add(new SearchNode(MAX_LEVEL, topNodeIterator.nextLong(), targetBlockX, targetBlockZ, furthest));
+		}
+		
+		WorldGenTask bestTask = null;
+		long bestScore = furthest ? -1 : Long.MAX_VALUE;
+		while (!nodeQueue.isEmpty())
+		{
+			SearchNode node = nodeQueue.poll();
+			if (furthest ? (node.bound <= bestScore) : (node.bound >= bestScore))
+			{
+				// nothing left can beat the current best
+				break;
+			}
+			
+			if (node.level == 0)
+			{
+				for (WorldGenTask task : this.tasksByCell.get(node.key).values())
+				{
+					long score = furthest
+							? getChebyshevBlockDistance(task.pos, targetBlockX, targetBlockZ)
+							: getPriorityScore(task.pos, targetBlockX, targetBlockZ, lookDirection);
+					if (furthest ? (score > bestScore) : (score < bestScore))
+					{
+						bestScore = score;
+						bestTask = task;
+					}
+				}
+			}
+			else
+			{
+				int childLevel = node.level - 1;
+				int minChildX = getKeyX(node.key) << 1;
+				int minChildZ = getKeyZ(node.key) << 1;
+				for (int i = 0; i < 4; i++)
+				{
+					long childKey = createKey(minChildX + (i & 1), minChildZ + (i >> 1));
+					boolean childHasTasks = (childLevel == 0)
+							? this.tasksByCell.containsKey(childKey)
+							: this.taskCountByNode[childLevel].containsKey(childKey);
+					if (childHasTasks)
+					{
+						nodeQueue.add(new SearchNode(childLevel, childKey, targetBlockX, targetBlockZ, furthest));
+					}
+				}
+			}
+		}
+		
+		return bestTask;
+	}
+	
+	
+	
+	//=========//
+	// getters //
+	//=========//
+	
+	public synchronized int size() { return this.tasksByPos.size(); }
+	public synchronized boolean isEmpty() { return this.tasksByPos.isEmpty(); }
+	
+	public synchronized void forEachPos(LongConsumer consumer)
+	{
+		LongIterator posIterator = this.tasksByPos.keySet().iterator();
+		while (posIterator.hasNext())
+		{
+			consumer.accept(posIterator.nextLong());
+		}
+	}
+	public synchronized void forEachTask(Consumer<WorldGenTask> consumer) { this.tasksByPos.values().forEach(consumer); }
+	
+	
+	
+	//================//
+	// static helpers //
+	//================//
+	
+	/**
+	 * Lower scores should be generated first. <br>
+	 * Tasks in front of the player are prioritized over tasks behind,
+	 * a task directly behind the player is treated as being 1.5 times further away.
+	 */
+	public static long getPriorityScore(long taskPos, int targetBlockX, int targetBlockZ, @Nullable Vec3f lookDirection)
+	{
+		int taskX = DhSectionPos.getCenterBlockPosX(taskPos);
+		int taskZ = DhSectionPos.getCenterBlockPosZ(taskPos);
+		int baseDist = Math.max(Math.abs(taskX - targetBlockX), Math.abs(taskZ - targetBlockZ));
+		
+		// Apply view frustum priority if look direction is available
+		if (lookDirection != null && baseDist > 0)
+		{
+			float dx = taskX - targetBlockX;
+			float dz = taskZ - targetBlockZ;
+			float invLen = (float) (1.0 / Math.sqrt(dx * dx + dz * dz));
+			dx *= invLen;
+			dz *= invLen;
+			
+			// Dot product with look direction
+			float dot = dx * lookDirection.x + dz * lookDirection.z;
+			
+			// Map dot product [-1, 1] to distance multiplier [1.5, 1.0]
+			float multiplier = 1.0f + 0.25f * (1.0f - dot);
+			return (int) (baseDist * multiplier);
+		}
+		
+		return baseDist;
+	}
+	public static long getChebyshevBlockDistance(long taskPos, int targetBlockX, int targetBlockZ)
+	{
+		return Math.max(
+				Math.abs(DhSectionPos.getCenterBlockPosX(taskPos) - targetBlockX),
+				Math.abs(DhSectionPos.getCenterBlockPosZ(taskPos) - targetBlockZ));
+	}
+	
+	private static long getCellKey(long taskPos)
+	{
+		return createKey(
+				DhSectionPos.getCenterBlockPosX(taskPos) >> CELL_WIDTH_SHIFT,
+				DhSectionPos.getCenterBlockPosZ(taskPos) >> CELL_WIDTH_SHIFT);
+	}
+	private static long createKey(int x, int z) { return ((long) x << 32) | (z & 0xFFFF_FFFFL); }
+	private static int getKeyX(long key) { return (int) (key >> 32); }
+	private static int getKeyZ(long key) { return (int) key; }
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	private static class SearchNode implements Comparable<SearchNode>
+	{
+		public final int level;
+		public final long key;
+		/**
+		 * The lowest possible score of any task in this node,
+		 * or the highest possible chebyshev distance if searching for the furthest task.
+		 */
+		public final long bound;
+		private final long sortKey;
+		
+		public SearchNode(int level, long key, int targetBlockX, int targetBlockZ, boolean furthest)
+		{
+			this.level = level;
+			this.key = key;
+			
+			int widthShift = CELL_WIDTH_SHIFT + level;
+			long minX = (long) getKeyX(key) << widthShift;
+			long minZ = (long) getKeyZ(key) << widthShift;
+			long maxX = minX + (1L << widthShift) - 1;
+			long maxZ = minZ + (1L << widthShift) - 1;
+			
+			if (furthest)
+			{
+				this.bound = Math.max(
+						Math.max(Math.abs(targetBlockX - minX), Math.abs(maxX - targetBlockX)),
+						Math.max(Math.abs(targetBlockZ - minZ), Math.abs(maxZ - targetBlockZ)));
+				this.sortKey = -this.bound;
+			}
+			else
+			{
+				// the look direction multiplier is never below 1, so the distance is always a lower bound
+				long distX = Math.max(0, Math.max(minX - targetBlockX, targetBlockX - maxX));
+				long distZ = Math.max(0, Math.max(minZ - targetBlockZ, targetBlockZ - maxZ));
+				this.bound = Math.max(distX, distZ);
+				this.sortKey = this.bound;
+			}
+		}
+		
+		@Override
+		public int compareTo(SearchNode other) { return Long.compare(this.sortKey, other.sortKey); }
+	}
+	
+}
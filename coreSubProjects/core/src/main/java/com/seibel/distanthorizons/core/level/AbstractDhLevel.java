@@ -72,6 +72,9 @@ public abstract class AbstractDhLevel implements IDhLevel
 	/** if this is null then the other handler is probably null too, but just in case */
 	@Nullable
 	public ChunkHashRepo chunkHashRepo;
+	/** will be null until the repos are created */
+	@Nullable
+	protected ChunkHashCache chunkHashCache;
 	/** if this is null then the other handler is probably null too, but just in case */
 	@Nullable
 	public BeaconBeamRepo beaconBeamRepo;
@@ -112,6 +115,7 @@ public abstract class AbstractDhLevel implements IDhLevel
 			LOGGER.fatal("Unable to create ["+ChunkHashRepo.class.getSimpleName()+"], error: ["+e.getMessage()+"].", e);
 		}
 		this.chunkHashRepo = newChunkHashRepo;
+		this.chunkHashCache = new ChunkHashCache(newChunkHashRepo);
 		
 		
 		// beacon beam
@@ -195,15 +199,23 @@ public abstract class AbstractDhLevel implements IDhLevel
 				HashSet<DhChunkPos> updatedChunkPosSet = this.updatedChunkPosSetBySectionPos.remove(fullDataSource.getPos());
 				if (updatedChunkPosSet != null)
 				{
+					// save after the data source has been updated to prevent saving the hash without the associated datasource
+					ArrayList<ChunkHashDTO> chunkHashDtoList = new ArrayList<>(updatedChunkPosSet.size());
 					for (DhChunkPos chunkPos : updatedChunkPosSet)
 					{
-						// save after the data source has been updated to prevent saving the hash without the associated datasource
 						Integer chunkHash = this.updatedChunkHashesByChunkPos.remove(chunkPos);
-						if (this.chunkHashRepo != null && chunkHash != null)
+						if (chunkHash != null)
 						{
-							this.chunkHashRepo.save(new ChunkHashDTO(chunkPos, chunkHash));
+							chunkHashDtoList.add(new ChunkHashDTO(chunkPos, chunkHash));
 						}
-						
+					}
+					if (this.chunkHashCache != null)
+					{
+						this.chunkHashCache.saveHashes(chunkHashDtoList);
+					}
+					
+					for (DhChunkPos chunkPos : updatedChunkPosSet)
+					{
 						ApiEventInjector.INSTANCE.fireAllEvents(
 								DhApiChunkModifiedEvent.class,
 								new DhApiChunkModifiedEvent.EventParam(this.getLevelWrapper(), chunkPos.getX(), chunkPos.getZ()));
@@ -223,13 +235,12 @@ public abstract class AbstractDhLevel implements IDhLevel
 	@Override
 	public int getChunkHash(DhChunkPos pos)
 	{
-		if (this.chunkHashRepo == null)
+		if (this.chunkHashCache == null)
 		{
-			return 0;
+			return ChunkHashCache.MISSING_HASH;
 		}
 		
-		ChunkHashDTO dto = this.chunkHashRepo.getByKey(pos);
-		return (dto != null) ? dto.chunkHash : 0;
+		return this.chunkHashCache.getHash(pos);
 	}
 	
 	
@@ -4,6 +4,7 @@ import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
 import com.seibel.distanthorizons.core.file.fullDatafile.V2.FullDataSourceProviderV2;
 import com.seibel.distanthorizons.core.file.structure.ISaveStructure;
+import com.seibel.distanthorizons.core.generation.PregenManager;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.multiplayer.server.FullDataSourceRequestHandler;
 import com.seibel.distanthorizons.core.multiplayer.server.ServerPlayerState;
@@ -16,10 +17,14 @@ import com.seibel.distanthorizons.core.network.messages.AbstractTrackableMessage
 import com.seibel.distanthorizons.core.network.messages.ILevelRelatedMessage;
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataPartialUpdateMessage;
 import com.seibel.distanthorizons.core.multiplayer.fullData.FullDataPayload;
+import com.seibel.distanthorizons.core.multiplayer.fullData.FullDataPayloadSender;
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataSourceRequestMessage;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataTimestampManifestRequestMessage;
 import com.seibel.distanthorizons.core.network.messages.requests.CancelMessage;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
+import com.seibel.distanthorizons.core.sql.repo.AbstractDhRepo;
+import com.seibel.distanthorizons.core.sql.repo.PregenJobRepo;
 import com.seibel.distanthorizons.core.util.LodUtil;
 import com.seibel.distanthorizons.core.util.WorldGenUtil;
 import com.seibel.distanthorizons.core.util.math.Vec3d;
@@ -53,6 +58,10 @@ public abstract class AbstractDhServerLevel extends AbstractDhLevel implements I
 	
 	private final FullDataSourceRequestHandler requestHandler;
 	
+	/** if null pregen progress can't be saved */
+	@Nullable
+	public final PregenJobRepo pregenJobRepo;
+	
 	
 	
 	//=============//
@@ -80,6 +89,18 @@ public abstract class AbstractDhServerLevel extends AbstractDhLevel implements I
 		this.serverLevelWrapper = serverLevelWrapper;
 		this.serverside = new ServerLevelModule(this, saveStructure);
 		this.createAndSetSupportingRepos(this.serverside.fullDataFileHandler.repo.databaseFile);
+		
+		PregenJobRepo newPregenJobRepo = null;
+		try
+		{
+			newPregenJobRepo = new PregenJobRepo(AbstractDhRepo.DEFAULT_DATABASE_TYPE, this.serverside.fullDataFileHandler.repo.databaseFile);
+		}
+		catch (SQLException | IOException e)
+		{
+			LOGGER.error("Unable to create ["+PregenJobRepo.class.getSimpleName()+"], error: ["+e.getMessage()+"].", e);
+		}
+		this.pregenJobRepo = newPregenJobRepo;
+		
 		if (runRepoReliantSetup)
 		{
 			this.runRepoReliantSetup();
@@ -99,7 +120,11 @@ public abstract class AbstractDhServerLevel extends AbstractDhLevel implements I
 	
 	@Override
 	public boolean shouldDoWorldGen()
-	{ return Config.Common.WorldGenerator.enableDistantGeneration.get() && !this.worldGenPlayerCenteringQueue.isEmpty(); }
+	{
+		// pregens need to keep generating even if nobody is online
+		return Config.Common.WorldGenerator.enableDistantGeneration.get()
+			&& (!this.worldGenPlayerCenteringQueue.isEmpty() || PregenManager.INSTANCE.isRunningForLevel(this));
+	}
 	
 	@Override
 	@Nullable
@@ -108,7 +133,8 @@ public abstract class AbstractDhServerLevel extends AbstractDhLevel implements I
 		IServerPlayerWrapper firstPlayer = this.worldGenPlayerCenteringQueue.peek();
 		if (firstPlayer == null)
 		{
-			return null;
+			// will be null if no pregen is running
+			return PregenManager.INSTANCE.getTargetPosForLevel(this);
 		}
 		
 		// Put first player in back before removing from front, so it can be removed by other thread without blocking
@@ -179,9 +205,34 @@ public abstract class AbstractDhServerLevel extends AbstractDhLevel implements I
 		});
 		
 		
+		serverPlayerState.networkSession.registerHandler(FullDataTimestampManifestRequestMessage.class, (message) ->
+		{
+			if (!this.validatePlayerInCurrentLevel(message))
+			{
+				return;
+			}
+			
+			if (DhSectionPos.getDetailLevel(message.regionPos) - FullDataTimestampManifestRequestMessage.REGION_DETAIL_LEVEL_OFFSET < DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL)
+			{
+				message.sendResponse(new RequestRejectedException("Invalid region detail level"));
+				return;
+			}
+			
+			Vec3d playerPosition = serverPlayerState.getServerPlayer().getPosition();
+			int distanceFromPlayer = DhSectionPos.getChebyshevSignedBlockDistance(message.regionPos, new DhBlockPos2D((int) playerPosition.x, (int) playerPosition.z)) / 16;
+			if (distanceFromPlayer > Config.Server.maxSyncOnLoadRequestDistance.get())
+			{
+				message.sendResponse(new RequestOutOfRangeException("Distance too large: " + distanceFromPlayer + " > " + Config.Server.maxSyncOnLoadRequestDistance.get()));
+				return;
+			}
+			
+			this.requestHandler.queueTimestampManifestCheck(serverPlayerState, message, serverPlayerState.getRateLimiterSet(this));
+		});
+		
+		
 		serverPlayerState.networkSession.registerHandler(CancelMessage.class, msg ->
 		{
-			this.requestHandler.cancelRequest(msg.futureId);
+			this.requestHandler.cancelRequest(serverPlayerState, msg.futureId);
 		});
 	}
 	
@@ -276,12 +327,15 @@ public abstract class AbstractDhServerLevel extends AbstractDhLevel implements I
 					int distanceFromPlayer = DhSectionPos.getChebyshevSignedBlockDistance(data.getPos(), new DhBlockPos2D((int) playerPosition.x, (int) playerPosition.z)) / 16;
 					if (distanceFromPlayer <= serverPlayerState.sessionConfig.getMaxUpdateDistanceRadius())
 					{
-						serverPlayerState.fullDataPayloadSender.sendInChunks(payload, () ->
+						serverPlayerState.fullDataPayloadSender.sendInChunks(payload, data.getPos(), FullDataPayloadSender.ETransferType.REAL_TIME_UPDATE, () ->
 						{
 							serverPlayerState.networkSession.sendMessage(new FullDataPartialUpdateMessage(this.serverLevelWrapper, payload));
 						});
 					}
 				}
+
+				// each sender holds its own reference until their transfer is done
+				payload.dtoBuffer.release();
 			});
 	}
 	
@@ -326,6 +380,13 @@ public abstract class AbstractDhServerLevel extends AbstractDhLevel implements I
 	@Override
 	public void close()
 	{
+		// save the pregen's progress so it can be resumed next time this level loads
+		PregenManager.INSTANCE.pauseIfRunningForLevel(this);
+		if (this.pregenJobRepo != null)
+		{
+			this.pregenJobRepo.close();
+		}
+		
 		super.close();
 		this.serverside.close();
 		this.requestHandler.close();
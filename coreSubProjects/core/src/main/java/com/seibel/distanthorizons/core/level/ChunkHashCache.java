@@ -0,0 +1,175 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.level;
+
+import com.seibel.distanthorizons.core.pos.DhChunkPos;
+import com.seibel.distanthorizons.core.sql.dto.ChunkHashDTO;
+import com.seibel.distanthorizons.core.sql.repo.ChunkHashRepo;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory LRU in front of the {@link ChunkHashRepo}. <br><br>
+ *
+ * Players moving back and forth will re-load the same chunks over and over,
+ * this lets those chunks be compared against their last LOD'ed hash
+ * without a database read. <br>
+ * Saves are written as a single batch and are skipped
+ * if the hash didn't change (IE when a neighboring chunk caused the update).
+ */
+public class ChunkHashCache
+{
+	/** roughly a 64 chunk radius around the player */
+	public static final int MAX_CACHED_HASH_COUNT = 16_384;
+	
+	/** 0 is also returned for chunks that haven't been saved yet */
+	public static final int MISSING_HASH = 0;
+	
+	
+	@Nullable
+	private final ChunkHashRepo repo;
+	
+	/** guarded by {@link ChunkHashCache#lock} */
+	private final LinkedHashMap<DhChunkPos, Integer> hashByChunkPos = new LinkedHashMap<DhChunkPos, Integer>(256, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<DhChunkPos, Integer> eldest) { return this.size() > MAX_CACHED_HASH_COUNT; }
+	};
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public ChunkHashCache(@Nullable ChunkHashRepo repo) { this.repo = repo; }
+	
+	
+	
+	//=========//
+	// methods //
+	//=========//
+	
+	/** @return {@link ChunkHashCache#MISSING_HASH} if no hash has been saved for the given position */
+	public int getHash(DhChunkPos pos)
+	{
+		Integer cachedHash;
+		this.lock.lock();
+		try
+		{
+			cachedHash = this.hashByChunkPos.get(pos);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		
+		if (cachedHash != null)
+		{
+			return cachedHash;
+		}
+		else if (this.repo == null)
+		{
+			return MISSING_HASH;
+		}
+		
+		
+		// the database read is done outside the lock since it may take a few moments
+		ChunkHashDTO dto = this.repo.getByKey(pos);
+		int hash = (dto != null) ? dto.chunkHash : MISSING_HASH;
+		
+		this.lock.lock();
+		try
+		{
+			// don't overwrite a hash that was saved while we were reading
+			this.hashByChunkPos.putIfAbsent(pos, hash);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		
+		return hash;
+	}
+	
+	/**
+	 * Writes every changed hash to the database in a single transaction. <br>
+	 * Should only be called once the LODs for the given chunks have been saved,
+	 * otherwise a chunk could be skipped without its LOD ever being written.
+	 */
+	public void saveHashes(Collection<ChunkHashDTO> dtos)
+	{
+		ArrayList<ChunkHashDTO> changedDtoList = new ArrayList<>(dtos.size());
+		
+		this.lock.lock();
+		try
+		{
+			for (ChunkHashDTO dto : dtos)
+			{
+				Integer oldHash = this.hashByChunkPos.get(dto.pos);
+				if (oldHash == null || oldHash != dto.chunkHash)
+				{
+					changedDtoList.add(dto);
+				}
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		
+		
+		// the cache is only updated once the hash has been written,
+		// otherwise a failed write would cause the chunk to be skipped until the cache is cleared
+		Set<ChunkHashDTO> failedDtoSet = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (this.repo != null)
+		{
+			failedDtoSet.addAll(this.repo.saveBatch(changedDtoList));
+		}
+		
+		this.lock.lock();
+		try
+		{
+			for (ChunkHashDTO dto : changedDtoList)
+			{
+				if (!failedDtoSet.contains(dto))
+				{
+					this.hashByChunkPos.put(dto.pos, dto.chunkHash);
+				}
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	
+	
+	
+}
@@ -21,9 +21,11 @@ package com.seibel.distanthorizons.core.level;
 
 import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.enums.EDataSourceUpdateSource;
 import com.seibel.distanthorizons.core.dependencyInjection.SingletonInjector;
 import com.seibel.distanthorizons.core.file.fullDatafile.IDataSourceUpdateListenerFunc;
 import com.seibel.distanthorizons.core.file.fullDatafile.V2.FullDataSourceProviderV2;
+import com.seibel.distanthorizons.core.generation.PregenManager;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
 import com.seibel.distanthorizons.core.render.LodQuadTree;
@@ -164,8 +166,18 @@ public class ClientLevelModule implements Closeable, IDataSourceUpdateListenerFu
 	public CompletableFuture<Void> updateDataSourcesAsync(FullDataSourceV2 data) 
 	{ return this.clientLevel.getFullDataProvider().updateDataSourceAsync(data); }
 	@Override
-	public void OnDataSourceUpdated(FullDataSourceV2 updatedFullDataSource)
+	public void OnDataSourceUpdated(FullDataSourceV2 updatedFullDataSource, EDataSourceUpdateSource updateSource)
 	{
+		// generated data isn't rendered while a pregen is running, 
+		// the render data will be reloaded once the pregen finishes
+		// (see DhClientServerLevel#onWorldGenTaskComplete).
+		// Everything else, IE player edits, should still show up immediately.
+		if (updateSource == EDataSourceUpdateSource.WORLD_GENERATION
+			&& PregenManager.INSTANCE.isRunningForLevel(this.clientLevel))
+		{
+			return;
+		}
+		
 		// if rendering, also update the render sources
 		ClientRenderState ClientRenderState = this.ClientRenderStateRef.get();
 		if (ClientRenderState != null)
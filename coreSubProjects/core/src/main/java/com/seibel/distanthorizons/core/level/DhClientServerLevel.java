@@ -22,6 +22,7 @@ package com.seibel.distanthorizons.core.level;
 import com.seibel.distanthorizons.api.methods.events.sharedParameterObjects.DhApiRenderParam;
 import com.seibel.distanthorizons.core.dependencyInjection.SingletonInjector;
 import com.seibel.distanthorizons.core.file.structure.ISaveStructure;
+import com.seibel.distanthorizons.core.generation.PregenManager;
 import com.seibel.distanthorizons.core.multiplayer.server.ServerPlayerStateManager;
 import com.seibel.distanthorizons.core.render.RenderBufferHandler;
 import com.seibel.distanthorizons.core.render.renderer.DebugRenderer;
@@ -133,6 +134,13 @@ public class DhClientServerLevel extends AbstractDhServerLevel implements IDhCli
 	{
 		super.onWorldGenTaskComplete(pos);
 		
+		if (PregenManager.INSTANCE.isRunningForLevel(this))
+		{
+			// rendering is paused during pregen to give world gen as much time as possible,
+			// the render data will be reloaded once the pregen finishes
+			return;
+		}
+		
 		DebugRenderer.makeParticle(
 				new DebugRenderer.BoxParticle(
 						new DebugRenderer.Box(pos, 128f, 156f, 0.09f, Color.red.darker()),
@@ -26,6 +26,7 @@ import com.seibel.distanthorizons.core.dependencyInjection.SingletonInjector;
 import com.seibel.distanthorizons.core.jar.ModJarInfo;
 import com.seibel.distanthorizons.core.level.IDhLevel;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.pooling.NativeByteBufferPool;
 import com.seibel.distanthorizons.core.pooling.PhantomArrayListPool;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.render.RenderBufferHandler;
@@ -155,6 +156,7 @@ public class F3Screen
 		if (Config.Client.Advanced.Debugging.F3Screen.showCombinedObjectPools.get())
 		{
 			PhantomArrayListPool.addDebugMenuStringsToListForCombinedPools(messageList);
+			NativeByteBufferPool.addDebugMenuStringsToListForAllPools(messageList);
 			messageList.add("");
 		}
 		// separated object pools
@@ -113,6 +113,9 @@ public abstract class AbstractFullDataNetworkRequestQueue implements IDebugRende
 	
 	protected abstract String getQueueName();
 	
+	/** Entries that return false here stay in the queue but won't be sent to the server yet. */
+	protected boolean canSendRequest(RequestQueueEntry entry) { return true; }
+	
 	
 	
 	//====================//
@@ -196,28 +199,32 @@ public abstract class AbstractFullDataNetworkRequestQueue implements IDebugRende
 				&& this.getInProgressTaskCount() < this.getRequestRateLimit()
 				&& this.pendingTasksSemaphore.tryAcquire())
 		{
-			if (!this.rateLimiter.tryAcquire())
+			if (!this.sendNextRequest(targetPos))
 			{
-				this.pendingTasksSemaphore.release();
+				// nothing left that can be sent this tick
 				break;
 			}
-			
-			this.sendNextRequest(targetPos);
 		}
 		
 		return true;
 	}
-	private void sendNextRequest(DhBlockPos2D targetPos)
+	/** 
+	 * The rate limit token is only taken once a request is actually sent,
+	 * otherwise entries that are skipped would use up the limit.
+	 * 
+	 * @return false if there weren't any entries that could be sent or the rate limit was reached 
+	 */
+	private boolean sendNextRequest(DhBlockPos2D targetPos)
 	{
 		Map.Entry<Long, RequestQueueEntry> mapEntry = this.waitingTasksBySectionPos.entrySet().stream()
-				.filter(task -> task.getValue().networkDataSourceFuture == null)
+				.filter(task -> task.getValue().networkDataSourceFuture == null && this.canSendRequest(task.getValue()))
 				.min(Comparator.comparingInt(x -> DhSectionPos.getChebyshevSignedBlockDistance(x.getKey(), targetPos)))
 				.orElse(null);
 		
 		if (mapEntry == null)
 		{
 			this.pendingTasksSemaphore.release();
-			return;
+			return false;
 		}
 		
 		long sectionPos = mapEntry.getKey();
@@ -227,19 +234,25 @@ public abstract class AbstractFullDataNetworkRequestQueue implements IDebugRende
 		{
 			entry.future.cancel(false);
 			this.pendingTasksSemaphore.release();
-			return;
+			return true;
 		}
 		
 		if (!this.onBeforeRequest(sectionPos, entry.future))
 		{
 			this.pendingTasksSemaphore.release();
-			return;
+			return true;
 		}
 		
 		Long offsetEntryTimestamp = entry.updateTimestamp != null
 				? entry.updateTimestamp + this.networkState.getServerTimeOffset()
 				: null;
 		
+		if (!this.rateLimiter.tryAcquire())
+		{
+			this.pendingTasksSemaphore.release();
+			return false;
+		}
+		
 		CompletableFuture<FullDataSourceResponseMessage> dataSourceFuture = this.networkState.getSession().sendRequest(
 				new FullDataSourceRequestMessage(this.level.getLevelWrapper(), sectionPos, offsetEntryTimestamp),
 				FullDataSourceResponseMessage.class
@@ -345,6 +358,8 @@ public abstract class AbstractFullDataNetworkRequestQueue implements IDebugRende
 			
 			return entry.future.complete(ERequestResult.SUCCEEDED);
 		});
+		
+		return true;
 	}
 	
 	
@@ -470,6 +485,14 @@ public abstract class AbstractFullDataNetworkRequestQueue implements IDebugRende
 		/** when this reaches zero then the request will be canceled. */
 		public int retryAttempts = MAX_RETRY_ATTEMPTS;
 		
+		/** 
+		 * Only used by {@link SyncOnLoadRequestQueue}. <br>
+		 * Set once the server has confirmed this section is out of date.
+		 */
+		public volatile boolean timestampChecked = false;
+		/** true while this entry is waiting on a batched timestamp check */
+		public volatile boolean timestampCheckInProgress = false;
+		
 		
 		
 		//=============//
@@ -3,22 +3,52 @@ package com.seibel.distanthorizons.core.multiplayer.client;
 import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.generation.RemoteWorldRetrievalQueue;
 import com.seibel.distanthorizons.core.level.DhClientLevel;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.network.exceptions.RateLimitedException;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataTimestampManifestRequestMessage;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataTimestampManifestResponseMessage;
+import com.seibel.distanthorizons.core.network.session.SessionClosedException;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
+import com.seibel.distanthorizons.core.util.ratelimiting.SupplierBasedRateLimiter;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** 
  * This queue only handles LOD updates for
  * LODs that were changed when the player wasn't online
  * and the player already loaded the LODs once.
- * {@link RemoteWorldRetrievalQueue} is used for all other requests.
+ * {@link RemoteWorldRetrievalQueue} is used for all other requests. <br><br>
+ * 
+ * Before any individual requests are sent, the timestamps for every waiting section
+ * in a region are sent to the server as a single {@link FullDataTimestampManifestRequestMessage}.
+ * Only the sections the server reports as out of date are requested,
+ * everything else is finished without any further network traffic.
  * 
  * @see Config.Server#synchronizeOnLoad
  * @see RemoteWorldRetrievalQueue
  */
 public class SyncOnLoadRequestQueue extends AbstractFullDataNetworkRequestQueue
 {
+	private static final DhLogger LOGGER = new DhLoggerBuilder()
+			.fileLevelConfig(Config.Common.Logging.logNetworkEventToFile)
+			.maxCountPerSecond(3)
+			.build();
+	
+	/** the server limits manifests the same way as individual requests */
+	private final SupplierBasedRateLimiter<Void> manifestRateLimiter = new SupplierBasedRateLimiter<>(this::getRequestRateLimit);
+	private final AtomicInteger inProgressManifestCount = new AtomicInteger(0);
+	
+	
+	
 	//=============//
 	// constructor //
 	//=============//
@@ -41,6 +71,12 @@ public class SyncOnLoadRequestQueue extends AbstractFullDataNetworkRequestQueue
 	}
 	@Override
 	protected boolean onBeforeRequest(long sectionPos, CompletableFuture<ERequestResult> future) { return true; }
+	@Override
+	protected boolean canSendRequest(RequestQueueEntry entry)
+	{
+		// entries without a timestamp don't have anything to check
+		return entry.updateTimestamp == null || entry.timestampChecked;
+	}
 	
 	@Override
 	protected String getQueueName() { return "Sync On Login Queue"; }
@@ -52,14 +88,143 @@ public class SyncOnLoadRequestQueue extends AbstractFullDataNetworkRequestQueue
 	//==================//
 	
 	@Override
-	public boolean tick(DhBlockPos2D targetPos)
+	public synchronized boolean tick(DhBlockPos2D targetPos)
 	{
 		if (!this.networkState.sessionConfig.getSynchronizeOnLoad())
 		{
 			return false;
 		}
 		
-		return super.tick(targetPos);
+		if (!super.tick(targetPos))
+		{
+			return false;
+		}
+		
+		this.sendTimestampManifests(targetPos);
+		return true;
+	}
+	
+	private void sendTimestampManifests(DhBlockPos2D targetPos)
+	{
+		if (this.inProgressManifestCount.get() >= this.getRequestRateLimit())
+		{
+			return;
+		}
+		
+		// group the unchecked entries by region, closest regions first
+		LinkedHashMap<Long, List<Map.Entry<Long, RequestQueueEntry>>> entriesByRegionPos = new LinkedHashMap<>();
+		this.waitingTasksBySectionPos.entrySet().stream()
+				.filter(mapEntry -> this.needsTimestampCheck(mapEntry.getKey(), mapEntry.getValue(), targetPos))
+				.sorted(Comparator.comparingInt(mapEntry -> DhSectionPos.getChebyshevSignedBlockDistance(mapEntry.getKey(), targetPos)))
+				.forEachOrdered(mapEntry -> entriesByRegionPos
+						.computeIfAbsent(FullDataTimestampManifestRequestMessage.getRegionPos(mapEntry.getKey()), regionPos -> new ArrayList<>())
+						.add(mapEntry));
+		
+		for (Map.Entry<Long, List<Map.Entry<Long, RequestQueueEntry>>> regionEntry : entriesByRegionPos.entrySet())
+		{
+			if (this.inProgressManifestCount.get() >= this.getRequestRateLimit()
+				|| !this.manifestRateLimiter.tryAcquire())
+			{
+				break;
+			}
+			
+			this.sendTimestampManifest(regionEntry.getKey(), regionEntry.getValue());
+		}
+	}
+	private boolean needsTimestampCheck(long sectionPos, RequestQueueEntry entry, DhBlockPos2D targetPos)
+	{
+		if (entry.updateTimestamp == null 
+			|| entry.timestampChecked
+			|| entry.timestampCheckInProgress)
+		{
+			return false;
+		}
+		
+		if (!this.isSectionAllowedToGenerate(sectionPos, targetPos))
+		{
+			// let the normal request handling decide what to do with out of range entries
+			entry.timestampChecked = true;
+			return false;
+		}
+		
+		return true;
+	}
+	
+	private void sendTimestampManifest(long regionPos, List<Map.Entry<Long, RequestQueueEntry>> mapEntries)
+	{
+		FullDataTimestampManifestRequestMessage message = new FullDataTimestampManifestRequestMessage(this.level.getLevelWrapper(), regionPos);
+		for (Map.Entry<Long, RequestQueueEntry> mapEntry : mapEntries)
+		{
+			RequestQueueEntry entry = mapEntry.getValue();
+			entry.timestampCheckInProgress = true;
+			message.addSection(mapEntry.getKey(), entry.updateTimestamp + this.networkState.getServerTimeOffset());
+		}
+		
+		this.inProgressManifestCount.incrementAndGet();
+		this.networkState.getSession().sendRequest(message, FullDataTimestampManifestResponseMessage.class)
+			.handle((response, throwable) ->
+			{
+				this.inProgressManifestCount.decrementAndGet();
+				
+				try
+				{
+					if (throwable != null)
+					{
+						throw throwable;
+					}
+					
+					boolean[] staleByIndex = new boolean[mapEntries.size()];
+					for (int i = 0; i < response.staleIndexes.size(); i++)
+					{
+						staleByIndex[response.staleIndexes.getInt(i)] = true;
+					}
+					
+					for (int i = 0; i < mapEntries.size(); i++)
+					{
+						RequestQueueEntry entry = mapEntries.get(i).getValue();
+						if (staleByIndex[i])
+						{
+							entry.timestampChecked = true;
+						}
+						else
+						{
+							// same result as an individual request that found no changes
+							entry.future.complete(ERequestResult.SUCCEEDED);
+						}
+					}
+				}
+				catch (SessionClosedException | CancellationException ignored)
+				{
+					// the entries will be cancelled when the queue closes
+				}
+				catch (RateLimitedException e)
+				{
+					LOGGER.info("Rate limited by server, re-queueing timestamp manifest [" + DhSectionPos.toString(regionPos) + "]: " + e.getMessage());
+					
+					// Skip all manifests for 1 second
+					this.manifestRateLimiter.acquireAll();
+				}
+				catch (Throwable e)
+				{
+					LOGGER.warn("Unable to check timestamp manifest [" + DhSectionPos.toString(regionPos) + "], falling back to individual requests: " + e.getMessage());
+					
+					for (Map.Entry<Long, RequestQueueEntry> mapEntry : mapEntries)
+					{
+						mapEntry.getValue().timestampChecked = true;
+					}
+				}
+				finally
+				{
+					// only cleared once each entry's result has been applied,
+					// otherwise a concurrent tick could send a second manifest for the same sections
+					for (Map.Entry<Long, RequestQueueEntry> mapEntry : mapEntries)
+					{
+						mapEntry.getValue().timestampCheckInProgress = false;
+					}
+				}
+				
+				return null;
+			});
 	}
 	
 	
@@ -57,6 +57,39 @@ public class FullDataPayload implements INetworkObject
 		
 		this.beaconBeams = beaconBeams;
 	}
+	/**
+	 * Encodes the DTO's already compressed data as-is. <br>
+	 * This skips decompressing and re-compressing the data source, 
+	 * which is possible because the receiver decompresses
+	 * using the compression mode stored in the DTO.
+	 */
+	public FullDataPayload(@NotNull FullDataSourceV2DTO dataSourceDto, List<BeaconBeamDTO> beaconBeams)
+	{ this(encodeDto(dataSourceDto), beaconBeams); }
+	/**
+	 * Uses an already encoded {@link FullDataSourceV2DTO} buffer,
+	 * generally one retrieved from the {@link FullDataPayloadCache}. <br>
+	 * The payload takes ownership of the given buffer reference.
+	 */
+	public FullDataPayload(@NotNull ByteBuf encodedDtoBuffer, List<BeaconBeamDTO> beaconBeams)
+	{
+		Objects.requireNonNull(encodedDtoBuffer);
+		
+		this.dtoBufferId = lastBufferId.getAndIncrement();
+		this.dtoBuffer = encodedDtoBuffer;
+		this.beaconBeams = beaconBeams;
+	}
+	
+	
+	
+	/** Encodes the DTO's data as-is into a new buffer with a reference count of 1. */
+	public static ByteBuf encodeDto(@NotNull FullDataSourceV2DTO dataSourceDto)
+	{
+		Objects.requireNonNull(dataSourceDto);
+		
+		ByteBuf buffer = Unpooled.buffer();
+		dataSourceDto.encode(buffer);
+		return buffer;
+	}
 	
 	
 	
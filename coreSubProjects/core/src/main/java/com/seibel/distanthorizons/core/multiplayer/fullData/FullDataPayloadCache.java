@@ -0,0 +1,171 @@
+package com.seibel.distanthorizons.core.multiplayer.fullData;
+
+import com.seibel.distanthorizons.core.config.Config;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import io.netty.buffer.ByteBuf;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds encoded {@link FullDataPayload} buffers so multiple players
+ * requesting the same section only cost a single database read and encode. <br><br>
+ *
+ * Entries are keyed by section position and the data's last modified timestamp,
+ * so a buffer is only returned if it still matches what's in the database. <br>
+ * Buffers are reference counted, the cache holds one reference and
+ * each returned buffer holds its own which must be released by the caller. <br><br>
+ *
+ * Entries are evicted least-recently-used first once
+ * {@link Config.Server#payloadCacheSizeInMb} is exceeded.
+ *
+ * @see FullDataPayload
+ */
+public class FullDataPayloadCache implements AutoCloseable
+{
+	private static final DhLogger LOGGER = new DhLoggerBuilder()
+			.fileLevelConfig(Config.Common.Logging.logNetworkEventToFile)
+			.build();
+
+
+	/** access ordered so the first entry will always be the least recently used */
+	private final LinkedHashMap<Long, CachedBuffer> bufferByPos = new LinkedHashMap<>(64, 0.75f, true);
+	private long cachedSizeInBytes = 0;
+
+	private final AtomicLong hitCountRef = new AtomicLong(0);
+	private final AtomicLong missCountRef = new AtomicLong(0);
+
+
+
+	//=========//
+	// getters //
+	//=========//
+
+	/**
+	 * @return null if nothing is cached for the given position and timestamp. <br>
+	 *          Otherwise a retained duplicate which must be released by the caller.
+	 */
+	@Nullable
+	public synchronized ByteBuf tryGetRetained(long pos, long lastModifiedUnixDateTime)
+	{
+		CachedBuffer cachedBuffer = this.bufferByPos.get(pos);
+		if (cachedBuffer == null
+			|| cachedBuffer.lastModifiedUnixDateTime != lastModifiedUnixDateTime)
+		{
+			this.missCountRef.incrementAndGet();
+			return null;
+		}
+
+		this.hitCountRef.incrementAndGet();
+		return cachedBuffer.buffer.retainedDuplicate();
+	}
+
+
+
+	//=========//
+	// setters //
+	//=========//
+
+	/**
+	 * Adds a reference to the given buffer if it's cached,
+	 * the caller still owns their own reference.
+	 */
+	public synchronized void put(long pos, long lastModifiedUnixDateTime, @NotNull ByteBuf encodedBuffer)
+	{
+		long maxSizeInBytes = getMaxSizeInBytes();
+		int sizeInBytes = encodedBuffer.writerIndex();
+		if (sizeInBytes > maxSizeInBytes)
+		{
+			// also handles the cache being disabled
+			return;
+		}
+
+		CachedBuffer existingBuffer = this.bufferByPos.get(pos);
+		if (existingBuffer != null
+			&& existingBuffer.lastModifiedUnixDateTime >= lastModifiedUnixDateTime)
+		{
+			// don't replace newer data with older data
+			return;
+		}
+
+		this.removeAndRelease(pos);
+		this.bufferByPos.put(pos, new CachedBuffer(encodedBuffer.retainedDuplicate(), lastModifiedUnixDateTime));
+		this.cachedSizeInBytes += sizeInBytes;
+
+
+		// evict old buffers
+		Iterator<Map.Entry<Long, CachedBuffer>> iterator = this.bufferByPos.entrySet().iterator();
+		while (this.cachedSizeInBytes > maxSizeInBytes
+				&& iterator.hasNext())
+		{
+			CachedBuffer evictedBuffer = iterator.next().getValue();
+			iterator.remove();
+			this.cachedSizeInBytes -= evictedBuffer.buffer.writerIndex();
+			evictedBuffer.buffer.release();
+		}
+	}
+
+	/** Should be called whenever the data at the given position changes. */
+	public synchronized void invalidate(long pos) { this.removeAndRelease(pos); }
+
+	private void removeAndRelease(long pos)
+	{
+		CachedBuffer removedBuffer = this.bufferByPos.remove(pos);
+		if (removedBuffer != null)
+		{
+			this.cachedSizeInBytes -= removedBuffer.buffer.writerIndex();
+			removedBuffer.buffer.release();
+		}
+	}
+
+
+
+	//================//
+	// helper methods //
+	//================//
+
+	private static long getMaxSizeInBytes() { return Config.Server.payloadCacheSizeInMb.get() * 1024L * 1024L; }
+
+
+
+	//================//
+	// base overrides //
+	//================//
+
+	@Override
+	public synchronized void close()
+	{
+		for (CachedBuffer cachedBuffer : this.bufferByPos.values())
+		{
+			cachedBuffer.buffer.release();
+		}
+		this.bufferByPos.clear();
+		this.cachedSizeInBytes = 0;
+
+		LOGGER.debug("Closed payload cache, hits: [" + this.hitCountRef.get() + "], misses: [" + this.missCountRef.get() + "].");
+	}
+
+
+
+	//================//
+	// helper classes //
+	//================//
+
+	private static class CachedBuffer
+	{
+		public final ByteBuf buffer;
+		public final long lastModifiedUnixDateTime;
+
+		public CachedBuffer(ByteBuf buffer, long lastModifiedUnixDateTime)
+		{
+			this.buffer = buffer;
+			this.lastModifiedUnixDateTime = lastModifiedUnixDateTime;
+		}
+	}
+
+}
@@ -2,102 +2,457 @@ package com.seibel.distanthorizons.core.multiplayer.fullData;
 
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataSplitMessage;
 import com.seibel.distanthorizons.core.network.session.NetworkSession;
-import com.seibel.distanthorizons.core.util.TimerUtil;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
+import com.seibel.distanthorizons.core.util.math.Vec3d;
+import com.seibel.distanthorizons.core.wrapperInterfaces.misc.IServerPlayerWrapper;
 import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.*;
 
+/**
+ * Splits {@link FullDataPayload}'s into {@link FullDataSplitMessage}'s for a single player. <br><br>
+ *
+ * Transfers are started closest to the player first,
+ * and up to {@link FullDataPayloadSender#MAX_ACTIVE_TRANSFER_COUNT} transfers are interleaved
+ * so a large far away section can't hold up the sections around the player. <br>
+ * How many bytes can be sent each tick is decided by the {@link SharedBandwidthLimit}.
+ */
 public class FullDataPayloadSender implements AutoCloseable
 {
-	private static final int TICK_RATE = 20;
-	
 	/** 1 Mebibyte minus 576 bytes for other info */
 	public static final int FULL_DATA_SPLIT_SIZE_IN_BYTES = 1_048_000;
+	/**
+	 * How much of a transfer is sent before moving on to the next active transfer. <br>
+	 * Small enough that transfers are interleaved fairly,
+	 * large enough that the per-message overhead doesn't matter.
+	 */
+	public static final int INTERLEAVE_SLICE_SIZE_IN_BYTES = 64 * 1024;
+	/**
+	 * The client holds every partially received transfer in memory
+	 * and drops them after a few seconds without progress,
+	 * so only a few transfers are sent at once.
+	 */
+	public static final int MAX_ACTIVE_TRANSFER_COUNT = 4;
+	/**
+	 * The client drops partially received transfers after 10 seconds without progress
+	 * (see {@link FullDataPayloadReceiver}),
+	 * so a pre-empted transfer is only resumed where it left off if it was paused for less than this. <br>
+	 * Half of the client's timeout leaves room for network latency.
+	 */
+	public static final long MAX_PAUSED_TRANSFER_RESUME_TIME_IN_MS = 5_000;
 	
 	
-	private static final Timer UPLOAD_TIMER = TimerUtil.CreateTimer("FullDataPayloadSender");
-	private final TimerTask tickTimerTask = TimerUtil.createTimerTask(this::tick);
-	
 	private final NetworkSession session;
 	private final IntSupplier maxKBpsSupplier;
-	private final ConcurrentLinkedQueue<PendingTransfer> transferQueue = new ConcurrentLinkedQueue<>();
-	
 	private final SharedBandwidthLimit sharedBandwidthLimit;
 	
+	private final ReentrantLock lock = new ReentrantLock();
+	/** guarded by {@link FullDataPayloadSender#lock}, transfers that haven't been started yet or were pre-empted */
+	private final PriorityQueue<PendingTransfer> waitingTransfers = new PriorityQueue<>(PendingTransfer.PRIORITY_COMPARATOR);
+	/** guarded by {@link FullDataPayloadSender#lock}, these are sent round robin */
+	private final ArrayList<PendingTransfer> activeTransfers = new ArrayList<>(MAX_ACTIVE_TRANSFER_COUNT);
+	/** guarded by {@link FullDataPayloadSender#lock}, only contains transfers that were sent in response to a request */
+	private final Long2ObjectOpenHashMap<PendingTransfer> transfersByRequestId = new Long2ObjectOpenHashMap<>();
+	/** guarded by {@link FullDataPayloadSender#lock} */
+	private int nextActiveTransferIndex = 0;
+	/** guarded by {@link FullDataPayloadSender#lock}, used to keep equal priority transfers in FIFO order */
+	private long nextSequenceNumber = 0;
+	/** guarded by {@link FullDataPayloadSender#lock} */
+	private boolean closed = false;
+	
+	/** only accessed by the {@link SharedBandwidthLimit}'s tick thread */
+	long deficitInBytes = 0;
+	/** only accessed by the {@link SharedBandwidthLimit}'s tick thread */
+	private long remainingTickBytes = 0;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
 	
 	public FullDataPayloadSender(NetworkSession session, IntSupplier maxKBpsSupplier, SharedBandwidthLimit sharedBandwidthLimit)
 	{
 		this.session = session;
 		this.maxKBpsSupplier = maxKBpsSupplier;
 		this.sharedBandwidthLimit = sharedBandwidthLimit;
-		UPLOAD_TIMER.scheduleAtFixedRate(this.tickTimerTask, 0, 1000 / TICK_RATE);
+		this.sharedBandwidthLimit.register(this);
 	}
 	
 	@Override
 	public void close()
 	{
-		this.tickTimerTask.cancel();
+		this.sharedBandwidthLimit.unregister(this);
+		
+		this.lock.lock();
+		try
+		{
+			this.closed = true;
+			
+			// release any transfers that won't be finished
+			for (PendingTransfer transfer : this.activeTransfers)
+			{
+				transfer.buffer.release();
+			}
+			for (PendingTransfer transfer : this.waitingTransfers)
+			{
+				transfer.buffer.release();
+			}
+			this.activeTransfers.clear();
+			this.waitingTransfers.clear();
+			this.transfersByRequestId.clear();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	
+	
+	
+	//===========//
+	// transfers //
+	//===========//
+	
+	/**
+	 * Used for transfers that aren't a response to a request, IE real time updates. <br>
+	 * The payload's buffer is retained until the transfer finishes,
+	 * so the caller can release their own reference once this returns.
+	 */
+	public void sendInChunks(FullDataPayload payload, long sectionPos, ETransferType transferType, Runnable sendFinalMessage)
+	{ this.queueTransfer(new PendingTransfer(payload, this.getDistanceFromPlayer(sectionPos), transferType, null, sendFinalMessage, null)); }
+	/**
+	 * Same as {@link FullDataPayloadSender#sendInChunks(FullDataPayload, long, ETransferType, Runnable)}
+	 * except the transfer can be dropped with {@link FullDataPayloadSender#cancelTransfer(long)}.
+	 *
+	 * @param onCancelled run instead of sendFinalMessage if the transfer is cancelled
+	 */
+	public void sendInChunks(FullDataPayload payload, long sectionPos, ETransferType transferType, long requestId, Runnable sendFinalMessage, Runnable onCancelled)
+	{ this.queueTransfer(new PendingTransfer(payload, this.getDistanceFromPlayer(sectionPos), transferType, requestId, sendFinalMessage, onCancelled)); }
+	private void queueTransfer(PendingTransfer transfer)
+	{
+		this.lock.lock();
+		try
+		{
+			if (this.closed)
+			{
+				transfer.buffer.release();
+				return;
+			}
+			
+			transfer.sequenceNumber = this.nextSequenceNumber++;
+			this.waitingTransfers.add(transfer);
+			if (transfer.requestId != null)
+			{
+				this.transfersByRequestId.put(transfer.requestId.longValue(), transfer);
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
 	}
 	
+	/**
+	 * Drops the transfer for the given request, even if it's already partially sent. <br>
+	 * The client discards partially received transfers on its own.
+	 *
+	 * @return false if no transfer for the given request is queued,
+	 *          IE it already finished or was never queued
+	 */
+	public boolean cancelTransfer(long requestId)
+	{
+		PendingTransfer transfer;
+		this.lock.lock();
+		try
+		{
+			transfer = this.transfersByRequestId.remove(requestId);
+			if (transfer == null)
+			{
+				return false;
+			}
+			
+			if (!this.removeActiveTransfer(transfer))
+			{
+				this.waitingTransfers.remove(transfer);
+			}
+			
+			// any slice that's currently being sent holds its own reference
+			transfer.buffer.release();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		
+		if (transfer.onCancelled != null)
+		{
+			transfer.onCancelled.run();
+		}
+		return true;
+	}
 	
-	public void sendInChunks(FullDataPayload payload, Runnable sendFinalMessage)
+	private int getDistanceFromPlayer(long sectionPos)
 	{
-		this.transferQueue.add(new PendingTransfer(payload, sendFinalMessage));
+		IServerPlayerWrapper serverPlayer = this.session.serverPlayer;
+		if (serverPlayer == null)
+		{
+			return 0;
+		}
+		
+		Vec3d playerPosition = serverPlayer.getPosition();
+		return DhSectionPos.getChebyshevSignedBlockDistance(sectionPos, new DhBlockPos2D((int) playerPosition.x, (int) playerPosition.z));
 	}
 	
-	private void tick()
+	
+	
+	//=========//
+	// sending //
+	//=========//
+	
+	/** Called by the {@link SharedBandwidthLimit} at the start of each tick. */
+	void startTick(int tickRate)
 	{
-		int bandwidthShare = this.sharedBandwidthLimit.getBandwidthShare();
-		int maxPlayerRate = Math.min(this.maxKBpsSupplier.getAsInt(), bandwidthShare);
+		int maxPlayerRate = this.maxKBpsSupplier.getAsInt();
 		
 		// + 1 to account for rounding errors on values of < 4
-		int bytesToSend = maxPlayerRate > 0
-				? (maxPlayerRate * 1000) / TICK_RATE + 1
+		this.remainingTickBytes = maxPlayerRate > 0
+				? ((long) maxPlayerRate * 1000) / tickRate + 1
 				: Integer.MAX_VALUE;
+	}
+	
+	/** @return true if there's something to send and this player's limit hasn't been reached this tick */
+	boolean canSend()
+	{
+		if (this.remainingTickBytes <= 0)
+		{
+			return false;
+		}
 		
-		this.sharedBandwidthLimit.setSenderActive(this, bytesToSend > 0);
-		
-		while (bytesToSend > 0)
+		this.lock.lock();
+		try
+		{
+			return !this.activeTransfers.isEmpty() || !this.waitingTransfers.isEmpty();
+		}
+		finally
 		{
-			PendingTransfer pendingTransfer = this.transferQueue.peek();
-			if (pendingTransfer == null)
+			this.lock.unlock();
+		}
+	}
+	
+	/**
+	 * Will only send less than the given number of bytes
+	 * if there's nothing left to send or this player's limit was reached.
+	 *
+	 * @return the number of bytes sent
+	 */
+	long send(long maxBytes)
+	{
+		long bytesToSend = Math.min(maxBytes, this.remainingTickBytes);
+		long sentBytes = 0;
+		while (sentBytes < bytesToSend)
+		{
+			PendingTransfer transfer;
+			ByteBuf slice;
+			boolean isFirstSlice;
+			boolean finished;
+			
+			this.lock.lock();
+			try
 			{
-				return;
+				transfer = this.getNextTransfer();
+				if (transfer == null)
+				{
+					break;
+				}
+				
+				int sliceSize = (int) Math.min(Math.min(bytesToSend - sentBytes, INTERLEAVE_SLICE_SIZE_IN_BYTES), transfer.buffer.readableBytes());
+				isFirstSlice = transfer.buffer.readerIndex() == 0;
+				// retained so a cancel can't release the buffer while this slice is being sent
+				slice = transfer.buffer.readSlice(sliceSize).retain();
+				
+				finished = transfer.buffer.readableBytes() == 0;
+				if (finished)
+				{
+					this.removeActiveTransfer(transfer);
+					if (transfer.requestId != null)
+					{
+						this.transfersByRequestId.remove(transfer.requestId.longValue());
+					}
+				}
+			}
+			finally
+			{
+				this.lock.unlock();
 			}
 			
-			int chunkSize = Math.min(Math.min(bytesToSend, FULL_DATA_SPLIT_SIZE_IN_BYTES), pendingTransfer.buffer.readableBytes());
-			boolean isFirstChunk = pendingTransfer.buffer.readerIndex() == 0;
-			
-			FullDataSplitMessage chunkMessage = new FullDataSplitMessage(pendingTransfer.bufferId, pendingTransfer.buffer.readSlice(chunkSize).retain(), isFirstChunk);
-			this.session.sendMessage(chunkMessage);
+			sentBytes += slice.readableBytes();
+			this.session.sendMessage(new FullDataSplitMessage(transfer.bufferId, slice, isFirstSlice));
 			
-			bytesToSend -= chunkSize;
+			if (finished)
+			{
+				transfer.sendFinalMessage.run();
+				transfer.buffer.release();
+			}
+		}
+		
+		this.remainingTickBytes -= sentBytes;
+		return sentBytes;
+	}
+	
+	/** must be called while holding the {@link FullDataPayloadSender#lock} */
+	@Nullable
+	private PendingTransfer getNextTransfer()
+	{
+		// fill any free slots with the closest waiting transfers
+		while (this.activeTransfers.size() < MAX_ACTIVE_TRANSFER_COUNT
+				&& !this.waitingTransfers.isEmpty())
+		{
+			this.activeTransfers.add(this.resumeTransfer(this.waitingTransfers.poll()));
+		}
+		
+		if (this.activeTransfers.isEmpty())
+		{
+			return null;
+		}
+		
+		
+		// if every slot is in use a closer transfer
+		// pre-empts the furthest active transfer
+		PendingTransfer waitingTransfer = this.waitingTransfers.peek();
+		if (waitingTransfer != null)
+		{
+			int furthestIndex = 0;
+			for (int i = 1; i < this.activeTransfers.size(); i++)
+			{
+				if (PendingTransfer.PRIORITY_COMPARATOR.compare(this.activeTransfers.get(i), this.activeTransfers.get(furthestIndex)) > 0)
+				{
+					furthestIndex = i;
+				}
+			}
 			
-			if (pendingTransfer.buffer.readableBytes() == 0)
+			PendingTransfer furthestTransfer = this.activeTransfers.get(furthestIndex);
+			if (PendingTransfer.PRIORITY_COMPARATOR.compare(waitingTransfer, furthestTransfer) < 0)
 			{
-				pendingTransfer.sendFinalMessage.run();
-				this.transferQueue.poll();
+				// the pre-empted transfer keeps its progress so it can be resumed later
+				furthestTransfer.pausedTimeMs = System.currentTimeMillis();
+				this.waitingTransfers.poll();
+				this.waitingTransfers.add(furthestTransfer);
+				this.activeTransfers.set(furthestIndex, this.resumeTransfer(waitingTransfer));
 			}
 		}
+		
+		
+		if (this.nextActiveTransferIndex >= this.activeTransfers.size())
+		{
+			this.nextActiveTransferIndex = 0;
+		}
+		return this.activeTransfers.get(this.nextActiveTransferIndex++);
 	}
 	
+	/**
+	 * must be called while holding the {@link FullDataPayloadSender#lock} <br>
+	 * Keeps the round robin pointed at the same next transfer,
+	 * otherwise the transfer after a removed one would be skipped.
+	 *
+	 * @return false if the transfer wasn't active
+	 */
+	private boolean removeActiveTransfer(PendingTransfer transfer)
+	{
+		int index = this.activeTransfers.indexOf(transfer);
+		if (index == -1)
+		{
+			return false;
+		}
+		
+		this.activeTransfers.remove(index);
+		if (index < this.nextActiveTransferIndex)
+		{
+			this.nextActiveTransferIndex--;
+		}
+		return true;
+	}
+	
+	/**
+	 * Continues a pre-empted transfer from where it was paused,
+	 * unless the client has probably already dropped the partial buffer.
+	 */
+	private PendingTransfer resumeTransfer(PendingTransfer transfer)
+	{
+		if (transfer.buffer.readerIndex() != 0
+				&& System.currentTimeMillis() - transfer.pausedTimeMs > MAX_PAUSED_TRANSFER_RESUME_TIME_IN_MS)
+		{
+			// restarting sends a new first slice, which replaces whatever the client still has
+			transfer.buffer.readerIndex(0);
+		}
+		return transfer;
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	/**
+	 * Transfers closer to the player are always sent first,
+	 * the type is only used to order transfers at the same distance.
+	 */
+	public enum ETransferType
+	{
+		/** a section the player is probably looking at was changed */
+		REAL_TIME_UPDATE,
+		/** the section already exists and just needs to be sent */
+		SYNC_ON_LOAD,
+		/** the section had to be generated */
+		GENERATION,
+	}
 	
 	private static class PendingTransfer
 	{
+		public static final Comparator<PendingTransfer> PRIORITY_COMPARATOR = Comparator
+				.<PendingTransfer>comparingInt(transfer -> transfer.distanceFromPlayer)
+				.thenComparingInt(transfer -> transfer.transferType.ordinal())
+				.thenComparingLong(transfer -> transfer.sequenceNumber);
+		
 		public final int bufferId;
 		public final ByteBuf buffer;
 		public final Runnable sendFinalMessage;
 		
-		private PendingTransfer(FullDataPayload payload, Runnable sendFinalMessage)
+		public final int distanceFromPlayer;
+		public final ETransferType transferType;
+		/** null if this transfer can't be cancelled */
+		@Nullable
+		public final Long requestId;
+		@Nullable
+		public final Runnable onCancelled;
+		/** set when queued */
+		public long sequenceNumber;
+		/** set when pre-empted, only meaningful if part of the buffer was already sent */
+		public long pausedTimeMs;
+		
+		private PendingTransfer(
+				FullDataPayload payload, int distanceFromPlayer, ETransferType transferType,
+				@Nullable Long requestId, Runnable sendFinalMessage, @Nullable Runnable onCancelled)
 		{
 			this.bufferId = payload.dtoBufferId;
-			this.buffer = payload.dtoBuffer.duplicate().readerIndex(0);
+			// retained so the buffer can be shared between multiple transfers
+			this.buffer = payload.dtoBuffer.retainedDuplicate().readerIndex(0);
 			this.sendFinalMessage = sendFinalMessage;
+			
+			this.distanceFromPlayer = distanceFromPlayer;
+			this.transferType = transferType;
+			this.requestId = requestId;
+			this.onCancelled = onCancelled;
 		}
-		
+	
 	}
 	
 }
@@ -1,36 +1,171 @@
 package com.seibel.distanthorizons.core.multiplayer.fullData;
 
 import com.seibel.distanthorizons.core.config.Config;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.util.TimerUtil;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
 
+/**
+ * Splits {@link Config.Server#globalBandwidthLimit} between every player's {@link FullDataPayloadSender}
+ * using deficit round robin. <br><br>
+ *
+ * Each round every sender with something to send is given an equal quantum of bytes,
+ * anything a sender can't use (because it ran out of data or reached its own player limit)
+ * is handed out to the remaining senders in the next round. <br>
+ * Which sender goes first rotates every tick so the same player
+ * isn't always the one left waiting when the global limit runs out.
+ */
 public class SharedBandwidthLimit
 {
+	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
+	
+	public static final int TICK_RATE = 20;
+	/** prevents sending lots of tiny messages when the global limit is split between a lot of players */
+	private static final int MIN_QUANTUM_IN_BYTES = 16 * 1024;
+	
+	private static final Timer UPLOAD_TIMER = TimerUtil.CreateTimer("FullDataPayloadSender");
+	
+	private final IntSupplier globalKBpsSupplier;
+	private final boolean tickAutomatically;
+	/** only ticks while at least one sender is registered, guarded by synchronizing on this object */
+	@Nullable
+	private TimerTask tickTimerTask = null;
+	
 	private final Set<FullDataPayloadSender> senders = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	/** only accessed by the timer thread */
+	private final ArrayList<FullDataPayloadSender> roundSenders = new ArrayList<>();
+	/** only accessed by the timer thread */
+	private int firstSenderOffset = 0;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public SharedBandwidthLimit() { this(() -> Config.Server.globalBandwidthLimit.get(), true); }
+	/**
+	 * @param globalKBpsSupplier 0 or less means unlimited
+	 * @param tickAutomatically if false {@link SharedBandwidthLimit#tick()} has to be called manually,
+	 *                          IE for unit tests
+	 */
+	public SharedBandwidthLimit(IntSupplier globalKBpsSupplier, boolean tickAutomatically)
+	{
+		this.globalKBpsSupplier = globalKBpsSupplier;
+		this.tickAutomatically = tickAutomatically;
+	}
+	
+	
 	
-	public void setSenderActive(FullDataPayloadSender sender, boolean active)
+	//===================//
+	// sender management //
+	//===================//
+	
+	public synchronized void register(FullDataPayloadSender sender)
 	{
-		if (active)
+		this.senders.add(sender);
+		if (this.tickAutomatically && this.tickTimerTask == null)
 		{
-			this.senders.add(sender);
+			this.tickTimerTask = TimerUtil.createTimerTask(this::tick);
+			UPLOAD_TIMER.scheduleAtFixedRate(this.tickTimerTask, 0, 1000 / TICK_RATE);
 		}
-		else
+	}
+	
+	public synchronized void unregister(FullDataPayloadSender sender)
+	{
+		this.senders.remove(sender);
+		if (this.senders.isEmpty() && this.tickTimerTask != null)
 		{
-			this.senders.remove(sender);
+			this.tickTimerTask.cancel();
+			this.tickTimerTask = null;
 		}
 	}
 	
-	public int getBandwidthShare()
+	
+	
+	//=========//
+	// ticking //
+	//=========//
+	
+	/** Sends up to one tick's worth of data for every registered sender. */
+	public void tick()
 	{
-		int globalBandwidthLimit = Config.Server.globalBandwidthLimit.get();
-		if (globalBandwidthLimit == 0)
+		// an uncaught exception would stop the timer for every player
+		try
+		{
+			this.tryTick();
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("Unexpected error sending LOD data, error: [" + e.getMessage() + "].", e);
+		}
+	}
+	private void tryTick()
+	{
+		int globalBandwidthLimit = this.globalKBpsSupplier.getAsInt();
+		
+		// + 1 to account for rounding errors on values of < 4
+		long remainingGlobalBytes = globalBandwidthLimit > 0
+				? ((long) globalBandwidthLimit * 1000) / TICK_RATE + 1
+				: Integer.MAX_VALUE;
+		
+		this.roundSenders.clear();
+		for (FullDataPayloadSender sender : this.senders)
 		{
-			globalBandwidthLimit = Integer.MAX_VALUE;
+			sender.startTick(TICK_RATE);
+			if (sender.canSend())
+			{
+				this.roundSenders.add(sender);
+			}
+			else
+			{
+				// senders don't bank bandwidth while they're idle
+				sender.deficitInBytes = 0;
+			}
 		}
 		
-		return globalBandwidthLimit / Math.max(this.senders.size(), 1);
+		if (this.roundSenders.isEmpty())
+		{
+			return;
+		}
+		
+		this.firstSenderOffset = (this.firstSenderOffset + 1) % this.roundSenders.size();
+		Collections.rotate(this.roundSenders, -this.firstSenderOffset);
+		
+		
+		while (remainingGlobalBytes > 0 && !this.roundSenders.isEmpty())
+		{
+			long quantum = Math.max(remainingGlobalBytes / this.roundSenders.size(), MIN_QUANTUM_IN_BYTES);
+			
+			Iterator<FullDataPayloadSender> iterator = this.roundSenders.iterator();
+			while (iterator.hasNext() && remainingGlobalBytes > 0)
+			{
+				FullDataPayloadSender sender = iterator.next();
+				sender.deficitInBytes += quantum;
+				
+				long sentBytes = sender.send(Math.min(sender.deficitInBytes, remainingGlobalBytes));
+				sender.deficitInBytes -= sentBytes;
+				remainingGlobalBytes -= sentBytes;
+				
+				if (!sender.canSend())
+				{
+					sender.deficitInBytes = 0;
+					iterator.remove();
+				}
+			}
+		}
 	}
 	
+	
+	
 }
@@ -3,22 +3,30 @@ package com.seibel.distanthorizons.core.multiplayer.server;
 import com.seibel.distanthorizons.api.enums.worldGeneration.EDhApiDistantGeneratorMode;
 import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.file.fullDatafile.IDataSourceUpdateListenerFunc;
 import com.seibel.distanthorizons.core.file.fullDatafile.GeneratedFullDataSourceProvider;
 import com.seibel.distanthorizons.core.level.AbstractDhServerLevel;
 import com.seibel.distanthorizons.core.logging.DhLogger;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.multiplayer.fullData.FullDataPayload;
+import com.seibel.distanthorizons.core.multiplayer.fullData.FullDataPayloadCache;
+import com.seibel.distanthorizons.core.multiplayer.fullData.FullDataPayloadSender;
 import com.seibel.distanthorizons.core.network.exceptions.RequestRejectedException;
 import com.seibel.distanthorizons.core.network.exceptions.SectionRequiresSplittingException;
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataSourceRequestMessage;
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataSourceResponseMessage;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataTimestampManifestRequestMessage;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataTimestampManifestResponseMessage;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.sql.dto.BeaconBeamDTO;
+import com.seibel.distanthorizons.core.sql.dto.FullDataSourceV2DTO;
 import com.seibel.distanthorizons.core.util.ThreadUtil;
 import com.seibel.distanthorizons.core.util.threading.ThreadPoolUtil;
+import io.netty.buffer.ByteBuf;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -38,6 +46,15 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 	
 	private final ConcurrentMap<Long, DataSourceRequestGroup> requestGroupsByPos = new ConcurrentHashMap<>();
 	private final ConcurrentMap<Long, DataSourceRequestGroup> requestGroupsByFutureId = new ConcurrentHashMap<>();
+	/** 
+	 * Sync requests that are still reading their data. <br>
+	 * Removed when the request is cancelled so the data isn't sent once it's ready.
+	 */
+	private final Set<Long> pendingSyncRequestIds = ConcurrentHashMap.newKeySet();
+	
+	/** shared between every player so multiple requests for the same section only need to be encoded once */
+	private final FullDataPayloadCache payloadCache = new FullDataPayloadCache();
+	private final IDataSourceUpdateListenerFunc<FullDataSourceV2> dataSourceUpdateListener = (dataSource) -> this.payloadCache.invalidate(dataSource.getPos());
 	
 	
 	
@@ -52,6 +69,8 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 		String levelId = this.serverLevel.getServerLevelWrapper().getDhIdentifier();
 		this.tickerThread = ThreadUtil.makeSingleDaemonThreadPool("DataSource Request Ticker ["+levelId+"]");
 		this.tickerThread.execute(this::tickLoop);
+		
+		this.fullDataSourceProvider().addDataSourceUpdateListener(this.dataSourceUpdateListener);
 	}
 	
 	
@@ -73,13 +92,12 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 			return;
 		}
 		
-		
-		
 		AbstractExecutorService fileHandlerExecutor = ThreadPoolUtil.getFileHandlerExecutor();
 		if (fileHandlerExecutor == null)
 		{
 			// shouldn't normally happen, but just in case
 			LOGGER.warn("Unable to send FullDataSourceResponseMessage - getFileHandlerExecutor() is null");
+			rateLimiterSet.syncOnLoginRateLimiter.release();
 			return;
 		}
 		
@@ -88,12 +106,17 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 		{
 			// shouldn't normally happen, but just in case
 			LOGGER.warn("Unable to send FullDataSourceResponseMessage - getNetworkCompressionExecutor() is null");
+			rateLimiterSet.syncOnLoginRateLimiter.release();
 			return;
 		}
 		
+		// only added once the request will actually be processed,
+		// otherwise nothing would ever remove it
+		this.pendingSyncRequestIds.add(message.futureId);
+		
 		
 		// get the data requested by the client
-		CompletableFuture<FullDataSourceV2> getServerDatasourceFuture = CompletableFuture.supplyAsync(() -> 
+		CompletableFuture<ByteBuf> getEncodedDtoFuture = CompletableFuture.supplyAsync(() -> 
 			{
 				try
 				{
@@ -111,36 +134,71 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 						return null;
 					}
 					
-					// get the server's datasource
-					return this.fullDataSourceProvider().get(message.sectionPos);
+					// another player may have already requested this exact data
+					ByteBuf encodedDtoBuffer = this.payloadCache.tryGetRetained(message.sectionPos, serverTimestamp);
+					if (encodedDtoBuffer != null)
+					{
+						return encodedDtoBuffer;
+					}
+					
+					// get the server's data exactly as it's stored,
+					// the client can decompress it directly so there's no need to decode and re-compress it here
+					try (FullDataSourceV2DTO serverDto = this.fullDataSourceProvider().getStoredDto(message.sectionPos))
+					{
+						if (serverDto == null)
+						{
+							// the data was removed between the timestamp check and now, or the repo is shutting down
+							rateLimiterSet.syncOnLoginRateLimiter.release();
+							message.sendResponse(new FullDataSourceResponseMessage(null));
+							return null;
+						}
+						
+						encodedDtoBuffer = FullDataPayload.encodeDto(serverDto);
+						this.payloadCache.put(message.sectionPos, serverDto.lastModifiedUnixDateTime, encodedDtoBuffer);
+						return encodedDtoBuffer;
+					}
 				}
 				catch (Exception e)
 				{
 					LOGGER.error("Unexpected issue getting server-side LOD for request at pos [" + DhSectionPos.toString(message.sectionPos) + "], error: [" + e.getMessage() + "].", e);
+					rateLimiterSet.syncOnLoginRateLimiter.release();
+					message.sendResponse(new RequestRejectedException("Unable to get LOD data"));
 					return null;
 				}
 			}, fileHandlerExecutor);
 		
 		// send the found data
-		getServerDatasourceFuture.thenAcceptAsync(fullDataSource ->
+		getEncodedDtoFuture.thenAcceptAsync(encodedDtoBuffer ->
 			{
 				try
 				{
+					boolean cancelled = !this.pendingSyncRequestIds.remove(message.futureId);
+					
 					// no server data source found
-					if (fullDataSource == null)
+					if (encodedDtoBuffer == null)
 					{
 						return;
 					}
 					
-					// send the found data source to client
-					FullDataPayload payload = new FullDataPayload(fullDataSource, this.getAllBeamsForPos(message.sectionPos));
-					fullDataSource.close();
-					
-					serverPlayerState.fullDataPayloadSender.sendInChunks(payload, () ->
+					if (cancelled)
 					{
-						message.sendResponse(new FullDataSourceResponseMessage(payload));
 						rateLimiterSet.syncOnLoginRateLimiter.release();
-					});
+						encodedDtoBuffer.release();
+						return;
+					}
+					
+					// send the found data source to client
+					FullDataPayload payload = new FullDataPayload(encodedDtoBuffer, this.getAllBeamsForPos(message.sectionPos));
+					serverPlayerState.fullDataPayloadSender.sendInChunks(payload, message.sectionPos, FullDataPayloadSender.ETransferType.SYNC_ON_LOAD, message.futureId,
+						() ->
+						{
+							message.sendResponse(new FullDataSourceResponseMessage(payload));
+							rateLimiterSet.syncOnLoginRateLimiter.release();
+						},
+						() -> rateLimiterSet.syncOnLoginRateLimiter.release());
+					
+					// the sender holds its own reference until the transfer is done
+					payload.dtoBuffer.release();
 				}
 				catch (Exception e)
 				{
@@ -150,6 +208,73 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 		
 	}
 	
+	/** 
+	 * Compares every timestamp in the manifest against the server's 
+	 * and responds with the sections that are out of date. <br>
+	 * The client only sends individual sync requests for those sections.
+	 */
+	public void queueTimestampManifestCheck(ServerPlayerState serverPlayerState, FullDataTimestampManifestRequestMessage message, ServerPlayerState.RateLimiterSet rateLimiterSet)
+	{
+		if (!serverPlayerState.sessionConfig.getSynchronizeOnLoad())
+		{
+			message.sendResponse(new RequestRejectedException("Operation is disabled in config."));
+			return;
+		}
+		
+		if (!rateLimiterSet.timestampManifestRateLimiter.tryAcquire(message))
+		{
+			return;
+		}
+		
+		AbstractExecutorService fileHandlerExecutor = ThreadPoolUtil.getFileHandlerExecutor();
+		if (fileHandlerExecutor == null)
+		{
+			// shouldn't normally happen, but just in case
+			LOGGER.warn("Unable to send FullDataTimestampManifestResponseMessage - getFileHandlerExecutor() is null");
+			rateLimiterSet.timestampManifestRateLimiter.release();
+			return;
+		}
+		
+		CompletableFuture.runAsync(() ->
+			{
+				try
+				{
+					int minSectionX = message.getMinSectionX();
+					int minSectionZ = message.getMinSectionZ();
+					Map<Long, Long> serverTimestampByPos = this.fullDataSourceProvider().getTimestampsForRange(
+							message.getSectionDetailLevel(),
+							minSectionX, minSectionZ,
+							minSectionX + FullDataTimestampManifestRequestMessage.REGION_WIDTH_IN_SECTIONS,
+							minSectionZ + FullDataTimestampManifestRequestMessage.REGION_WIDTH_IN_SECTIONS);
+					
+					FullDataTimestampManifestResponseMessage response = new FullDataTimestampManifestResponseMessage();
+					for (int i = 0; i < message.getSectionCount(); i++)
+					{
+						// same check as queueLodSyncForRequestMessage(),
+						// sections without any server data are considered up to date
+						Long serverTimestamp = serverTimestampByPos.get(message.getSectionPos(i));
+						if (serverTimestamp != null
+							&& serverTimestamp > message.clientTimestamps.getLong(i))
+						{
+							response.staleIndexes.add(i);
+						}
+					}
+					
+					message.sendResponse(response);
+				}
+				catch (Exception e)
+				{
+					LOGGER.error("Unexpected issue checking timestamp manifest for region [" + DhSectionPos.toString(message.regionPos) + "], error: [" + e.getMessage() + "].", e);
+					// the client will fall back to checking each section individually
+					message.sendResponse(new RequestRejectedException("Unable to check timestamps"));
+				}
+				finally
+				{
+					rateLimiterSet.timestampManifestRateLimiter.release();
+				}
+			}, fileHandlerExecutor);
+	}
+	
 	public void queueWorldGenForRequestMessage(ServerPlayerState serverPlayerState, FullDataSourceRequestMessage message, ServerPlayerState.RateLimiterSet rateLimiterSet)
 	{
 		if (!serverPlayerState.sessionConfig.isDistantGenerationEnabled())
@@ -195,8 +320,18 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 		}
 	}
 	
-	public void cancelRequest(long requestId)
+	public void cancelRequest(ServerPlayerState serverPlayerState, long requestId)
 	{
+		// sync requests that are still reading their data are dropped once it's ready
+		this.pendingSyncRequestIds.remove(requestId);
+		
+		// stop sending any data that was already queued,
+		// the transfer releases the request's rate limit itself
+		if (serverPlayerState.fullDataPayloadSender.cancelTransfer(requestId))
+		{
+			return;
+		}
+		
 		DataSourceRequestGroup requestGroup = this.requestGroupsByFutureId.remove(requestId);
 		if (requestGroup == null)
 		{
@@ -338,11 +473,16 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 				{
 					this.requestGroupsByFutureId.remove(requestData.futureId());
 					
-					requestData.serverPlayerState.fullDataPayloadSender.sendInChunks(payload, () -> {
-						requestData.message.sendResponse(new FullDataSourceResponseMessage(payload));
-						requestData.rateLimiterSet.generationRequestRateLimiter.release();
-					});
+					requestData.serverPlayerState.fullDataPayloadSender.sendInChunks(payload, requestData.sectionPos(), FullDataPayloadSender.ETransferType.GENERATION, requestData.futureId(),
+						() -> {
+							requestData.message.sendResponse(new FullDataSourceResponseMessage(payload));
+							requestData.rateLimiterSet.generationRequestRateLimiter.release();
+						},
+						() -> requestData.rateLimiterSet.generationRequestRateLimiter.release());
 				}
+				
+				// each sender holds its own reference until their transfer is done
+				payload.dtoBuffer.release();
 			}, executor);
 		}
 	}
@@ -357,6 +497,9 @@ public class FullDataSourceRequestHandler implements AutoCloseable
 	public void close()
 	{
 		this.tickerThread.shutdownNow();
+		
+		this.fullDataSourceProvider().removeDataSourceUpdateListener(this.dataSourceUpdateListener);
+		this.payloadCache.close();
 	}
 	
 	
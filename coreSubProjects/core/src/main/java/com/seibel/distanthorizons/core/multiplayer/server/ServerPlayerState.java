@@ -13,6 +13,7 @@ import com.seibel.distanthorizons.core.network.messages.base.SessionConfigMessag
 import com.seibel.distanthorizons.core.network.event.internal.CloseInternalEvent;
 import com.seibel.distanthorizons.core.network.exceptions.RateLimitedException;
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataSourceRequestMessage;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataTimestampManifestRequestMessage;
 import com.seibel.distanthorizons.core.network.session.NetworkSession;
 import com.seibel.distanthorizons.core.util.ratelimiting.SupplierBasedRateAndConcurrencyLimiter;
 import com.seibel.distanthorizons.core.wrapperInterfaces.misc.IServerPlayerWrapper;
@@ -145,6 +146,14 @@ public class ServerPlayerState implements Closeable
 				}
 		);
 		
+		/** each manifest only needs a single database query, so they're limited the same as a single sync request */
+		public final SupplierBasedRateAndConcurrencyLimiter<FullDataTimestampManifestRequestMessage> timestampManifestRateLimiter = new SupplierBasedRateAndConcurrencyLimiter<>(
+				() -> Config.Server.syncOnLoadRateLimit.get(),
+				msg -> {
+					msg.sendResponse(new RateLimitedException("Timestamp manifest rate limit: " + ServerPlayerState.this.sessionConfig.getSyncOnLoginRateLimit()));
+				}
+		);
+		
 	}
 	
 }
\ No newline at end of file
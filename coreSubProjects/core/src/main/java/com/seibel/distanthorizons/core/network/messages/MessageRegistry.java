@@ -31,6 +31,8 @@ import com.seibel.distanthorizons.core.network.messages.requests.ExceptionMessag
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataPartialUpdateMessage;
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataSourceRequestMessage;
 import com.seibel.distanthorizons.core.network.messages.fullData.FullDataSourceResponseMessage;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataTimestampManifestRequestMessage;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataTimestampManifestResponseMessage;
 import com.seibel.distanthorizons.coreapi.ModInfo;
 
 import java.util.HashMap;
@@ -73,6 +75,8 @@ public class MessageRegistry
 		this.registerMessage(FullDataSourceResponseMessage.class, FullDataSourceResponseMessage::new);
 		this.registerMessage(FullDataPartialUpdateMessage.class, FullDataPartialUpdateMessage::new);
 		this.registerMessage(FullDataSplitMessage.class, FullDataSplitMessage::new);
+		this.registerMessage(FullDataTimestampManifestRequestMessage.class, FullDataTimestampManifestRequestMessage::new);
+		this.registerMessage(FullDataTimestampManifestResponseMessage.class, FullDataTimestampManifestResponseMessage::new);
 		
 		// Debug messages are always last, and not included in release builds.
 		if (DEBUG_CODEC_CRASH_MESSAGE)
@@ -0,0 +1,195 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.network.messages.fullData;
+
+import com.google.common.base.MoreObjects;
+import com.seibel.distanthorizons.core.network.messages.AbstractTrackableMessage;
+import com.seibel.distanthorizons.core.network.messages.ILevelRelatedMessage;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.wrapperInterfaces.world.ILevelWrapper;
+import com.seibel.distanthorizons.coreapi.util.BitShiftUtil;
+import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Batched version of the timestamp check done by {@link FullDataSourceRequestMessage}. <br>
+ * Contains the client's timestamp for every section it wants to check inside a single region,
+ * the server responds with a {@link FullDataTimestampManifestResponseMessage}
+ * listing which of those sections are out of date. <br><br>
+ * 
+ * Each section is sent as a one byte index inside the region and its timestamp
+ * as a varint offset from the oldest timestamp in the manifest.
+ */
+public class FullDataTimestampManifestRequestMessage extends AbstractTrackableMessage implements ILevelRelatedMessage
+{
+	/** how many detail levels above its sections a region is */
+	public static final byte REGION_DETAIL_LEVEL_OFFSET = 4;
+	public static final int REGION_WIDTH_IN_SECTIONS = BitShiftUtil.powerOfTwo(REGION_DETAIL_LEVEL_OFFSET);
+	public static final int MAX_SECTION_COUNT = REGION_WIDTH_IN_SECTIONS * REGION_WIDTH_IN_SECTIONS;
+	
+	/** the section containing every section in this manifest */
+	public long regionPos;
+	
+	/** the index of each section inside the region, see {@link #getSectionPos(int)} */
+	public final IntArrayList sectionIndexes = new IntArrayList();
+	/** already offset to the server's time */
+	public final LongArrayList clientTimestamps = new LongArrayList();
+	
+	private String levelName;
+	@Override
+	public String getLevelName() { return this.levelName; }
+	
+	
+	
+	//==============//
+	// constructors //
+	//==============//
+	
+	public FullDataTimestampManifestRequestMessage() { }
+	public FullDataTimestampManifestRequestMessage(ILevelWrapper levelWrapper, long regionPos)
+	{
+		this.levelName = levelWrapper.getDhIdentifier();
+		this.regionPos = regionPos;
+	}
+	
+	/** @param sectionPos must be inside this message's region */
+	public void addSection(long sectionPos, long clientTimestamp)
+	{
+		int indexX = DhSectionPos.getX(sectionPos) - this.getMinSectionX();
+		int indexZ = DhSectionPos.getZ(sectionPos) - this.getMinSectionZ();
+		
+		this.sectionIndexes.add(indexX + (indexZ * REGION_WIDTH_IN_SECTIONS));
+		this.clientTimestamps.add(clientTimestamp);
+	}
+	
+	
+	
+	//=========//
+	// getters //
+	//=========//
+	
+	/** @return the region containing the given section */
+	public static long getRegionPos(long sectionPos)
+	{ return DhSectionPos.convertToDetailLevel(sectionPos, (byte) (DhSectionPos.getDetailLevel(sectionPos) + REGION_DETAIL_LEVEL_OFFSET)); }
+	
+	public byte getSectionDetailLevel() { return (byte) (DhSectionPos.getDetailLevel(this.regionPos) - REGION_DETAIL_LEVEL_OFFSET); }
+	public int getMinSectionX() { return DhSectionPos.getX(this.regionPos) * REGION_WIDTH_IN_SECTIONS; }
+	public int getMinSectionZ() { return DhSectionPos.getZ(this.regionPos) * REGION_WIDTH_IN_SECTIONS; }
+	
+	/** @param index the index in this manifest, not the index inside the region */
+	public long getSectionPos(int index)
+	{
+		int sectionIndex = this.sectionIndexes.getInt(index);
+		return DhSectionPos.encode(this.getSectionDetailLevel(),
+				this.getMinSectionX() + (sectionIndex % REGION_WIDTH_IN_SECTIONS),
+				this.getMinSectionZ() + (sectionIndex / REGION_WIDTH_IN_SECTIONS));
+	}
+	
+	public int getSectionCount() { return this.sectionIndexes.size(); }
+	
+	
+	
+	//===============//
+	// serialization //
+	//===============//
+	
+	@Override
+	public void encodeInternal(ByteBuf out)
+	{
+		this.writeString(this.levelName, out);
+		out.writeLong(this.regionPos);
+		
+		long oldestTimestamp = Long.MAX_VALUE;
+		for (int i = 0; i < this.clientTimestamps.size(); i++)
+		{
+			oldestTimestamp = Math.min(oldestTimestamp, this.clientTimestamps.getLong(i));
+		}
+		
+		out.writeShort(this.sectionIndexes.size());
+		out.writeLong(oldestTimestamp);
+		for (int i = 0; i < this.sectionIndexes.size(); i++)
+		{
+			out.writeByte(this.sectionIndexes.getInt(i));
+			writeVarLong(out, this.clientTimestamps.getLong(i) - oldestTimestamp);
+		}
+	}
+	
+	@Override
+	public void decodeInternal(ByteBuf in)
+	{
+		this.levelName = this.readString(in);
+		this.regionPos = in.readLong();
+		
+		int sectionCount = in.readUnsignedShort();
+		if (sectionCount > MAX_SECTION_COUNT)
+		{
+			throw new IllegalArgumentException("Timestamp manifest contains [" + sectionCount + "] sections, max: [" + MAX_SECTION_COUNT + "].");
+		}
+		
+		long oldestTimestamp = in.readLong();
+		for (int i = 0; i < sectionCount; i++)
+		{
+			this.sectionIndexes.add(in.readUnsignedByte());
+			this.clientTimestamps.add(oldestTimestamp + readVarLong(in));
+		}
+	}
+	
+	private static void writeVarLong(ByteBuf out, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+	private static long readVarLong(ByteBuf in)
+	{
+		long value = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7)
+		{
+			byte currentByte = in.readByte();
+			value |= (long) (currentByte & 0x7F) << shift;
+			if ((currentByte & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		
+		throw new IllegalArgumentException("Varint is too long.");
+	}
+	
+	
+	
+	//================//
+	// base overrides //
+	//================//
+	
+	@Override
+	public MoreObjects.ToStringHelper toStringHelper()
+	{
+		return super.toStringHelper()
+				.add("levelName", this.levelName)
+				.add("regionPos", DhSectionPos.toString(this.regionPos))
+				.add("sectionCount", this.sectionIndexes.size());
+	}
+	
+}
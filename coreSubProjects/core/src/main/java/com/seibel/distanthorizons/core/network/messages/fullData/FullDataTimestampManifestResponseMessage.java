@@ -0,0 +1,89 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.network.messages.fullData;
+
+import com.google.common.base.MoreObjects;
+import com.seibel.distanthorizons.core.network.messages.AbstractTrackableMessage;
+import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Response to a {@link FullDataTimestampManifestRequestMessage},
+ * contains the manifest index of every section the client has an outdated version of. <br>
+ * Sections that aren't listed are either up to date or don't exist on the server.
+ */
+public class FullDataTimestampManifestResponseMessage extends AbstractTrackableMessage
+{
+	/** see {@link FullDataTimestampManifestRequestMessage#getSectionPos(int)} */
+	public final IntArrayList staleIndexes = new IntArrayList();
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public FullDataTimestampManifestResponseMessage() { }
+	
+	
+	
+	//===============//
+	// serialization //
+	//===============//
+	
+	@Override
+	public void encodeInternal(ByteBuf out)
+	{
+		out.writeShort(this.staleIndexes.size());
+		for (int i = 0; i < this.staleIndexes.size(); i++)
+		{
+			out.writeByte(this.staleIndexes.getInt(i));
+		}
+	}
+	
+	@Override
+	public void decodeInternal(ByteBuf in)
+	{
+		int staleCount = in.readUnsignedShort();
+		if (staleCount > FullDataTimestampManifestRequestMessage.MAX_SECTION_COUNT)
+		{
+			throw new IllegalArgumentException("Timestamp manifest response contains [" + staleCount + "] sections, max: [" + FullDataTimestampManifestRequestMessage.MAX_SECTION_COUNT + "].");
+		}
+		
+		for (int i = 0; i < staleCount; i++)
+		{
+			this.staleIndexes.add(in.readUnsignedByte());
+		}
+	}
+	
+	
+	
+	//================//
+	// base overrides //
+	//================//
+	
+	@Override
+	public MoreObjects.ToStringHelper toStringHelper()
+	{
+		return super.toStringHelper()
+				.add("staleCount", this.staleIndexes.size());
+	}
+	
+}
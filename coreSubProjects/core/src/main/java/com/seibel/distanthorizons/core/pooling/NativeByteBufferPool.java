@@ -0,0 +1,220 @@
+package com.seibel.distanthorizons.core.pooling;
+
+import com.seibel.distanthorizons.core.logging.f3.F3Screen;
+import com.seibel.distanthorizons.coreapi.util.StringUtil;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pools off-heap {@link ByteBuffer}'s created via {@link MemoryUtil#memAlloc(int)}. <br><br>
+ *
+ * Buffers are grouped into power of two size classes so a small request
+ * doesn't check out a large buffer, and a large request can reuse any returned buffer
+ * of the same class. <br>
+ * Returned buffers are freed instead of pooled once {@link NativeByteBufferPool#maxPooledBytes}
+ * is reached, which prevents a burst of large requests from permanently holding onto memory. <br><br>
+ *
+ * This class is thread safe.
+ *
+ * @see PhantomArrayListPool
+ */
+public class NativeByteBufferPool
+{
+	private static final ArrayList<NativeByteBufferPool> POOL_LIST = new ArrayList<>();
+
+
+	/** used for debugging and tracking what the pool contains */
+	public final String name;
+
+	private final int minSizeClassInBytes;
+	private final int maxSizeInBytes;
+	private final long maxPooledBytes;
+
+	/** index 0 is {@link NativeByteBufferPool#minSizeClassInBytes}, each following class is twice as large */
+	private final ConcurrentLinkedQueue<ByteBuffer>[] pooledBuffersBySizeClass;
+
+
+	/** how many bytes are currently checked out */
+	private final AtomicLong checkedOutBytesRef = new AtomicLong(0);
+	/** how many bytes are currently waiting in the pool */
+	private final AtomicLong pooledBytesRef = new AtomicLong(0);
+	/** the highest value {@link NativeByteBufferPool#checkedOutBytesRef} has reached */
+	private final AtomicLong peakCheckedOutBytesRef = new AtomicLong(0);
+
+	/** how many buffers have been allocated by this pool */
+	private final AtomicInteger totalAllocationCountRef = new AtomicInteger(0);
+	/** how many checkouts were handled by a pooled buffer */
+	private final AtomicInteger totalReuseCountRef = new AtomicInteger(0);
+
+
+
+	//=============//
+	// constructor //
+	//=============//
+
+	/**
+	 * @param minSizeClassInBytes the smallest buffer that will be allocated
+	 * @param maxSizeInBytes the largest buffer that can be requested, the largest size class is exactly this size
+	 * @param maxPooledBytes how many unused bytes can be held before returned buffers are freed
+	 */
+	@SuppressWarnings("unchecked")
+	public NativeByteBufferPool(String name, int minSizeClassInBytes, int maxSizeInBytes, long maxPooledBytes)
+	{
+		if (minSizeClassInBytes <= 0 || Integer.bitCount(minSizeClassInBytes) != 1)
+		{
+			throw new IllegalArgumentException("Min size class must be a positive power of two, given: ["+minSizeClassInBytes+"].");
+		}
+		if (maxSizeInBytes < minSizeClassInBytes)
+		{
+			throw new IllegalArgumentException("Max size ["+maxSizeInBytes+"] must be greater than or equal to the min size class ["+minSizeClassInBytes+"].");
+		}
+
+		this.name = name;
+		this.minSizeClassInBytes = minSizeClassInBytes;
+		this.maxSizeInBytes = maxSizeInBytes;
+		this.maxPooledBytes = maxPooledBytes;
+
+		int sizeClassCount = this.getSizeClassIndex(maxSizeInBytes) + 1;
+		this.pooledBuffersBySizeClass = (ConcurrentLinkedQueue<ByteBuffer>[]) new ConcurrentLinkedQueue[sizeClassCount];
+		for (int i = 0; i < sizeClassCount; i++)
+		{
+			this.pooledBuffersBySizeClass[i] = new ConcurrentLinkedQueue<>();
+		}
+
+		synchronized (POOL_LIST)
+		{
+			POOL_LIST.add(this);
+		}
+	}
+
+
+
+	//==================//
+	// checkout/release //
+	//==================//
+
+	/**
+	 * The returned buffer's limit will be exactly the requested size,
+	 * however its capacity may be larger. <br>
+	 * The buffer must be returned via {@link NativeByteBufferPool#release(ByteBuffer)}.
+	 */
+	public ByteBuffer checkout(int sizeInBytes)
+	{
+		if (sizeInBytes <= 0 || sizeInBytes > this.maxSizeInBytes)
+		{
+			throw new IllegalArgumentException("Requested size ["+sizeInBytes+"] must be between 1 and ["+this.maxSizeInBytes+"] bytes.");
+		}
+
+		int sizeClassIndex = this.getSizeClassIndex(sizeInBytes);
+		ByteBuffer buffer = this.pooledBuffersBySizeClass[sizeClassIndex].poll();
+		if (buffer != null)
+		{
+			this.pooledBytesRef.addAndGet(-buffer.capacity());
+			this.totalReuseCountRef.incrementAndGet();
+		}
+		else
+		{
+			buffer = MemoryUtil.memAlloc(this.getSizeClassInBytes(sizeClassIndex));
+			this.totalAllocationCountRef.incrementAndGet();
+		}
+
+		long checkedOutBytes = this.checkedOutBytesRef.addAndGet(buffer.capacity());
+		this.peakCheckedOutBytesRef.accumulateAndGet(checkedOutBytes, Math::max);
+
+		buffer.clear();
+		buffer.limit(sizeInBytes);
+		return buffer;
+	}
+
+	/** Should only be called once per checked out buffer. */
+	public void release(ByteBuffer buffer)
+	{
+		int capacity = buffer.capacity();
+		this.checkedOutBytesRef.addAndGet(-capacity);
+
+		int sizeClassIndex = this.getSizeClassIndex(capacity);
+		if (this.getSizeClassInBytes(sizeClassIndex) != capacity)
+		{
+			// shouldn't happen, but if a buffer was allocated elsewhere it can't be pooled
+			MemoryUtil.memFree(buffer);
+			return;
+		}
+
+		if (this.pooledBytesRef.addAndGet(capacity) > this.maxPooledBytes)
+		{
+			// the pool is full
+			this.pooledBytesRef.addAndGet(-capacity);
+			MemoryUtil.memFree(buffer);
+			return;
+		}
+
+		buffer.clear();
+		this.pooledBuffersBySizeClass[sizeClassIndex].add(buffer);
+	}
+
+
+
+	//================//
+	// helper methods //
+	//================//
+
+	private int getSizeClassIndex(int sizeInBytes)
+	{
+		if (sizeInBytes <= this.minSizeClassInBytes)
+		{
+			return 0;
+		}
+
+		// round up to the next power of two
+		int index = (32 - Integer.numberOfLeadingZeros(sizeInBytes - 1)) - Integer.numberOfTrailingZeros(this.minSizeClassInBytes);
+
+		// sizes between the largest power of two and the max size use the max size class
+		int maxIndex = (this.maxSizeInBytes <= this.minSizeClassInBytes) ? 0 :
+				(32 - Integer.numberOfLeadingZeros(this.maxSizeInBytes - 1)) - Integer.numberOfTrailingZeros(this.minSizeClassInBytes);
+		return Math.min(index, maxIndex);
+	}
+	private int getSizeClassInBytes(int sizeClassIndex)
+	{
+		long sizeInBytes = ((long) this.minSizeClassInBytes) << sizeClassIndex;
+		return (int) Math.min(sizeInBytes, this.maxSizeInBytes);
+	}
+
+
+
+	//===============//
+	// debug methods //
+	//===============//
+
+	public static void addDebugMenuStringsToListForAllPools(List<String> messageList)
+	{
+		synchronized (POOL_LIST)
+		{
+			for (NativeByteBufferPool pool : POOL_LIST)
+			{
+				pool.addDebugMenuStringsToList(messageList);
+			}
+		}
+	}
+
+	public void addDebugMenuStringsToList(List<String> messageList)
+	{
+		String checkedOut = StringUtil.convertBytesToHumanReadable(this.checkedOutBytesRef.get());
+		String peakCheckedOut = StringUtil.convertBytesToHumanReadable(this.peakCheckedOutBytesRef.get());
+		String pooled = StringUtil.convertBytesToHumanReadable(this.pooledBytesRef.get());
+		String maxPooled = StringUtil.convertBytesToHumanReadable(this.maxPooledBytes);
+
+		String allocationCount = F3Screen.NUMBER_FORMAT.format(this.totalAllocationCountRef.get());
+		String reuseCount = F3Screen.NUMBER_FORMAT.format(this.totalReuseCountRef.get());
+
+		messageList.add(this.name + " - Native Pool:");
+		messageList.add("in use: " + checkedOut + " (peak " + peakCheckedOut + "), pooled: " + pooled + "/" + maxPooled);
+		messageList.add("allocated: " + allocationCount + ", reused: " + reuseCount);
+	}
+
+}
@@ -27,8 +27,8 @@ import com.seibel.distanthorizons.core.util.math.Vec3d;
 /**
  * immutable <br><br>
  * 
- * Dev note: if for some reason we want to store these as longs check the old commits. <br>
- * That logic was removed since it wasn't needed at the time
+ * Positions can also be packed into a long via {@link DhChunkPos#encode(int, int)}
+ * for places that need to store a lot of them without allocating (IE {@link com.seibel.distanthorizons.core.api.internal.chunkUpdating.ChunkPosQueue}).
  */
 public class DhChunkPos
 {
@@ -73,6 +73,19 @@ public class DhChunkPos
 	
 	
 	
+	//==============//
+	// long packing //
+	//==============//
+	
+	/** X is stored in the upper 32 bits and Z in the lower 32 bits. */
+	public static long encode(int x, int z) { return ((long) x << 32) | (z & 0xFFFF_FFFFL); }
+	public static int getX(long pos) { return (int) (pos >> 32); }
+	public static int getZ(long pos) { return (int) pos; }
+	
+	public long toLong() { return encode(this.x, this.z); }
+	
+	
+	
 	//=========//
 	// methods //
 	//=========//
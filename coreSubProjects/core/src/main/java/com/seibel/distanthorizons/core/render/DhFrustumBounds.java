@@ -51,10 +51,11 @@ public class DhFrustumBounds implements IDhApiCullingFrustum
 	@Override
 	public boolean intersects(int lodBlockPosMinX, int lodBlockPosMinZ, int lodBlockWidth, int lodDetailLevel)
 	{
-		Vector3f lodMin = new Vector3f(lodBlockPosMinX, this.worldMinY, lodBlockPosMinZ);
-		Vector3f lodMax = new Vector3f(lodBlockPosMinX + lodBlockWidth, this.worldMaxY, lodBlockPosMinZ + lodBlockWidth);
-		
-		return this.frustum.testAab(lodMin, lodMax);
+		// the float overload is used so no vectors have to be allocated,
+		// this is called for every loaded section each frame
+		return this.frustum.testAab(
+				lodBlockPosMinX, this.worldMinY, lodBlockPosMinZ,
+				lodBlockPosMinX + lodBlockWidth, this.worldMaxY, lodBlockPosMinZ + lodBlockWidth);
 	}
 	
 	
@@ -94,6 +94,9 @@ public class LodQuadTree extends QuadTree<LodRenderSection> implements IDebugRen
 	 */
 	public final AtomicInteger uploadTaskCountRef = new AtomicInteger(0);
 	
+	/** contains every render section that can currently be rendered, used for culling */
+	public final RenderSectionIndex renderSectionIndex = new RenderSectionIndex();
+	
 	
 	@Nullable
 	public final BeaconRenderHandler beaconRenderHandler;
@@ -335,6 +338,7 @@ public class LodQuadTree extends QuadTree<LodRenderSection> implements IDebugRen
 								{
 									buffer.close();
 									parentRenderSection.bufferContainer = null;
+									parentRenderSection.updateRenderSectionIndex();
 								}
 							}
 						}
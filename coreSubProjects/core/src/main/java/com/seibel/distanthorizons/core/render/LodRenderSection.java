@@ -29,6 +29,7 @@ import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.LodQuad
 import com.seibel.distanthorizons.core.dataObjects.transformers.FullDataToRenderDataTransformer;
 import com.seibel.distanthorizons.core.dependencyInjection.SingletonInjector;
 import com.seibel.distanthorizons.core.enums.EDhDirection;
+import com.seibel.distanthorizons.core.file.fullDatafile.V2.FullDataSourceCacheV2;
 import com.seibel.distanthorizons.core.file.fullDatafile.V2.FullDataSourceProviderV2;
 import com.seibel.distanthorizons.core.level.IDhClientLevel;
 import com.seibel.distanthorizons.core.logging.DhLogger;
@@ -90,8 +91,12 @@ public class LodRenderSection implements IDebugRenderable, AutoCloseable
 	
 	
 	private boolean renderingEnabled = false;
+	private boolean closed = false;
 	
-	/** this reference is necessary so we can determine what VBO to render */
+	/** 
+	 * this reference is necessary so we can determine what VBO to render. <br>
+	 * {@link LodRenderSection#updateRenderSectionIndex()} should be called whenever this is changed.
+	 */
 	public LodBufferContainer bufferContainer; 
 	
 	
@@ -337,13 +342,15 @@ public class LodRenderSection implements IDebugRenderable, AutoCloseable
 			CompletableFuture<ColumnRenderSource> loadFuture = new CompletableFuture<>();
 			executor.execute(() ->
 			{
-				// generate new render source
-				try (FullDataSourceV2 fullDataSource =
+				// generate new render source,
+				// the full data is only read so cached data sources don't need to be copied
+				try (FullDataSourceCacheV2.CacheLease fullDataLease =
 						// no direction means get the center LOD		
 						(direction == null)
-						? this.fullDataSourceProvider.get(finalPos)
-						: this.fullDataSourceProvider.getAdjForDirection(finalPos, direction.opposite()))
+						? this.fullDataSourceProvider.getReadOnly(finalPos)
+						: this.fullDataSourceProvider.getAdjForDirectionReadOnly(finalPos, direction.opposite()))
 				{
+					FullDataSourceV2 fullDataSource = (fullDataLease != null) ? fullDataLease.getDataSource() : null;
 					ColumnRenderSource columnRenderSource = FullDataToRenderDataTransformer.transformFullDataToRenderSource(fullDataSource, this.levelWrapper);
 					loadFuture.complete(columnRenderSource);
 				}
@@ -392,6 +399,7 @@ public class LodRenderSection implements IDebugRenderable, AutoCloseable
 			// upload complete
 			this.bufferContainer = buffer.buffersUploaded ? buffer : null;
 			this.getAndBuildRenderDataFuture = null;
+			this.updateRenderSectionIndex();
 			
 			if (previousContainer != null)
 			{
@@ -416,7 +424,30 @@ public class LodRenderSection implements IDebugRenderable, AutoCloseable
 	 * However, to prevent holes in the world when disabling sections we need to
 	 * enable the new section(s) first before disabling the old one(s).
 	 */
-	public void setRenderingEnabled(boolean enabled) { this.renderingEnabled = enabled;}
+	public void setRenderingEnabled(boolean enabled) 
+	{
+		this.renderingEnabled = enabled;
+		this.updateRenderSectionIndex();
+	}
+	
+	/** 
+	 * Adds or removes this section from the {@link RenderSectionIndex} 
+	 * depending on whether it should currently be rendered. <br>
+	 * Synchronized so the GPU upload and render thread can't leave the index with an outdated buffer.
+	 */
+	public synchronized void updateRenderSectionIndex()
+	{
+		if (!this.closed 
+			&& this.renderingEnabled 
+			&& this.bufferContainer != null)
+		{
+			this.quadTree.renderSectionIndex.put(this.pos, this.bufferContainer);
+		}
+		else
+		{
+			this.quadTree.renderSectionIndex.remove(this.pos);
+		}
+	}
 	
 	/** @see LodRenderSection#setRenderingEnabled */
 	public void onRenderingEnabled() { this.startRenderingBeacons(); }
@@ -674,6 +705,9 @@ public class LodRenderSection implements IDebugRenderable, AutoCloseable
 		
 		this.stopRenderingBeacons();
 		
+		this.closed = true;
+		this.updateRenderSectionIndex();
+		
 		if (this.bufferContainer != null)
 		{
 			this.bufferContainer.close();
@@ -29,13 +29,9 @@ import com.seibel.distanthorizons.core.dependencyInjection.SingletonInjector;
 import com.seibel.distanthorizons.core.logging.DhLogger;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.logging.f3.F3Screen;
-import com.seibel.distanthorizons.core.pos.DhLodPos;
-import com.seibel.distanthorizons.core.pos.DhSectionPos;
-import com.seibel.distanthorizons.core.pos.Pos2D;
+import com.seibel.distanthorizons.core.pos.blockPos.DhBlockPos2D;
 import com.seibel.distanthorizons.core.render.renderer.LodRenderer;
 import com.seibel.distanthorizons.core.render.renderer.RenderParams;
-import com.seibel.distanthorizons.core.util.objects.SortedArraySet;
-import com.seibel.distanthorizons.core.util.objects.quadTree.QuadNode;
 import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftGLWrapper;
 import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftRenderWrapper;
 import com.seibel.distanthorizons.core.wrapperInterfaces.modAccessor.IIrisAccessor;
@@ -46,7 +42,7 @@ import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
 import org.joml.Matrix4fc;
 
-import java.util.Iterator;
+import java.util.ArrayList;
 
 /**
  * This object tells the {@link LodRenderer} what buffers to render
@@ -63,7 +59,8 @@ public class RenderBufferHandler implements AutoCloseable
 	/** contains all relevant data */
 	public final LodQuadTree lodQuadTree;
 	
-	private final SortedArraySet<LodBufferContainer> loadedNearToFarBuffers;
+	/** populated by {@link RenderSectionIndex#cullAndSortNearToFar} each frame */
+	private final ArrayList<LodBufferContainer> loadedNearToFarBuffers = new ArrayList<>();
 	
 	private int visibleBufferCount;
 	private int culledBufferCount;
@@ -96,19 +93,6 @@ public class RenderBufferHandler implements AutoCloseable
 		{
 			DhApi.overrides.bind(IDhApiShadowCullingFrustum.class, new NeverCullFrustum());
 		}
-		
-		this.loadedNearToFarBuffers = new SortedArraySet<>(this::sortBufferContainersNearToFar);
-	}
-	private int sortBufferContainersNearToFar(LodBufferContainer loadedBufferA, LodBufferContainer loadedBufferB)
-	{
-		Pos2D aPos = DhSectionPos.getCenterBlockPos(loadedBufferA.pos).toPos2D();
-		Pos2D bPos = DhSectionPos.getCenterBlockPos(loadedBufferB.pos).toPos2D();
-		
-		Pos2D centerPos = this.lodQuadTree.getCenterBlockPos().toPos2D();
-		
-		int aManhattanDistance = aPos.manhattanDist(centerPos);
-		int bManhattanDistance = bPos.manhattanDist(centerPos);
-		return aManhattanDistance - bManhattanDistance;
 	}
 	
 	
@@ -123,11 +107,6 @@ public class RenderBufferHandler implements AutoCloseable
 	 */
 	public void buildRenderList(RenderParams renderParams)
 	{
-		// clear the old list so we can start fresh
-		this.loadedNearToFarBuffers.clear();
-		
-		
-		
 		//====================================//
 		// get and update the culling frustum //
 		//====================================//
@@ -176,100 +155,20 @@ public class RenderBufferHandler implements AutoCloseable
 		// Update the section list //
 		//=========================//
 		
-		if (isShadowPass)
-		{
-			this.shadowCulledBufferCount = 0;
-		}
-		else
-		{
-			this.culledBufferCount = 0;
-		}
-		
-		// setup iterator with culling frustum
-		Iterator<QuadNode<LodRenderSection>> nodeIterator = this.lodQuadTree.nodeIteratorWithStoppingFilter((QuadNode<LodRenderSection> node) ->
-		{
-			if (node == null)
-			{
-				return true;
-			}
-			
-			LodRenderSection renderSection = node.value;
-			if (renderSection == null)
-			{
-				return false;
-			}
-			
-			
-			try
-			{
-				if (enableFrustumCulling)
-				{
-					DhLodPos lodBounds = DhSectionPos.getSectionBBoxPos(renderSection.pos);
-					int blockMinX = lodBounds.getMinX().toBlockWidth();
-					int blockMinZ = lodBounds.getMinZ().toBlockWidth();
-					int lodBlockWidth = lodBounds.getBlockWidth();
-					if (!frustum.intersects(blockMinX, blockMinZ, lodBlockWidth, lodBounds.detailLevel))
-					{
-						if (isShadowPass)
-						{
-							this.shadowCulledBufferCount++;
-						}
-						else
-						{
-							this.culledBufferCount++;
-						}
-						
-						return true;
-					}
-				}
-				
-				return false;
-			}
-			catch (Exception e)
-			{
-				LOGGER.error("Unexpected issue during culling for node pos: ["+DhSectionPos.toString(node.sectionPos)+"], error: ["+e.getMessage()+"].", e);
-				
-				// don't cull if there was an unexpected issue
-				return false;
-			}
-		});
-		
-		while (nodeIterator.hasNext())
-		{
-			QuadNode<LodRenderSection> node = nodeIterator.next();
-			
-			long sectionPos = node.sectionPos;
-			LodRenderSection renderSection = node.value;
-			if (renderSection == null)
-			{
-				continue;
-			}
-			
-			
-			
-			try
-			{
-				LodBufferContainer bufferContainer = renderSection.bufferContainer;
-				if (bufferContainer == null 
-					|| !renderSection.getRenderingEnabled())
-				{
-					continue;
-				}
-				
-				this.loadedNearToFarBuffers.add(bufferContainer);
-			}
-			catch (Exception e)
-			{
-				LOGGER.error("Error updating QuadTree render source at [" + DhSectionPos.toString(renderSection.pos) + "], error: ["+e.getMessage()+"].", e);
-			}
-		}
+		DhBlockPos2D centerPos = this.lodQuadTree.getCenterBlockPos();
+		int culledCount = this.lodQuadTree.renderSectionIndex.cullAndSortNearToFar(
+				enableFrustumCulling ? frustum : null,
+				centerPos.x, centerPos.z,
+				this.loadedNearToFarBuffers);
 		
 		if (isShadowPass)
 		{
+			this.shadowCulledBufferCount = culledCount;
 			this.shadowVisibleBufferCount = this.loadedNearToFarBuffers.size();
 		}
 		else
 		{
+			this.culledBufferCount = culledCount;
 			this.visibleBufferCount = this.loadedNearToFarBuffers.size();
 		}
 	}
@@ -280,7 +179,7 @@ public class RenderBufferHandler implements AutoCloseable
 	// render methods //
 	//================//
 	
-	public SortedArraySet<LodBufferContainer> getColumnRenderBuffers() { return this.loadedNearToFarBuffers; }
+	public ArrayList<LodBufferContainer> getColumnRenderBuffers() { return this.loadedNearToFarBuffers; }
 	
 	
 	
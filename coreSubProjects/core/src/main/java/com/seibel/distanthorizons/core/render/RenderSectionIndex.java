@@ -0,0 +1,268 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.render;
+
+import com.seibel.distanthorizons.api.interfaces.override.rendering.IDhApiCullingFrustum;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.LodBufferContainer;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.pos.DhLodPos;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Flat list of every {@link LodRenderSection} that is currently able to render. <br><br>
+ *
+ * Each section's bounds are stored in parallel primitive arrays
+ * so the per-frame culling and near to far sorting done by {@link RenderBufferHandler}
+ * is a single loop instead of a walk through the whole {@link LodQuadTree}. <br>
+ * Entries are only changed when a section starts or stops rendering
+ * (see {@link LodRenderSection#updateRenderSectionIndex()}). <br><br>
+ *
+ * Removing an entry moves the last entry into its slot,
+ * so slot order has no meaning.
+ */
+public class RenderSectionIndex
+{
+	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
+	
+	private static final int INITIAL_CAPACITY = 256;
+	
+	
+	/** sections can be added/removed by the upload threads while the render thread is culling */
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	private final Long2IntOpenHashMap slotBySectionPos = new Long2IntOpenHashMap();
+	
+	private long[] sectionPositions = new long[INITIAL_CAPACITY];
+	private int[] minBlockX = new int[INITIAL_CAPACITY];
+	private int[] minBlockZ = new int[INITIAL_CAPACITY];
+	private int[] centerBlockX = new int[INITIAL_CAPACITY];
+	private int[] centerBlockZ = new int[INITIAL_CAPACITY];
+	private int[] blockWidth = new int[INITIAL_CAPACITY];
+	private byte[] detailLevel = new byte[INITIAL_CAPACITY];
+	private LodBufferContainer[] bufferContainers = new LodBufferContainer[INITIAL_CAPACITY];
+	private int count = 0;
+	
+	/**
+	 * Reused each frame. <br>
+	 * Each key is the section's distance in the upper 32 bits and its slot in the lower 32
+	 * so sorting the keys sorts the visible slots near to far.
+	 */
+	private long[] sortKeys = new long[INITIAL_CAPACITY];
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public RenderSectionIndex() { this.slotBySectionPos.defaultReturnValue(-1); }
+	
+	
+	
+	//==================//
+	// section tracking //
+	//==================//
+	
+	/** Adds the given section or replaces its buffer if it is already present. */
+	public void put(long sectionPos, LodBufferContainer bufferContainer)
+	{
+		this.lock.lock();
+		try
+		{
+			int slot = this.slotBySectionPos.get(sectionPos);
+			if (slot == -1)
+			{
+				slot = this.count;
+				this.ensureCapacity(slot + 1);
+				this.count++;
+				this.slotBySectionPos.put(sectionPos, slot);
+				
+				// same bounds that were used when culling via the quad tree
+				DhLodPos lodBounds = DhSectionPos.getSectionBBoxPos(sectionPos);
+				this.sectionPositions[slot] = sectionPos;
+				this.minBlockX[slot] = lodBounds.getMinX().toBlockWidth();
+				this.minBlockZ[slot] = lodBounds.getMinZ().toBlockWidth();
+				this.centerBlockX[slot] = DhSectionPos.getCenterBlockPosX(sectionPos);
+				this.centerBlockZ[slot] = DhSectionPos.getCenterBlockPosZ(sectionPos);
+				this.blockWidth[slot] = lodBounds.getBlockWidth();
+				this.detailLevel[slot] = lodBounds.detailLevel;
+			}
+			
+			this.bufferContainers[slot] = bufferContainer;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	
+	/** Does nothing if the section isn't present. */
+	public void remove(long sectionPos)
+	{
+		this.lock.lock();
+		try
+		{
+			int slot = this.slotBySectionPos.remove(sectionPos);
+			if (slot == -1)
+			{
+				return;
+			}
+			
+			// move the last entry into the empty slot
+			int lastSlot = this.count - 1;
+			if (slot != lastSlot)
+			{
+				long lastSectionPos = this.sectionPositions[lastSlot];
+				this.sectionPositions[slot] = lastSectionPos;
+				this.minBlockX[slot] = this.minBlockX[lastSlot];
+				this.minBlockZ[slot] = this.minBlockZ[lastSlot];
+				this.centerBlockX[slot] = this.centerBlockX[lastSlot];
+				this.centerBlockZ[slot] = this.centerBlockZ[lastSlot];
+				this.blockWidth[slot] = this.blockWidth[lastSlot];
+				this.detailLevel[slot] = this.detailLevel[lastSlot];
+				this.bufferContainers[slot] = this.bufferContainers[lastSlot];
+				this.slotBySectionPos.put(lastSectionPos, slot);
+			}
+			
+			// don't hold onto closed buffers
+			this.bufferContainers[lastSlot] = null;
+			this.count--;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	
+	public void clear()
+	{
+		this.lock.lock();
+		try
+		{
+			Arrays.fill(this.bufferContainers, 0, this.count, null);
+			this.slotBySectionPos.clear();
+			this.count = 0;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	
+	public int size() { return this.count; }
+	
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= this.sectionPositions.length)
+		{
+			return;
+		}
+		
+		int newCapacity = Math.max(capacity, this.sectionPositions.length * 2);
+		this.sectionPositions = Arrays.copyOf(this.sectionPositions, newCapacity);
+		this.minBlockX = Arrays.copyOf(this.minBlockX, newCapacity);
+		this.minBlockZ = Arrays.copyOf(this.minBlockZ, newCapacity);
+		this.centerBlockX = Arrays.copyOf(this.centerBlockX, newCapacity);
+		this.centerBlockZ = Arrays.copyOf(this.centerBlockZ, newCapacity);
+		this.blockWidth = Arrays.copyOf(this.blockWidth, newCapacity);
+		this.detailLevel = Arrays.copyOf(this.detailLevel, newCapacity);
+		this.bufferContainers = Arrays.copyOf(this.bufferContainers, newCapacity);
+		this.sortKeys = new long[newCapacity];
+	}
+	
+	
+	
+	//=========//
+	// culling //
+	//=========//
+	
+	/**
+	 * Replaces the contents of the given list with every section that intersects the frustum,
+	 * sorted by their manhattan distance from the given block position (nearest first).
+	 *
+	 * @param frustum if null no culling will be done
+	 * @return the number of sections that were culled
+	 */
+	public int cullAndSortNearToFar(@Nullable IDhApiCullingFrustum frustum, int centerBlockX, int centerBlockZ, ArrayList<LodBufferContainer> outputList)
+	{
+		outputList.clear();
+		
+		this.lock.lock();
+		try
+		{
+			final int count = this.count;
+			final long[] sortKeys = this.sortKeys;
+			
+			// cull
+			int visibleCount = 0;
+			for (int slot = 0; slot < count; slot++)
+			{
+				if (frustum != null && !this.intersects(frustum, slot))
+				{
+					continue;
+				}
+				
+				long distance = Math.abs(this.centerBlockX[slot] - centerBlockX) + Math.abs(this.centerBlockZ[slot] - centerBlockZ);
+				sortKeys[visibleCount] = (distance << 32) | slot;
+				visibleCount++;
+			}
+			
+			// sort near to far
+			Arrays.sort(sortKeys, 0, visibleCount);
+			
+			outputList.ensureCapacity(visibleCount);
+			for (int i = 0; i < visibleCount; i++)
+			{
+				int slot = (int) sortKeys[i];
+				outputList.add(this.bufferContainers[slot]);
+			}
+			
+			return count - visibleCount;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+	private boolean intersects(IDhApiCullingFrustum frustum, int slot)
+	{
+		try
+		{
+			return frustum.intersects(this.minBlockX[slot], this.minBlockZ[slot], this.blockWidth[slot], this.detailLevel[slot]);
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("Unexpected issue during culling for section pos: ["+DhSectionPos.toString(this.sectionPositions[slot])+"], error: ["+e.getMessage()+"].", e);
+			
+			// don't cull if there was an unexpected issue
+			return true;
+		}
+	}
+	
+	
+	
+}
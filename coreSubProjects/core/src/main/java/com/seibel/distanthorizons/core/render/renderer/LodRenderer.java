@@ -41,7 +41,6 @@ import com.seibel.distanthorizons.core.render.renderer.generic.GenericObjectRend
 import com.seibel.distanthorizons.core.render.renderer.shaders.*;
 import com.seibel.distanthorizons.core.util.math.Mat4f;
 import com.seibel.distanthorizons.core.util.math.Vec3d;
-import com.seibel.distanthorizons.core.util.objects.SortedArraySet;
 import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftClientWrapper;
 import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftGLWrapper;
 import com.seibel.distanthorizons.core.wrapperInterfaces.minecraft.IMinecraftRenderWrapper;
@@ -55,6 +54,8 @@ import com.seibel.distanthorizons.core.util.math.Vec3f;
 import org.jetbrains.annotations.Nullable;
 import org.lwjgl.opengl.GL32;
 
+import java.util.ArrayList;
+
 /**
  * This is where all the magic happens. <br>
  * This is where LODs are draw to the world.
@@ -666,7 +667,7 @@ public class LodRenderer
 		}
 		
 		
-		SortedArraySet<LodBufferContainer> lodBufferContainer = lodBufferHandler.getColumnRenderBuffers();
+		ArrayList<LodBufferContainer> lodBufferContainer = lodBufferHandler.getColumnRenderBuffers();
 		if (lodBufferContainer != null)
 		{
 			// Check for API listeners once before the loop to avoid repeated checks
@@ -33,7 +33,9 @@ import java.util.Scanner;
 /**
  * Handles initial database schema setup.
  * This simplified version creates all tables if they don't exist.
- * No migration support - this fork uses a single schema version.
+ * There's no migration tracking - this fork uses a single schema version,
+ * columns added after a table was created are listed in {@link DatabaseUpdater#EXPECTED_COLUMNS}
+ * and added to older databases on startup.
  */
 public class DatabaseUpdater
 {
@@ -42,24 +44,39 @@ public class DatabaseUpdater
 	private static final String SCHEMA_SCRIPT_PATH = "sqlScripts/schema.sql";
 	private static final String BATCH_SEPARATOR = "--batch--";
 
+	/** every table created by the schema script, used to detect databases created before a table was added */
+	private static final String[] EXPECTED_TABLE_NAMES = { "FullData", "ChunkHash", "BeaconBeam", "BlockBiomePalette", "PregenJob", "ZstdDictionary" };
+	/**
+	 * { table, column, column definition } for every column added to a table after it was first created. <br>
+	 * These must also be in the schema script so new databases get them without an ALTER.
+	 */
+	private static final String[][] EXPECTED_COLUMNS = {
+			{ "FullData", "DataFormat", "TINYINT NULL" },
+	};
+
+
+
 	/**
 	 * Creates database tables if they don't exist.
-	 * Uses a single schema.sql file - no migration tracking needed.
+	 * Uses a single schema.sql file - no migration tracking needed. <br>
+	 * Since every statement in the script is "IF NOT EXISTS" the script can be re-run
+	 * to add any tables that are missing from older databases.
 	 */
 	public static <TKey, TDTO extends IBaseDTO<TKey>> void runAutoUpdateScripts(AbstractDhRepo<TKey, TDTO> repo) throws SQLException
 	{
-		// Check if FullData table exists (primary table)
 		Map<String, Object> tableExistsResult = repo.queryDictionaryFirst(
-				"SELECT COUNT(name) as 'tableCount' FROM sqlite_master WHERE type='table' AND name='FullData';"
+				"SELECT COUNT(name) as 'tableCount' FROM sqlite_master WHERE type='table' AND name IN ('" + String.join("','", EXPECTED_TABLE_NAMES) + "');"
 		);
 
-		boolean tablesExist = tableExistsResult != null && (int) tableExistsResult.get("tableCount") > 0;
+		boolean tablesExist = tableExistsResult != null && (int) tableExistsResult.get("tableCount") >= EXPECTED_TABLE_NAMES.length;
 
 		if (!tablesExist)
 		{
 			LOGGER.info("Creating database schema for: [" + repo.databaseFile + "]");
 			runSchemaScript(repo);
 		}
+
+		addMissingColumns(repo);
 	}
 
 	private static <TKey, TDTO extends IBaseDTO<TKey>> void runSchemaScript(AbstractDhRepo<TKey, TDTO> repo) throws SQLException
@@ -105,6 +122,46 @@ public class DatabaseUpdater
 		LOGGER.info("Database schema created successfully");
 	}
 
+	/** SQLite doesn't support "ADD COLUMN IF NOT EXISTS" so each column has to be checked first */
+	private static <TKey, TDTO extends IBaseDTO<TKey>> void addMissingColumns(AbstractDhRepo<TKey, TDTO> repo) throws SQLException
+	{
+		for (String[] columnDefinition : EXPECTED_COLUMNS)
+		{
+			String tableName = columnDefinition[0];
+			String columnName = columnDefinition[1];
+			if (columnExists(repo, tableName, columnName))
+			{
+				continue;
+			}
+
+			LOGGER.info("Adding column [" + tableName + "." + columnName + "] to: [" + repo.databaseFile + "]");
+
+			Connection connection = repo.getConnection();
+			connection.setAutoCommit(true);
+			try (Statement stmt = connection.createStatement())
+			{
+				stmt.setQueryTimeout(AbstractDhRepo.TIMEOUT_SECONDS);
+				stmt.execute("ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " " + columnDefinition[2]);
+			}
+			catch (SQLException e)
+			{
+				// another repo using the same database may have added the column first
+				if (!columnExists(repo, tableName, columnName))
+				{
+					LOGGER.error("Adding column [" + tableName + "." + columnName + "] failed: " + e.getMessage(), e);
+					throw e;
+				}
+			}
+		}
+	}
+	private static <TKey, TDTO extends IBaseDTO<TKey>> boolean columnExists(AbstractDhRepo<TKey, TDTO> repo, String tableName, String columnName)
+	{
+		Map<String, Object> columnExistsResult = repo.queryDictionaryFirst(
+				"SELECT COUNT(*) as 'columnCount' FROM pragma_table_info('" + tableName + "') WHERE name='" + columnName + "';"
+		);
+		return columnExistsResult != null && (int) columnExistsResult.get("columnCount") > 0;
+	}
+
 	private static String loadSchemaScript() throws IOException
 	{
 		ClassLoader loader = Thread.currentThread().getContextClassLoader();
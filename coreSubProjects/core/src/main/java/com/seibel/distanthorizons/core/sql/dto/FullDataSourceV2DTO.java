@@ -23,13 +23,16 @@ import com.github.luben.zstd.Zstd;
 import com.google.common.base.MoreObjects;
 import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
 import com.seibel.distanthorizons.api.enums.config.EDhApiWorldCompressionMode;
+import com.seibel.distanthorizons.core.dataObjects.fullData.BlockBiomePalette;
 import com.seibel.distanthorizons.core.dataObjects.fullData.FullDataPointIdMap;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
 import com.seibel.distanthorizons.core.enums.EDhDirection;
 import com.seibel.distanthorizons.core.pooling.AbstractPhantomArrayList;
+import com.seibel.distanthorizons.core.pooling.PhantomArrayListCheckout;
 import com.seibel.distanthorizons.core.pooling.PhantomArrayListPool;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.network.INetworkObject;
+import com.seibel.distanthorizons.core.sql.dto.util.FullDataColumnarUtil;
 import com.seibel.distanthorizons.core.sql.dto.util.FullDataMinMaxPosUtil;
 import com.seibel.distanthorizons.core.sql.dto.util.VarintUtil;
 import com.seibel.distanthorizons.core.util.BoolUtil;
@@ -39,6 +42,7 @@ import com.seibel.distanthorizons.core.util.LodUtil;
 import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
 import com.seibel.distanthorizons.core.util.objects.dataStreams.DhDataInputStream;
 import com.seibel.distanthorizons.core.util.objects.dataStreams.DhDataOutputStream;
+import com.seibel.distanthorizons.core.util.objects.dataStreams.ZstdDictionary;
 import com.seibel.distanthorizons.core.wrapperInterfaces.world.ILevelWrapper;
 import io.netty.buffer.ByteBuf;
 import it.unimi.dsi.fastutil.bytes.ByteArrayList;
@@ -47,6 +51,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.util.ArrayList;
 
 /** handles storing {@link FullDataSourceV2}'s in the database. */
 public class FullDataSourceV2DTO
@@ -54,6 +59,27 @@ public class FullDataSourceV2DTO
 		implements IBaseDTO<Long>, INetworkObject, AutoCloseable
 {
 	public static final boolean VALIDATE_INPUT_DATAPOINTS = true;
+	
+	/** @see FullDataSourceV2DTO#unchangedDataBlobFlags */
+	public static final int DATA_BLOB_FLAG = 1;
+	public static final int NORTH_ADJ_BLOB_FLAG = 1 << 1;
+	public static final int SOUTH_ADJ_BLOB_FLAG = 1 << 2;
+	public static final int EAST_ADJ_BLOB_FLAG = 1 << 3;
+	public static final int WEST_ADJ_BLOB_FLAG = 1 << 4;
+	
+	/** 
+	 * Each data blob is a set of varint streams compressed with the DTO's {@link EDhApiDataCompressionMode}.
+	 * @see FullDataSourceV2DTO#dataFormatValue 
+	 */
+	public static final byte DATA_FORMAT_V2 = 0;
+	/** 
+	 * Each data blob is bit-packed by {@link FullDataColumnarUtil}
+	 * and then compressed with the DTO's {@link EDhApiDataCompressionMode},
+	 * so individual columns can be decoded without parsing the whole blob. <br>
+	 * Blob format: [int packed length] [packed blob]
+	 * @see FullDataSourceV2DTO#dataFormatValue 
+	 */
+	public static final byte DATA_FORMAT_COLUMNAR = 1;
 
 
 
@@ -71,6 +97,15 @@ public class FullDataSourceV2DTO
 	public ByteArrayList compressedMappingByteArray;
 
 	public byte compressionModeValue;
+	/** 
+	 * How the data and adjacent data blobs are encoded,
+	 * the mapping and world compression blobs always use {@link FullDataSourceV2DTO#compressionModeValue}. <br>
+	 * DTOs sent over the network always use {@link FullDataSourceV2DTO#DATA_FORMAT_V2}.
+	 * 
+	 * @see FullDataSourceV2DTO#DATA_FORMAT_V2
+	 * @see FullDataSourceV2DTO#DATA_FORMAT_COLUMNAR
+	 */
+	public byte dataFormatValue = DATA_FORMAT_V2;
 	
 	/** Will be null if we don't want to update this value in the DB */
 	@Nullable
@@ -82,6 +117,16 @@ public class FullDataSourceV2DTO
 	public long lastModifiedUnixDateTime;
 	public long createdUnixDateTime;
 	
+	/** 
+	 * Bit flags for each data blob that wasn't changed and therefore wasn't encoded. <br>
+	 * If this is anything other than 0 the DTO is partial and
+	 * can only be used to update an existing database row.
+	 * 
+	 * @see FullDataSourceV2DTO#DATA_BLOB_FLAG
+	 * @see FullDataSourceV2DTO#isPartial()
+	 */
+	public int unchangedDataBlobFlags = 0;
+	
 	
 	public static final PhantomArrayListPool ARRAY_LIST_POOL = new PhantomArrayListPool("V2DTO");
 	
@@ -91,24 +136,100 @@ public class FullDataSourceV2DTO
 	// constructors //
 	//==============//
 	
+	/** Creates a self-contained DTO that can be sent over the network. */
 	public static FullDataSourceV2DTO CreateFromDataSource(FullDataSourceV2 dataSource, EDhApiDataCompressionMode compressionModeEnum) throws IOException
+	{ return CreateFromDataSource(dataSource, compressionModeEnum, null); }
+	/** 
+	 * @param palette if not null the mapping will only contain palette IDs,
+	 *                meaning the DTO can only be read using the same palette.
+	 */
+	public static FullDataSourceV2DTO CreateFromDataSource(FullDataSourceV2 dataSource, EDhApiDataCompressionMode compressionModeEnum, @Nullable BlockBiomePalette palette) throws IOException
+	{ return CreateFromDataSource(dataSource, compressionModeEnum, palette, false); }
+	/** 
+	 * @param onlyChangedBlobs if true and the data source matches a database row stored with the same compression mode,
+	 *                         only the data blobs containing changed columns will be encoded.
+	 *                         The returned DTO may then be partial and can only be used to update that row.
+	 * @see FullDataSourceV2DTO#isPartial()
+	 */
+	public static FullDataSourceV2DTO CreateFromDataSource(FullDataSourceV2 dataSource, EDhApiDataCompressionMode compressionModeEnum, @Nullable BlockBiomePalette palette, boolean onlyChangedBlobs) throws IOException
+	{ return CreateFromDataSource(dataSource, compressionModeEnum, palette, onlyChangedBlobs, null); }
+	/** 
+	 * @param dictionary used by {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY}, 
+	 *                   if null {@link EDhApiDataCompressionMode#Z_STD_BLOCK} will be used instead.
+	 */
+	public static FullDataSourceV2DTO CreateFromDataSource(FullDataSourceV2 dataSource, EDhApiDataCompressionMode compressionModeEnum, @Nullable BlockBiomePalette palette, boolean onlyChangedBlobs, @Nullable ZstdDictionary dictionary) throws IOException
+	{ return CreateFromDataSource(dataSource, compressionModeEnum, palette, onlyChangedBlobs, dictionary, DATA_FORMAT_V2); }
+	/** @param dataFormatValue how the data blobs should be encoded, see {@link FullDataSourceV2DTO#dataFormatValue} */
+	public static FullDataSourceV2DTO CreateFromDataSource(FullDataSourceV2 dataSource, EDhApiDataCompressionMode compressionModeEnum, @Nullable BlockBiomePalette palette, boolean onlyChangedBlobs, @Nullable ZstdDictionary dictionary, byte dataFormatValue) throws IOException
 	{
+		if (compressionModeEnum == EDhApiDataCompressionMode.Z_STD_DICTIONARY && dictionary == null)
+		{
+			// no dictionary has been trained yet (or the data is going over the network)
+			compressionModeEnum = EDhApiDataCompressionMode.Z_STD_BLOCK;
+		}
+		
 		FullDataSourceV2DTO dto = FullDataSourceV2DTO.CreateEmptyDataSourceForDecoding();
+		boolean skipUnchanged = onlyChangedBlobs && dataSource.isStoredWithEncoding(compressionModeEnum.value, dataFormatValue);
 		
 		// populate arrays
-		writeDataSourceDataArrayToBlobV2(dataSource.dataPoints, dto.compressedDataByteArray, null, compressionModeEnum);
-		writeWorldCompressionModeToBlob(dataSource.columnWorldCompressionMode, dto.compressedWorldCompressionModeByteArray, compressionModeEnum);
-		writeDataMappingToBlob(dataSource.mapping, dto.compressedMappingByteArray, compressionModeEnum);
+		
+		// the mapping and world compression blobs are small
+		// and change whenever any column changes, so they're always written
+		writeWorldCompressionModeToBlob(dataSource.columnWorldCompressionMode, dto.compressedWorldCompressionModeByteArray, compressionModeEnum, dictionary);
+		writeDataMappingToBlob(dataSource.mapping, dto.compressedMappingByteArray, compressionModeEnum, dictionary, palette);
+		
+		int width = FullDataSourceV2.WIDTH;
+		if (!skipUnchanged || dataSource.anyColumnChangedInRange(1, width - 1, 1, width - 1))
+		{
+			writeDataArrayToBlob(dataSource.dataPoints, dto.compressedDataByteArray, null, dataFormatValue, compressionModeEnum, dictionary);
+		}
+		else
+		{
+			dto.unchangedDataBlobFlags |= DATA_BLOB_FLAG;
+		}
+		
 		// adjacent full data
-		writeDataSourceDataArrayToBlobV2(dataSource.dataPoints, dto.compressedNorthAdjDataByteArray, EDhDirection.NORTH, compressionModeEnum);
-		writeDataSourceDataArrayToBlobV2(dataSource.dataPoints, dto.compressedSouthAdjDataByteArray, EDhDirection.SOUTH, compressionModeEnum);
-		writeDataSourceDataArrayToBlobV2(dataSource.dataPoints, dto.compressedEastAdjDataByteArray, EDhDirection.EAST, compressionModeEnum);
-		writeDataSourceDataArrayToBlobV2(dataSource.dataPoints, dto.compressedWestAdjDataByteArray, EDhDirection.WEST, compressionModeEnum);
+		if (!skipUnchanged || dataSource.anyColumnChangedInRange(0, width, 0, 1))
+		{
+			writeDataArrayToBlob(dataSource.dataPoints, dto.compressedNorthAdjDataByteArray, EDhDirection.NORTH, dataFormatValue, compressionModeEnum, dictionary);
+		}
+		else
+		{
+			dto.unchangedDataBlobFlags |= NORTH_ADJ_BLOB_FLAG;
+		}
+		
+		if (!skipUnchanged || dataSource.anyColumnChangedInRange(0, width, width - 1, width))
+		{
+			writeDataArrayToBlob(dataSource.dataPoints, dto.compressedSouthAdjDataByteArray, EDhDirection.SOUTH, dataFormatValue, compressionModeEnum, dictionary);
+		}
+		else
+		{
+			dto.unchangedDataBlobFlags |= SOUTH_ADJ_BLOB_FLAG;
+		}
+		
+		if (!skipUnchanged || dataSource.anyColumnChangedInRange(width - 1, width, 0, width))
+		{
+			writeDataArrayToBlob(dataSource.dataPoints, dto.compressedEastAdjDataByteArray, EDhDirection.EAST, dataFormatValue, compressionModeEnum, dictionary);
+		}
+		else
+		{
+			dto.unchangedDataBlobFlags |= EAST_ADJ_BLOB_FLAG;
+		}
+		
+		if (!skipUnchanged || dataSource.anyColumnChangedInRange(0, 1, 0, width))
+		{
+			writeDataArrayToBlob(dataSource.dataPoints, dto.compressedWestAdjDataByteArray, EDhDirection.WEST, dataFormatValue, compressionModeEnum, dictionary);
+		}
+		else
+		{
+			dto.unchangedDataBlobFlags |= WEST_ADJ_BLOB_FLAG;
+		}
 		
 		// populate individual variables
 		{
 			dto.pos = dataSource.getPos();
 			dto.compressionModeValue = compressionModeEnum.value;
+			dto.dataFormatValue = dataFormatValue;
 			dto.lastModifiedUnixDateTime = dataSource.lastModifiedUnixDateTime;
 			dto.createdUnixDateTime = dataSource.createdUnixDateTime;
 			dto.applyToParent = dataSource.applyToParent;
@@ -118,6 +239,39 @@ public class FullDataSourceV2DTO
 		return dto;
 	}
 	
+	/**
+	 * Copies the compressed data as-is, no decompression is done. <br>
+	 * The returned DTO must be closed separately from the source.
+	 */
+	public static FullDataSourceV2DTO CreateCopy(FullDataSourceV2DTO source)
+	{
+		FullDataSourceV2DTO dto = FullDataSourceV2DTO.CreateEmptyDataSourceForDecoding();
+
+		// populate arrays
+		dto.compressedDataByteArray.addAll(source.compressedDataByteArray);
+		dto.compressedWorldCompressionModeByteArray.addAll(source.compressedWorldCompressionModeByteArray);
+		dto.compressedMappingByteArray.addAll(source.compressedMappingByteArray);
+		// adjacent full data
+		dto.compressedNorthAdjDataByteArray.addAll(source.compressedNorthAdjDataByteArray);
+		dto.compressedSouthAdjDataByteArray.addAll(source.compressedSouthAdjDataByteArray);
+		dto.compressedEastAdjDataByteArray.addAll(source.compressedEastAdjDataByteArray);
+		dto.compressedWestAdjDataByteArray.addAll(source.compressedWestAdjDataByteArray);
+
+		// populate individual variables
+		{
+			dto.pos = source.pos;
+			dto.compressionModeValue = source.compressionModeValue;
+			dto.dataFormatValue = source.dataFormatValue;
+			dto.lastModifiedUnixDateTime = source.lastModifiedUnixDateTime;
+			dto.createdUnixDateTime = source.createdUnixDateTime;
+			dto.applyToParent = source.applyToParent;
+			dto.isComplete = source.isComplete;
+			dto.unchangedDataBlobFlags = source.unchangedDataBlobFlags;
+		}
+
+		return dto;
+	}
+
 	/** Should only be used for subsequent decoding */
 	public static FullDataSourceV2DTO CreateEmptyDataSourceForDecoding() { return new FullDataSourceV2DTO(); }
 	private FullDataSourceV2DTO()
@@ -143,11 +297,14 @@ public class FullDataSourceV2DTO
 	//========================//
 	
 	public FullDataSourceV2 createDataSource(@NotNull ILevelWrapper levelWrapper, EDhDirection direction) throws IOException, InterruptedException, DataCorruptedException
+	{ return this.createDataSource(levelWrapper, null, direction); }
+	/** @param palette required if this DTO was created with a {@link BlockBiomePalette} */
+	public FullDataSourceV2 createDataSource(@NotNull ILevelWrapper levelWrapper, @Nullable BlockBiomePalette palette, EDhDirection direction) throws IOException, InterruptedException, DataCorruptedException
 	{
 		FullDataSourceV2 dataSource = FullDataSourceV2.createEmpty(this.pos);
 		try
 		{	
-			this.populateDataSource(dataSource, levelWrapper, direction, false);
+			this.populateDataSource(dataSource, levelWrapper, palette, direction, -1, -1, false);
 		}
 		catch (Exception e)
 		{
@@ -169,25 +326,47 @@ public class FullDataSourceV2DTO
 	 * Designed to be used without access to Minecraft. 
 	 */
 	public FullDataSourceV2 createUnitTestDataSource(EDhDirection direction) throws IOException, InterruptedException, DataCorruptedException 
-	{ return this.populateDataSource(FullDataSourceV2.createEmpty(this.pos), null, direction,true); }
+	{ return this.populateDataSource(FullDataSourceV2.createEmpty(this.pos), null, null, direction, -1, -1, true); }
+	
+	/**
+	 * Only decodes the given column, the rest of the data source may be empty. <br>
+	 * Unlike {@link FullDataSourceV2DTO#createDataSource} this DTO's data blob must be
+	 * the blob containing the column, see {@link FullDataMinMaxPosUtil#getBlobDirectionForColumn}. <br><br>
+	 * 
+	 * With {@link FullDataSourceV2DTO#DATA_FORMAT_COLUMNAR} the blob still has to be decompressed
+	 * but only that column is decoded, otherwise the whole blob has to be decoded.
+	 * 
+	 * @param palette required if this DTO was created with a {@link BlockBiomePalette}
+	 */
+	public FullDataSourceV2 createColumnDataSource(@NotNull ILevelWrapper levelWrapper, @Nullable BlockBiomePalette palette, int relX, int relZ) throws IOException, InterruptedException, DataCorruptedException
+	{
+		FullDataSourceV2 dataSource = FullDataSourceV2.createEmpty(this.pos);
+		try
+		{	
+			this.populateDataSource(dataSource, levelWrapper, palette, null, relX, relZ, false);
+		}
+		catch (Exception e)
+		{
+			dataSource.close();
+			throw e;
+		}
+		
+		return dataSource;
+	}
 	
 	private FullDataSourceV2 populateDataSource(
 			FullDataSourceV2 dataSource, ILevelWrapper levelWrapper,
+			@Nullable BlockBiomePalette palette,
 			@Nullable EDhDirection direction,
+			int columnRelX, int columnRelZ,
 			boolean unitTest) throws IOException, InterruptedException, DataCorruptedException
 	{
+		// a negative column means every column should be read
+		boolean singleColumn = (columnRelX >= 0);
+		
 		// compression //
 		
-		EDhApiDataCompressionMode compressionModeEnum;
-		try
-		{
-			compressionModeEnum = EDhApiDataCompressionMode.getFromValue(this.compressionModeValue);
-		}
-		catch (IllegalArgumentException e)
-		{
-			// may happen if the compressor value was changed to an invalid option
-			throw new DataCorruptedException(e);
-		}
+		EDhApiDataCompressionMode compressionModeEnum = this.getCompressionMode();
 		
 		
 		
@@ -201,17 +380,23 @@ public class FullDataSourceV2DTO
 			array.add(FullDataPointUtil.EMPTY_DATA_POINT);
 		}
 		
-		if (direction == null)
+		if (singleColumn)
+		{
+			// only the blob containing the column is present
+			EDhDirection blobDirection = FullDataMinMaxPosUtil.getBlobDirectionForColumn(columnRelX, columnRelZ);
+			this.readDataBlob(this.compressedDataByteArray, dataSource.dataPoints, blobDirection, FullDataMinMaxPosUtil.getEncodedColumnMinMaxPos(columnRelX, columnRelZ), compressionModeEnum);
+		}
+		else if (direction == null)
 		{
 			readBlobToWorldCompressionMode(this.compressedWorldCompressionModeByteArray, dataSource.columnWorldCompressionMode, compressionModeEnum);
 
 			// doesn't include adjacent (ie edge) data
-			readBlobToDataSourceDataArrayV2(this.compressedDataByteArray, dataSource.dataPoints, null, compressionModeEnum);
+			this.readDataBlob(this.compressedDataByteArray, dataSource.dataPoints, null, compressionModeEnum);
 
-			readBlobToDataSourceDataArrayV2(this.compressedNorthAdjDataByteArray, dataSource.dataPoints, EDhDirection.NORTH, compressionModeEnum);
-			readBlobToDataSourceDataArrayV2(this.compressedSouthAdjDataByteArray, dataSource.dataPoints, EDhDirection.SOUTH, compressionModeEnum);
-			readBlobToDataSourceDataArrayV2(this.compressedEastAdjDataByteArray, dataSource.dataPoints, EDhDirection.EAST, compressionModeEnum);
-			readBlobToDataSourceDataArrayV2(this.compressedWestAdjDataByteArray, dataSource.dataPoints, EDhDirection.WEST, compressionModeEnum);
+			this.readDataBlob(this.compressedNorthAdjDataByteArray, dataSource.dataPoints, EDhDirection.NORTH, compressionModeEnum);
+			this.readDataBlob(this.compressedSouthAdjDataByteArray, dataSource.dataPoints, EDhDirection.SOUTH, compressionModeEnum);
+			this.readDataBlob(this.compressedEastAdjDataByteArray, dataSource.dataPoints, EDhDirection.EAST, compressionModeEnum);
+			this.readDataBlob(this.compressedWestAdjDataByteArray, dataSource.dataPoints, EDhDirection.WEST, compressionModeEnum);
 		}
 		else
 		{
@@ -220,7 +405,7 @@ public class FullDataSourceV2DTO
 			// this is done so data sources down-stream
 			// can all be handled identically regardless of
 			// whether they're a full or partial data source
-			readBlobToDataSourceDataArrayV2(this.compressedDataByteArray, dataSource.dataPoints, direction, compressionModeEnum);	
+			this.readDataBlob(this.compressedDataByteArray, dataSource.dataPoints, direction, compressionModeEnum);	
 		}
 		
 		
@@ -235,7 +420,7 @@ public class FullDataSourceV2DTO
 				throw new NullPointerException("No level wrapper present, unable to deserialize data map. This should only be used for unit tests.");
 			}
 			
-			FullDataPointIdMap newMap = readBlobToDataMapping(this.compressedMappingByteArray, dataSource.getPos(), levelWrapper,  compressionModeEnum);
+			FullDataPointIdMap newMap = readBlobToDataMapping(this.compressedMappingByteArray, dataSource.getPos(), levelWrapper, palette, compressionModeEnum);
 			dataSource.mapping.addAll(newMap);
 			if (dataSource.mapping.size() != newMap.size())
 			{
@@ -277,19 +462,364 @@ public class FullDataSourceV2DTO
 		{
 			dataSource.applyToParent = this.applyToParent;
 		}
+		
+		if (direction == null && !singleColumn)
+		{
+			// adjacent and column data sources only contain part of the row,
+			// so they can't be used for partial updates
+			dataSource.markAsStored(this.compressionModeValue, this.dataFormatValue);
+		}
 
 		return dataSource;
 	}
 	
 	
 	
+	//==================//
+	// partial updating //
+	//==================//
+	
+	/** @return true if one or more data blobs weren't encoded, meaning this DTO can only be used to update an existing row */
+	public boolean isPartial() { return this.unchangedDataBlobFlags != 0; }
+	
+	/** @return true if the given blob flag was encoded in this DTO */
+	public boolean hasDataBlob(int blobFlag) { return (this.unchangedDataBlobFlags & blobFlag) == 0; }
+	
+	/** @return the blob flag containing the given direction's adjacent data */
+	public static int getAdjBlobFlag(EDhDirection direction)
+	{
+		switch (direction)
+		{
+			case NORTH:
+				return NORTH_ADJ_BLOB_FLAG;
+			case SOUTH:
+				return SOUTH_ADJ_BLOB_FLAG;
+			case EAST:
+				return EAST_ADJ_BLOB_FLAG;
+			case WEST:
+				return WEST_ADJ_BLOB_FLAG;
+			default:
+				throw new IllegalArgumentException("Invalid adjacent direction: [" + direction + "].");
+		}
+	}
+	
+	/** 
+	 * Copies any data blobs missing from this DTO from the given older DTO for the same position. <br>
+	 * Blobs are only copied if the other DTO contains them and uses the same compression mode and data format.
+	 */
+	public void fillUnchangedDataBlobs(FullDataSourceV2DTO older)
+	{
+		if (!this.isPartial()
+			|| older.pos != this.pos
+			|| older.compressionModeValue != this.compressionModeValue
+			|| older.dataFormatValue != this.dataFormatValue)
+		{
+			return;
+		}
+		
+		this.fillUnchangedDataBlob(DATA_BLOB_FLAG, this.compressedDataByteArray, older, older.compressedDataByteArray);
+		this.fillUnchangedDataBlob(NORTH_ADJ_BLOB_FLAG, this.compressedNorthAdjDataByteArray, older, older.compressedNorthAdjDataByteArray);
+		this.fillUnchangedDataBlob(SOUTH_ADJ_BLOB_FLAG, this.compressedSouthAdjDataByteArray, older, older.compressedSouthAdjDataByteArray);
+		this.fillUnchangedDataBlob(EAST_ADJ_BLOB_FLAG, this.compressedEastAdjDataByteArray, older, older.compressedEastAdjDataByteArray);
+		this.fillUnchangedDataBlob(WEST_ADJ_BLOB_FLAG, this.compressedWestAdjDataByteArray, older, older.compressedWestAdjDataByteArray);
+	}
+	private void fillUnchangedDataBlob(int blobFlag, ByteArrayList blob, FullDataSourceV2DTO older, ByteArrayList olderBlob)
+	{
+		if (!this.hasDataBlob(blobFlag) && older.hasDataBlob(blobFlag))
+		{
+			blob.clear();
+			blob.addAll(olderBlob);
+			this.unchangedDataBlobFlags &= ~blobFlag;
+		}
+	}
+	
+	
+	
+	//=================//
+	// mapping palette //
+	//=================//
+	
+	/**
+	 * Re-writes the mapping so it doesn't reference the given {@link BlockBiomePalette}. <br>
+	 * This should be done before sending a DTO from the database to somewhere 
+	 * that doesn't have access to the palette, IE over the network. <br><br>
+	 * 
+	 * Does nothing if the mapping is already self-contained.
+	 */
+	public void convertMappingToSelfContainedFormat(@NotNull BlockBiomePalette palette) throws IOException, DataCorruptedException
+	{
+		EDhApiDataCompressionMode compressionModeEnum = this.getCompressionMode();
+		
+		// re-use whichever dictionary the mapping was compressed with
+		ZstdDictionary dictionary = null;
+		if (compressionModeEnum == EDhApiDataCompressionMode.Z_STD_DICTIONARY)
+		{
+			dictionary = ZstdDictionary.getRegisteredForBlob(this.compressedMappingByteArray);
+			if (dictionary == null)
+			{
+				throw new DataCorruptedException("Mapping for pos ["+DhSectionPos.toString(this.pos)+"] was compressed with an unknown Zstd dictionary.");
+			}
+		}
+		
+		ByteArrayList convertedMappingByteArray = new ByteArrayList();
+		boolean converted;
+		try (DhDataInputStream compressedIn = DhDataInputStream.create(this.compressedMappingByteArray, compressionModeEnum);
+			DhDataOutputStream compressedOut = DhDataOutputStream.create(compressionModeEnum, convertedMappingByteArray, dictionary))
+		{
+			converted = FullDataPointIdMap.tryConvertPaletteFormatToUtf(compressedIn, compressedOut, palette);
+		}
+		catch (EOFException e)
+		{
+			throw new DataCorruptedException(e);
+		}
+		
+		if (converted)
+		{
+			this.compressedMappingByteArray.clear();
+			this.compressedMappingByteArray.addAll(convertedMappingByteArray);
+		}
+	}
+	
+	
+	
+	//=============//
+	// transcoding //
+	//=============//
+	
+	/**
+	 * Re-compresses every data blob using {@link EDhApiDataCompressionMode#Z_STD_BLOCK}
+	 * if this DTO was compressed with {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY}. <br>
+	 * This should be done before sending a DTO from the database to somewhere 
+	 * that doesn't have the dictionary, IE over the network. <br><br>
+	 * 
+	 * Does nothing for any other compression mode.
+	 */
+	public void convertToDictionaryFreeCompression() throws IOException, DataCorruptedException
+	{
+		if (this.getCompressionMode() != EDhApiDataCompressionMode.Z_STD_DICTIONARY)
+		{
+			return;
+		}
+		
+		EDhApiDataCompressionMode newCompressionMode = EDhApiDataCompressionMode.Z_STD_BLOCK;
+		
+		transcodeBlob(this.compressedDataByteArray, newCompressionMode);
+		transcodeBlob(this.compressedNorthAdjDataByteArray, newCompressionMode);
+		transcodeBlob(this.compressedSouthAdjDataByteArray, newCompressionMode);
+		transcodeBlob(this.compressedEastAdjDataByteArray, newCompressionMode);
+		transcodeBlob(this.compressedWestAdjDataByteArray, newCompressionMode);
+		transcodeBlob(this.compressedWorldCompressionModeByteArray, newCompressionMode);
+		transcodeBlob(this.compressedMappingByteArray, newCompressionMode);
+		
+		this.compressionModeValue = newCompressionMode.value;
+	}
+	/**
+	 * Re-writes the data and adjacent data blobs using the given data format. <br>
+	 * This should be done before sending a DTO from the database over the network,
+	 * since the receiver always expects {@link FullDataSourceV2DTO#DATA_FORMAT_V2}. <br><br>
+	 * 
+	 * Does nothing if this DTO already uses the given format.
+	 * 
+	 * @throws IllegalStateException if this DTO is partial, since the missing blobs would be left in the old format
+	 */
+	public void convertDataFormat(byte newDataFormatValue) throws IOException, DataCorruptedException
+	{
+		if (this.dataFormatValue == newDataFormatValue)
+		{
+			return;
+		}
+		else if (this.isPartial())
+		{
+			throw new IllegalStateException("Partial DTO ["+DhSectionPos.toString(this.pos)+"] can't be converted to a different data format.");
+		}
+		
+		
+		EDhApiDataCompressionMode compressionModeEnum = this.getCompressionMode();
+		
+		// re-use whichever dictionary the rest of the DTO was compressed with
+		ZstdDictionary dictionary = null;
+		if (compressionModeEnum == EDhApiDataCompressionMode.Z_STD_DICTIONARY)
+		{
+			dictionary = ZstdDictionary.getRegisteredForBlob(this.compressedMappingByteArray);
+			if (dictionary == null)
+			{
+				throw new DataCorruptedException("Mapping for pos ["+DhSectionPos.toString(this.pos)+"] was compressed with an unknown Zstd dictionary.");
+			}
+		}
+		
+		// only used for its pooled data columns
+		try (FullDataSourceV2 dataSource = FullDataSourceV2.createEmpty(this.pos))
+		{
+			this.convertDataBlobFormat(this.compressedDataByteArray, null, dataSource.dataPoints, newDataFormatValue, compressionModeEnum, dictionary);
+			this.convertDataBlobFormat(this.compressedNorthAdjDataByteArray, EDhDirection.NORTH, dataSource.dataPoints, newDataFormatValue, compressionModeEnum, dictionary);
+			this.convertDataBlobFormat(this.compressedSouthAdjDataByteArray, EDhDirection.SOUTH, dataSource.dataPoints, newDataFormatValue, compressionModeEnum, dictionary);
+			this.convertDataBlobFormat(this.compressedEastAdjDataByteArray, EDhDirection.EAST, dataSource.dataPoints, newDataFormatValue, compressionModeEnum, dictionary);
+			this.convertDataBlobFormat(this.compressedWestAdjDataByteArray, EDhDirection.WEST, dataSource.dataPoints, newDataFormatValue, compressionModeEnum, dictionary);
+		}
+		
+		this.dataFormatValue = newDataFormatValue;
+	}
+	private void convertDataBlobFormat(
+			ByteArrayList blob, @Nullable EDhDirection direction, LongArrayList[] dataPoints, 
+			byte newDataFormatValue, EDhApiDataCompressionMode compressionModeEnum, @Nullable ZstdDictionary dictionary) throws IOException, DataCorruptedException
+	{
+		// the input stream reads directly from the blob,
+		// so the blob can't be re-written until it's been fully read
+		this.readDataBlob(blob, dataPoints, direction, compressionModeEnum);
+		writeDataArrayToBlob(dataPoints, blob, direction, newDataFormatValue, compressionModeEnum, dictionary);
+	}
+	
+	private static void transcodeBlob(ByteArrayList blob, EDhApiDataCompressionMode newCompressionMode) throws IOException
+	{
+		if (blob.isEmpty())
+		{
+			// unchanged blob in a partial DTO
+			return;
+		}
+		
+		byte[] uncompressedBytes = ZstdDictionary.decompress(blob.toByteArray());
+		try (DhDataOutputStream compressedOut = DhDataOutputStream.create(newCompressionMode, blob))
+		{
+			compressedOut.write(uncompressedBytes);
+		}
+	}
+	
+	/**
+	 * Used to train {@link ZstdDictionary}'s. <br>
+	 * Unchanged blobs in partial DTOs are skipped.
+	 * 
+	 * @return every data blob in this DTO without compression
+	 */
+	public ArrayList<byte[]> getUncompressedBlobs() throws IOException, DataCorruptedException
+	{
+		EDhApiDataCompressionMode compressionModeEnum = this.getCompressionMode();
+		
+		ArrayList<byte[]> blobList = new ArrayList<>(7);
+		addUncompressedBlobToList(this.compressedDataByteArray, compressionModeEnum, blobList);
+		addUncompressedBlobToList(this.compressedNorthAdjDataByteArray, compressionModeEnum, blobList);
+		addUncompressedBlobToList(this.compressedSouthAdjDataByteArray, compressionModeEnum, blobList);
+		addUncompressedBlobToList(this.compressedEastAdjDataByteArray, compressionModeEnum, blobList);
+		addUncompressedBlobToList(this.compressedWestAdjDataByteArray, compressionModeEnum, blobList);
+		addUncompressedBlobToList(this.compressedWorldCompressionModeByteArray, compressionModeEnum, blobList);
+		addUncompressedBlobToList(this.compressedMappingByteArray, compressionModeEnum, blobList);
+		return blobList;
+	}
+	private static void addUncompressedBlobToList(ByteArrayList blob, EDhApiDataCompressionMode compressionModeEnum, ArrayList<byte[]> blobList) throws IOException
+	{
+		if (blob.isEmpty())
+		{
+			return;
+		}
+		
+		ByteArrayOutputStream uncompressedStream = new ByteArrayOutputStream(blob.size() * 4);
+		try (DhDataInputStream compressedIn = DhDataInputStream.create(blob, compressionModeEnum))
+		{
+			// read() is used instead of read(byte[])
+			// since it handles the EOF bugs in some of the decompressors
+			int value;
+			while ((value = compressedIn.read()) != -1)
+			{
+				uncompressedStream.write(value);
+			}
+		}
+		blobList.add(uncompressedStream.toByteArray());
+	}
+	
+	
+	
 	//=================//
 	// (de)serializing //
 	//=================//
 	
+	private static void writeDataArrayToBlob(
+			LongArrayList[] inputDataArray, ByteArrayList outputByteArray,
+			@Nullable EDhDirection direction, byte dataFormatValue, 
+			EDhApiDataCompressionMode compressionModeEnum, @Nullable ZstdDictionary dictionary) throws IOException
+	{
+		if (dataFormatValue == DATA_FORMAT_COLUMNAR)
+		{
+			writeColumnarDataArrayToBlob(inputDataArray, outputByteArray, direction, compressionModeEnum, dictionary);
+		}
+		else
+		{
+			writeDataSourceDataArrayToBlobV2(inputDataArray, outputByteArray, direction, compressionModeEnum, dictionary);
+		}
+	}
+	private void readDataBlob(
+			ByteArrayList inputByteArray, LongArrayList[] outputDataLongArray,
+			@Nullable EDhDirection direction, EDhApiDataCompressionMode compressionModeEnum) throws IOException, DataCorruptedException
+	{ this.readDataBlob(inputByteArray, outputDataLongArray, direction, FullDataMinMaxPosUtil.getEncodedMinMaxPosForBlob(direction), compressionModeEnum); }
+	/** 
+	 * @param readMinMaxPos which columns need to be decoded. 
+	 *                      Only the columnar format can skip the others, 
+	 *                      the V2 streams always decode the whole blob.
+	 */
+	private void readDataBlob(
+			ByteArrayList inputByteArray, LongArrayList[] outputDataLongArray,
+			@Nullable EDhDirection direction, long readMinMaxPos, EDhApiDataCompressionMode compressionModeEnum) throws IOException, DataCorruptedException
+	{
+		switch (this.dataFormatValue)
+		{
+			case DATA_FORMAT_V2:
+				readBlobToDataSourceDataArrayV2(inputByteArray, outputDataLongArray, direction, compressionModeEnum);
+				break;
+			case DATA_FORMAT_COLUMNAR:
+				readBlobToColumnarDataArray(inputByteArray, outputDataLongArray, direction, readMinMaxPos, compressionModeEnum);
+				break;
+			
+			default:
+				// may happen if the database was written by a newer version
+				throw new DataCorruptedException("Unknown data format ["+this.dataFormatValue+"] for pos ["+DhSectionPos.toString(this.pos)+"].");
+		}
+	}
+	
+	private static void writeColumnarDataArrayToBlob(
+			LongArrayList[] inputDataArray, ByteArrayList outputByteArray,
+			@Nullable EDhDirection direction, EDhApiDataCompressionMode compressionModeEnum, @Nullable ZstdDictionary dictionary) throws IOException
+	{
+		try (PhantomArrayListCheckout checkout = ARRAY_LIST_POOL.checkoutArrays(1, 0, 0))
+		{
+			ByteArrayList packedByteArray = checkout.getByteArray(0, 0);
+			FullDataColumnarUtil.writeBlob(inputDataArray, packedByteArray, FullDataMinMaxPosUtil.getEncodedMinMaxPosForBlob(direction));
+			
+			// bit-packing doesn't remove repeated columns (IE oceans or flat stone),
+			// so the packed blob is still run through the compressor
+			try (DhDataOutputStream compressedOut = DhDataOutputStream.create(compressionModeEnum, outputByteArray, dictionary))
+			{
+				compressedOut.writeInt(packedByteArray.size());
+				compressedOut.write(packedByteArray.elements(), 0, packedByteArray.size());
+			}
+		}
+	}
+	/** The whole blob has to be decompressed, but only the columns inside readMinMaxPos are decoded. */
+	private static void readBlobToColumnarDataArray(
+			ByteArrayList inputCompressedByteArray, LongArrayList[] outputDataLongArray,
+			@Nullable EDhDirection direction, long readMinMaxPos, EDhApiDataCompressionMode compressionModeEnum) throws IOException, DataCorruptedException
+	{
+		try (PhantomArrayListCheckout checkout = ARRAY_LIST_POOL.checkoutArrays(1, 0, 0);
+			DhDataInputStream compressedIn = DhDataInputStream.create(inputCompressedByteArray, compressionModeEnum))
+		{
+			int packedLength = compressedIn.readInt();
+			if (packedLength < 0)
+			{
+				throw new DataCorruptedException("Columnar data blob has an invalid length ["+packedLength+"].");
+			}
+			
+			ByteArrayList packedByteArray = checkout.getByteArray(0, 0);
+			packedByteArray.size(packedLength);
+			compressedIn.readFully(packedByteArray.elements(), 0, packedLength);
+			
+			FullDataColumnarUtil.readBlob(packedByteArray, outputDataLongArray, FullDataMinMaxPosUtil.getEncodedMinMaxPosForBlob(direction), readMinMaxPos);
+		}
+		catch (EOFException e)
+		{
+			throw new DataCorruptedException(e);
+		}
+	}
+	
 	private static void writeDataSourceDataArrayToBlobV2(
 			LongArrayList[] inputDataArray, ByteArrayList outputByteArray,
-			@Nullable EDhDirection direction, EDhApiDataCompressionMode compressionModeEnum) throws IOException
+			@Nullable EDhDirection direction, EDhApiDataCompressionMode compressionModeEnum, @Nullable ZstdDictionary dictionary) throws IOException
 	{
 		int minX, maxX, minZ, maxZ;
 		if (direction != null)
@@ -309,7 +839,7 @@ public class FullDataSourceV2DTO
 			maxZ = FullDataSourceV2.WIDTH-1;
 		}
 		
-		try (DhDataOutputStream compressedOut = DhDataOutputStream.create(compressionModeEnum, outputByteArray))
+		try (DhDataOutputStream compressedOut = DhDataOutputStream.create(compressionModeEnum, outputByteArray, dictionary))
 		{
 			// this method would be simpler if we allocated a bunch of temporary arrays,
 			// but we're trying to avoid garbage.
@@ -577,9 +1107,9 @@ public class FullDataSourceV2DTO
 	}
 	
 	
-	private static void writeWorldCompressionModeToBlob(ByteArrayList inputWorldCompressionModeByteArray, ByteArrayList outputByteArray, EDhApiDataCompressionMode compressionModeEnum) throws IOException
+	private static void writeWorldCompressionModeToBlob(ByteArrayList inputWorldCompressionModeByteArray, ByteArrayList outputByteArray, EDhApiDataCompressionMode compressionModeEnum, @Nullable ZstdDictionary dictionary) throws IOException
 	{
-		try (DhDataOutputStream compressedOut = DhDataOutputStream.create(compressionModeEnum, outputByteArray))
+		try (DhDataOutputStream compressedOut = DhDataOutputStream.create(compressionModeEnum, outputByteArray, dictionary))
 		{
 			for (int i = 0; i < inputWorldCompressionModeByteArray.size(); i++)
 			{
@@ -600,23 +1130,37 @@ public class FullDataSourceV2DTO
 	}
 	
 	
-	private static void writeDataMappingToBlob(FullDataPointIdMap mapping, ByteArrayList outputByteArray, EDhApiDataCompressionMode compressionModeEnum) throws IOException
+	private static void writeDataMappingToBlob(FullDataPointIdMap mapping, ByteArrayList outputByteArray, EDhApiDataCompressionMode compressionModeEnum, @Nullable ZstdDictionary dictionary, @Nullable BlockBiomePalette palette) throws IOException
 	{
-		try(DhDataOutputStream compressedOut = DhDataOutputStream.create(compressionModeEnum, outputByteArray))
+		try(DhDataOutputStream compressedOut = DhDataOutputStream.create(compressionModeEnum, outputByteArray, dictionary))
 		{
-			mapping.serialize(compressedOut);
+			mapping.serialize(compressedOut, palette);
 		}
 	}
-	private static FullDataPointIdMap readBlobToDataMapping(ByteArrayList inputCompressedDataByteArray, long pos, @NotNull ILevelWrapper levelWrapper, EDhApiDataCompressionMode compressionModeEnum) throws IOException, InterruptedException, DataCorruptedException
+	private static FullDataPointIdMap readBlobToDataMapping(ByteArrayList inputCompressedDataByteArray, long pos, @NotNull ILevelWrapper levelWrapper, @Nullable BlockBiomePalette palette, EDhApiDataCompressionMode compressionModeEnum) throws IOException, InterruptedException, DataCorruptedException
 	{
 		try (DhDataInputStream compressedIn = DhDataInputStream.create(inputCompressedDataByteArray, compressionModeEnum))
 		{
-			FullDataPointIdMap mapping = FullDataPointIdMap.deserialize(compressedIn, pos, levelWrapper);
+			FullDataPointIdMap mapping = FullDataPointIdMap.deserialize(compressedIn, pos, levelWrapper, palette);
 			return mapping;
 		}
 	}
 	
 	
+	private EDhApiDataCompressionMode getCompressionMode() throws DataCorruptedException
+	{
+		try
+		{
+			return EDhApiDataCompressionMode.getFromValue(this.compressionModeValue);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// may happen if the compressor value was changed to an invalid option
+			throw new DataCorruptedException(e);
+		}
+	}
+	
+	
 	
 	//============//
 	// networking //
@@ -712,6 +1256,7 @@ public class FullDataSourceV2DTO
 				.add("compressedWorldCompressionModeByteArray length", this.compressedWorldCompressionModeByteArray.size())
 				.add("compressedMappingByteArray length", this.compressedMappingByteArray.size())
 				.add("compressionModeValue", this.compressionModeValue)
+				.add("dataFormatValue", this.dataFormatValue)
 				.add("applyToParent", this.applyToParent)
 				.add("lastModifiedUnixDateTime", this.lastModifiedUnixDateTime)
 				.add("createdUnixDateTime", this.createdUnixDateTime)
@@ -0,0 +1,70 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.seibel.distanthorizons.core.sql.dto;
+
+import com.seibel.distanthorizons.core.generation.PregenManager;
+
+/**
+ * Handles storing a level's {@link PregenManager} progress in the database
+ * so a pregen can be resumed after the server restarts. <br>
+ * Each level only has a single pregen job.
+ */
+public class PregenJobDTO implements IBaseDTO<Integer>
+{
+	/** each level can only run one pregen at a time, so the job is always stored with the same key */
+	public static final int LEVEL_JOB_ID = 0;
+	
+	/** section position at {@link com.seibel.distanthorizons.core.pos.DhSectionPos#SECTION_MINIMUM_DETAIL_LEVEL} */
+	public int originPosX;
+	/** section position at {@link com.seibel.distanthorizons.core.pos.DhSectionPos#SECTION_MINIMUM_DETAIL_LEVEL} */
+	public int originPosZ;
+	public int chunkRadius;
+	/** every section before this index on the pregen's spiral has been generated */
+	public int completedSpiralIndex;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public PregenJobDTO(int originPosX, int originPosZ, int chunkRadius, int completedSpiralIndex)
+	{
+		this.originPosX = originPosX;
+		this.originPosZ = originPosZ;
+		this.chunkRadius = chunkRadius;
+		this.completedSpiralIndex = completedSpiralIndex;
+	}
+	
+	
+	
+	//===========//
+	// overrides //
+	//===========//
+	
+	@Override 
+	public Integer getKey() { return LEVEL_JOB_ID; }
+	
+	@Override
+	public void close()
+	{ /* no closing needed */ }
+	
+	
+	
+}
@@ -0,0 +1,67 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.sql.dto;
+
+import com.seibel.distanthorizons.core.util.objects.dataStreams.ZstdDictionary;
+
+/** 
+ * handles storing a level's {@link ZstdDictionary}'s in the database. <br>
+ * Dictionaries are never removed since older data sources may still reference them.
+ */
+public class ZstdDictionaryDTO implements IBaseDTO<Integer>
+{
+	/** @see ZstdDictionary#id */
+	public int id;
+	/** @see ZstdDictionary#dictionaryBytes */
+	public byte[] dictionaryBytes;
+	/** how many data blobs the dictionary was trained from, only used for debugging */
+	public int sampleCount;
+	public long createdUnixDateTime;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public ZstdDictionaryDTO(int id, byte[] dictionaryBytes, int sampleCount, long createdUnixDateTime)
+	{
+		this.id = id;
+		this.dictionaryBytes = dictionaryBytes;
+		this.sampleCount = sampleCount;
+		this.createdUnixDateTime = createdUnixDateTime;
+	}
+	
+	
+	
+	//===========//
+	// overrides //
+	//===========//
+	
+	@Override 
+	public Integer getKey() { return this.id; }
+	
+	@Override
+	public void close()
+	{ /* no closing needed */ }
+	
+	
+	
+}
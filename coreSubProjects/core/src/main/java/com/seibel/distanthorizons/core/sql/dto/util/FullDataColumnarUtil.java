@@ -0,0 +1,325 @@
+package com.seibel.distanthorizons.core.sql.dto.util;
+
+import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.util.FullDataPointUtil;
+import com.seibel.distanthorizons.core.util.ListUtil;
+import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Handles the columnar data blob format. <br><br>
+ *
+ * Every data point is stored as a fixed width bit-packed record
+ * and each column's position is stored in an offset index,
+ * so a single column or border strip can be decoded
+ * without reading the rest of the blob. <br>
+ * Because of that these blobs aren't wrapped in a {@link EDhApiDataCompressionMode} compressor,
+ * instead each field is only as wide as the largest value in the blob
+ * (IE the ID width depends on the section's mapping size). <br><br>
+ *
+ * Blob format: <br>
+ * [byte format version] <br>
+ * [byte ID bits] [byte height bits] [byte bottom Y bits] [byte block light bits] [byte sky light bits] [byte offset bits] <br>
+ * [short minimum bottom Y] <br>
+ * [offset index: for each column the exclusive end index of its data points] <br>
+ * [data points: ID, height, bottom Y - minimum bottom Y, block light, sky light] <br><br>
+ *
+ * Columns are ordered X then Z, the same as the V2 format.
+ * Bits are packed little endian with no padding between columns.
+ *
+ * @see FullDataMinMaxPosUtil
+ */
+public class FullDataColumnarUtil
+{
+	public static final byte FORMAT_VERSION = 1;
+	
+	private static final int HEADER_SIZE_IN_BYTES = 9;
+	private static final int ID_BITS_INDEX = 1;
+	private static final int HEIGHT_BITS_INDEX = 2;
+	private static final int BOTTOM_Y_BITS_INDEX = 3;
+	private static final int BLOCK_LIGHT_BITS_INDEX = 4;
+	private static final int SKY_LIGHT_BITS_INDEX = 5;
+	private static final int OFFSET_BITS_INDEX = 6;
+	private static final int MIN_BOTTOM_Y_INDEX = 7;
+	
+	
+	
+	//==========//
+	// encoding //
+	//==========//
+	
+	/**
+	 * Replaces the contents of the given byte array with the given columns.
+	 * @param blobMinMaxPos which columns should be written, see {@link FullDataMinMaxPosUtil}
+	 */
+	public static void writeBlob(LongArrayList[] inputDataArray, ByteArrayList outputByteArray, long blobMinMaxPos)
+	{
+		int minX = FullDataMinMaxPosUtil.getAdjMinX(blobMinMaxPos);
+		int maxX = FullDataMinMaxPosUtil.getAdjMaxX(blobMinMaxPos);
+		int minZ = FullDataMinMaxPosUtil.getAdjMinZ(blobMinMaxPos);
+		int maxZ = FullDataMinMaxPosUtil.getAdjMaxZ(blobMinMaxPos);
+		
+		
+		// find how wide each field needs to be
+		int dataPointCount = 0;
+		int maxId = 0;
+		int maxHeight = 0;
+		int minBottomY = FullDataPointUtil.MIN_Y_MASK;
+		int maxBottomY = 0;
+		int maxBlockLight = 0;
+		int maxSkyLight = 0;
+		for (int x = minX; x < maxX; x++)
+		{
+			for (int z = minZ; z < maxZ; z++)
+			{
+				LongArrayList col = inputDataArray[FullDataSourceV2.relativePosToIndex(x, z)];
+				int size = (col != null) ? col.size() : 0;
+				dataPointCount += size;
+				for (int y = 0; y < size; y++)
+				{
+					long data = col.getLong(y);
+					maxId = Math.max(maxId, FullDataPointUtil.getId(data));
+					maxHeight = Math.max(maxHeight, FullDataPointUtil.getHeight(data));
+					minBottomY = Math.min(minBottomY, FullDataPointUtil.getBottomY(data));
+					maxBottomY = Math.max(maxBottomY, FullDataPointUtil.getBottomY(data));
+					maxBlockLight = Math.max(maxBlockLight, FullDataPointUtil.getBlockLight(data));
+					maxSkyLight = Math.max(maxSkyLight, FullDataPointUtil.getSkyLight(data));
+				}
+			}
+		}
+		
+		if (dataPointCount == 0)
+		{
+			minBottomY = 0;
+		}
+		
+		int idBits = getBitCount(maxId);
+		int heightBits = getBitCount(maxHeight);
+		int bottomYBits = getBitCount(maxBottomY - minBottomY);
+		int blockLightBits = getBitCount(maxBlockLight);
+		int skyLightBits = getBitCount(maxSkyLight);
+		int offsetBits = getBitCount(dataPointCount);
+		int recordBits = idBits + heightBits + bottomYBits + blockLightBits + skyLightBits;
+		
+		int columnCount = (maxX - minX) * (maxZ - minZ);
+		long indexBitCount = (long) columnCount * offsetBits;
+		long totalBitCount = indexBitCount + (long) dataPointCount * recordBits;
+		
+		
+		// the list is zero filled when resized,
+		// which lets the bits be OR'ed directly into the backing array
+		outputByteArray.clear();
+		outputByteArray.size(HEADER_SIZE_IN_BYTES + (int) ((totalBitCount + 7) / 8));
+		byte[] blob = outputByteArray.elements();
+		
+		blob[0] = FORMAT_VERSION;
+		blob[ID_BITS_INDEX] = (byte) idBits;
+		blob[HEIGHT_BITS_INDEX] = (byte) heightBits;
+		blob[BOTTOM_Y_BITS_INDEX] = (byte) bottomYBits;
+		blob[BLOCK_LIGHT_BITS_INDEX] = (byte) blockLightBits;
+		blob[SKY_LIGHT_BITS_INDEX] = (byte) skyLightBits;
+		blob[OFFSET_BITS_INDEX] = (byte) offsetBits;
+		blob[MIN_BOTTOM_Y_INDEX] = (byte) (minBottomY >>> 8);
+		blob[MIN_BOTTOM_Y_INDEX + 1] = (byte) minBottomY;
+		
+		long indexBit = 0;
+		long recordBit = indexBitCount;
+		int endOffset = 0;
+		for (int x = minX; x < maxX; x++)
+		{
+			for (int z = minZ; z < maxZ; z++)
+			{
+				LongArrayList col = inputDataArray[FullDataSourceV2.relativePosToIndex(x, z)];
+				int size = (col != null) ? col.size() : 0;
+				
+				endOffset += size;
+				writeBits(blob, indexBit, endOffset, offsetBits);
+				indexBit += offsetBits;
+				
+				for (int y = 0; y < size; y++)
+				{
+					long data = col.getLong(y);
+					
+					writeBits(blob, recordBit, FullDataPointUtil.getId(data), idBits);
+					recordBit += idBits;
+					writeBits(blob, recordBit, FullDataPointUtil.getHeight(data), heightBits);
+					recordBit += heightBits;
+					writeBits(blob, recordBit, FullDataPointUtil.getBottomY(data) - minBottomY, bottomYBits);
+					recordBit += bottomYBits;
+					writeBits(blob, recordBit, FullDataPointUtil.getBlockLight(data), blockLightBits);
+					recordBit += blockLightBits;
+					writeBits(blob, recordBit, FullDataPointUtil.getSkyLight(data), skyLightBits);
+					recordBit += skyLightBits;
+				}
+			}
+		}
+	}
+	
+	
+	
+	//==========//
+	// decoding //
+	//==========//
+	
+	/**
+	 * Only the columns inside readMinMaxPos are decoded,
+	 * the rest of the blob is skipped.
+	 *
+	 * @param blobMinMaxPos the columns the blob was written with
+	 * @param readMinMaxPos must be inside blobMinMaxPos
+	 */
+	public static void readBlob(ByteArrayList inputByteArray, LongArrayList[] outputDataArray, long blobMinMaxPos, long readMinMaxPos) throws DataCorruptedException
+	{
+		int minX = FullDataMinMaxPosUtil.getAdjMinX(blobMinMaxPos);
+		int maxX = FullDataMinMaxPosUtil.getAdjMaxX(blobMinMaxPos);
+		int minZ = FullDataMinMaxPosUtil.getAdjMinZ(blobMinMaxPos);
+		int maxZ = FullDataMinMaxPosUtil.getAdjMaxZ(blobMinMaxPos);
+		
+		int readMinX = FullDataMinMaxPosUtil.getAdjMinX(readMinMaxPos);
+		int readMaxX = FullDataMinMaxPosUtil.getAdjMaxX(readMinMaxPos);
+		int readMinZ = FullDataMinMaxPosUtil.getAdjMinZ(readMinMaxPos);
+		int readMaxZ = FullDataMinMaxPosUtil.getAdjMaxZ(readMinMaxPos);
+		if (readMinX < minX || readMaxX > maxX
+			|| readMinZ < minZ || readMaxZ > maxZ)
+		{
+			throw new IllegalArgumentException("Read area X["+readMinX+"-"+readMaxX+"] Z["+readMinZ+"-"+readMaxZ+"] is outside the blob area X["+minX+"-"+maxX+"] Z["+minZ+"-"+maxZ+"].");
+		}
+		
+		
+		
+		// header //
+		
+		byte[] blob = inputByteArray.elements();
+		int blobLength = inputByteArray.size();
+		if (blobLength < HEADER_SIZE_IN_BYTES)
+		{
+			throw new DataCorruptedException("Columnar data blob is too short to contain a header, length: ["+blobLength+"].");
+		}
+		if (blob[0] != FORMAT_VERSION)
+		{
+			throw new DataCorruptedException("Unknown columnar data blob version ["+blob[0]+"], expected ["+FORMAT_VERSION+"].");
+		}
+		
+		int idBits = readBitCount(blob, ID_BITS_INDEX, FullDataPointUtil.ID_WIDTH - 1);
+		int heightBits = readBitCount(blob, HEIGHT_BITS_INDEX, FullDataPointUtil.HEIGHT_WIDTH);
+		int bottomYBits = readBitCount(blob, BOTTOM_Y_BITS_INDEX, FullDataPointUtil.MIN_Y_WIDTH);
+		int blockLightBits = readBitCount(blob, BLOCK_LIGHT_BITS_INDEX, FullDataPointUtil.BLOCK_LIGHT_WIDTH);
+		int skyLightBits = readBitCount(blob, SKY_LIGHT_BITS_INDEX, FullDataPointUtil.SKY_LIGHT_WIDTH);
+		int offsetBits = readBitCount(blob, OFFSET_BITS_INDEX, Integer.SIZE - 1);
+		int minBottomY = ((blob[MIN_BOTTOM_Y_INDEX] & 0xFF) << 8) | (blob[MIN_BOTTOM_Y_INDEX + 1] & 0xFF);
+		int recordBits = idBits + heightBits + bottomYBits + blockLightBits + skyLightBits;
+		
+		int depth = maxZ - minZ;
+		int columnCount = (maxX - minX) * depth;
+		long indexBitCount = (long) columnCount * offsetBits;
+		long availableBitCount = (long) (blobLength - HEADER_SIZE_IN_BYTES) * 8;
+		if (indexBitCount > availableBitCount)
+		{
+			throw new DataCorruptedException("Columnar data blob is too short to contain its offset index, length: ["+blobLength+"].");
+		}
+		
+		// the last offset is the total data point count
+		int dataPointCount = (columnCount == 0) ? 0 : readBits(blob, indexBitCount - offsetBits, offsetBits);
+		if (indexBitCount + (long) dataPointCount * recordBits > availableBitCount)
+		{
+			throw new DataCorruptedException("Columnar data blob is too short to contain ["+dataPointCount+"] data points, length: ["+blobLength+"].");
+		}
+		
+		
+		
+		// columns //
+		
+		for (int x = readMinX; x < readMaxX; x++)
+		{
+			for (int z = readMinZ; z < readMaxZ; z++)
+			{
+				int columnIndex = (x - minX) * depth + (z - minZ);
+				int startOffset = (columnIndex == 0) ? 0 : readBits(blob, (long) (columnIndex - 1) * offsetBits, offsetBits);
+				int endOffset = readBits(blob, (long) columnIndex * offsetBits, offsetBits);
+				if (startOffset > endOffset || endOffset > dataPointCount)
+				{
+					throw new DataCorruptedException("Columnar data blob has an invalid offset range ["+startOffset+"-"+endOffset+"] for column X["+x+"] Z["+z+"].");
+				}
+				
+				LongArrayList col = outputDataArray[FullDataSourceV2.relativePosToIndex(x, z)];
+				ListUtil.clearAndSetSize(col, endOffset - startOffset);
+				
+				long recordBit = indexBitCount + (long) startOffset * recordBits;
+				for (int i = 0; i < col.size(); i++)
+				{
+					int id = readBits(blob, recordBit, idBits);
+					recordBit += idBits;
+					int height = readBits(blob, recordBit, heightBits);
+					recordBit += heightBits;
+					int bottomY = readBits(blob, recordBit, bottomYBits) + minBottomY;
+					recordBit += bottomYBits;
+					byte blockLight = (byte) readBits(blob, recordBit, blockLightBits);
+					recordBit += blockLightBits;
+					byte skyLight = (byte) readBits(blob, recordBit, skyLightBits);
+					recordBit += skyLightBits;
+					
+					col.set(i, FullDataPointUtil.encode(id, height, bottomY, blockLight, skyLight));
+				}
+			}
+		}
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	/** @return how many bits are needed to store every value from 0 to the given value */
+	private static int getBitCount(int maxValue) { return Integer.SIZE - Integer.numberOfLeadingZeros(maxValue); }
+	
+	private static int readBitCount(byte[] blob, int index, int maxBitCount) throws DataCorruptedException
+	{
+		int bitCount = blob[index];
+		if (bitCount < 0 || bitCount > maxBitCount)
+		{
+			throw new DataCorruptedException("Columnar data blob has an invalid field width ["+bitCount+"] at header index ["+index+"], max: ["+maxBitCount+"].");
+		}
+		return bitCount;
+	}
+	
+	/**
+	 * ORs the given value into the array, so the destination bits must be zero.
+	 * @param bitIndex relative to the end of the header
+	 */
+	private static void writeBits(byte[] blob, long bitIndex, int value, int bitCount)
+	{
+		long bits = ((value & 0xFFFF_FFFFL) & ((1L << bitCount) - 1)) << (bitIndex & 7);
+		int index = HEADER_SIZE_IN_BYTES + (int) (bitIndex >>> 3);
+		while (bits != 0)
+		{
+			blob[index++] |= (byte) bits;
+			bits >>>= 8;
+		}
+	}
+	
+	/** @param bitIndex relative to the end of the header */
+	private static int readBits(byte[] blob, long bitIndex, int bitCount)
+	{
+		if (bitCount == 0)
+		{
+			return 0;
+		}
+		
+		int index = HEADER_SIZE_IN_BYTES + (int) (bitIndex >>> 3);
+		int shift = (int) (bitIndex & 7);
+		int byteCount = (shift + bitCount + 7) >>> 3;
+		
+		long bits = 0;
+		for (int i = 0; i < byteCount; i++)
+		{
+			bits |= (long) (blob[index + i] & 0xFF) << (i * 8);
+		}
+		return (int) ((bits >>> shift) & ((1L << bitCount) - 1));
+	}
+	
+	
+	
+}
@@ -2,6 +2,7 @@ package com.seibel.distanthorizons.core.sql.dto.util;
 
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
 import com.seibel.distanthorizons.core.enums.EDhDirection;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Handles encoding/decoding of min/max X/Z relative {@link FullDataSourceV2#dataPoints}
@@ -80,6 +81,54 @@ public class FullDataMinMaxPosUtil
 				minZ, maxZ);
 	}
 	
+	/**
+	 * @param direction if null the area of the center data blob will be returned,
+	 *                  IE every column except the border columns.
+	 */
+	public static long getEncodedMinMaxPosForBlob(@Nullable EDhDirection direction)
+	{
+		if (direction != null)
+		{
+			return getEncodedMinMaxPos(direction);
+		}
+		
+		// the border columns are stored in the adjacent blobs
+		return encodeAdjMinMaxPos(
+				(short) 1, (short) (FullDataSourceV2.WIDTH - 1),
+				(short) 1, (short) (FullDataSourceV2.WIDTH - 1));
+	}
+	
+	/** @return the area containing only the given column */
+	public static long getEncodedColumnMinMaxPos(int relX, int relZ)
+	{ return encodeAdjMinMaxPos((short) relX, (short) (relX + 1), (short) relZ, (short) (relZ + 1)); }
+	
+	/** @return the direction of the adjacent blob containing the given column, null if it's in the center data blob */
+	@Nullable
+	public static EDhDirection getBlobDirectionForColumn(int relX, int relZ)
+	{
+		// corner columns are in two blobs, either one works
+		if (relZ == 0)
+		{
+			return EDhDirection.NORTH;
+		}
+		else if (relZ == FullDataSourceV2.WIDTH - 1)
+		{
+			return EDhDirection.SOUTH;
+		}
+		else if (relX == FullDataSourceV2.WIDTH - 1)
+		{
+			return EDhDirection.EAST;
+		}
+		else if (relX == 0)
+		{
+			return EDhDirection.WEST;
+		}
+		else
+		{
+			return null;
+		}
+	}
+	
 	public static long encodeAdjMinMaxPos(
 			short minX, short maxX,
 			short minZ, short maxZ
@@ -8,6 +8,10 @@ import java.io.IOException;
 
 public class VarintUtil
 {
+	/** a 32 bit int needs at most 5 groups of 7 bits */
+	public static final int MAX_VARINT_SIZE_IN_BYTES = 5;
+	
+	
 	
 	/**
 	 * zigzagEncode maps 0=>0, -1=>1, 1=>2, -2=>3, 3=>4, etc.
@@ -37,32 +41,13 @@ public class VarintUtil
 			throw new IllegalArgumentException("varint given ["+value+"], varint only accepts positive values.");
 		}
 		
-		while (value >= 128)
-		{
-			out.writeByte(value | 128);
-			value >>>= 7; // 128 = 2^7
-		}
-		out.writeByte(value);
+		// the stream can write straight into its backing array
+		// when it isn't wrapped by a compression stream
+		out.writeVarint(value);
 	}
 	
 	public static int readVarint(DhDataInputStream in) throws IOException
-	{
-		int value = 0;
-		int shift = 0;
-		byte b;
-		do
-		{
-			if (shift >= 32)
-			{
-				throw new IOException("invalid varint");
-			}
-			b = in.readByte();
-			value |= (b & 127) << shift;
-			shift += 7;
-		}
-		while ((b & 128) != 0);
-		return value;
-	}
+	{ return in.readVarint(); }
 	
 	
 	
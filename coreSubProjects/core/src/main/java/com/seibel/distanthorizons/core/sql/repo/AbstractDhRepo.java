@@ -58,11 +58,18 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 
 	private static final ConcurrentHashMap<String, Connection> CONNECTIONS_BY_CONNECTION_STRING = new ConcurrentHashMap<>();
 	private static final ConcurrentHashMap<AbstractDhRepo<?, ?>, String> ACTIVE_CONNECTION_STRINGS_BY_REPO = new ConcurrentHashMap<>();
+	/** 
+	 * One lock per database file, shared by every repo using that file's connection. <br>
+	 * Every statement runs while holding this lock, and transactions hold it until they commit,
+	 * that way another repo's writes can't end up inside (or be rolled back by) a transaction they aren't part of.
+	 */
+	private static final ConcurrentHashMap<String, ReentrantLock> DATABASE_LOCK_BY_CONNECTION_STRING = new ConcurrentHashMap<>();
 	
 	
 	
 	private final String connectionString;
 	private final Connection connection;
+	private final ReentrantLock databaseLock;
 	
 	public final String databaseType;
 	public final File databaseFile;
@@ -147,6 +154,7 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 		// get or create the connection,
 		// reusing existing connections reduces the chance of locking the database during trivial queries
 		this.connectionString = this.databaseType+":"+this.databaseFile.getPath();
+		this.databaseLock = DATABASE_LOCK_BY_CONNECTION_STRING.computeIfAbsent(this.connectionString, (connectionString) -> new ReentrantLock());
 		
 		
 		this.connection = CONNECTIONS_BY_CONNECTION_STRING.computeIfAbsent(this.connectionString, (connectionString) ->
@@ -170,7 +178,16 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 
 		ACTIVE_CONNECTION_STRINGS_BY_REPO.put(this, this.connectionString);
 
-		DatabaseUpdater.runAutoUpdateScripts(this);
+		// the update scripts change the commit mode
+		this.databaseLock.lock();
+		try
+		{
+			DatabaseUpdater.runAutoUpdateScripts(this);
+		}
+		finally
+		{
+			this.databaseLock.unlock();
+		}
 	}
 
 	/**
@@ -426,6 +443,7 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 	 */
 	private List<Map<String, Object>> queryDictionary(String sql) throws RuntimeException, DbConnectionClosedException
 	{
+		this.databaseLock.lock();
 		try (Statement statement = this.connection.createStatement())
 		{
 			statement.setQueryTimeout(TIMEOUT_SECONDS);
@@ -453,6 +471,10 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 				throw new RuntimeException(message, e);
 			}
 		}
+		finally
+		{
+			this.databaseLock.unlock();
+		}
 	}
 	
 	
@@ -473,6 +495,7 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 		}
 		
 		
+		this.databaseLock.lock();
 		try
 		{
 			statement.setQueryTimeout(TIMEOUT_SECONDS);
@@ -505,6 +528,10 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 				throw new RuntimeException(message, e);
 			}
 		}
+		finally
+		{
+			this.databaseLock.unlock();
+		}
 	}
 	
 	
@@ -548,6 +575,48 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 	
 	public Connection getConnection() { return this.connection; }
 	
+	/** 
+	 * Must be held when running statements directly on the {@link AbstractDhRepo#getConnection()}, 
+	 * {@link AbstractDhRepo#query(PreparedStatement)} already handles this.
+	 * 
+	 * @see AbstractDhRepo#runInTransaction(ISqlTransaction) 
+	 */
+	public ReentrantLock getDatabaseLock() { return this.databaseLock; }
+	
+	/**
+	 * Runs everything in the given transaction as a single commit,
+	 * if it throws the transaction is rolled back. <br>
+	 * The database lock is held for the whole transaction so statements
+	 * from other threads (and other repos sharing this database) wait until the commit is done.
+	 */
+	public void runInTransaction(ISqlTransaction transaction) throws SQLException
+	{
+		this.databaseLock.lock();
+		try
+		{
+			boolean autoCommit = this.connection.getAutoCommit();
+			this.connection.setAutoCommit(false);
+			try
+			{
+				transaction.run();
+				this.connection.commit();
+			}
+			catch (SQLException | RuntimeException e)
+			{
+				this.connection.rollback();
+				throw e;
+			}
+			finally
+			{
+				this.connection.setAutoCommit(autoCommit);
+			}
+		}
+		finally
+		{
+			this.databaseLock.unlock();
+		}
+	}
+	
 	public boolean isConnected() 
 	{
 		try
@@ -569,6 +638,7 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 			try
 			{
 				Connection connection = CONNECTIONS_BY_CONNECTION_STRING.remove(connectionString);
+				DATABASE_LOCK_BY_CONNECTION_STRING.remove(connectionString);
 				if (connection != null)
 				{
 					if (!connection.isClosed())
@@ -609,6 +679,7 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 				if(this.connection != null)
 				{
 					CONNECTIONS_BY_CONNECTION_STRING.remove(this.connectionString);
+					DATABASE_LOCK_BY_CONNECTION_STRING.remove(this.connectionString);
 					
 					
 					// log any leaked objects
@@ -864,5 +935,16 @@ public abstract class AbstractDhRepo<TKey, TDTO extends IBaseDTO<TKey>> implemen
 	
 	
 	
+	//================//
+	// helper classes //
+	//================//
+	
+	@FunctionalInterface
+	public interface ISqlTransaction
+	{
+		void run() throws SQLException;
+	}
+	
+	
 	
 }
@@ -0,0 +1,220 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.sql.repo;
+
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.sql.DbConnectionClosedException;
+import com.seibel.distanthorizons.core.sql.dto.BlockBiomePaletteDTO;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BlockBiomePaletteRepo extends AbstractDhRepo<Integer, BlockBiomePaletteDTO>
+{
+	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public BlockBiomePaletteRepo(String databaseType, File databaseFile) throws SQLException, IOException
+	{
+		super(databaseType, databaseFile, BlockBiomePaletteDTO.class);
+	}
+	
+	
+	
+	//===========//
+	// overrides //
+	//===========//
+	
+	@Override 
+	public String getTableName() { return "BlockBiomePalette"; }
+	
+	@Override
+	protected String CreateParameterizedWhereString() { return "Id = ?"; }
+	
+	@Override
+	protected int setPreparedStatementWhereClause(PreparedStatement statement, int index, Integer id) throws SQLException
+	{
+		statement.setInt(index++, id);
+		return index;
+	}
+	
+	
+	
+	//=======================//
+	// repo required methods //
+	//=======================//
+	
+	@Override
+	@Nullable
+	public BlockBiomePaletteDTO convertResultSetToDto(ResultSet resultSet) throws ClassCastException, SQLException
+	{
+		int id = resultSet.getInt("Id");
+		String serialString = resultSet.getString("SerialString");
+		
+		BlockBiomePaletteDTO dto = new BlockBiomePaletteDTO(id, serialString);
+		return dto;
+	}
+	
+	private final String insertSqlTemplate =
+		"INSERT INTO "+this.getTableName() + " (\n" +
+		"   Id, SerialString, \n" +
+		"   CreatedUnixDateTime) \n" +
+		"VALUES( \n" +
+		"    ?, ?, \n" +
+		"    ? \n" +
+		");";
+	@Override
+	public PreparedStatement createInsertStatement(BlockBiomePaletteDTO dto) throws SQLException
+	{
+		PreparedStatement statement = this.createPreparedStatement(this.insertSqlTemplate);
+		if (statement == null)
+		{
+			return null;
+		}
+		
+		
+		int i = 1;
+		statement.setInt(i++, dto.id);
+		statement.setString(i++, dto.serialString);
+		
+		statement.setLong(i++, System.currentTimeMillis()); // created unix time
+		
+		return statement;
+	}
+	
+	private final String updateSqlTemplate =
+		"UPDATE "+this.getTableName()+" \n" +
+		"SET \n" +
+		"    SerialString = ? \n" +
+		"WHERE Id = ?";
+	@Override
+	public PreparedStatement createUpdateStatement(BlockBiomePaletteDTO dto) throws SQLException
+	{
+		PreparedStatement statement = this.createPreparedStatement(this.updateSqlTemplate);
+		if (statement == null)
+		{
+			return null;
+		}
+		
+		
+		int i = 1;
+		statement.setString(i++, dto.serialString);
+		
+		statement.setInt(i++, dto.id);
+		
+		return statement;
+	}
+	
+	
+	
+	//====================//
+	// additional methods //
+	//====================//
+	
+	private final String getAllTemplate = "SELECT * FROM "+this.getTableName()+" ORDER BY Id ASC";
+	/** @return every palette entry, ordered by ID */
+	public List<BlockBiomePaletteDTO> getAll()
+	{
+		ArrayList<BlockBiomePaletteDTO> dtoList = new ArrayList<>();
+		
+		try (PreparedStatement statement = this.createPreparedStatement(this.getAllTemplate);
+			ResultSet result = this.query(statement))
+		{
+			while (result != null && result.next())
+			{
+				dtoList.add(this.convertResultSetToDto(result));
+			}
+		}
+		catch (SQLException e)
+		{
+			if (!DbConnectionClosedException.isClosedException(e))
+			{
+				throw new RuntimeException(e);
+			}
+		}
+		
+		return dtoList;
+	}
+	
+	/**
+	 * Inserts every DTO in a single transaction. <br>
+	 * Palette entries are written immediately (instead of through a write-behind queue)
+	 * since any data source referencing them must be able to find them after a crash.
+	 */
+	public void insertAll(List<BlockBiomePaletteDTO> dtoList)
+	{
+		if (dtoList.isEmpty())
+		{
+			return;
+		}
+		
+		try (PreparedStatement statement = this.createPreparedStatement(this.insertSqlTemplate))
+		{
+			if (statement == null)
+			{
+				// the connection was closed
+				return;
+			}
+			
+			// the connection is shared between every repo using this database file,
+			// runInTransaction() locks it so other repos' writes can't end up in this commit
+			this.runInTransaction(() ->
+			{
+				long createdUnixDateTime = System.currentTimeMillis();
+				for (BlockBiomePaletteDTO dto : dtoList)
+				{
+					int i = 1;
+					statement.setInt(i++, dto.id);
+					statement.setString(i++, dto.serialString);
+					statement.setLong(i++, createdUnixDateTime);
+					statement.addBatch();
+				}
+				
+				statement.executeBatch();
+			});
+		}
+		catch (SQLException e)
+		{
+			if (DbConnectionClosedException.isClosedException(e))
+			{
+				return;
+			}
+			
+			String message = "Unable to insert ["+dtoList.size()+"] palette entries, error: [" + e.getMessage() + "].";
+			LOGGER.error(message, e);
+			throw new RuntimeException(message, e);
+		}
+	}
+	
+	
+	
+}
@@ -31,6 +31,9 @@ import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ChunkHashRepo extends AbstractDhRepo<DhChunkPos, ChunkHashDTO>
 {
@@ -194,16 +197,92 @@ public class ChunkHashRepo extends AbstractDhRepo<DhChunkPos, ChunkHashDTO>
 			return null;
 		}
 
+		setUpsertStatementParameters(statement, dto, System.currentTimeMillis());
+		return statement;
+	}
+	private static void setUpsertStatementParameters(PreparedStatement statement, ChunkHashDTO dto, long unixTimeMs) throws SQLException
+	{
 		int i = 1;
 		statement.setInt(i++, dto.pos.getX());
 		statement.setInt(i++, dto.pos.getZ());
 
 		statement.setInt(i++, dto.chunkHash);
 
-		statement.setLong(i++, System.currentTimeMillis()); // last modified unix time
-		statement.setLong(i++, System.currentTimeMillis()); // created unix time
+		statement.setLong(i++, unixTimeMs); // last modified unix time
+		statement.setLong(i++, unixTimeMs); // created unix time
+	}
 
-		return statement;
+	/**
+	 * Writes every DTO in a single transaction using one prepared statement. <br>
+	 * If the transaction fails each DTO is written individually so a single bad DTO
+	 * doesn't prevent the rest from being saved.
+	 *
+	 * @return the DTOs that couldn't be written, empty if everything was saved
+	 */
+	public List<ChunkHashDTO> saveBatch(List<ChunkHashDTO> dtoList)
+	{
+		if (dtoList.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+		else if (dtoList.size() == 1)
+		{
+			// no need to start a transaction for a single row
+			return this.saveIndividually(dtoList);
+		}
+
+		try (PreparedStatement statement = this.createPreparedStatement(this.upsertSqlTemplate))
+		{
+			if (statement == null)
+			{
+				// the connection was closed
+				return dtoList;
+			}
+
+			// the connection is shared between every repo using this database file,
+			// runInTransaction() locks it so other repos' writes can't end up in this commit
+			this.runInTransaction(() ->
+			{
+				long nowMs = System.currentTimeMillis();
+				for (ChunkHashDTO dto : dtoList)
+				{
+					setUpsertStatementParameters(statement, dto, nowMs);
+					statement.addBatch();
+				}
+
+				statement.executeBatch();
+			});
+			return Collections.emptyList();
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			if (e instanceof SQLException
+				&& DbConnectionClosedException.isClosedException((SQLException) e))
+			{
+				return dtoList;
+			}
+
+			LOGGER.error("Unable to write batch of ["+dtoList.size()+"] chunk hashes, falling back to individual writes. Error: [" + e.getMessage() + "].", e);
+		}
+
+		return this.saveIndividually(dtoList);
+	}
+	private List<ChunkHashDTO> saveIndividually(List<ChunkHashDTO> dtoList)
+	{
+		ArrayList<ChunkHashDTO> failedDtoList = new ArrayList<>();
+		for (ChunkHashDTO dto : dtoList)
+		{
+			try
+			{
+				this.save(dto);
+			}
+			catch (RuntimeException saveException)
+			{
+				LOGGER.error("Unable to save chunk hash for ["+dto.pos+"], error: ["+saveException.getMessage()+"].", saveException);
+				failedDtoList.add(dto);
+			}
+		}
+		return failedDtoList;
 	}
 
 
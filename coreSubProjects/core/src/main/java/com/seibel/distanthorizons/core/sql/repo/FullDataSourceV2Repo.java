@@ -19,13 +19,16 @@
 
 package com.seibel.distanthorizons.core.sql.repo;
 
+import com.seibel.distanthorizons.core.config.Config;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
 import com.seibel.distanthorizons.core.enums.EDhDirection;
+import com.seibel.distanthorizons.core.generation.PregenManager;
 import com.seibel.distanthorizons.core.logging.DhLogger;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
 import com.seibel.distanthorizons.core.pos.DhSectionPos;
 import com.seibel.distanthorizons.core.sql.DbConnectionClosedException;
 import com.seibel.distanthorizons.core.sql.dto.FullDataSourceV2DTO;
+import com.seibel.distanthorizons.core.sql.dto.util.FullDataMinMaxPosUtil;
 import com.seibel.distanthorizons.core.util.BoolUtil;
 import it.unimi.dsi.fastutil.bytes.ByteArrayList;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
@@ -36,22 +39,41 @@ import java.io.*;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2DTO>
 {
 	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
 	
 	
+	/** 
+	 * Holds saved DTOs until they can be written in a single transaction. <br>
+	 * Any query that needs to see recent saves must check this first.
+	 */
+	private final FullDataSourceV2WriteBehindQueue writeQueue;
+	/** when true saves are written in larger batches, see {@link PregenManager#THROUGHPUT_MODE_DATABASE_WRITE_BATCH_SIZE} */
+	private final BooleanSupplier throughputModeSupplier;
+	
+	
 	
 	//=============//
 	// constructor //
 	//=============//
 	
 	public FullDataSourceV2Repo(String databaseType, File databaseFile) throws SQLException, IOException
+	{ this(databaseType, databaseFile, () -> false); }
+	/** @param throughputModeSupplier generally true while a pregen is running for this repo's level */
+	public FullDataSourceV2Repo(String databaseType, File databaseFile, BooleanSupplier throughputModeSupplier) throws SQLException, IOException
 	{
 		super(databaseType, databaseFile, FullDataSourceV2DTO.class);
+		
+		this.throughputModeSupplier = throughputModeSupplier;
+		this.writeQueue = new FullDataSourceV2WriteBehindQueue(this::saveBatch, throughputModeSupplier);
 	}
 	
 	
@@ -80,6 +102,75 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 	
 	
 	
+	//===================//
+	// write queue reads //
+	//===================//
+	
+	// queued saves are newer than anything in the database
+	// so they need to be checked first
+	
+	@Override
+	public FullDataSourceV2DTO getByKey(Long pos)
+	{
+		FullDataSourceV2DTO pendingDto = this.writeQueue.getPendingValue(pos, FullDataSourceV2DTO::CreateCopy);
+		if (pendingDto != null)
+		{
+			if (pendingDto.isPartial())
+			{
+				// partial saves only contain the changed blobs,
+				// the unchanged blobs are still in the database
+				try (FullDataSourceV2DTO storedDto = super.getByKey(pos))
+				{
+					if (storedDto != null)
+					{
+						pendingDto.fillUnchangedDataBlobs(storedDto);
+					}
+				}
+				
+				if (pendingDto.isPartial())
+				{
+					LOGGER.warn("Unable to find the unchanged data for the pending partial save at pos ["+DhSectionPos.toString(pos)+"].");
+					pendingDto.close();
+					return null;
+				}
+			}
+			
+			return pendingDto;
+		}
+		
+		return super.getByKey(pos);
+	}
+	
+	@Override
+	public boolean existsWithKey(Long pos)
+	{
+		Boolean pending = this.writeQueue.getPendingValue(pos, (dto) -> true);
+		if (pending != null)
+		{
+			return true;
+		}
+		
+		return super.existsWithKey(pos);
+	}
+	
+	@Override
+	public void deleteWithKey(Long pos)
+	{
+		// prevent an in-flight batch from re-creating the row after it's deleted
+		this.writeQueue.flushLock.lock();
+		try
+		{
+			this.writeQueue.removePending(pos);
+			super.deleteWithKey(pos);
+		}
+		finally
+		{
+			this.writeQueue.flushLock.unlock();
+		}
+	}
+	
+	
+	
 	@Override @Nullable
 	public FullDataSourceV2DTO convertResultSetToDto(ResultSet resultSet) throws ClassCastException, IOException, SQLException
 	{ return this.convertResultSetToDto(resultSet, true); }
@@ -97,6 +188,8 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		long pos = DhSectionPos.encode(sectionDetailLevel, posX, posZ);
 
 		byte compressionModeValue = resultSet.getByte("CompressionMode");
+		// null for rows written before the data format was added, which equates to V2
+		byte dataFormatValue = resultSet.getByte("DataFormat");
 
 		// while these values can be null in the DB, null would just equate to false
 		boolean applyToParent = (resultSet.getInt("ApplyToParent")) == 1;
@@ -131,6 +224,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		{
 			dto.pos = pos;
 			dto.compressionModeValue = compressionModeValue;
+			dto.dataFormatValue = dataFormatValue;
 			dto.lastModifiedUnixDateTime = lastModifiedUnixDateTime;
 			dto.createdUnixDateTime = createdUnixDateTime;
 			dto.applyToParent = applyToParent;
@@ -147,6 +241,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		//======================//
 
 		byte compressionModeValue = resultSet.getByte("CompressionMode");
+		byte dataFormatValue = resultSet.getByte("DataFormat");
 
 		// while these values can be null in the DB, null would just equate to false
 		boolean applyToParent = (resultSet.getInt("ApplyToParent")) == 1;
@@ -170,6 +265,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		{
 			dto.pos = pos;
 			dto.compressionModeValue = compressionModeValue;
+			dto.dataFormatValue = dataFormatValue;
 			dto.lastModifiedUnixDateTime = lastModifiedUnixDateTime;
 			dto.createdUnixDateTime = createdUnixDateTime;
 			dto.applyToParent = applyToParent;
@@ -188,13 +284,13 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		"   DetailLevel, PosX, PosZ, \n" +
 		"   Data, ColumnWorldCompressionMode, Mapping, \n" +
 		"   NorthAdjData, SouthAdjData, EastAdjData, WestAdjData, \n" +
-		"   CompressionMode, ApplyToParent, IsComplete, \n" +
+		"   CompressionMode, DataFormat, ApplyToParent, IsComplete, \n" +
 		"   LastModifiedUnixDateTime, CreatedUnixDateTime) \n" +
 		"VALUES( \n" +
 		"    ?, ?, ?, \n" +
 		"    ?, ?, ?, \n" +
 		"    ?, ?, ?, ?, \n" +
-		"    ?, ?, ?, \n" +
+		"    ?, ?, ?, ?, \n" +
 		"    ?, ? \n" +
 		") \n" +
 		"ON CONFLICT(DetailLevel, PosX, PosZ) DO UPDATE SET \n" +
@@ -206,6 +302,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		"   EastAdjData = excluded.EastAdjData, \n" +
 		"   WestAdjData = excluded.WestAdjData, \n" +
 		"   CompressionMode = excluded.CompressionMode, \n" +
+		"   DataFormat = excluded.DataFormat, \n" +
 		"   ApplyToParent = COALESCE(excluded.ApplyToParent, ApplyToParent), \n" +
 		"   IsComplete = excluded.IsComplete, \n" +
 		"   LastModifiedUnixDateTime = excluded.LastModifiedUnixDateTime;";
@@ -215,13 +312,13 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		"   DetailLevel, PosX, PosZ, \n" +
 		"   Data, ColumnWorldCompressionMode, Mapping, \n" +
 		"   NorthAdjData, SouthAdjData, EastAdjData, WestAdjData, \n" +
-		"   CompressionMode, ApplyToParent, IsComplete, \n" +
+		"   CompressionMode, DataFormat, ApplyToParent, IsComplete, \n" +
 		"   LastModifiedUnixDateTime, CreatedUnixDateTime) \n" +
 		"VALUES( \n" +
 		"    ?, ?, ?, \n" +
 		"    ?, ?, ?, \n" +
 		"    ?, ?, ?, ?, \n" +
-		"    ?, ?, ?, \n" +
+		"    ?, ?, ?, ?, \n" +
 		"    ?, ? \n" +
 		");";
 	@Override
@@ -248,6 +345,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		statement.setBinaryStream(i++, new ByteArrayInputStream(dto.compressedWestAdjDataByteArray.elements()), dto.compressedWestAdjDataByteArray.size());
 
 		statement.setByte(i++, dto.compressionModeValue);
+		statement.setByte(i++, dto.dataFormatValue);
 		// if nothing is present assume we don't need/want to propagate updates
 		statement.setBoolean(i++, BoolUtil.falseIfNull(dto.applyToParent));
 		statement.setBoolean(i++, dto.isComplete);
@@ -273,6 +371,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 				"   ,NorthAdjData = ?, SouthAdjData = ?, EastAdjData = ?, WestAdjData = ? \n" +
 
 				"   ,CompressionMode = ? \n" +
+				"   ,DataFormat = ? \n" +
 					// only update this value if it's present
 					(dto.applyToParent != null ? "   ,ApplyToParent = ? \n" : "" ) +
 				"   ,IsComplete = ? \n" +
@@ -304,6 +403,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 
 
 		statement.setByte(i++, dto.compressionModeValue);
+		statement.setByte(i++, dto.dataFormatValue);
 		if (dto.applyToParent != null)
 		{
 			statement.setBoolean(i++, dto.applyToParent);
@@ -322,12 +422,62 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 
 	/**
 	 * Overrides the base save() to use atomic UPSERT instead of check-then-insert/update.
-	 * This eliminates the need for per-position locking and prevents race conditions.
+	 * This eliminates the need for per-position locking and prevents race conditions. <br><br>
+	 * 
+	 * If {@link Config.Common.LodBuilding#databaseWriteBatchSize} is greater than 1
+	 * the DTO is copied and queued so it can be written with other DTOs in a single transaction.
+	 * Queued DTOs are still returned by this repo's getters. <br>
+	 * Either way the given DTO can be closed after this method returns.
 	 */
 	@Override
 	public void save(FullDataSourceV2DTO dto)
 	{
-		try (PreparedStatement statement = this.createUpsertStatement(dto);
+		int maxBatchSize = Config.Common.LodBuilding.databaseWriteBatchSize.get();
+		if (maxBatchSize > 1)
+		{
+			if (this.throughputModeSupplier.getAsBoolean())
+			{
+				// pregens write far more than normal play, larger batches mean fewer transactions
+				maxBatchSize = Math.max(maxBatchSize, PregenManager.THROUGHPUT_MODE_DATABASE_WRITE_BATCH_SIZE);
+			}
+			
+			this.writeQueue.queueSave(dto, maxBatchSize);
+		}
+		else
+		{
+			// anything queued before batching was disabled needs to be written first
+			// otherwise it could overwrite this save
+			this.writeQueue.flush();
+			this.saveImmediately(dto, System.currentTimeMillis());
+		}
+	}
+	private void saveImmediately(FullDataSourceV2DTO dto, long lastModifiedUnixDateTime)
+	{
+		if (dto.isPartial())
+		{
+			try
+			{
+				this.runPartialUpdate(dto, lastModifiedUnixDateTime);
+			}
+			catch (DbConnectionClosedException ignored)
+			{
+				// Connection was closed, nothing to do
+			}
+			catch (SQLException e)
+			{
+				if (DbConnectionClosedException.isClosedException(e))
+				{
+					return;
+				}
+				
+				String message = "Unexpected DTO partial update error: [" + e.getMessage() + "].";
+				LOGGER.error(message);
+				throw new RuntimeException(message, e);
+			}
+			return;
+		}
+		
+		try (PreparedStatement statement = this.createUpsertStatement(dto, lastModifiedUnixDateTime);
 			 ResultSet result = this.query(statement))
 		{
 			// result is unused - UPSERT doesn't return rows
@@ -343,16 +493,96 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 			throw new RuntimeException(message, e);
 		}
 	}
+	
+	/**
+	 * Writes every DTO in a single transaction using one prepared statement. <br>
+	 * If the transaction fails each DTO is written individually so a single bad DTO 
+	 * doesn't prevent the rest from being saved. <br><br>
+	 * 
+	 * Generally this should only be called by the {@link FullDataSourceV2WriteBehindQueue}.
+	 * 
+	 * @return the DTOs that couldn't be written, empty if everything was saved
+	 */
+	public List<FullDataSourceV2DTO> saveBatch(List<FullDataSourceV2DTO> dtoList)
+	{
+		if (dtoList.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+		
+		try (PreparedStatement statement = this.createPreparedStatement(this.upsertSqlTemplate))
+		{
+			if (statement == null)
+			{
+				// the connection was closed
+				return dtoList;
+			}
+			
+			this.runInTransaction(() ->
+			{
+				for (FullDataSourceV2DTO dto : dtoList)
+				{
+					if (dto.isPartial())
+					{
+						// partial DTOs can't be upserted,
+						// but can still be written as part of the same transaction
+						this.runPartialUpdate(dto, dto.lastModifiedUnixDateTime);
+						continue;
+					}
+					
+					this.setUpsertStatementParameters(statement, dto, dto.lastModifiedUnixDateTime);
+					statement.addBatch();
+				}
+				
+				statement.executeBatch();
+			});
+			return Collections.emptyList();
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			if (e instanceof SQLException 
+				&& DbConnectionClosedException.isClosedException((SQLException) e))
+			{
+				return dtoList;
+			}
+			
+			LOGGER.error("Unable to write batch of ["+dtoList.size()+"] data sources, falling back to individual writes. Error: [" + e.getMessage() + "].", e);
+		}
+		
+		
+		ArrayList<FullDataSourceV2DTO> failedDtoList = new ArrayList<>();
+		for (FullDataSourceV2DTO dto : dtoList)
+		{
+			try
+			{
+				this.saveImmediately(dto, dto.lastModifiedUnixDateTime);
+			}
+			catch (RuntimeException saveException)
+			{
+				LOGGER.error("Unable to save data source ["+dto.getKeyDisplayString()+"], error: ["+saveException.getMessage()+"].", saveException);
+				failedDtoList.add(dto);
+			}
+		}
+		return failedDtoList;
+	}
+	
+	/** Blocks until every queued save has been written to the database. */
+	public void flushPendingSaves() { this.writeQueue.flush(); }
 
 	@Nullable
-	private PreparedStatement createUpsertStatement(FullDataSourceV2DTO dto) throws SQLException
+	private PreparedStatement createUpsertStatement(FullDataSourceV2DTO dto, long lastModifiedUnixDateTime) throws SQLException
 	{
 		PreparedStatement statement = this.createPreparedStatement(this.upsertSqlTemplate);
 		if (statement == null)
 		{
 			return null;
 		}
-
+		
+		this.setUpsertStatementParameters(statement, dto, lastModifiedUnixDateTime);
+		return statement;
+	}
+	private void setUpsertStatementParameters(PreparedStatement statement, FullDataSourceV2DTO dto, long lastModifiedUnixDateTime) throws SQLException
+	{
 		int i = 1;
 		statement.setInt(i++, DhSectionPos.getDetailLevel(dto.pos) - DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL);
 		statement.setInt(i++, DhSectionPos.getX(dto.pos));
@@ -368,6 +598,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		statement.setBinaryStream(i++, new ByteArrayInputStream(dto.compressedWestAdjDataByteArray.elements()), dto.compressedWestAdjDataByteArray.size());
 
 		statement.setByte(i++, dto.compressionModeValue);
+		statement.setByte(i++, dto.dataFormatValue);
 
 		// For UPSERT with COALESCE: null means "keep existing value", false/true means "set this value"
 		// We use setObject with null to properly pass NULL to SQLite
@@ -382,14 +613,106 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 
 		statement.setBoolean(i++, dto.isComplete);
 
-		statement.setLong(i++, System.currentTimeMillis()); // last modified unix time
+		statement.setLong(i++, lastModifiedUnixDateTime); // last modified unix time
 		statement.setLong(i++, dto.createdUnixDateTime != 0 ? dto.createdUnixDateTime : System.currentTimeMillis()); // created unix time
-
-		return statement;
 	}
 
 
 
+	//=================//
+	// partial updates //
+	//=================//
+	
+	/** 
+	 * Only updates the blobs present in the given partial DTO,
+	 * the other blobs are left as-is. <br>
+	 * Unlike an upsert this requires the row to already exist.
+	 * 
+	 * @see FullDataSourceV2DTO#isPartial()
+	 */
+	private void runPartialUpdate(FullDataSourceV2DTO dto, long lastModifiedUnixDateTime) throws SQLException
+	{
+		// Dynamic string so only the changed blobs are sent to the database.
+		String updateSqlTemplate = (
+				"UPDATE "+this.getTableName()+" \n" +
+				"SET \n" +
+				"   ColumnWorldCompressionMode = ? \n" +
+				"   ,Mapping = ? \n" +
+				(dto.hasDataBlob(FullDataSourceV2DTO.DATA_BLOB_FLAG) ? "   ,Data = ? \n" : "") +
+				(dto.hasDataBlob(FullDataSourceV2DTO.NORTH_ADJ_BLOB_FLAG) ? "   ,NorthAdjData = ? \n" : "") +
+				(dto.hasDataBlob(FullDataSourceV2DTO.SOUTH_ADJ_BLOB_FLAG) ? "   ,SouthAdjData = ? \n" : "") +
+				(dto.hasDataBlob(FullDataSourceV2DTO.EAST_ADJ_BLOB_FLAG) ? "   ,EastAdjData = ? \n" : "") +
+				(dto.hasDataBlob(FullDataSourceV2DTO.WEST_ADJ_BLOB_FLAG) ? "   ,WestAdjData = ? \n" : "") +
+				
+				"   ,CompressionMode = ? \n" +
+				"   ,DataFormat = ? \n" +
+				(dto.applyToParent != null ? "   ,ApplyToParent = ? \n" : "" ) +
+				"   ,IsComplete = ? \n" +
+				"   ,LastModifiedUnixDateTime = ? \n" +
+				
+				"WHERE DetailLevel = ? AND PosX = ? AND PosZ = ?"
+			// intern should help reduce memory overhead due to this string being dynamic
+			).intern();
+		
+		try (PreparedStatement statement = this.createPreparedStatement(updateSqlTemplate))
+		{
+			if (statement == null)
+			{
+				// the connection was closed
+				return;
+			}
+			
+			int i = 1;
+			statement.setBinaryStream(i++, new ByteArrayInputStream(dto.compressedWorldCompressionModeByteArray.elements()), dto.compressedWorldCompressionModeByteArray.size());
+			statement.setBinaryStream(i++, new ByteArrayInputStream(dto.compressedMappingByteArray.elements()), dto.compressedMappingByteArray.size());
+			i = setPartialBlobParameter(statement, i, dto, FullDataSourceV2DTO.DATA_BLOB_FLAG, dto.compressedDataByteArray);
+			i = setPartialBlobParameter(statement, i, dto, FullDataSourceV2DTO.NORTH_ADJ_BLOB_FLAG, dto.compressedNorthAdjDataByteArray);
+			i = setPartialBlobParameter(statement, i, dto, FullDataSourceV2DTO.SOUTH_ADJ_BLOB_FLAG, dto.compressedSouthAdjDataByteArray);
+			i = setPartialBlobParameter(statement, i, dto, FullDataSourceV2DTO.EAST_ADJ_BLOB_FLAG, dto.compressedEastAdjDataByteArray);
+			i = setPartialBlobParameter(statement, i, dto, FullDataSourceV2DTO.WEST_ADJ_BLOB_FLAG, dto.compressedWestAdjDataByteArray);
+			
+			statement.setByte(i++, dto.compressionModeValue);
+			statement.setByte(i++, dto.dataFormatValue);
+			if (dto.applyToParent != null)
+			{
+				statement.setBoolean(i++, dto.applyToParent);
+			}
+			statement.setBoolean(i++, dto.isComplete);
+			statement.setLong(i++, lastModifiedUnixDateTime);
+			
+			statement.setInt(i++, DhSectionPos.getDetailLevel(dto.pos) - DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL);
+			statement.setInt(i++, DhSectionPos.getX(dto.pos));
+			statement.setInt(i++, DhSectionPos.getZ(dto.pos));
+			
+			int updatedRowCount;
+			this.getDatabaseLock().lock();
+			try
+			{
+				updatedRowCount = statement.executeUpdate();
+			}
+			finally
+			{
+				this.getDatabaseLock().unlock();
+			}
+			
+			if (updatedRowCount == 0)
+			{
+				// shouldn't happen unless the row was deleted while its data source was being updated
+				LOGGER.warn("Partial save for pos ["+dto.getKeyDisplayString()+"] didn't find an existing row, the changes were dropped.");
+			}
+		}
+	}
+	private static int setPartialBlobParameter(PreparedStatement statement, int index, FullDataSourceV2DTO dto, int blobFlag, ByteArrayList blob) throws SQLException
+	{
+		if (dto.hasDataBlob(blobFlag))
+		{
+			statement.setBinaryStream(index++, new ByteArrayInputStream(blob.elements()), blob.size());
+		}
+		return index;
+	}
+	
+	
+	
 	//=================//
 	// partial selects //
 	//=================//
@@ -397,7 +720,7 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 	private final String getAdjForDirectionSqlTemplate =
 			"SELECT \n" +
 					"   ColumnWorldCompressionMode, Mapping, \n" +
-					"   CompressionMode, ApplyToParent, \n" +
+					"   CompressionMode, DataFormat, ApplyToParent, \n" +
 					"   LastModifiedUnixDateTime, CreatedUnixDateTime, \n" +
 					"   DIRECTION_ENUM as AdjData \n" +
 					"FROM "+this.getTableName() + "\n" +
@@ -406,30 +729,59 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 	private final String getAdjForSouthDirTemplate = this.getAdjForDirectionSqlTemplate.replace("DIRECTION_ENUM", "SouthAdjData");
 	private final String getAdjForEastDirTemplate = this.getAdjForDirectionSqlTemplate.replace("DIRECTION_ENUM", "EastAdjData");
 	private final String getAdjForWestDirTemplate = this.getAdjForDirectionSqlTemplate.replace("DIRECTION_ENUM", "WestAdjData");
+	private final String getCenterDataTemplate = this.getAdjForDirectionSqlTemplate.replace("DIRECTION_ENUM", "Data");
 	
-	public FullDataSourceV2DTO getAdjByPosAndDirection(long pos, EDhDirection direction)
+	public FullDataSourceV2DTO getAdjByPosAndDirection(long pos, EDhDirection direction) { return this.getSingleDataBlobByPos(pos, direction); }
+	/**
+	 * Similar to {@link FullDataSourceV2Repo#getAdjByPosAndDirection} 
+	 * except it returns the blob containing the given column.
+	 * 
+	 * @see FullDataSourceV2DTO#createColumnDataSource
+	 */
+	public FullDataSourceV2DTO getColumnBlobByPos(long pos, int relX, int relZ) { return this.getSingleDataBlobByPos(pos, FullDataMinMaxPosUtil.getBlobDirectionForColumn(relX, relZ)); }
+	/** 
+	 * The returned DTO's {@link FullDataSourceV2DTO#compressedDataByteArray} 
+	 * will contain the requested blob and none of the other data blobs will be populated.
+	 * 
+	 * @param direction if null the center data blob will be returned
+	 */
+	private FullDataSourceV2DTO getSingleDataBlobByPos(long pos, @Nullable EDhDirection direction)
 	{
+		FullDataSourceV2DTO pendingDto = this.writeQueue.getPendingValue(pos, (dto) -> createSingleBlobDtoFromPendingDto(dto, direction));
+		if (pendingDto != null)
+		{
+			return pendingDto;
+		}
+		
+		
 		// parameters don't work in the select, doing so causes
 		// JDBC to return the wrong binary data,
 		// so we need to hard code the direction enum
 		String sql;
-		switch (direction)
-		{
-			case NORTH:
-				sql = this.getAdjForNorthDirTemplate;
-				break;
-			case SOUTH:
-				sql = this.getAdjForSouthDirTemplate;
-				break;
-			case EAST:
-				sql = this.getAdjForEastDirTemplate;
-				break;
-			case WEST:
-				sql = this.getAdjForWestDirTemplate;
-				break;
-			
-			default:
-				throw new IllegalArgumentException();
+		if (direction == null)
+		{
+			sql = this.getCenterDataTemplate;
+		}
+		else
+		{
+			switch (direction)
+			{
+				case NORTH:
+					sql = this.getAdjForNorthDirTemplate;
+					break;
+				case SOUTH:
+					sql = this.getAdjForSouthDirTemplate;
+					break;
+				case EAST:
+					sql = this.getAdjForEastDirTemplate;
+					break;
+				case WEST:
+					sql = this.getAdjForWestDirTemplate;
+					break;
+				
+				default:
+					throw new IllegalArgumentException();
+			}
 		}
 		try(PreparedStatement statement = this.createPreparedStatement(sql))
 		{
@@ -476,6 +828,69 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 	
 	
 	
+	/** 
+	 * mirrors {@link FullDataSourceV2Repo#convertResultSetToAdjDto(long, ResultSet)} <br>
+	 * Returns null if the pending DTO doesn't contain the requested blob,
+	 * in which case the unchanged blob in the database should be used.
+	 * 
+	 * @param direction if null the center data blob will be used
+	 */
+	@Nullable
+	private static FullDataSourceV2DTO createSingleBlobDtoFromPendingDto(FullDataSourceV2DTO pendingDto, @Nullable EDhDirection direction)
+	{
+		int blobFlag = (direction != null) ? FullDataSourceV2DTO.getAdjBlobFlag(direction) : FullDataSourceV2DTO.DATA_BLOB_FLAG;
+		if (!pendingDto.hasDataBlob(blobFlag))
+		{
+			return null;
+		}
+		
+		ByteArrayList adjDataByteArray;
+		if (direction == null)
+		{
+			adjDataByteArray = pendingDto.compressedDataByteArray;
+		}
+		else
+		{
+			switch (direction)
+			{
+				case NORTH:
+					adjDataByteArray = pendingDto.compressedNorthAdjDataByteArray;
+					break;
+				case SOUTH:
+					adjDataByteArray = pendingDto.compressedSouthAdjDataByteArray;
+					break;
+				case EAST:
+					adjDataByteArray = pendingDto.compressedEastAdjDataByteArray;
+					break;
+				case WEST:
+					adjDataByteArray = pendingDto.compressedWestAdjDataByteArray;
+					break;
+				
+				default:
+					throw new IllegalArgumentException();
+			}
+		}
+		
+		FullDataSourceV2DTO dto = FullDataSourceV2DTO.CreateEmptyDataSourceForDecoding();
+		// set pooled arrays
+		dto.compressedDataByteArray.addAll(adjDataByteArray);
+		dto.compressedWorldCompressionModeByteArray.addAll(pendingDto.compressedWorldCompressionModeByteArray);
+		dto.compressedMappingByteArray.addAll(pendingDto.compressedMappingByteArray);
+		
+		// set individual variables
+		{
+			dto.pos = pendingDto.pos;
+			dto.compressionModeValue = pendingDto.compressionModeValue;
+			dto.dataFormatValue = pendingDto.dataFormatValue;
+			dto.lastModifiedUnixDateTime = pendingDto.lastModifiedUnixDateTime;
+			dto.createdUnixDateTime = pendingDto.createdUnixDateTime;
+			dto.applyToParent = BoolUtil.falseIfNull(pendingDto.applyToParent);
+		}
+		return dto;
+	}
+	
+	
+	
 	//=========//
 	// updates //
 	//=========//
@@ -486,8 +901,12 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 			"WHERE DetailLevel = ? AND PosX = ? AND PosZ = ?";
 	public void setApplyToParent(long pos, boolean applyToParent)
 	{
+		// an in-flight batch could otherwise write the old flag back after this update runs
+		this.writeQueue.flushLock.lock();
 		try (PreparedStatement statement = this.createPreparedStatement(this.setApplyToParentSql))
 		{
+			this.writeQueue.setPendingApplyToParent(pos, applyToParent);
+			
 			if (statement == null)
 			{
 				return;
@@ -510,6 +929,10 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		{
 			throw new RuntimeException(e);
 		}
+		finally
+		{
+			this.writeQueue.flushLock.unlock();
+		}
 	}
 	
 	
@@ -580,6 +1003,12 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 	 */
 	public boolean existsAndIsComplete(long pos)
 	{
+		Boolean pendingIsComplete = this.writeQueue.getPendingValue(pos, (dto) -> dto.isComplete);
+		if (pendingIsComplete != null)
+		{
+			return pendingIsComplete;
+		}
+		
 		try (PreparedStatement preparedStatement = this.createPreparedStatement(this.existsAndIsCompleteSql))
 		{
 			if (preparedStatement == null)
@@ -678,6 +1107,24 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		{
 			throw new RuntimeException(e);
 		}
+		
+		// queued saves replace the database's IsComplete value
+		for (int j = 0; j < positions.size(); j++)
+		{
+			long pos = positions.getLong(j);
+			Boolean pendingIsComplete = this.writeQueue.getPendingValue(pos, (dto) -> dto.isComplete);
+			if (pendingIsComplete != null)
+			{
+				if (pendingIsComplete)
+				{
+					completePositions.add(pos);
+				}
+				else
+				{
+					completePositions.remove(pos);
+				}
+			}
+		}
 
 		return completePositions;
 	}
@@ -697,6 +1144,12 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 	@Nullable
 	public Long getTimestampForPos(long pos)
 	{
+		Long pendingTimestamp = this.writeQueue.getPendingValue(pos, (dto) -> dto.lastModifiedUnixDateTime);
+		if (pendingTimestamp != null)
+		{
+			return pendingTimestamp;
+		}
+		
 		try(PreparedStatement preparedStatement = this.createPreparedStatement(this.getTimestampForPosSql))
 		{
 			if (preparedStatement == null)
@@ -765,6 +1218,17 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 					returnMap.put(key, value);
 				}
 				
+				// queued saves are newer than the database
+				this.writeQueue.forEachPending((dto) ->
+				{
+					if (DhSectionPos.getDetailLevel(dto.pos) == detailLevel
+						&& DhSectionPos.getX(dto.pos) >= startPosX && DhSectionPos.getX(dto.pos) < endPosX
+						&& DhSectionPos.getZ(dto.pos) >= startPosZ && DhSectionPos.getZ(dto.pos) < endPosZ)
+					{
+						returnMap.put(dto.pos, dto.lastModifiedUnixDateTime);
+					}
+				});
+				
 				return returnMap;
 			}
 		}
@@ -818,6 +1282,53 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 		}
 	}
 	
+	private final String getRandomPositionsSql = 
+			"select DetailLevel, PosX, PosZ " +
+			"from "+this.getTableName()+" " +
+			"ORDER BY RANDOM() LIMIT ?; ";
+	/** 
+	 * Only reads the primary key so the data blobs don't need to be loaded.
+	 * @return up to the given number of randomly selected positions in this database 
+	 */
+	public LongArrayList getRandomPositions(int count)
+	{
+		LongArrayList list = new LongArrayList();
+		
+		try (PreparedStatement statement = this.createPreparedStatement(this.getRandomPositionsSql))
+		{
+			if (statement == null)
+			{
+				return list;
+			}
+			statement.setInt(1, count);
+			
+			
+			try(ResultSet result = this.query(statement))
+			{
+				while (result != null && result.next())
+				{
+					byte detailLevel = result.getByte("DetailLevel");
+					byte sectionDetailLevel = (byte) (detailLevel + DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL);
+					int posX = result.getInt("PosX");
+					int posZ = result.getInt("PosZ");
+					
+					long pos = DhSectionPos.encode(sectionDetailLevel, posX, posZ);
+					list.add(pos);
+				}
+				
+				return list;
+			}
+		}
+		catch (SQLException e)
+		{
+			if (DbConnectionClosedException.isClosedException(e))
+			{
+				return list;
+			}
+			throw new RuntimeException(e);
+		}
+	}
+	
 	
 	private final String getDataSizeInBytesSql =
 			"select LENGTH(Data) as dataSize " +
@@ -884,6 +1395,28 @@ public class FullDataSourceV2Repo extends AbstractDhRepo<Long, FullDataSourceV2D
 	
 	
 	
+	//===========//
+	// debugging //
+	//===========//
+	
+	public void addDebugMenuStringsToList(List<String> messageList) { this.writeQueue.addDebugMenuStringsToList(messageList); }
+	
+	
+	
+	//=========//
+	// closing //
+	//=========//
+	
+	@Override
+	public void close()
+	{
+		// queued saves need to be written before the connection is closed
+		this.writeQueue.close();
+		super.close();
+	}
+	
+	
+	
 	//================//
 	// helper methods //
 	//================//
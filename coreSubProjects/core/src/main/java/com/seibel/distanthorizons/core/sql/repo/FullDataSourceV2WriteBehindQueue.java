@@ -0,0 +1,583 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.sql.repo;
+
+import com.seibel.distanthorizons.core.config.Config;
+import com.seibel.distanthorizons.core.file.fullDatafile.DelayedFullDataSourceSaveCache;
+import com.seibel.distanthorizons.core.generation.PregenManager;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.logging.f3.F3Screen;
+import com.seibel.distanthorizons.core.sql.dto.FullDataSourceV2DTO;
+import com.seibel.distanthorizons.core.util.LodUtil;
+import com.seibel.distanthorizons.core.util.ThreadUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Holds {@link FullDataSourceV2DTO}'s waiting to be written to the database
+ * so they can be written in a single transaction instead of one
+ * transaction per DTO. <br><br>
+ *
+ * Pending DTOs are flushed when: <br>
+ * - {@link Config.Common.LodBuilding#databaseWriteBatchSize} DTOs are waiting <br>
+ * - the oldest pending DTO has waited {@link Config.Common.LodBuilding#databaseWriteBatchMaxDelayInMs} <br>
+ * - the queue is closed <br><br>
+ *
+ * Multiple saves to the same position before a flush are coalesced
+ * so only the newest DTO is written. <br>
+ * Until a DTO has been written it can still be read via
+ * {@link FullDataSourceV2WriteBehindQueue#getPendingValue(long, Function)}
+ * so the owning repo can return un-flushed data. <br><br>
+ *
+ * Unlike {@link DelayedFullDataSourceSaveCache} this doesn't merge data sources,
+ * it only reduces the number of database transactions.
+ *
+ * @see FullDataSourceV2Repo
+ * @see DelayedFullDataSourceSaveCache
+ */
+public class FullDataSourceV2WriteBehindQueue implements AutoCloseable
+{
+	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
+
+	private static final ThreadPoolExecutor BACKGROUND_FLUSH_THREAD = ThreadUtil.makeSingleDaemonThreadPool("DB write-behind flusher");
+	private static final Set<WeakReference<FullDataSourceV2WriteBehindQueue>> WRITE_QUEUE_SET = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	/** how long between age checks */
+	private static final int FLUSH_CHECK_TIME_IN_MS = 100;
+
+
+
+	/** guarded by {@link FullDataSourceV2WriteBehindQueue#pendingLock} */
+	private final HashMap<Long, PendingSave> pendingSaveByPos = new HashMap<>();
+	private final ReentrantLock pendingLock = new ReentrantLock();
+	/** how many pending saves haven't been picked up by a flush yet */
+	private int unflushedCount = 0;
+	/** the unix millisecond time the oldest un-flushed save was queued, 0 if nothing is waiting */
+	private long oldestUnflushedQueueTimeMs = 0;
+
+	/**
+	 * Only one batch can be written at a time. <br>
+	 * This also guarantees saves for the same position are written in order
+	 * and can be held by the repo to prevent deletes from running mid-flush.
+	 */
+	public final ReentrantLock flushLock = new ReentrantLock();
+
+	private final IBatchSaveFunc batchSaveFunc;
+	/** when true saves are held longer so pregens write fewer, larger batches */
+	private final BooleanSupplier throughputModeSupplier;
+
+	// stats //
+	private final AtomicLong flushCountRef = new AtomicLong(0);
+	private final AtomicLong flushedDtoCountRef = new AtomicLong(0);
+	private final AtomicLong coalescedDtoCountRef = new AtomicLong(0);
+	private final AtomicLong totalFlushTimeInNsRef = new AtomicLong(0);
+	private volatile int lastBatchSize = 0;
+	private volatile long lastFlushTimeInNs = 0;
+	private volatile long maxFlushTimeInNs = 0;
+
+
+
+	//=============//
+	// constructor //
+	//=============//
+
+	static
+	{
+		BACKGROUND_FLUSH_THREAD.execute(() -> runFlushLoop());
+	}
+
+	/** @param throughputModeSupplier generally true while a pregen is running for this queue's level */
+	public FullDataSourceV2WriteBehindQueue(@NotNull IBatchSaveFunc batchSaveFunc, @NotNull BooleanSupplier throughputModeSupplier)
+	{
+		this.batchSaveFunc = batchSaveFunc;
+		this.throughputModeSupplier = throughputModeSupplier;
+		WRITE_QUEUE_SET.add(new WeakReference<>(this));
+	}
+
+
+
+	//=========//
+	// queuing //
+	//=========//
+
+	/**
+	 * A copy of the DTO is queued,
+	 * so the given DTO can be closed once this method returns. <br>
+	 * If the queue is full the batch will be written on the calling thread.
+	 */
+	public void queueSave(@NotNull FullDataSourceV2DTO dto, int maxBatchSize)
+	{
+		FullDataSourceV2DTO queuedDto = FullDataSourceV2DTO.CreateCopy(dto);
+
+		long nowMs = System.currentTimeMillis();
+		// the row's timestamp is set when queued instead of when written
+		// so timestamps read before and after the flush match
+		queuedDto.lastModifiedUnixDateTime = nowMs;
+		if (queuedDto.createdUnixDateTime == 0)
+		{
+			queuedDto.createdUnixDateTime = nowMs;
+		}
+
+		boolean flushNow;
+		this.pendingLock.lock();
+		try
+		{
+			PendingSave newSave = new PendingSave(queuedDto);
+			PendingSave oldSave = this.pendingSaveByPos.put(queuedDto.pos, newSave);
+			if (oldSave != null)
+			{
+				// null means "don't change", so if both saves were run in order
+				// the older value would still be present
+				if (queuedDto.applyToParent == null)
+				{
+					queuedDto.applyToParent = oldSave.dto.applyToParent;
+				}
+
+				// partial DTOs only contain the changed blobs,
+				// the older save has the newest version of the others.
+				// In-flight DTOs are only closed while the pending lock is held, so they can be read here.
+				queuedDto.fillUnchangedDataBlobs(oldSave.dto);
+
+				if (!oldSave.inFlight)
+				{
+					// the old DTO was never written and now never needs to be
+					this.unflushedCount--;
+					this.coalescedDtoCountRef.incrementAndGet();
+					oldSave.dto.close();
+				}
+				// in-flight DTOs are closed by the flushing thread
+			}
+
+			this.unflushedCount++;
+			if (this.oldestUnflushedQueueTimeMs == 0)
+			{
+				this.oldestUnflushedQueueTimeMs = nowMs;
+			}
+
+			flushNow = (this.unflushedCount >= maxBatchSize);
+		}
+		finally
+		{
+			this.pendingLock.unlock();
+		}
+
+		if (flushNow)
+		{
+			this.flush();
+		}
+	}
+
+
+
+	//==============//
+	// pending data //
+	//==============//
+
+	/**
+	 * @param getter run while the pending DTO is locked, the DTO must not be modified or stored.
+	 * @return null if nothing is pending for the given position
+	 */
+	@Nullable
+	public <T> T getPendingValue(long pos, @NotNull Function<FullDataSourceV2DTO, T> getter)
+	{
+		this.pendingLock.lock();
+		try
+		{
+			PendingSave pendingSave = this.pendingSaveByPos.get(pos);
+			return (pendingSave != null) ? getter.apply(pendingSave.dto) : null;
+		}
+		finally
+		{
+			this.pendingLock.unlock();
+		}
+	}
+
+	/** @param consumer run while the pending DTOs are locked, the DTOs must not be modified or stored. */
+	public void forEachPending(@NotNull Consumer<FullDataSourceV2DTO> consumer)
+	{
+		this.pendingLock.lock();
+		try
+		{
+			for (PendingSave pendingSave : this.pendingSaveByPos.values())
+			{
+				consumer.accept(pendingSave.dto);
+			}
+		}
+		finally
+		{
+			this.pendingLock.unlock();
+		}
+	}
+
+	/** 
+	 * Does nothing if no save is pending for the given position. <br>
+	 * {@link FullDataSourceV2WriteBehindQueue#flushLock} must be held
+	 * so an in-flight save can't write the old value after the database is updated.
+	 */
+	public void setPendingApplyToParent(long pos, boolean applyToParent)
+	{
+		LodUtil.assertTrue(this.flushLock.isHeldByCurrentThread(), "the flush lock must be held to change the apply to parent flag");
+		
+		this.pendingLock.lock();
+		try
+		{
+			PendingSave pendingSave = this.pendingSaveByPos.get(pos);
+			if (pendingSave != null)
+			{
+				// nothing can be in flight while the flush lock is held
+				pendingSave.dto.applyToParent = applyToParent;
+			}
+		}
+		finally
+		{
+			this.pendingLock.unlock();
+		}
+	}
+
+	/**
+	 * Drops any pending save for the given position. <br>
+	 * {@link FullDataSourceV2WriteBehindQueue#flushLock} should be held
+	 * otherwise an in-flight save may still be written.
+	 */
+	public void removePending(long pos)
+	{
+		this.pendingLock.lock();
+		try
+		{
+			PendingSave pendingSave = this.pendingSaveByPos.remove(pos);
+			if (pendingSave != null
+				&& !pendingSave.inFlight)
+			{
+				this.unflushedCount--;
+				pendingSave.dto.close();
+			}
+		}
+		finally
+		{
+			this.pendingLock.unlock();
+		}
+	}
+
+	public int getPendingCount()
+	{
+		this.pendingLock.lock();
+		try
+		{
+			return this.pendingSaveByPos.size();
+		}
+		finally
+		{
+			this.pendingLock.unlock();
+		}
+	}
+
+
+
+	//==========//
+	// flushing //
+	//==========//
+
+	/** Writes every pending DTO to the database, blocks until finished. */
+	public void flush()
+	{
+		this.flushLock.lock();
+		try
+		{
+			// get the DTOs to write
+			ArrayList<PendingSave> batch;
+			this.pendingLock.lock();
+			try
+			{
+				if (this.unflushedCount == 0)
+				{
+					return;
+				}
+
+				batch = new ArrayList<>(this.unflushedCount);
+				for (PendingSave pendingSave : this.pendingSaveByPos.values())
+				{
+					if (!pendingSave.inFlight)
+					{
+						pendingSave.inFlight = true;
+						batch.add(pendingSave);
+					}
+				}
+
+				this.unflushedCount = 0;
+				this.oldestUnflushedQueueTimeMs = 0;
+			}
+			finally
+			{
+				this.pendingLock.unlock();
+			}
+
+
+
+			// write to the DB
+			long startTimeNs = System.nanoTime();
+			ArrayList<FullDataSourceV2DTO> dtoList = new ArrayList<>(batch.size());
+			for (PendingSave pendingSave : batch)
+			{
+				dtoList.add(pendingSave.dto);
+			}
+
+			Set<FullDataSourceV2DTO> failedDtoSet = Collections.newSetFromMap(new IdentityHashMap<>());
+			try
+			{
+				// in-flight DTOs are never modified, so they can be read without the pending lock
+				failedDtoSet.addAll(this.batchSaveFunc.saveBatch(dtoList));
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("Unexpected error writing batch of ["+batch.size()+"] data sources, they will be retried. Error: ["+e.getMessage()+"].", e);
+				failedDtoSet.addAll(dtoList);
+			}
+			this.recordFlushStats(batch.size() - failedDtoSet.size(), System.nanoTime() - startTimeNs);
+
+
+
+			// remove written DTOs
+			this.pendingLock.lock();
+			try
+			{
+				long nowMs = System.currentTimeMillis();
+				for (PendingSave pendingSave : batch)
+				{
+					if (failedDtoSet.contains(pendingSave.dto)
+						&& this.pendingSaveByPos.get(pendingSave.dto.pos) == pendingSave)
+					{
+						// keep the DTO so it can be retried during the next flush
+						pendingSave.inFlight = false;
+						this.unflushedCount++;
+						if (this.oldestUnflushedQueueTimeMs == 0)
+						{
+							this.oldestUnflushedQueueTimeMs = nowMs;
+						}
+						continue;
+					}
+
+					// either written, removed, or the position was re-queued while we were writing
+					// (the newer save already contains this DTO's data)
+					this.pendingSaveByPos.remove(pendingSave.dto.pos, pendingSave);
+					pendingSave.dto.close();
+				}
+			}
+			finally
+			{
+				this.pendingLock.unlock();
+			}
+		}
+		finally
+		{
+			this.flushLock.unlock();
+		}
+	}
+
+	private void flushIfExpired()
+	{
+		long oldestQueueTimeMs;
+		this.pendingLock.lock();
+		try
+		{
+			oldestQueueTimeMs = this.oldestUnflushedQueueTimeMs;
+		}
+		finally
+		{
+			this.pendingLock.unlock();
+		}
+
+		int maxDelayInMs = Config.Common.LodBuilding.databaseWriteBatchMaxDelayInMs.get();
+		if (this.throughputModeSupplier.getAsBoolean())
+		{
+			maxDelayInMs = Math.max(maxDelayInMs, PregenManager.THROUGHPUT_MODE_DATABASE_WRITE_MAX_DELAY_IN_MS);
+		}
+
+		if (oldestQueueTimeMs != 0
+			&& System.currentTimeMillis() - oldestQueueTimeMs >= maxDelayInMs)
+		{
+			this.flush();
+		}
+	}
+
+
+
+	//==============//
+	// static flush //
+	//==============//
+
+	private static void runFlushLoop()
+	{
+		while (true)
+		{
+			try
+			{
+				try
+				{
+					Thread.sleep(FLUSH_CHECK_TIME_IN_MS);
+				}
+				catch (InterruptedException ignore) { }
+
+				WRITE_QUEUE_SET.forEach((queueRef) ->
+				{
+					FullDataSourceV2WriteBehindQueue queue = queueRef.get();
+					if (queue == null)
+					{
+						// shouldn't be necessary, but if we forget to manually close a queue, this will prevent leaking
+						WRITE_QUEUE_SET.remove(queueRef);
+					}
+					else
+					{
+						queue.flushIfExpired();
+					}
+				});
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("Unexpected error in write-behind flush thread: [" + e.getMessage() + "].", e);
+			}
+		}
+	}
+
+
+
+	//===========//
+	// debugging //
+	//===========//
+
+	private void recordFlushStats(int batchSize, long flushTimeInNs)
+	{
+		this.flushCountRef.incrementAndGet();
+		this.flushedDtoCountRef.addAndGet(batchSize);
+		this.totalFlushTimeInNsRef.addAndGet(flushTimeInNs);
+
+		this.lastBatchSize = batchSize;
+		this.lastFlushTimeInNs = flushTimeInNs;
+		if (flushTimeInNs > this.maxFlushTimeInNs)
+		{
+			this.maxFlushTimeInNs = flushTimeInNs;
+		}
+	}
+
+	public void addDebugMenuStringsToList(List<String> messageList)
+	{
+		long flushCount = this.flushCountRef.get();
+		long flushedDtoCount = this.flushedDtoCountRef.get();
+
+		String avgBatchSize = (flushCount != 0) ? F3Screen.NUMBER_FORMAT.format(flushedDtoCount / flushCount) : "-";
+		String avgFlushTimeMs = (flushCount != 0) ? F3Screen.NUMBER_FORMAT.format((this.totalFlushTimeInNsRef.get() / flushCount) / 1_000_000) : "-";
+
+		messageList.add("DB Write Queue: " + F3Screen.NUMBER_FORMAT.format(this.getPendingCount()) + " pending, "
+				+ F3Screen.NUMBER_FORMAT.format(this.coalescedDtoCountRef.get()) + " coalesced");
+		messageList.add("DB Batch: last " + F3Screen.NUMBER_FORMAT.format(this.lastBatchSize) + " in " + F3Screen.NUMBER_FORMAT.format(this.lastFlushTimeInNs / 1_000_000) + "ms"
+				+ ", avg " + avgBatchSize + " in " + avgFlushTimeMs + "ms"
+				+ ", max " + F3Screen.NUMBER_FORMAT.format(this.maxFlushTimeInNs / 1_000_000) + "ms");
+	}
+
+
+
+	//================//
+	// base overrides //
+	//================//
+
+	/** Writes any pending DTOs. */
+	@Override
+	public void close()
+	{
+		WRITE_QUEUE_SET.removeIf((queueRef) ->
+		{
+			FullDataSourceV2WriteBehindQueue queue = queueRef.get();
+			return queue != null && queue.equals(this);
+		});
+
+		this.flush();
+
+		// anything left failed to save and can't be retried anymore
+		this.pendingLock.lock();
+		try
+		{
+			if (!this.pendingSaveByPos.isEmpty())
+			{
+				LOGGER.error("Unable to write [" + this.pendingSaveByPos.size() + "] data sources before closing, their changes were lost.");
+			}
+
+			for (PendingSave pendingSave : this.pendingSaveByPos.values())
+			{
+				pendingSave.dto.close();
+			}
+			this.pendingSaveByPos.clear();
+			this.unflushedCount = 0;
+			this.oldestUnflushedQueueTimeMs = 0;
+		}
+		finally
+		{
+			this.pendingLock.unlock();
+		}
+
+		if (this.flushCountRef.get() != 0)
+		{
+			LOGGER.debug("Closed write-behind queue after writing [" + this.flushedDtoCountRef.get() + "] data sources in [" + this.flushCountRef.get() + "] batches.");
+		}
+	}
+
+
+
+	//================//
+	// helper classes //
+	//================//
+
+	@FunctionalInterface
+	public interface IBatchSaveFunc
+	{
+		/** 
+		 * should write every DTO in a single transaction
+		 * @return the DTOs that couldn't be written, these will be kept in the queue and retried
+		 */
+		List<FullDataSourceV2DTO> saveBatch(List<FullDataSourceV2DTO> dtoList);
+	}
+
+	private static class PendingSave
+	{
+		@NotNull
+		public final FullDataSourceV2DTO dto;
+		/** true once a flush has started writing this DTO */
+		public boolean inFlight = false;
+
+
+		public PendingSave(@NotNull FullDataSourceV2DTO dto) { this.dto = dto; }
+	}
+
+
+
+}
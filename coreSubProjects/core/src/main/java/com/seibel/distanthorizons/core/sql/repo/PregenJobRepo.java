@@ -0,0 +1,151 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.seibel.distanthorizons.core.sql.repo;
+
+import com.seibel.distanthorizons.core.sql.dto.PregenJobDTO;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class PregenJobRepo extends AbstractDhRepo<Integer, PregenJobDTO>
+{
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public PregenJobRepo(String databaseType, File databaseFile) throws SQLException, IOException
+	{
+		super(databaseType, databaseFile, PregenJobDTO.class);
+	}
+	
+	
+	
+	//===========//
+	// overrides //
+	//===========//
+	
+	@Override 
+	public String getTableName() { return "PregenJob"; }
+	
+	@Override
+	protected String CreateParameterizedWhereString() { return "Id = ?"; }
+	
+	@Override
+	protected int setPreparedStatementWhereClause(PreparedStatement statement, int index, Integer id) throws SQLException
+	{
+		statement.setInt(index++, id);
+		return index;
+	}
+	
+	
+	
+	//=======================//
+	// repo required methods //
+	//=======================//
+	
+	@Override
+	@Nullable
+	public PregenJobDTO convertResultSetToDto(ResultSet resultSet) throws ClassCastException, SQLException
+	{
+		int originPosX = resultSet.getInt("OriginPosX");
+		int originPosZ = resultSet.getInt("OriginPosZ");
+		int chunkRadius = resultSet.getInt("ChunkRadius");
+		int completedSpiralIndex = resultSet.getInt("CompletedSpiralIndex");
+		
+		return new PregenJobDTO(originPosX, originPosZ, chunkRadius, completedSpiralIndex);
+	}
+	
+	private final String insertSqlTemplate =
+		"INSERT INTO "+this.getTableName() + " (\n" +
+		"   Id, \n" +
+		"   OriginPosX, OriginPosZ, ChunkRadius, \n" +
+		"   CompletedSpiralIndex, \n" +
+		"   LastModifiedUnixDateTime, CreatedUnixDateTime) \n" +
+		"VALUES( \n" +
+		"    ?, \n" +
+		"    ?, ?, ?, \n" +
+		"    ?, \n" +
+		"    ?, ? \n" +
+		");";
+	@Override
+	public PreparedStatement createInsertStatement(PregenJobDTO dto) throws SQLException
+	{
+		PreparedStatement statement = this.createPreparedStatement(this.insertSqlTemplate);
+		if (statement == null)
+		{
+			return null;
+		}
+		
+		
+		int i = 1;
+		statement.setObject(i++, dto.getKey());
+		
+		statement.setObject(i++, dto.originPosX);
+		statement.setObject(i++, dto.originPosZ);
+		statement.setObject(i++, dto.chunkRadius);
+		
+		statement.setObject(i++, dto.completedSpiralIndex);
+		
+		statement.setObject(i++, System.currentTimeMillis()); // last modified unix time
+		statement.setObject(i++, System.currentTimeMillis()); // created unix time
+		
+		return statement;
+	}
+	
+	private final String updateSqlTemplate =
+		"UPDATE "+this.getTableName()+" \n" +
+		"SET \n" +
+		"    OriginPosX = ? \n" +
+		"   ,OriginPosZ = ? \n" +
+		"   ,ChunkRadius = ? \n" +
+		"   ,CompletedSpiralIndex = ? \n" +
+		"   ,LastModifiedUnixDateTime = ? \n" +
+		"WHERE Id = ?";
+	@Override
+	public PreparedStatement createUpdateStatement(PregenJobDTO dto) throws SQLException
+	{
+		PreparedStatement statement = this.createPreparedStatement(this.updateSqlTemplate);
+		if (statement == null)
+		{
+			return null;
+		}
+		
+		
+		int i = 1;
+		statement.setObject(i++, dto.originPosX);
+		statement.setObject(i++, dto.originPosZ);
+		statement.setObject(i++, dto.chunkRadius);
+		
+		statement.setObject(i++, dto.completedSpiralIndex);
+		
+		statement.setObject(i++, System.currentTimeMillis()); // last modified unix time
+		
+		statement.setObject(i++, dto.getKey());
+		
+		return statement;
+	}
+	
+	
+	
+}
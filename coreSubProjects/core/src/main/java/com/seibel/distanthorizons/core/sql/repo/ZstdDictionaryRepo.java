@@ -0,0 +1,174 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.sql.repo;
+
+import com.seibel.distanthorizons.core.sql.DbConnectionClosedException;
+import com.seibel.distanthorizons.core.sql.dto.ZstdDictionaryDTO;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ZstdDictionaryRepo extends AbstractDhRepo<Integer, ZstdDictionaryDTO>
+{
+	//=============//
+	// constructor //
+	//=============//
+	
+	public ZstdDictionaryRepo(String databaseType, File databaseFile) throws SQLException, IOException
+	{
+		super(databaseType, databaseFile, ZstdDictionaryDTO.class);
+	}
+	
+	
+	
+	//===========//
+	// overrides //
+	//===========//
+	
+	@Override 
+	public String getTableName() { return "ZstdDictionary"; }
+	
+	@Override
+	protected String CreateParameterizedWhereString() { return "Id = ?"; }
+	
+	@Override
+	protected int setPreparedStatementWhereClause(PreparedStatement statement, int index, Integer id) throws SQLException
+	{
+		statement.setInt(index++, id);
+		return index;
+	}
+	
+	
+	
+	//=======================//
+	// repo required methods //
+	//=======================//
+	
+	@Override
+	@Nullable
+	public ZstdDictionaryDTO convertResultSetToDto(ResultSet resultSet) throws ClassCastException, SQLException
+	{
+		int id = resultSet.getInt("Id");
+		byte[] dictionaryBytes = resultSet.getBytes("DictionaryData");
+		int sampleCount = resultSet.getInt("SampleCount");
+		long createdUnixDateTime = resultSet.getLong("CreatedUnixDateTime");
+		
+		ZstdDictionaryDTO dto = new ZstdDictionaryDTO(id, dictionaryBytes, sampleCount, createdUnixDateTime);
+		return dto;
+	}
+	
+	private final String insertSqlTemplate =
+		"INSERT INTO "+this.getTableName() + " (\n" +
+		"   Id, DictionaryData, SampleCount, \n" +
+		"   CreatedUnixDateTime) \n" +
+		"VALUES( \n" +
+		"    ?, ?, ?, \n" +
+		"    ? \n" +
+		");";
+	@Override
+	public PreparedStatement createInsertStatement(ZstdDictionaryDTO dto) throws SQLException
+	{
+		PreparedStatement statement = this.createPreparedStatement(this.insertSqlTemplate);
+		if (statement == null)
+		{
+			return null;
+		}
+		
+		
+		int i = 1;
+		statement.setInt(i++, dto.id);
+		statement.setBytes(i++, dto.dictionaryBytes);
+		statement.setInt(i++, dto.sampleCount);
+		
+		statement.setLong(i++, dto.createdUnixDateTime);
+		
+		return statement;
+	}
+	
+	private final String updateSqlTemplate =
+		"UPDATE "+this.getTableName()+" \n" +
+		"SET \n" +
+		"    DictionaryData = ?, \n" +
+		"    SampleCount = ? \n" +
+		"WHERE Id = ?";
+	/** 
+	 * Dictionaries shouldn't be changed once they've been used, 
+	 * since any data compressed with them would become unreadable. <br>
+	 * This is only present to fulfill the repo contract.
+	 */
+	@Override
+	public PreparedStatement createUpdateStatement(ZstdDictionaryDTO dto) throws SQLException
+	{
+		PreparedStatement statement = this.createPreparedStatement(this.updateSqlTemplate);
+		if (statement == null)
+		{
+			return null;
+		}
+		
+		
+		int i = 1;
+		statement.setBytes(i++, dto.dictionaryBytes);
+		statement.setInt(i++, dto.sampleCount);
+		
+		statement.setInt(i++, dto.id);
+		
+		return statement;
+	}
+	
+	
+	
+	//====================//
+	// additional methods //
+	//====================//
+	
+	private final String getAllTemplate = "SELECT * FROM "+this.getTableName()+" ORDER BY CreatedUnixDateTime ASC";
+	/** @return every dictionary, oldest first */
+	public List<ZstdDictionaryDTO> getAll()
+	{
+		ArrayList<ZstdDictionaryDTO> dtoList = new ArrayList<>();
+		
+		try (PreparedStatement statement = this.createPreparedStatement(this.getAllTemplate);
+			ResultSet result = this.query(statement))
+		{
+			while (result != null && result.next())
+			{
+				dtoList.add(this.convertResultSetToDto(result));
+			}
+		}
+		catch (SQLException e)
+		{
+			if (!DbConnectionClosedException.isClosedException(e))
+			{
+				throw new RuntimeException(e);
+			}
+		}
+		
+		return dtoList;
+	}
+	
+	
+	
+}
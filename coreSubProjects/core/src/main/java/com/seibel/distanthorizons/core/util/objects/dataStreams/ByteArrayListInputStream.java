@@ -0,0 +1,137 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.util.objects.dataStreams;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads directly from a {@link ByteArrayList}'s (or byte array's) backing array
+ * without copying it first like {@link ByteArrayList#toByteArray()} would. <br><br>
+ * 
+ * The list must not be modified while this stream is being read.
+ * 
+ * @see ByteArrayListOutputStream
+ */
+public class ByteArrayListInputStream extends InputStream
+{
+	private final byte[] array;
+	private final int endIndex;
+	private int index;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public ByteArrayListInputStream(ByteArrayList byteArrayList) { this(byteArrayList.elements(), 0, byteArrayList.size()); }
+	public ByteArrayListInputStream(byte[] array, int offset, int length)
+	{
+		this.array = array;
+		this.index = offset;
+		this.endIndex = offset + length;
+	}
+	
+	
+	
+	//================//
+	// base overrides //
+	//================//
+	
+	@Override
+	public int read() { return (this.index < this.endIndex) ? (this.array[this.index++] & 0xFF) : -1; }
+	
+	@Override
+	public int read(byte[] bytes, int offset, int length)
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+		
+		int remaining = this.endIndex - this.index;
+		if (remaining <= 0)
+		{
+			return -1;
+		}
+		
+		int readLength = Math.min(length, remaining);
+		System.arraycopy(this.array, this.index, bytes, offset, readLength);
+		this.index += readLength;
+		return readLength;
+	}
+	
+	@Override
+	public long skip(long count)
+	{
+		long skipCount = Math.max(0, Math.min(count, this.endIndex - this.index));
+		this.index += (int) skipCount;
+		return skipCount;
+	}
+	
+	@Override
+	public int available() { return this.endIndex - this.index; }
+	
+	
+	
+	//=========//
+	// varints //
+	//=========//
+	
+	/** 
+	 * Reads the whole varint straight from the backing array
+	 * instead of going through {@link InputStream#read()} for each byte.
+	 */
+	public int readVarint() throws IOException
+	{
+		byte[] array = this.array;
+		int index = this.index;
+		
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			if (shift >= 32)
+			{
+				throw new IOException("invalid varint");
+			}
+			if (index >= this.endIndex)
+			{
+				throw new EOFException();
+			}
+			
+			b = array[index++];
+			value |= (b & 127) << shift;
+			shift += 7;
+		}
+		while ((b & 128) != 0);
+		
+		this.index = index;
+		return value;
+	}
+	
+	
+	
+}
@@ -0,0 +1,94 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.util.objects.dataStreams;
+
+import com.seibel.distanthorizons.core.sql.dto.util.VarintUtil;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+
+import java.io.OutputStream;
+
+/**
+ * Appends directly to a {@link ByteArrayList}'s backing array,
+ * so the written data doesn't have to be copied out of a separate buffer afterward
+ * like with {@link java.io.ByteArrayOutputStream}.
+ * 
+ * @see ByteArrayListInputStream
+ */
+public class ByteArrayListOutputStream extends OutputStream
+{
+	private final ByteArrayList byteArrayList;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	/** anything already in the list will be kept and written after */
+	public ByteArrayListOutputStream(ByteArrayList byteArrayList) { this.byteArrayList = byteArrayList; }
+	
+	
+	
+	//================//
+	// base overrides //
+	//================//
+	
+	@Override 
+	public void write(int b) { this.byteArrayList.add((byte) b); }
+	
+	@Override
+	public void write(byte[] bytes, int offset, int length) { this.byteArrayList.addElements(this.byteArrayList.size(), bytes, offset, length); }
+	
+	
+	
+	//=========//
+	// varints //
+	//=========//
+	
+	/** 
+	 * Writes the whole varint straight into the backing array
+	 * instead of going through {@link OutputStream#write(int)} for each byte.
+	 * 
+	 * @param value must be positive, see {@link VarintUtil#writeVarint}
+	 * @return the number of bytes written
+	 */
+	public int writeVarint(int value)
+	{
+		int startIndex = this.byteArrayList.size();
+		// size() has to be increased before writing, 
+		// otherwise increasing it afterward would zero out what we wrote
+		this.byteArrayList.size(startIndex + VarintUtil.MAX_VARINT_SIZE_IN_BYTES);
+		byte[] array = this.byteArrayList.elements();
+		
+		int index = startIndex;
+		while (value >= 128)
+		{
+			array[index++] = (byte) (value | 128);
+			value >>>= 7; // 128 = 2^7
+		}
+		array[index++] = (byte) value;
+		
+		this.byteArrayList.size(index);
+		return index - startIndex;
+	}
+	
+	
+	
+}
@@ -24,11 +24,14 @@ import com.github.luben.zstd.Zstd;
 import com.github.luben.zstd.ZstdInputStream;
 import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.pooling.PhantomArrayListCheckout;
+import com.seibel.distanthorizons.core.pooling.PhantomArrayListPool;
 import it.unimi.dsi.fastutil.bytes.ByteArrayList;
 import net.jpountz.lz4.LZ4FrameInputStream;
 import com.seibel.distanthorizons.core.logging.DhLogger;
 import org.tukaani.xz.ResettableArrayCache;
 import org.tukaani.xz.XZInputStream;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 
@@ -36,11 +39,15 @@ import java.io.*;
  * Combines multiple different streams together for ease of use
  * and to prevent accidentally wrapping a stream twice or passing in
  * the wrong stream. <br><br>
+ * 
+ * Data is read directly from the given array 
+ * (or a pooled array the Zstd modes are decompressed straight into)
+ * so no intermediate copies need to be made. 
+ * Because of that the given array must not be modified until this stream is closed. <br><br>
  *
  * <strong>Note:</strong>
- * This stream cannot be closed,
- * the passed in stream must be closed instead.
- * This is done to prevent closing file channels prematurely while accessing them.
+ * Closing this stream won't close the given array, 
+ * it only returns any pooled arrays used for decompression.
  */
 public class DhDataInputStream extends DataInputStream
 {
@@ -48,6 +55,22 @@ public class DhDataInputStream extends DataInputStream
 	
 	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
 	
+	/** holds decompressed data for the Zstd modes until the stream is closed */
+	public static final PhantomArrayListPool ZSTD_ARRAY_POOL = new PhantomArrayListPool("Data Input Stream");
+	
+	/** 
+	 * Null if the data is read through a decompression stream. <br>
+	 * Otherwise this is the stream {@link DataInputStream#in} reads from,
+	 * which allows reading from the backing array directly.
+	 */
+	@Nullable
+	private final ByteArrayListInputStream directStream;
+	/** only used by the Zstd modes */
+	@Nullable
+	private final PhantomArrayListCheckout uncompressedArrayCheckout;
+	
+	private boolean closed = false;
+	
 	
 	
 	//=============//
@@ -55,28 +78,55 @@ public class DhDataInputStream extends DataInputStream
 	//=============//
 	
 	public static DhDataInputStream create(ByteArrayList byteArrayList, EDhApiDataCompressionMode compressionMode) throws IOException
-	{ return create(byteArrayList.toByteArray(), compressionMode); }
+	{ return create(byteArrayList.elements(), 0, byteArrayList.size(), compressionMode); }
 	public static DhDataInputStream create(byte[] byteArray, EDhApiDataCompressionMode compressionMode) throws IOException
+	{ return create(byteArray, 0, byteArray.length, compressionMode); }
+	public static DhDataInputStream create(byte[] byteArray, int offset, int length, EDhApiDataCompressionMode compressionMode) throws IOException
 	{
 		// Z_Std handling compression outside the stream provides a significant performance boost
-		ByteArrayInputStream byteArrayInputStream;
-		if (compressionMode == EDhApiDataCompressionMode.Z_STD_BLOCK)
+		if (compressionMode == EDhApiDataCompressionMode.Z_STD_BLOCK
+			|| compressionMode == EDhApiDataCompressionMode.Z_STD_DICTIONARY)
 		{
-			byteArrayInputStream = new ByteArrayInputStream(Zstd.decompress(byteArray));
+			PhantomArrayListCheckout checkout = ZSTD_ARRAY_POOL.checkoutArrays(1, 0, 0);
+			try
+			{
+				ByteArrayList uncompressedByteArray = checkout.getByteArray(0, 0);
+				if (compressionMode == EDhApiDataCompressionMode.Z_STD_BLOCK)
+				{
+					decompressZstdBlock(byteArray, offset, length, uncompressedByteArray);
+				}
+				else
+				{
+					// the blob contains the ID of the dictionary it was compressed with
+					ZstdDictionary.decompress(byteArray, offset, length, uncompressedByteArray);
+				}
+				
+				ByteArrayListInputStream directStream = new ByteArrayListInputStream(uncompressedByteArray);
+				return new DhDataInputStream(directStream, directStream, checkout);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				checkout.close();
+				throw e;
+			}
 		}
 		else
 		{
-			byteArrayInputStream = new ByteArrayInputStream(byteArray);
+			ByteArrayListInputStream byteArrayStream = new ByteArrayListInputStream(byteArray, offset, length);
+			InputStream wrappedStream = warpStream(byteArrayStream, compressionMode);
+			ByteArrayListInputStream directStream = (wrappedStream == byteArrayStream) ? byteArrayStream : null;
+			return new DhDataInputStream(wrappedStream, directStream, null);
 		}
-		
-		return new DhDataInputStream(byteArrayInputStream, compressionMode);
 	}
-	private DhDataInputStream(ByteArrayInputStream stream, EDhApiDataCompressionMode compressionMode) throws IOException
+	private DhDataInputStream(InputStream wrappedStream, @Nullable ByteArrayListInputStream directStream, @Nullable PhantomArrayListCheckout uncompressedArrayCheckout)
 	{ 
-		super(warpStream(stream, compressionMode)); 
+		super(wrappedStream);
+		
+		this.directStream = directStream;
+		this.uncompressedArrayCheckout = uncompressedArrayCheckout;
 	}
 	@SuppressWarnings("deprecation")
-	private static InputStream warpStream(ByteArrayInputStream stream, EDhApiDataCompressionMode compressionMode) throws IOException
+	private static InputStream warpStream(ByteArrayListInputStream stream, EDhApiDataCompressionMode compressionMode) throws IOException
 	{
 		try
 		{
@@ -86,10 +136,6 @@ public class DhDataInputStream extends DataInputStream
 					return stream;
 				case LZ4:
 					return new LZ4FrameInputStream(stream);
-				case Z_STD_BLOCK:
-					// ZStd compression should be handled before this point
-					// just return the stream
-					return stream;
 				case LZMA2:
 					// using an array cache significantly reduces GC pressure
 					ResettableArrayCache arrayCache = LZMA_RESETTABLE_ARRAY_CACHE_GETTER.get();
@@ -114,10 +160,66 @@ public class DhDataInputStream extends DataInputStream
 	
 	
 	
+	//=========//
+	// varints //
+	//=========//
+	
+	/** 
+	 * Should be called via {@link com.seibel.distanthorizons.core.sql.dto.util.VarintUtil#readVarint}. <br>
+	 * Reads directly from the backing array when possible.
+	 */
+	public int readVarint() throws IOException
+	{
+		if (this.directStream != null)
+		{
+			return this.directStream.readVarint();
+		}
+		
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			if (shift >= 32)
+			{
+				throw new IOException("invalid varint");
+			}
+			b = this.readByte();
+			value |= (b & 127) << shift;
+			shift += 7;
+		}
+		while ((b & 128) != 0);
+		return value;
+	}
+	
+	
+	
 	//================//
 	// base overrides //
 	//================//
 	
+	@Override
+	public void close() throws IOException
+	{
+		if (this.closed)
+		{
+			return;
+		}
+		this.closed = true;
+		
+		try
+		{
+			super.close();
+		}
+		finally
+		{
+			if (this.uncompressedArrayCheckout != null)
+			{
+				this.uncompressedArrayCheckout.close();
+			}
+		}
+	}
+	
 	@Override 
 	public int read() throws IOException
 	{
@@ -149,4 +251,34 @@ public class DhDataInputStream extends DataInputStream
 	
 	
 	
+	//================//
+	// helper methods //
+	//================//
+	
+	/** Replaces the contents of the output list with the decompressed data. */
+	private static void decompressZstdBlock(byte[] compressedBytes, int offset, int length, ByteArrayList outputByteArray) throws IOException
+	{
+		// our frames always include the uncompressed size
+		long uncompressedLength = Zstd.decompressedSize(compressedBytes, offset, length);
+		if (uncompressedLength < 0 || uncompressedLength > Integer.MAX_VALUE)
+		{
+			throw new IOException("Invalid Zstd frame size ["+uncompressedLength+"].");
+		}
+		
+		outputByteArray.clear();
+		outputByteArray.size((int) uncompressedLength);
+		
+		long decompressedLength = Zstd.decompressByteArray(
+				outputByteArray.elements(), 0, (int) uncompressedLength,
+				compressedBytes, offset, length);
+		if (Zstd.isError(decompressedLength))
+		{
+			throw new IOException("Zstd decompression failed, error: ["+Zstd.getErrorName(decompressedLength)+"].");
+		}
+		
+		outputByteArray.size((int) decompressedLength);
+	}
+	
+	
+	
 }
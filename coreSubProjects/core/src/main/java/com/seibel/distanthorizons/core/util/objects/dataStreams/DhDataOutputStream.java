@@ -22,17 +22,24 @@ package com.seibel.distanthorizons.core.util.objects.dataStreams;
 import com.github.luben.zstd.Zstd;
 import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
 import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import com.seibel.distanthorizons.core.pooling.PhantomArrayListCheckout;
+import com.seibel.distanthorizons.core.pooling.PhantomArrayListPool;
 import it.unimi.dsi.fastutil.bytes.ByteArrayList;
 import net.jpountz.lz4.LZ4Factory;
 import net.jpountz.lz4.LZ4FrameOutputStream;
 import net.jpountz.xxhash.XXHashFactory;
 import com.seibel.distanthorizons.core.logging.DhLogger;
+import org.jetbrains.annotations.Nullable;
 import org.tukaani.xz.*;
 
 import java.io.*;
 
 /**
- * See {@link DhDataInputStream} for more information about these custom streams.
+ * See {@link DhDataInputStream} for more information about these custom streams. <br><br>
+ * 
+ * Data is written directly into the output {@link ByteArrayList}
+ * (or a pooled array for the Zstd modes, which is then compressed straight into the output)
+ * so no intermediate buffers need to be allocated or copied.
  *
  * @see DhDataInputStream
  */
@@ -41,9 +48,29 @@ public class DhDataOutputStream extends DataOutputStream
 	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
 	private static final ThreadLocal<ResettableArrayCache> LZMA_RESETTABLE_ARRAY_CACHE_GETTER = ThreadLocal.withInitial(() -> new ResettableArrayCache(new LzmaArrayCache()));
 	
+	/** holds uncompressed data for the Zstd modes until the stream is closed */
+	public static final PhantomArrayListPool ZSTD_ARRAY_POOL = new PhantomArrayListPool("Data Output Stream");
+	
 	private final ByteArrayList outputByteArray;
-	private final ByteArrayOutputStream wrappedByteStream;
 	private final EDhApiDataCompressionMode compressionMode;
+	@Nullable
+	private final ZstdDictionary dictionary;
+	
+	/** 
+	 * Null if the data is written through a compression stream. <br>
+	 * Otherwise this is the stream {@link DataOutputStream#out} writes to, 
+	 * which allows writing to the backing array directly.
+	 */
+	@Nullable
+	private final ByteArrayListOutputStream directStream;
+	/** only used by the Zstd modes */
+	@Nullable
+	private final PhantomArrayListCheckout uncompressedArrayCheckout;
+	/** only used by the Zstd modes */
+	@Nullable
+	private final ByteArrayList uncompressedByteArray;
+	
+	private boolean closed = false;
 	
 	
 	
@@ -52,20 +79,57 @@ public class DhDataOutputStream extends DataOutputStream
 	//=============//
 	
 	/**
-	 * @param outputByteArray where the contents of this stream will be written to when done
+	 * @param outputByteArray where the contents of this stream will be written to, 
+	 *                        will be cleared immediately and will only contain valid data once this stream is closed.
 	 */
 	public static DhDataOutputStream create(EDhApiDataCompressionMode compressionMode, ByteArrayList outputByteArray) throws IOException
-	{ return new DhDataOutputStream(new ByteArrayOutputStream(), compressionMode, outputByteArray); }
-	private DhDataOutputStream(ByteArrayOutputStream wrappedByteStream, EDhApiDataCompressionMode compressionMode, ByteArrayList outputByteArray) throws IOException
+	{ return create(compressionMode, outputByteArray, null); }
+	/**
+	 * @param dictionary required when using {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY}, ignored otherwise
+	 * @throws IllegalArgumentException if {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY} is used without a dictionary
+	 */
+	public static DhDataOutputStream create(EDhApiDataCompressionMode compressionMode, ByteArrayList outputByteArray, @Nullable ZstdDictionary dictionary) throws IOException
+	{
+		if (compressionMode == EDhApiDataCompressionMode.Z_STD_DICTIONARY && dictionary == null)
+		{
+			throw new IllegalArgumentException("No dictionary given for ["+compressionMode+"].");
+		}
+		
+		outputByteArray.clear();
+		
+		if (compressionMode == EDhApiDataCompressionMode.Z_STD_BLOCK
+			|| compressionMode == EDhApiDataCompressionMode.Z_STD_DICTIONARY)
+		{
+			// ZStd compression is handled in one go after the stream is closed
+			PhantomArrayListCheckout checkout = ZSTD_ARRAY_POOL.checkoutArrays(1, 0, 0);
+			ByteArrayList uncompressedByteArray = checkout.getByteArray(0, 0);
+			ByteArrayListOutputStream directStream = new ByteArrayListOutputStream(uncompressedByteArray);
+			return new DhDataOutputStream(directStream, directStream, compressionMode, outputByteArray, dictionary, checkout, uncompressedByteArray);
+		}
+		else
+		{
+			ByteArrayListOutputStream byteArrayStream = new ByteArrayListOutputStream(outputByteArray);
+			OutputStream wrappedStream = warpStream(byteArrayStream, compressionMode);
+			ByteArrayListOutputStream directStream = (wrappedStream == byteArrayStream) ? byteArrayStream : null;
+			return new DhDataOutputStream(wrappedStream, directStream, compressionMode, outputByteArray, dictionary, null, null);
+		}
+	}
+	private DhDataOutputStream(
+			OutputStream wrappedStream, @Nullable ByteArrayListOutputStream directStream,
+			EDhApiDataCompressionMode compressionMode, ByteArrayList outputByteArray, @Nullable ZstdDictionary dictionary,
+			@Nullable PhantomArrayListCheckout uncompressedArrayCheckout, @Nullable ByteArrayList uncompressedByteArray)
 	{ 
-		super(warpStream(wrappedByteStream, compressionMode));
-
-		this.wrappedByteStream = wrappedByteStream;
+		super(wrappedStream);
+		
+		this.directStream = directStream;
 		this.outputByteArray = outputByteArray;
 		this.compressionMode = compressionMode;
+		this.dictionary = dictionary;
+		this.uncompressedArrayCheckout = uncompressedArrayCheckout;
+		this.uncompressedByteArray = uncompressedByteArray;
 	}
 	@SuppressWarnings("deprecation")
-	private static OutputStream warpStream(ByteArrayOutputStream stream, EDhApiDataCompressionMode compressionMode) throws IOException
+	private static OutputStream warpStream(ByteArrayListOutputStream stream, EDhApiDataCompressionMode compressionMode) throws IOException
 	{
 		try
 		{
@@ -83,10 +147,6 @@ public class DhDataOutputStream extends DataOutputStream
 							//LZ4Factory.nativeInstance().fastCompressor(),
 							//XXHashFactory.nativeInstance().hash32(),
 							LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
-				case Z_STD_BLOCK:
-					// ZStd compression should be handled after the stream is closed
-					// just return the stream
-					return stream;
 				case LZMA2:
 					// using an array cache significantly reduces GC pressure
 					ResettableArrayCache arrayCache = LZMA_RESETTABLE_ARRAY_CACHE_GETTER.get();
@@ -114,6 +174,32 @@ public class DhDataOutputStream extends DataOutputStream
 	
 	
 	
+	//=========//
+	// varints //
+	//=========//
+	
+	/** 
+	 * Should be called via {@link com.seibel.distanthorizons.core.sql.dto.util.VarintUtil#writeVarint}. <br>
+	 * Writes directly into the backing array when possible.
+	 */
+	public void writeVarint(int value) throws IOException
+	{
+		if (this.directStream != null)
+		{
+			this.written += this.directStream.writeVarint(value);
+			return;
+		}
+		
+		while (value >= 128)
+		{
+			this.writeByte(value | 128);
+			value >>>= 7; // 128 = 2^7
+		}
+		this.writeByte(value);
+	}
+	
+	
+	
 	//================//
 	// base overrides //
 	//================//
@@ -121,19 +207,62 @@ public class DhDataOutputStream extends DataOutputStream
 	@Override
 	public void close() throws IOException 
 	{
-		super.close();
+		if (this.closed)
+		{
+			return;
+		}
+		this.closed = true;
 		
 		
-		this.outputByteArray.clear();
-		if (this.compressionMode == EDhApiDataCompressionMode.Z_STD_BLOCK)
+		try
 		{
-			this.outputByteArray.addElements(0, Zstd.compress(this.wrappedByteStream.toByteArray(), 3));
+			// finishes any compression streams,
+			// which write straight into the output array
+			super.close();
+			
+			if (this.compressionMode == EDhApiDataCompressionMode.Z_STD_BLOCK)
+			{
+				compressZstdBlock(this.uncompressedByteArray, this.outputByteArray);
+			}
+			else if (this.compressionMode == EDhApiDataCompressionMode.Z_STD_DICTIONARY)
+			{
+				this.dictionary.compress(this.uncompressedByteArray.elements(), 0, this.uncompressedByteArray.size(), this.outputByteArray);
+			}
 		}
-		else
+		finally
+		{
+			if (this.uncompressedArrayCheckout != null)
+			{
+				this.uncompressedArrayCheckout.close();
+			}
+		}
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	/** Replaces the contents of the output list with the Zstd frame. */
+	private static void compressZstdBlock(ByteArrayList inputByteArray, ByteArrayList outputByteArray) throws IOException
+	{
+		int maxCompressedLength = (int) Zstd.compressBound(inputByteArray.size());
+		outputByteArray.clear();
+		// size() has to be increased before writing, 
+		// otherwise increasing it afterward would zero out the compressed data
+		outputByteArray.size(maxCompressedLength);
+		
+		long compressedLength = Zstd.compressByteArray(
+				outputByteArray.elements(), 0, maxCompressedLength,
+				inputByteArray.elements(), 0, inputByteArray.size(),
+				ZstdDictionary.COMPRESSION_LEVEL);
+		if (Zstd.isError(compressedLength))
 		{
-			this.outputByteArray.addElements(0, this.wrappedByteStream.toByteArray());
+			throw new IOException("Zstd compression failed, error: ["+Zstd.getErrorName(compressedLength)+"].");
 		}
 		
+		outputByteArray.size((int) compressedLength);
 	}
 	
 	
@@ -0,0 +1,425 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.seibel.distanthorizons.core.util.objects.dataStreams;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
+import com.seibel.distanthorizons.core.logging.DhLogger;
+import com.seibel.distanthorizons.core.logging.DhLoggerBuilder;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A trained Zstd dictionary used by {@link EDhApiDataCompressionMode#Z_STD_DICTIONARY}. <br><br>
+ *
+ * LOD data blobs are small and very similar to each other,
+ * so most of what Zstd would have to learn separately for each blob
+ * can instead be learned once from a sample of existing blobs. <br><br>
+ *
+ * Every compressed blob starts with the ID of the dictionary it was compressed with,
+ * so a blob can be decompressed by any {@link ZstdDictionary#register registered} dictionary,
+ * even after a newer dictionary has been trained. <br>
+ * Because of that dictionaries should never be deleted from the database,
+ * they're only {@link ZstdDictionary#unregister unregistered} when the level using them is closed. <br><br>
+ *
+ * Blob format: <br>
+ * [int dictionary ID] [int uncompressed length] [Zstd frame]
+ */
+public class ZstdDictionary
+{
+	private static final DhLogger LOGGER = new DhLoggerBuilder().build();
+	
+	/** same level used by {@link EDhApiDataCompressionMode#Z_STD_BLOCK} */
+	public static final int COMPRESSION_LEVEL = 3;
+	/** Zstd's default dictionary size */
+	public static final int DICTIONARY_SIZE_IN_BYTES = 112_640;
+	/** Zstd recommends roughly 100x the dictionary size worth of samples */
+	public static final int MAX_TOTAL_SAMPLE_SIZE_IN_BYTES = 16 * 1024 * 1024;
+	
+	private static final int HEADER_SIZE_IN_BYTES = Integer.BYTES * 2;
+	
+	/**
+	 * Every dictionary registered by a currently loaded level. <br>
+	 * Shared between levels since the blob decoding code doesn't know which level it's for,
+	 * trained dictionary IDs are random so collisions are extremely unlikely.
+	 */
+	private static final ConcurrentHashMap<Integer, ZstdDictionary> DICTIONARY_BY_ID = new ConcurrentHashMap<>();
+	/** 
+	 * How many times each dictionary ID is currently registered,
+	 * a copied world will have the same dictionaries as the original. <br>
+	 * Also used as the lock when modifying {@link ZstdDictionary#DICTIONARY_BY_ID}.
+	 */
+	private static final Int2IntOpenHashMap REGISTRATION_COUNT_BY_ID = new Int2IntOpenHashMap();
+	
+	/** 
+	 * Every thread's {@link ThreadContexts}, so unregistered dictionaries can be cleared from them. <br>
+	 * Weak so the contexts are still freed when their thread dies.
+	 */
+	private static final Set<ThreadContexts> ALL_THREAD_CONTEXTS = Collections.newSetFromMap(new WeakHashMap<>());
+	/**
+	 * Contexts are expensive to create and hold a lot of native memory,
+	 * so each thread re-uses the same pair and just swaps which dictionary is loaded.
+	 */
+	private static final ThreadLocal<ThreadContexts> CONTEXTS_GETTER = ThreadLocal.withInitial(() ->
+	{
+		ThreadContexts contexts = new ThreadContexts();
+		synchronized (ALL_THREAD_CONTEXTS)
+		{
+			ALL_THREAD_CONTEXTS.add(contexts);
+		}
+		return contexts;
+	});
+	
+	
+	public final int id;
+	/** the raw dictionary, this is what's stored in the database */
+	public final byte[] dictionaryBytes;
+	
+	/** pre-digested so the dictionary only has to be parsed once instead of for every blob */
+	private final ZstdDictCompress compressDictionary;
+	/** @see ZstdDictionary#compressDictionary */
+	private final ZstdDictDecompress decompressDictionary;
+	
+	
+	
+	//=============//
+	// constructor //
+	//=============//
+	
+	public ZstdDictionary(int id, byte[] dictionaryBytes)
+	{
+		this.id = id;
+		this.dictionaryBytes = dictionaryBytes;
+		
+		this.compressDictionary = new ZstdDictCompress(dictionaryBytes, COMPRESSION_LEVEL);
+		this.decompressDictionary = new ZstdDictDecompress(dictionaryBytes);
+	}
+	
+	/**
+	 * Trains a new dictionary from the given uncompressed blobs. <br>
+	 * Samples past {@link ZstdDictionary#MAX_TOTAL_SAMPLE_SIZE_IN_BYTES} are ignored.
+	 *
+	 * @return null if Zstd wasn't able to train a dictionary from the given samples,
+	 *          generally because there weren't enough of them.
+	 */
+	@Nullable
+	public static ZstdDictionary train(List<byte[]> samples)
+	{
+		int totalSampleSize = 0;
+		for (byte[] sample : samples)
+		{
+			totalSampleSize += sample.length;
+		}
+		totalSampleSize = Math.min(totalSampleSize, MAX_TOTAL_SAMPLE_SIZE_IN_BYTES);
+		
+		ZstdDictTrainer trainer = new ZstdDictTrainer(totalSampleSize, DICTIONARY_SIZE_IN_BYTES);
+		for (byte[] sample : samples)
+		{
+			if (!trainer.addSample(sample))
+			{
+				// the sample buffer is full
+				break;
+			}
+		}
+		
+		byte[] dictionaryBytes;
+		try
+		{
+			dictionaryBytes = trainer.trainSamples();
+		}
+		catch (RuntimeException e)
+		{
+			// Zstd throws if there wasn't enough data to train with
+			LOGGER.warn("Unable to train Zstd dictionary from ["+samples.size()+"] samples, error: ["+e.getMessage()+"].");
+			return null;
+		}
+		
+		int id = (int) Zstd.getDictIdFromDict(dictionaryBytes);
+		if (id == 0 || DICTIONARY_BY_ID.containsKey(id))
+		{
+			// 0 means the dictionary is raw content without a header,
+			// neither should happen, but if they do it's easier to train again later
+			LOGGER.warn("Trained Zstd dictionary has an unusable ID ["+id+"], discarding.");
+			return null;
+		}
+		
+		return new ZstdDictionary(id, dictionaryBytes);
+	}
+	
+	
+	
+	//==========//
+	// registry //
+	//==========//
+	
+	/** 
+	 * Must be called before any blob compressed with this dictionary can be decompressed. <br>
+	 * Each call should be paired with a call to {@link ZstdDictionary#unregister()}.
+	 */
+	public void register()
+	{
+		ZstdDictionary existingDictionary;
+		synchronized (REGISTRATION_COUNT_BY_ID)
+		{
+			REGISTRATION_COUNT_BY_ID.addTo(this.id, 1);
+			existingDictionary = DICTIONARY_BY_ID.putIfAbsent(this.id, this);
+		}
+		
+		if (existingDictionary != null && existingDictionary != this)
+		{
+			LOGGER.warn("A different Zstd dictionary is already registered with the ID ["+this.id+"], data compressed with this dictionary may not be readable.");
+		}
+	}
+	
+	/** 
+	 * Should be called when the level that registered this dictionary is closed. <br>
+	 * The dictionary is only removed once every registration for its ID has been undone.
+	 */
+	public void unregister()
+	{
+		boolean removed = false;
+		synchronized (REGISTRATION_COUNT_BY_ID)
+		{
+			int registrationCount = REGISTRATION_COUNT_BY_ID.get(this.id);
+			if (registrationCount <= 1)
+			{
+				REGISTRATION_COUNT_BY_ID.remove(this.id);
+				DICTIONARY_BY_ID.remove(this.id);
+				removed = true;
+			}
+			else
+			{
+				REGISTRATION_COUNT_BY_ID.put(this.id, registrationCount - 1);
+			}
+		}
+		
+		if (removed)
+		{
+			// otherwise idle threads would keep this dictionary's native memory alive after the level closes
+			synchronized (ALL_THREAD_CONTEXTS)
+			{
+				for (ThreadContexts contexts : ALL_THREAD_CONTEXTS)
+				{
+					contexts.clearDictionary(this.id);
+				}
+			}
+		}
+	}
+	
+	/** @return null if the blob is too short or its dictionary hasn't been registered */
+	@Nullable
+	public static ZstdDictionary getRegisteredForBlob(ByteArrayList compressedBlob)
+	{
+		if (compressedBlob.size() < HEADER_SIZE_IN_BYTES)
+		{
+			return null;
+		}
+		return DICTIONARY_BY_ID.get(readInt(compressedBlob.elements(), 0));
+	}
+	
+	
+	
+	//=============//
+	// compression //
+	//=============//
+	
+	public byte[] compress(byte[] uncompressedBytes)
+	{
+		ByteArrayList compressedByteArray = new ByteArrayList();
+		this.compress(uncompressedBytes, 0, uncompressedBytes.length, compressedByteArray);
+		return compressedByteArray.toByteArray();
+	}
+	/** Replaces the contents of the given list with the compressed blob. */
+	public void compress(byte[] uncompressedBytes, int offset, int length, ByteArrayList outputByteArray)
+	{
+		int maxCompressedLength = HEADER_SIZE_IN_BYTES + (int) Zstd.compressBound(length);
+		outputByteArray.clear();
+		outputByteArray.size(maxCompressedLength);
+		byte[] compressedBytes = outputByteArray.elements();
+		
+		writeInt(compressedBytes, 0, this.id);
+		writeInt(compressedBytes, Integer.BYTES, length);
+		
+		// locked so the dictionary can't be cleared by another thread mid-compression
+		ThreadContexts contexts = CONTEXTS_GETTER.get();
+		int compressedLength;
+		synchronized (contexts)
+		{
+			compressedLength = contexts.getCompressCtx(this).compressByteArray(
+					compressedBytes, HEADER_SIZE_IN_BYTES, maxCompressedLength - HEADER_SIZE_IN_BYTES,
+					uncompressedBytes, offset, length);
+		}
+		
+		outputByteArray.size(HEADER_SIZE_IN_BYTES + compressedLength);
+	}
+	
+	/** @throws IOException if the blob is malformed or was compressed with a dictionary that hasn't been registered */
+	public static byte[] decompress(byte[] compressedBytes) throws IOException
+	{
+		ByteArrayList uncompressedByteArray = new ByteArrayList();
+		decompress(compressedBytes, 0, compressedBytes.length, uncompressedByteArray);
+		return uncompressedByteArray.toByteArray();
+	}
+	/** 
+	 * Replaces the contents of the given list with the uncompressed data.
+	 * @throws IOException if the blob is malformed or was compressed with a dictionary that hasn't been registered 
+	 */
+	public static void decompress(byte[] compressedBytes, int offset, int length, ByteArrayList outputByteArray) throws IOException
+	{
+		if (length < HEADER_SIZE_IN_BYTES)
+		{
+			throw new IOException("Zstd dictionary blob is too short to contain a header, length: ["+length+"].");
+		}
+		
+		int id = readInt(compressedBytes, offset);
+		int uncompressedLength = readInt(compressedBytes, offset + Integer.BYTES);
+		if (uncompressedLength < 0)
+		{
+			throw new IOException("Zstd dictionary blob has an invalid length ["+uncompressedLength+"].");
+		}
+		
+		ZstdDictionary dictionary = DICTIONARY_BY_ID.get(id);
+		if (dictionary == null)
+		{
+			throw new IOException("No Zstd dictionary with the ID ["+id+"] has been loaded.");
+		}
+		
+		outputByteArray.clear();
+		outputByteArray.size(uncompressedLength);
+		try
+		{
+			// locked so the dictionary can't be cleared by another thread mid-decompression
+			ThreadContexts contexts = CONTEXTS_GETTER.get();
+			int decompressedLength;
+			synchronized (contexts)
+			{
+				decompressedLength = contexts.getDecompressCtx(dictionary).decompressByteArray(
+						outputByteArray.elements(), 0, uncompressedLength,
+						compressedBytes, offset + HEADER_SIZE_IN_BYTES, length - HEADER_SIZE_IN_BYTES);
+			}
+			
+			if (decompressedLength != uncompressedLength)
+			{
+				throw new IOException("Zstd dictionary blob decompressed to ["+decompressedLength+"] bytes, expected ["+uncompressedLength+"].");
+			}
+		}
+		catch (RuntimeException e)
+		{
+			// ZstdException is unchecked
+			throw new IOException(e);
+		}
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	private static void writeInt(byte[] array, int index, int value)
+	{
+		array[index] = (byte) (value >>> 24);
+		array[index + 1] = (byte) (value >>> 16);
+		array[index + 2] = (byte) (value >>> 8);
+		array[index + 3] = (byte) value;
+	}
+	private static int readInt(byte[] array, int index)
+	{
+		return ((array[index] & 0xFF) << 24)
+				| ((array[index + 1] & 0xFF) << 16)
+				| ((array[index + 2] & 0xFF) << 8)
+				| (array[index + 3] & 0xFF);
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	/** 
+	 * Only used by its own thread, except for {@link ThreadContexts#clearDictionary}. <br>
+	 * Callers must synchronize on this object while using either context.
+	 */
+	private static class ThreadContexts
+	{
+		private final ZstdCompressCtx compressCtx = new ZstdCompressCtx();
+		private final ZstdDecompressCtx decompressCtx = new ZstdDecompressCtx();
+		
+		@Nullable
+		private ZstdDictionary compressDictionary = null;
+		@Nullable
+		private ZstdDictionary decompressDictionary = null;
+		
+		
+		public ZstdCompressCtx getCompressCtx(ZstdDictionary dictionary)
+		{
+			if (this.compressDictionary != dictionary)
+			{
+				this.compressCtx.loadDict(dictionary.compressDictionary);
+				this.compressCtx.setLevel(COMPRESSION_LEVEL);
+				this.compressDictionary = dictionary;
+			}
+			return this.compressCtx;
+		}
+		
+		public ZstdDecompressCtx getDecompressCtx(ZstdDictionary dictionary)
+		{
+			if (this.decompressDictionary != dictionary)
+			{
+				this.decompressCtx.loadDict(dictionary.decompressDictionary);
+				this.decompressDictionary = dictionary;
+			}
+			return this.decompressCtx;
+		}
+		
+		/** resetting the contexts also drops their reference to the native dictionary */
+		public synchronized void clearDictionary(int dictionaryId)
+		{
+			if (this.compressDictionary != null && this.compressDictionary.id == dictionaryId)
+			{
+				this.compressCtx.reset();
+				this.compressDictionary = null;
+			}
+			
+			if (this.decompressDictionary != null && this.decompressDictionary.id == dictionaryId)
+			{
+				this.decompressCtx.reset();
+				this.decompressDictionary = null;
+			}
+		}
+	}
+	
+	
+	
+}
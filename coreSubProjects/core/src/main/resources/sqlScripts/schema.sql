@@ -15,6 +15,7 @@ CREATE TABLE IF NOT EXISTS FullData (
     EastAdjData BLOB NULL,
     WestAdjData BLOB NULL,
     CompressionMode TINYINT NULL,
+    DataFormat TINYINT NULL,
     ApplyToParent BIT NULL,
     IsComplete BIT NULL,
     LastModifiedUnixDateTime BIGINT NOT NULL,
@@ -59,3 +60,35 @@ CREATE TABLE IF NOT EXISTS BeaconBeam (
     CreatedUnixDateTime BIGINT NOT NULL,
     PRIMARY KEY (BlockPosX, BlockPosY, BlockPosZ)
 )
+
+--batch--
+
+CREATE TABLE IF NOT EXISTS BlockBiomePalette (
+    Id INT NOT NULL,
+    SerialString TEXT NOT NULL,
+    CreatedUnixDateTime BIGINT NOT NULL,
+    PRIMARY KEY (Id)
+)
+
+--batch--
+
+CREATE TABLE IF NOT EXISTS PregenJob (
+    Id INT NOT NULL,
+    OriginPosX INT NOT NULL,
+    OriginPosZ INT NOT NULL,
+    ChunkRadius INT NOT NULL,
+    CompletedSpiralIndex INT NOT NULL,
+    LastModifiedUnixDateTime BIGINT NOT NULL,
+    CreatedUnixDateTime BIGINT NOT NULL,
+    PRIMARY KEY (Id)
+)
+
+--batch--
+
+CREATE TABLE IF NOT EXISTS ZstdDictionary (
+    Id INT NOT NULL,
+    DictionaryData BLOB NOT NULL,
+    SampleCount INT NOT NULL,
+    CreatedUnixDateTime BIGINT NOT NULL,
+    PRIMARY KEY (Id)
+)
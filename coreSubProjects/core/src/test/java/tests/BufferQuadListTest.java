@@ -0,0 +1,331 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tests;
+
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.BufferMergeDirectionEnum;
+import com.seibel.distanthorizons.core.dataObjects.render.bufferBuilding.BufferQuadList;
+import com.seibel.distanthorizons.core.enums.EDhDirection;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Confirms {@link BufferQuadList} merges quads exactly the same
+ * way the original object based greedy mesher did.
+ */
+public class BufferQuadListTest
+{
+	private static final int MAX_QUAD_WIDTH = BufferQuadList.NORMAL_MAX_QUAD_WIDTH;
+	
+	
+	
+	@Test
+	public void mergeMatchesReference()
+	{
+		for (EDhDirection direction : EDhDirection.values())
+		{
+			for (int seed = 0; seed < 20; seed++)
+			{
+				testDirection(direction, seed, false);
+				testDirection(direction, seed, true);
+			}
+		}
+	}
+	
+	@Test
+	public void mergeEmptyAndSingle()
+	{
+		BufferQuadList list = new BufferQuadList(EDhDirection.UP);
+		Assert.assertEquals(0, list.sortAndMerge(BufferMergeDirectionEnum.EastWest, MAX_QUAD_WIDTH, false));
+		
+		list.add((short) 0, (short) 0, (short) 0, (short) 1, (short) 1, 0xFFFFFFFF, (byte) 0, (byte) 15, (byte) 0);
+		Assert.assertEquals(0, list.sortAndMerge(BufferMergeDirectionEnum.EastWest, MAX_QUAD_WIDTH, false));
+		Assert.assertEquals(1, list.size());
+	}
+	
+	@Test
+	public void mergeRow()
+	{
+		// a single row of identical quads should become one quad
+		BufferQuadList list = new BufferQuadList(EDhDirection.UP);
+		for (int x = 15; x >= 0; x--)
+		{
+			list.add((short) x, (short) 64, (short) 0, (short) 1, (short) 1, 0xFF00FF00, (byte) 0, (byte) 15, (byte) 0);
+		}
+		
+		Assert.assertEquals(15, list.sortAndMerge(BufferMergeDirectionEnum.EastWest, MAX_QUAD_WIDTH, false));
+		Assert.assertEquals(1, list.size());
+		Assert.assertEquals(0, list.x[0]);
+		Assert.assertEquals(16, list.widthEastWest[0]);
+		Assert.assertEquals(1, list.widthNorthSouthOrUpDown[0]);
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	private static void testDirection(EDhDirection direction, int seed, boolean markOverlappingQuads)
+	{
+		Random random = new Random(seed);
+		BufferQuadList list = new BufferQuadList(direction);
+		ArrayList<ReferenceQuad> referenceList = new ArrayList<>();
+		
+		int quadCount = 200 + random.nextInt(800);
+		for (int i = 0; i < quadCount; i++)
+		{
+			// a small area and palette so plenty of quads are mergeable (and some overlap)
+			short x = (short) (random.nextInt(16) - 8);
+			short y = (short) random.nextInt(4);
+			short z = (short) random.nextInt(16);
+			short widthEastWest = (short) (1 + random.nextInt(2));
+			short widthNorthSouth = (short) (1 + random.nextInt(2));
+			int color = random.nextInt(2);
+			byte skyLight = (byte) (14 + random.nextInt(2));
+			
+			list.add(x, y, z, widthEastWest, widthNorthSouth, color, (byte) 0, skyLight, (byte) 0);
+			referenceList.add(new ReferenceQuad(x, y, z, widthEastWest, widthNorthSouth, color, skyLight, direction));
+		}
+		
+		for (BufferMergeDirectionEnum mergeDirection : BufferMergeDirectionEnum.values())
+		{
+			int mergeCount = list.sortAndMerge(mergeDirection, MAX_QUAD_WIDTH, markOverlappingQuads);
+			int referenceMergeCount = referenceMerge(referenceList, mergeDirection, markOverlappingQuads);
+			Assert.assertEquals(referenceMergeCount, mergeCount);
+			
+			Assert.assertEquals(referenceList.size(), list.size());
+			for (int i = 0; i < list.size(); i++)
+			{
+				ReferenceQuad quad = referenceList.get(i);
+				String message = direction + " " + mergeDirection + " seed " + seed + " index " + i;
+				Assert.assertEquals(message, quad.x, list.x[i]);
+				Assert.assertEquals(message, quad.y, list.y[i]);
+				Assert.assertEquals(message, quad.z, list.z[i]);
+				Assert.assertEquals(message, quad.widthEastWest, list.widthEastWest[i]);
+				Assert.assertEquals(message, quad.widthNorthSouthOrUpDown, list.widthNorthSouthOrUpDown[i]);
+				Assert.assertEquals(message, quad.color, list.color[i]);
+				Assert.assertEquals(message, quad.skyLight, list.skyLight[i]);
+				Assert.assertEquals(message, quad.hasError, list.hasError[i]);
+			}
+		}
+	}
+	
+	/** the original list based merging logic */
+	private static int referenceMerge(ArrayList<ReferenceQuad> list, BufferMergeDirectionEnum mergeDirection, boolean markOverlappingQuads)
+	{
+		if (list.size() <= 1)
+		{
+			return 0;
+		}
+		
+		list.sort((objOne, objTwo) -> objOne.compare(objTwo, mergeDirection));
+		
+		int mergeCount = 0;
+		ReferenceQuad currentQuad = list.get(0);
+		for (int i = 1; i < list.size(); i++)
+		{
+			ReferenceQuad nextQuad = list.get(i);
+			if (currentQuad.tryMerge(nextQuad, mergeDirection, markOverlappingQuads))
+			{
+				mergeCount++;
+				list.set(i, null);
+			}
+			else
+			{
+				currentQuad = nextQuad;
+			}
+		}
+		list.removeIf(Objects::isNull);
+		return mergeCount;
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	/** copy of the original object based quad */
+	private static class ReferenceQuad
+	{
+		final short x;
+		final short y;
+		final short z;
+		short widthEastWest;
+		short widthNorthSouthOrUpDown;
+		final int color;
+		final byte skyLight;
+		final EDhDirection direction;
+		boolean hasError = false;
+		
+		ReferenceQuad(short x, short y, short z, short widthEastWest, short widthNorthSouthOrUpDown, int color, byte skyLight, EDhDirection direction)
+		{
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.widthEastWest = widthEastWest;
+			this.widthNorthSouthOrUpDown = widthNorthSouthOrUpDown;
+			this.color = color;
+			this.skyLight = skyLight;
+			this.direction = direction;
+		}
+		
+		int compare(ReferenceQuad quad, BufferMergeDirectionEnum compareDirection)
+		{
+			if (compareDirection == BufferMergeDirectionEnum.EastWest)
+			{
+				switch (this.direction.axis)
+				{
+					case X: return threeDimensionalCompare(this.x, this.y, this.z, quad.x, quad.y, quad.z);
+					case Y: return threeDimensionalCompare(this.y, this.z, this.x, quad.y, quad.z, quad.x);
+					default: return threeDimensionalCompare(this.z, this.y, this.x, quad.z, quad.y, quad.x);
+				}
+			}
+			else
+			{
+				switch (this.direction.axis)
+				{
+					case X: return threeDimensionalCompare(this.x, this.z, this.y, quad.x, quad.z, quad.y);
+					case Y: return threeDimensionalCompare(this.y, this.x, this.z, quad.y, quad.x, quad.z);
+					default: return threeDimensionalCompare(this.z, this.x, this.y, quad.z, quad.x, quad.y);
+				}
+			}
+		}
+		static int threeDimensionalCompare(short a0, short a1, short a2, short b0, short b1, short b2)
+		{
+			long a = (long) a0 << 48 | (long) a1 << 32 | (long) a2 << 16;
+			long b = (long) b0 << 48 | (long) b1 << 32 | (long) b2 << 16;
+			return Long.compare(a, b);
+		}
+		
+		boolean tryMerge(ReferenceQuad quad, BufferMergeDirectionEnum mergeDirection, boolean markOverlappingQuads)
+		{
+			if (quad.hasError || this.hasError || this.direction != quad.direction)
+				return false;
+			
+			if ((mergeDirection == BufferMergeDirectionEnum.EastWest && this.y != quad.y)
+				|| (mergeDirection == BufferMergeDirectionEnum.NorthSouthOrUpDown && this.x != quad.x))
+			{
+				return false;
+			}
+			
+			short thisPerpendicularCompareStartPos;
+			short thisParallelCompareStartPos;
+			short otherPerpendicularCompareStartPos;
+			short otherParallelCompareStartPos;
+			switch (this.direction.axis)
+			{
+				default:
+				case X:
+					if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+					{
+						thisPerpendicularCompareStartPos = this.z; thisParallelCompareStartPos = this.x;
+						otherPerpendicularCompareStartPos = quad.z; otherParallelCompareStartPos = quad.x;
+					}
+					else
+					{
+						thisPerpendicularCompareStartPos = this.y; thisParallelCompareStartPos = this.z;
+						otherPerpendicularCompareStartPos = quad.y; otherParallelCompareStartPos = quad.z;
+					}
+					break;
+				case Y:
+					if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+					{
+						thisPerpendicularCompareStartPos = this.x; thisParallelCompareStartPos = this.z;
+						otherPerpendicularCompareStartPos = quad.x; otherParallelCompareStartPos = quad.z;
+					}
+					else
+					{
+						thisPerpendicularCompareStartPos = this.z; thisParallelCompareStartPos = this.y;
+						otherPerpendicularCompareStartPos = quad.z; otherParallelCompareStartPos = quad.y;
+					}
+					break;
+				case Z:
+					if (mergeDirection == BufferMergeDirectionEnum.EastWest)
+					{
+						thisPerpendicularCompareStartPos = this.x; thisParallelCompareStartPos = this.z;
+						otherPerpendicularCompareStartPos = quad.x; otherParallelCompareStartPos = quad.z;
+					}
+					else
+					{
+						thisPerpendicularCompareStartPos = this.y; thisParallelCompareStartPos = this.z;
+						otherPerpendicularCompareStartPos = quad.y; otherParallelCompareStartPos = quad.z;
+					}
+					break;
+			}
+			
+			boolean eastWest = (mergeDirection == BufferMergeDirectionEnum.EastWest);
+			short thisPerpendicularCompareWidth = eastWest ? this.widthEastWest : this.widthNorthSouthOrUpDown;
+			short thisParallelCompareWidth = eastWest ? this.widthNorthSouthOrUpDown : this.widthEastWest;
+			short otherPerpendicularCompareWidth = eastWest ? quad.widthEastWest : quad.widthNorthSouthOrUpDown;
+			short otherParallelCompareWidth = eastWest ? quad.widthNorthSouthOrUpDown : quad.widthEastWest;
+			
+			if (thisPerpendicularCompareWidth >= MAX_QUAD_WIDTH)
+			{
+				return false;
+			}
+			if (Math.floorDiv(otherPerpendicularCompareStartPos, MAX_QUAD_WIDTH) != Math.floorDiv(thisPerpendicularCompareStartPos, MAX_QUAD_WIDTH))
+			{
+				return false;
+			}
+			
+			if (thisPerpendicularCompareStartPos + thisPerpendicularCompareWidth < otherPerpendicularCompareStartPos ||
+					thisParallelCompareStartPos != otherParallelCompareStartPos)
+			{
+				return false;
+			}
+			else if (thisPerpendicularCompareStartPos + thisPerpendicularCompareWidth > otherPerpendicularCompareStartPos)
+			{
+				if (thisPerpendicularCompareStartPos < otherPerpendicularCompareStartPos + otherPerpendicularCompareWidth
+					&& markOverlappingQuads)
+				{
+					quad.hasError = true;
+					this.hasError = true;
+				}
+				return false;
+			}
+			
+			if (thisParallelCompareWidth != otherParallelCompareWidth)
+			{
+				return false;
+			}
+			
+			if (this.color != quad.color || this.skyLight != quad.skyLight)
+			{
+				return false;
+			}
+			
+			if (eastWest)
+			{
+				this.widthEastWest += otherPerpendicularCompareWidth;
+			}
+			else
+			{
+				this.widthNorthSouthOrUpDown += otherPerpendicularCompareWidth;
+			}
+			return true;
+		}
+	}
+	
+}
@@ -0,0 +1,220 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tests;
+
+import com.seibel.distanthorizons.core.api.internal.chunkUpdating.ChunkPosQueue;
+import com.seibel.distanthorizons.core.api.internal.chunkUpdating.ChunkUpdateData;
+import com.seibel.distanthorizons.core.pos.DhChunkPos;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Confirms {@link ChunkPosQueue} pops in distance order,
+ * doesn't queue the same position twice,
+ * and doesn't lose or duplicate anything when used from several threads.
+ */
+public class ChunkPosQueueTest
+{
+	private static final int THREAD_COUNT = 8;
+	private static final int OPERATIONS_PER_THREAD = 20_000;
+	/** small enough that threads will regularly try adding the same positions */
+	private static final int MAX_CHUNK_COORDINATE = 40;
+	
+	
+	
+	@Test
+	public void popsInDistanceOrder()
+	{
+		Random random = new Random(1234);
+		ChunkPosQueue queue = new ChunkPosQueue();
+		IdentityHashMap<ChunkUpdateData, Long> posByData = new IdentityHashMap<>();
+		
+		// include positions past the last ring to make sure they're still ordered
+		int maxCoordinate = ChunkPosQueue.RING_COUNT * 2;
+		for (int i = 0; i < 2_000; i++)
+		{
+			long pos = DhChunkPos.encode(random.nextInt(maxCoordinate * 2) - maxCoordinate, random.nextInt(maxCoordinate * 2) - maxCoordinate);
+			ChunkUpdateData data = createUpdateData();
+			if (queue.addItem(pos, data))
+			{
+				posByData.put(data, pos);
+			}
+		}
+		
+		// move the center around so positions have to change rings
+		long center = DhChunkPos.encode(0, 0);
+		for (int i = 0; i < 10; i++)
+		{
+			center = DhChunkPos.encode(DhChunkPos.getX(center) + random.nextInt(21) - 10, DhChunkPos.getZ(center) + random.nextInt(21) - 10);
+			queue.setCenter(center);
+		}
+		
+		long lastClosestDistance = -1;
+		long lastFurthestDistance = Long.MAX_VALUE;
+		boolean popClosest = true;
+		while (!queue.isEmpty())
+		{
+			ChunkUpdateData data = popClosest ? queue.popClosest() : queue.popFurthest();
+			Assert.assertNotNull(data);
+			
+			long distance = getSquaredDistance(posByData.remove(data), center);
+			if (popClosest)
+			{
+				Assert.assertTrue("closest pop went backwards", distance >= lastClosestDistance);
+				lastClosestDistance = distance;
+			}
+			else
+			{
+				Assert.assertTrue("furthest pop went backwards", distance <= lastFurthestDistance);
+				lastFurthestDistance = distance;
+			}
+			
+			popClosest = !popClosest;
+		}
+		
+		Assert.assertTrue(posByData.isEmpty());
+		Assert.assertNull(queue.popClosest());
+		Assert.assertNull(queue.popFurthest());
+	}
+	
+	@Test
+	public void duplicatePositionsAreIgnored()
+	{
+		ChunkPosQueue queue = new ChunkPosQueue();
+		ChunkUpdateData first = createUpdateData();
+		
+		Assert.assertTrue(queue.addItem(new DhChunkPos(3, -7), first));
+		Assert.assertFalse(queue.addItem(new DhChunkPos(3, -7), createUpdateData()));
+		Assert.assertEquals(1, queue.getQueuedCount());
+		Assert.assertTrue(queue.contains(DhChunkPos.encode(3, -7)));
+		
+		// the first item added should be kept
+		Assert.assertSame(first, queue.popClosest());
+		Assert.assertFalse(queue.contains(new DhChunkPos(3, -7)));
+		Assert.assertTrue(queue.isEmpty());
+		
+		// once popped the position can be queued again
+		Assert.assertTrue(queue.addItem(new DhChunkPos(3, -7), createUpdateData()));
+		queue.clear();
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertNull(queue.popFurthest());
+	}
+	
+	@Test
+	public void concurrentStress() throws InterruptedException
+	{
+		ChunkPosQueue queue = new ChunkPosQueue();
+		ConcurrentHashMap<ChunkUpdateData, Boolean> addedData = new ConcurrentHashMap<>();
+		ConcurrentHashMap<ChunkUpdateData, Boolean> poppedData = new ConcurrentHashMap<>();
+		AtomicInteger duplicatePopCount = new AtomicInteger(0);
+		
+		CountDownLatch startLatch = new CountDownLatch(1);
+		ArrayList<Thread> threads = new ArrayList<>();
+		for (int threadIndex = 0; threadIndex < THREAD_COUNT; threadIndex++)
+		{
+			Random random = new Random(threadIndex);
+			Thread thread = new Thread(() ->
+			{
+				try
+				{
+					startLatch.await();
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				
+				for (int i = 0; i < OPERATIONS_PER_THREAD; i++)
+				{
+					int operation = random.nextInt(10);
+					if (operation < 5)
+					{
+						long pos = DhChunkPos.encode(random.nextInt(MAX_CHUNK_COORDINATE * 2) - MAX_CHUNK_COORDINATE, random.nextInt(MAX_CHUNK_COORDINATE * 2) - MAX_CHUNK_COORDINATE);
+						ChunkUpdateData data = createUpdateData();
+						if (queue.addItem(pos, data))
+						{
+							addedData.put(data, true);
+						}
+					}
+					else if (operation < 9)
+					{
+						ChunkUpdateData data = (operation < 7) ? queue.popClosest() : queue.popFurthest();
+						if (data != null && poppedData.put(data, true) != null)
+						{
+							duplicatePopCount.incrementAndGet();
+						}
+					}
+					else
+					{
+						// simulate a player flying around
+						queue.setCenter(DhChunkPos.encode(random.nextInt(20) - 10, random.nextInt(20) - 10));
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		
+		startLatch.countDown();
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		// drain whatever is left
+		ChunkUpdateData data;
+		while ((data = queue.popClosest()) != null)
+		{
+			if (poppedData.put(data, true) != null)
+			{
+				duplicatePopCount.incrementAndGet();
+			}
+		}
+		
+		Assert.assertEquals("items were popped more than once", 0, duplicatePopCount.get());
+		Assert.assertEquals("items were lost", addedData.size(), poppedData.size());
+		Assert.assertTrue(addedData.keySet().containsAll(poppedData.keySet()));
+		Assert.assertEquals(0, queue.getQueuedCount());
+		Assert.assertTrue(queue.isEmpty());
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	private static ChunkUpdateData createUpdateData() { return new ChunkUpdateData(null, null, null, false); }
+	
+	private static long getSquaredDistance(long pos, long center)
+	{
+		long deltaX = DhChunkPos.getX(pos) - DhChunkPos.getX(center);
+		long deltaZ = DhChunkPos.getZ(pos) - DhChunkPos.getZ(center);
+		return deltaX * deltaX + deltaZ * deltaZ;
+	}
+	
+}
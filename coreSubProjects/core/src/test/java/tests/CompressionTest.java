@@ -213,6 +213,13 @@ public class CompressionTest
 		this.testCompressor(compressorName, EDhApiDataCompressionMode.LZMA2);
 	}
 	
+	//@Test
+	public void ZstdColumnar() // compare against Zstd to see what the bit-packed format costs
+	{
+		String compressorName = "Zstd_Columnar";
+		this.testCompressor(compressorName, EDhApiDataCompressionMode.Z_STD_BLOCK, FullDataSourceV2DTO.DATA_FORMAT_COLUMNAR);
+	}
+	
 	
 	
 	//=================//
@@ -220,6 +227,8 @@ public class CompressionTest
 	//=================//
 	
 	private void testCompressor(String compressorName, EDhApiDataCompressionMode compressionMode)
+	{ this.testCompressor(compressorName, compressionMode, FullDataSourceV2DTO.DATA_FORMAT_V2); }
+	private void testCompressor(String compressorName, EDhApiDataCompressionMode compressionMode, byte dataFormatValue)
 	{
 		System.out.println("\n");
 		System.out.println("Testing " + compressorName);
@@ -296,7 +305,7 @@ public class CompressionTest
 						
 						long startWriteNanoTime = System.nanoTime();
 						
-						FullDataSourceV2DTO compressedDto = FullDataSourceV2DTO.CreateFromDataSource(uncompressedDataSource, compressionMode);
+						FullDataSourceV2DTO compressedDto = FullDataSourceV2DTO.CreateFromDataSource(uncompressedDataSource, compressionMode, null, false, null, dataFormatValue);
 						compressedRepo.save(compressedDto);
 						
 						long endWriteNanoTime = System.nanoTime();
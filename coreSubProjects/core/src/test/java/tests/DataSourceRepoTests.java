@@ -20,6 +20,7 @@
 package tests;
 
 import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
+import com.seibel.distanthorizons.api.enums.config.EDhApiWorldCompressionMode;
 import com.seibel.distanthorizons.core.dataObjects.fullData.FullDataPointIdMap;
 import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
 import com.seibel.distanthorizons.core.enums.EDhDirection;
@@ -233,6 +234,64 @@ public class DataSourceRepoTests
 			
 			
 			
+			//================//
+			// partial update //
+			//================//
+			
+			try (FullDataSourceV2 updatedDataSource = savedDto.createUnitTestDataSource())
+			{
+				// only change an interior column so none of the adjacent blobs change
+				LongArrayList newColumn = new LongArrayList();
+				newColumn.add(FullDataPointUtil.encode(0, 5, 10, (byte)1, (byte)2));
+				updatedDataSource.setSingleColumn(newColumn, 10, 10, EDhApiWorldCompressionMode.MERGE_SAME_BLOCKS);
+				
+				try (FullDataSourceV2DTO partialDto = FullDataSourceV2DTO.CreateFromDataSource(updatedDataSource, EDhApiDataCompressionMode.LZMA2, null, true))
+				{
+					Assert.assertTrue("DTO should be partial", partialDto.isPartial());
+					Assert.assertTrue(partialDto.hasDataBlob(FullDataSourceV2DTO.DATA_BLOB_FLAG));
+					for (EDhDirection direction : EDhDirection.CARDINAL_COMPASS)
+					{
+						Assert.assertFalse(partialDto.hasDataBlob(FullDataSourceV2DTO.getAdjBlobFlag(direction)));
+					}
+					
+					repo.save(partialDto);
+					
+					try (FullDataSourceV2DTO updatedDto = repo.getByKey(pos))
+					{
+						Assert.assertNotNull("Failed to find updated DTO", updatedDto);
+						Assert.assertFalse("Stored DTO should be complete", updatedDto.isPartial());
+						assertArraysAreEqual(partialDto.compressedDataByteArray, updatedDto.compressedDataByteArray);
+						assertArraysAreEqual(partialDto.compressedWorldCompressionModeByteArray, updatedDto.compressedWorldCompressionModeByteArray);
+						
+						// unchanged blobs should be left as-is
+						assertArraysAreEqual(savedDto.compressedNorthAdjDataByteArray, updatedDto.compressedNorthAdjDataByteArray);
+						assertArraysAreEqual(savedDto.compressedSouthAdjDataByteArray, updatedDto.compressedSouthAdjDataByteArray);
+						assertArraysAreEqual(savedDto.compressedEastAdjDataByteArray, updatedDto.compressedEastAdjDataByteArray);
+						assertArraysAreEqual(savedDto.compressedWestAdjDataByteArray, updatedDto.compressedWestAdjDataByteArray);
+						
+						try (FullDataSourceV2 reloadedDataSource = updatedDto.createUnitTestDataSource())
+						{
+							for (int x = 0; x < FullDataSourceV2.WIDTH; x++)
+							{
+								for (int z = 0; z < FullDataSourceV2.WIDTH; z++)
+								{
+									int index = FullDataSourceV2.relativePosToIndex(x, z);
+									assertArraysAreEqual("Updated data column at rel pos ["+x+","+z+"] ", updatedDataSource.dataPoints[index], reloadedDataSource.dataPoints[index]);
+								}
+							}
+						}
+					}
+				}
+			}
+			
+			// the updated data source was marked as stored when it was loaded,
+			// new data sources must always be fully encoded
+			try (FullDataSourceV2DTO fullDto = FullDataSourceV2DTO.CreateFromDataSource(originalDataSource, EDhApiDataCompressionMode.LZMA2, null, true))
+			{
+				Assert.assertFalse("New data sources shouldn't create partial DTOs", fullDto.isPartial());
+			}
+			
+			
 			
 			//=========================//
 			// (optional) loop forever //
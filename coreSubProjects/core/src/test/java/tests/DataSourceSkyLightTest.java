@@ -0,0 +1,540 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tests;
+
+import com.seibel.distanthorizons.api.enums.config.EDhApiWorldCompressionMode;
+import com.seibel.distanthorizons.core.dataObjects.fullData.FullDataPointIdMap;
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.generation.DhLightingEngine;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.util.FullDataPointUtil;
+import com.seibel.distanthorizons.core.util.LodUtil;
+import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+import testItems.wrappers.TestBiomeWrapper;
+import testItems.wrappers.TestBlockStateWrapper;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Compares {@link DhLightingEngine#bakeDataSourceSkyLight(FullDataSourceV2, int)}
+ * against the recursive implementation it replaced. <br><br>
+ * 
+ * When light reaches a stack of transparent data points under an opaque one
+ * the recursive version's result depends on the order columns are visited in,
+ * for that terrain we can only confirm that nothing got darker.
+ */
+public class DataSourceSkyLightTest
+{
+	private static final long POS = DhSectionPos.encode((byte) 6, 0, 0);
+	private static final int MAX_Y = 512;
+	
+	private static final TestBlockStateWrapper AIR = new OpacityBlockStateWrapper("air", LodUtil.BLOCK_FULLY_TRANSPARENT);
+	private static final TestBlockStateWrapper WATER = new OpacityBlockStateWrapper("water", 2);
+	private static final TestBlockStateWrapper STONE = new OpacityBlockStateWrapper("stone", LodUtil.BLOCK_FULLY_OPAQUE);
+	private static final TestBiomeWrapper BIOME = new TestBiomeWrapper("plains");
+	
+	
+	
+	//=======//
+	// tests //
+	//=======//
+	
+	@Test
+	public void matchesRecursive() throws DataCorruptedException
+	{
+		for (ETerrain terrain : new ETerrain[] { ETerrain.OPEN, ETerrain.CAVES })
+		{
+			for (int seed = 0; seed < 8; seed++)
+			{
+				try (FullDataSourceV2 expected = createDataSource(seed, terrain, false);
+					FullDataSourceV2 actual = createDataSource(seed, terrain, false))
+				{
+					RecursiveSkyLight.bakeDataSourceSkyLight(expected, LodUtil.MAX_MC_LIGHT);
+					DhLightingEngine.INSTANCE.bakeDataSourceSkyLight(actual, LodUtil.MAX_MC_LIGHT);
+					
+					for (int i = 0; i < expected.dataPoints.length; i++)
+					{
+						Assert.assertArrayEquals(terrain+" seed ["+seed+"] column ["+i+"]", expected.dataPoints[i].toLongArray(), actual.dataPoints[i].toLongArray());
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void neverDarkerThanRecursive() throws DataCorruptedException
+	{
+		for (int seed = 0; seed < 8; seed++)
+		{
+			try (FullDataSourceV2 expected = createDataSource(seed, ETerrain.STACKED_POCKETS, false);
+				FullDataSourceV2 actual = createDataSource(seed, ETerrain.STACKED_POCKETS, false))
+			{
+				RecursiveSkyLight.bakeDataSourceSkyLight(expected, LodUtil.MAX_MC_LIGHT);
+				DhLightingEngine.INSTANCE.bakeDataSourceSkyLight(actual, LodUtil.MAX_MC_LIGHT);
+				
+				int airId = actual.mapping.addIfNotPresentAndGetId(BIOME, AIR);
+				for (int i = 0; i < expected.dataPoints.length; i++)
+				{
+					LongArrayList expectedColumn = expected.dataPoints[i];
+					LongArrayList actualColumn = actual.dataPoints[i];
+					Assert.assertEquals(expectedColumn.size(), actualColumn.size());
+					
+					for (int index = 0; index < actualColumn.size(); index++)
+					{
+						long actualPoint = actualColumn.getLong(index);
+						if (FullDataPointUtil.getId(actualPoint) == airId)
+						{
+							Assert.assertTrue("seed ["+seed+"] column ["+i+"] index ["+index+"] is darker than the recursive result",
+								FullDataPointUtil.getSkyLight(actualPoint) >= FullDataPointUtil.getSkyLight(expectedColumn.getLong(index)));
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void independentOfColumnOrder() throws DataCorruptedException
+	{
+		for (int seed = 0; seed < 8; seed++)
+		{
+			try (FullDataSourceV2 dataSource = createDataSource(seed, ETerrain.STACKED_POCKETS, false);
+				FullDataSourceV2 mirroredDataSource = createDataSource(seed, ETerrain.STACKED_POCKETS, true))
+			{
+				DhLightingEngine.INSTANCE.bakeDataSourceSkyLight(dataSource, LodUtil.MAX_MC_LIGHT);
+				DhLightingEngine.INSTANCE.bakeDataSourceSkyLight(mirroredDataSource, LodUtil.MAX_MC_LIGHT);
+				
+				for (int relX = 0; relX < FullDataSourceV2.WIDTH; relX++)
+				{
+					for (int relZ = 0; relZ < FullDataSourceV2.WIDTH; relZ++)
+					{
+						Assert.assertArrayEquals("seed ["+seed+"] pos ["+relX+","+relZ+"]",
+							dataSource.getColumnAtRelPos(relX, relZ).toLongArray(),
+							mirroredDataSource.getColumnAtRelPos(FullDataSourceV2.WIDTH - 1 - relX, relZ).toLongArray());
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void caveLitFromTheSide() throws DataCorruptedException
+	{
+		LongArrayList[] columns = new LongArrayList[FullDataSourceV2.WIDTH * FullDataSourceV2.WIDTH];
+		FullDataPointIdMap mapping = new FullDataPointIdMap(POS);
+		int airId = mapping.addIfNotPresentAndGetId(BIOME, AIR);
+		int stoneId = mapping.addIfNotPresentAndGetId(BIOME, STONE);
+		
+		for (int i = 0; i < columns.length; i++)
+		{
+			columns[i] = new LongArrayList();
+			columns[i].add(createDataPoint(airId, 100, MAX_Y));
+			columns[i].add(createDataPoint(stoneId, 0, 100));
+		}
+		
+		// a stone cap with a pocket of air under it,
+		// the pocket overlaps the open air in the adjacent columns
+		LongArrayList caveColumn = columns[FullDataSourceV2.relativePosToIndex(10, 10)];
+		caveColumn.clear();
+		caveColumn.add(createDataPoint(airId, 120, MAX_Y));
+		caveColumn.add(createDataPoint(stoneId, 110, 120));
+		caveColumn.add(createDataPoint(airId, 90, 110));
+		caveColumn.add(createDataPoint(stoneId, 0, 90));
+		
+		try (FullDataSourceV2 dataSource = FullDataSourceV2.createWithData(POS, mapping, columns, createCompressionModes()))
+		{
+			DhLightingEngine.INSTANCE.bakeDataSourceSkyLight(dataSource, LodUtil.MAX_MC_LIGHT);
+			
+			// the data source has its own copy of the columns
+			caveColumn = dataSource.getColumnAtRelPos(10, 10);
+			Assert.assertEquals(LodUtil.MAX_MC_LIGHT, FullDataPointUtil.getSkyLight(caveColumn.getLong(0)));
+			Assert.assertEquals(LodUtil.MAX_MC_LIGHT - 1, FullDataPointUtil.getSkyLight(caveColumn.getLong(2)));
+			// the floor copies the pocket's light
+			Assert.assertEquals(LodUtil.MAX_MC_LIGHT - 1, FullDataPointUtil.getSkyLight(caveColumn.getLong(3)));
+		}
+	}
+	
+	
+	
+	//=========//
+	// helpers //
+	//=========//
+	
+	/** @param mirrorX if true the columns will be flipped along the X axis */
+	private static FullDataSourceV2 createDataSource(long seed, ETerrain terrain, boolean mirrorX) throws DataCorruptedException
+	{
+		Random random = new Random(seed);
+		
+		FullDataPointIdMap mapping = new FullDataPointIdMap(POS);
+		int airId = mapping.addIfNotPresentAndGetId(BIOME, AIR);
+		int waterId = mapping.addIfNotPresentAndGetId(BIOME, WATER);
+		int stoneId = mapping.addIfNotPresentAndGetId(BIOME, STONE);
+		
+		LongArrayList[] columns = new LongArrayList[FullDataSourceV2.WIDTH * FullDataSourceV2.WIDTH];
+		for (int relX = 0; relX < FullDataSourceV2.WIDTH; relX++)
+		{
+			for (int relZ = 0; relZ < FullDataSourceV2.WIDTH; relZ++)
+			{
+				// columns are listed top-down
+				LongArrayList column = new LongArrayList();
+				
+				if (terrain == ETerrain.STACKED_POCKETS)
+				{
+					// random data points, 
+					// transparent data points can be stacked on top of each other anywhere
+					int maxY = MAX_Y;
+					boolean transparent = random.nextInt(5) != 0;
+					while (maxY > 0)
+					{
+						int minY = Math.max(0, maxY - 1 - random.nextInt(12));
+						int id = transparent ? airId : (random.nextInt(6) == 0 ? waterId : stoneId);
+						column.add(createDataPoint(id, minY, maxY, random));
+						
+						maxY = minY;
+						transparent = random.nextBoolean();
+					}
+				}
+				else
+				{
+					int surfaceY = 60 + random.nextInt(40);
+					column.add(createDataPoint(airId, surfaceY, MAX_Y, random));
+					
+					int stoneTopY = surfaceY;
+					if (random.nextInt(4) == 0)
+					{
+						stoneTopY = surfaceY - 1 - random.nextInt(6);
+						column.add(createDataPoint(waterId, stoneTopY, surfaceY, random));
+					}
+					
+					int caveTopY = stoneTopY - 2 - random.nextInt(20);
+					int caveBottomY = caveTopY - 1 - random.nextInt(10);
+					if (terrain == ETerrain.CAVES && random.nextInt(2) == 0)
+					{
+						column.add(createDataPoint(stoneId, caveTopY, stoneTopY, random));
+						column.add(createDataPoint(airId, caveBottomY, caveTopY, random));
+						column.add(createDataPoint(stoneId, 0, caveBottomY, random));
+					}
+					else
+					{
+						column.add(createDataPoint(stoneId, 0, stoneTopY, random));
+					}
+				}
+				
+				FullDataSourceV2.throwIfDataColumnInWrongOrder(POS, column);
+				
+				int x = mirrorX ? FullDataSourceV2.WIDTH - 1 - relX : relX;
+				columns[FullDataSourceV2.relativePosToIndex(x, relZ)] = column;
+			}
+		}
+		
+		return FullDataSourceV2.createWithData(POS, mapping, columns, createCompressionModes());
+	}
+	private static byte[] createCompressionModes()
+	{
+		byte[] compressionModes = new byte[FullDataSourceV2.WIDTH * FullDataSourceV2.WIDTH];
+		Arrays.fill(compressionModes, EDhApiWorldCompressionMode.VISUALLY_EQUAL.value);
+		return compressionModes;
+	}
+	
+	/** the starting sky light is random so stale light values are also covered */
+	private static long createDataPoint(int id, int minY, int maxY, Random random) throws DataCorruptedException
+	{ return FullDataPointUtil.encode(id, maxY - minY, minY, LodUtil.MIN_MC_LIGHT, (byte) random.nextInt(LodUtil.MAX_MC_LIGHT + 1)); }
+	private static long createDataPoint(int id, int minY, int maxY) throws DataCorruptedException
+	{ return FullDataPointUtil.encode(id, maxY - minY, minY, LodUtil.MIN_MC_LIGHT, LodUtil.MIN_MC_LIGHT); }
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	private enum ETerrain
+	{
+		/** a surface with some water on it */
+		OPEN,
+		/** {@link ETerrain#OPEN} with a pocket of air under the surface in some columns */
+		CAVES,
+		/** random stacks of data points, with no surface */
+		STACKED_POCKETS,
+	}
+	
+	private static class OpacityBlockStateWrapper extends TestBlockStateWrapper
+	{
+		private final int opacity;
+		
+		public OpacityBlockStateWrapper(String name, int opacity) 
+		{
+			super(name);
+			this.opacity = opacity;
+		}
+		
+		@Override
+		public int getOpacity() { return this.opacity; }
+		
+	}
+	
+	/** The recursive implementation {@link DhLightingEngine#bakeDataSourceSkyLight} used before the column passes. */
+	private static class RecursiveSkyLight
+	{
+		private static final byte[] ADJACENT_DIRECTION_OFFSETS = new byte[]
+				{
+						-1, 0,
+						+1, 0,
+						0, -1,
+						0, +1
+				};
+		
+		/** @author BuilderB0y */
+		public static void bakeDataSourceSkyLight(FullDataSourceV2 dataSource, int maxSkyLight)
+		{
+			// create a cache of all the IDs which are completely transparent.
+			// FullDataPointIdMap is thread-safe with locks, and is also a map lookup,
+			// and both of these things add a bit of overhead which is not necessary
+			// in this context.
+			// note: since IDs map to both biomes and blocks, there can be more than
+			// one ID which corresponds to air.
+			BitSet airIDs = new BitSet(dataSource.mapping.size());
+			for (int id = 0, size = dataSource.mapping.size(); id < size; id++)
+			{
+				if (dataSource.mapping.getBlockStateWrapper(id).getOpacity() == 0)
+				{
+					airIDs.set(id, true);
+				}
+			}
+			
+			
+			for (int z = 0; z < FullDataSourceV2.WIDTH; z++)
+			{
+				for (int x = 0; x < FullDataSourceV2.WIDTH; x++)
+				{
+					LongArrayList dataPoints = dataSource.getColumnAtRelPos(x, z);
+					if (dataPoints != null && !dataPoints.isEmpty())
+					{
+						// iterate through the data points in this column top-down
+						// until we reach light level 0 in some way. at this point,
+						// no more propagation needs to be performed for this column.
+						int size = dataPoints.size();
+						for (int index = 0; index < size; index++)
+						{
+							long point = dataPoints.getLong(index);
+							// if the data point in the column is transparent,
+							// then fill it with light and then propagate 
+							// that light both horizontally and downwards.
+							if (airIDs.get(FullDataPointUtil.getId(point)))
+							{
+								int skylight;
+								if (index == 0)
+								{
+									// top-most data point in the column.
+									skylight = maxSkyLight;
+								}
+								else
+								{
+									// handle down propagation here. sort of.
+									// down propagation is also handled partially elsewhere.
+									// basically if the data point above is transparent,
+									// we copy its light level.
+									// otherwise, if the data point above is opaque,
+									// then no light can propagate downwards from it.
+									// therefore, this data point should be light level 0*
+									// and no more propagation needs to be performed for this column.
+									//
+									// *unless light propagates into it horizontally,
+									// but that is handled separately.
+									long above = dataPoints.getLong(index - 1);
+									if (airIDs.get(FullDataPointUtil.getId(above)))
+									{
+										skylight = FullDataPointUtil.getSkyLight(above);
+									}
+									else
+									{
+										continue;
+									}
+								}
+								
+								// update the data point to contain the correct starting skylight level.
+								point = FullDataPointUtil.setSkyLight(point, skylight);
+								dataPoints.set(index, point);
+								// now for the propagation.
+								recursivelyLightAdjacentDataPoints(dataSource, airIDs, x, z, point);
+							}
+						}
+					}
+				}
+			}
+			
+			
+			// at this point, all transparent data points have been lit,
+			// but opaque ones still have light level 0.
+			// in this loop we make opaque data points copy the light level
+			// above them if, and only if, the data point above is translucent.
+			// with one exception: if the data point above is only partially translucent,
+			// we use a slightly different way of computing how much light it absorbed.
+			// this is how we handle water and ocean floors.
+			// note that this alternate logic assumes the 
+			// data point above is being lit from the top.
+			// this is a fine assumption for water and oceans.
+			for (LongArrayList list : dataSource.dataPoints)
+			{
+				if (list != null)
+				{
+					for (int index = 0, size = list.size(); index < size; index++)
+					{
+						long dataPoint = list.getLong(index);
+						if (index == 0)
+						{
+							// top data point, assume "above" has the max sky light.
+							dataPoint = FullDataPointUtil.setSkyLight(dataPoint, maxSkyLight);
+							list.set(index, dataPoint);
+						}
+						else
+						{
+							// there is another data point above this one.
+							// check to see how opaque this data point is first.
+							// we will check the above one after that.
+							if (!airIDs.get(FullDataPointUtil.getId(dataPoint)))
+							{
+								// this data point is not transparent.
+								// it should be lit from above.
+								long above = list.getLong(index - 1);
+								int aboveLight = FullDataPointUtil.getSkyLight(above);
+								if (airIDs.get(FullDataPointUtil.getId(above)))
+								{
+									// the above data point is transparent,
+									// and does not absorb any light.
+									// its light level can be copied as-is.
+									dataPoint = FullDataPointUtil.setSkyLight(dataPoint, aboveLight);
+									list.set(index, dataPoint);
+								}
+								else
+								{
+									// determine how much light should be absorbed by this column
+									int absorption = dataSource.mapping.getBlockStateWrapper(FullDataPointUtil.getId(above)).getOpacity() * FullDataPointUtil.getHeight(above);
+									if (absorption < aboveLight)
+									{
+										// the above data point is partially translucent,
+										// and absorbs some light. however, it did not absorb
+										// enough light to bring the light level down to 0.
+										// so, the remaining light can still be copied.
+										dataPoint = FullDataPointUtil.setSkyLight(dataPoint, aboveLight - absorption);
+										list.set(index, dataPoint);
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		/** @author BuilderB0y */
+		private static void recursivelyLightAdjacentDataPoints(
+				FullDataSourceV2 chunk,
+				BitSet airIDs,
+				int relativeX,
+				int relativeZ,
+				long dataPoint
+			)
+		{
+			int lightLevel = FullDataPointUtil.getSkyLight(dataPoint);
+			// early exit condition:
+			// in this case, propagating light is guaranteed to be 0 at adjacent positions,
+			// and therefore we do not need to waste time propagating it.
+			if (lightLevel <= 1)
+			{
+				return;
+			}
+			
+			
+			
+			int minY = FullDataPointUtil.getBottomY(dataPoint);
+			int maxY = FullDataPointUtil.getHeight(dataPoint) + minY;
+			// try to propagate in all 4 directions.
+			for (int offsetIndex = 0; offsetIndex < ADJACENT_DIRECTION_OFFSETS.length; )
+			{
+				int adjacentX = relativeX + ADJACENT_DIRECTION_OFFSETS[offsetIndex++];
+				int adjacentZ = relativeZ + ADJACENT_DIRECTION_OFFSETS[offsetIndex++];
+				
+				// check if the adjacent position is within the bounds of this data source...
+				if (adjacentX >= 0 && adjacentX < FullDataSourceV2.WIDTH && adjacentZ >= 0 && adjacentZ < FullDataSourceV2.WIDTH)
+				{
+					LongArrayList adjacentDataPoints = chunk.getColumnAtRelPos(adjacentX, adjacentZ);
+					// ...and also check to make sure we have some data points
+					// (potentially transparent ones) to propagate through in the adjacent column.
+					if (adjacentDataPoints != null)
+					{
+						// try to find adjacent data points we can propagate into.
+						// we go top-down for this, which will be important for some
+						// later conditions.
+						int size = adjacentDataPoints.size();
+						for (int adjacentIndex = 0; adjacentIndex < size; adjacentIndex++)
+						{
+							long adjacentDataPoint = adjacentDataPoints.getLong(adjacentIndex);
+							int adjacentMinY = FullDataPointUtil.getBottomY(adjacentDataPoint);
+							int adjacentMaxY = FullDataPointUtil.getHeight(adjacentDataPoint) + adjacentMinY;
+							if (adjacentMinY >= maxY)
+							{
+								// if the adjacent data point is completely above this one,
+								// then there is no overlap between this one and the adjacent one,
+								// and therefore light cannot propagate here.
+								// try to propagate to the next data point down from the adjacent one.
+								continue;
+							}
+							else if (adjacentMaxY <= minY)
+							{
+								// if the adjacent data point is completely below this one,
+								// then it also has no overlap and can't propagate,
+								// but since we're going top-down, neither can any subsequent adjacent data points.
+								break;
+							}
+							else if (!airIDs.get(FullDataPointUtil.getId(adjacentDataPoint)))
+							{
+								// assume for now that we cannot propagate into non-transparent data points.
+								continue;
+							}
+							else
+							{
+								// now we can try to propagate.
+								int adjacentLightLevel = FullDataPointUtil.getSkyLight(adjacentDataPoint);
+								// if the resulting light level after propagation would INCREASE
+								// the light level of the adjacent data point, then propagate to it.
+								// otherwise, don't do that.
+								if (lightLevel - 1 > adjacentLightLevel)
+								{
+									adjacentDataPoint = FullDataPointUtil.setSkyLight(adjacentDataPoint, lightLevel - 1);
+									adjacentDataPoints.set(adjacentIndex, adjacentDataPoint);
+									// if propagation succeeded, recursively propagate again starting at the adjacent data point.
+									recursivelyLightAdjacentDataPoints(chunk, airIDs, adjacentX, adjacentZ, adjacentDataPoint);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		
+	}
+	
+}
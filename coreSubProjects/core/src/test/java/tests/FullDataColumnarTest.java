@@ -0,0 +1,162 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tests;
+
+import com.seibel.distanthorizons.core.dataObjects.fullData.sources.FullDataSourceV2;
+import com.seibel.distanthorizons.core.enums.EDhDirection;
+import com.seibel.distanthorizons.core.sql.dto.util.FullDataColumnarUtil;
+import com.seibel.distanthorizons.core.sql.dto.util.FullDataMinMaxPosUtil;
+import com.seibel.distanthorizons.core.util.FullDataPointUtil;
+import com.seibel.distanthorizons.core.util.objects.DataCorruptedException;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class FullDataColumnarTest
+{
+	private static final EDhDirection[] BLOB_DIRECTIONS = { null, EDhDirection.NORTH, EDhDirection.SOUTH, EDhDirection.EAST, EDhDirection.WEST };
+	
+	
+	
+	@Test
+	public void roundTripTest() throws DataCorruptedException
+	{
+		LongArrayList[] inputDataArray = createRandomDataArray(new Random(123));
+		
+		for (EDhDirection direction : BLOB_DIRECTIONS)
+		{
+			long blobMinMaxPos = FullDataMinMaxPosUtil.getEncodedMinMaxPosForBlob(direction);
+			
+			ByteArrayList blob = new ByteArrayList();
+			FullDataColumnarUtil.writeBlob(inputDataArray, blob, blobMinMaxPos);
+			
+			LongArrayList[] outputDataArray = createEmptyDataArray();
+			FullDataColumnarUtil.readBlob(blob, outputDataArray, blobMinMaxPos, blobMinMaxPos);
+			
+			assertColumnsEqual(inputDataArray, outputDataArray, blobMinMaxPos);
+		}
+	}
+	
+	@Test
+	public void singleColumnTest() throws DataCorruptedException
+	{
+		LongArrayList[] inputDataArray = createRandomDataArray(new Random(456));
+		
+		ByteArrayList[] blobs = new ByteArrayList[BLOB_DIRECTIONS.length];
+		for (int i = 0; i < BLOB_DIRECTIONS.length; i++)
+		{
+			blobs[i] = new ByteArrayList();
+			FullDataColumnarUtil.writeBlob(inputDataArray, blobs[i], FullDataMinMaxPosUtil.getEncodedMinMaxPosForBlob(BLOB_DIRECTIONS[i]));
+		}
+		
+		for (int relX = 0; relX < FullDataSourceV2.WIDTH; relX++)
+		{
+			for (int relZ = 0; relZ < FullDataSourceV2.WIDTH; relZ++)
+			{
+				EDhDirection direction = FullDataMinMaxPosUtil.getBlobDirectionForColumn(relX, relZ);
+				int blobIndex = 0;
+				while (BLOB_DIRECTIONS[blobIndex] != direction)
+				{
+					blobIndex++;
+				}
+				
+				long columnMinMaxPos = FullDataMinMaxPosUtil.getEncodedColumnMinMaxPos(relX, relZ);
+				LongArrayList[] outputDataArray = createEmptyDataArray();
+				FullDataColumnarUtil.readBlob(blobs[blobIndex], outputDataArray, FullDataMinMaxPosUtil.getEncodedMinMaxPosForBlob(direction), columnMinMaxPos);
+				
+				// only the requested column should be decoded
+				for (int i = 0; i < outputDataArray.length; i++)
+				{
+					if (i == FullDataSourceV2.relativePosToIndex(relX, relZ))
+					{
+						Assert.assertEquals(inputDataArray[i], outputDataArray[i]);
+					}
+					else
+					{
+						Assert.assertTrue(outputDataArray[i].isEmpty());
+					}
+				}
+			}
+		}
+	}
+	
+	@Test(expected = DataCorruptedException.class)
+	public void truncatedBlobTest() throws DataCorruptedException
+	{
+		LongArrayList[] inputDataArray = createRandomDataArray(new Random(789));
+		long blobMinMaxPos = FullDataMinMaxPosUtil.getEncodedMinMaxPosForBlob(null);
+		
+		ByteArrayList blob = new ByteArrayList();
+		FullDataColumnarUtil.writeBlob(inputDataArray, blob, blobMinMaxPos);
+		blob.size(blob.size() / 2);
+		
+		FullDataColumnarUtil.readBlob(blob, createEmptyDataArray(), blobMinMaxPos, blobMinMaxPos);
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	private static LongArrayList[] createEmptyDataArray()
+	{
+		LongArrayList[] dataArray = new LongArrayList[FullDataSourceV2.WIDTH * FullDataSourceV2.WIDTH];
+		for (int i = 0; i < dataArray.length; i++)
+		{
+			dataArray[i] = new LongArrayList();
+		}
+		return dataArray;
+	}
+	
+	private static LongArrayList[] createRandomDataArray(Random random) throws DataCorruptedException
+	{
+		LongArrayList[] dataArray = createEmptyDataArray();
+		for (LongArrayList column : dataArray)
+		{
+			// some columns are left empty to make sure empty columns are handled
+			int dataPointCount = random.nextInt(8);
+			int bottomY = random.nextInt(64);
+			for (int i = 0; i < dataPointCount; i++)
+			{
+				int height = 1 + random.nextInt(32);
+				column.add(FullDataPointUtil.encode(random.nextInt(300), height, bottomY, (byte) random.nextInt(16), (byte) random.nextInt(16)));
+				bottomY += height;
+			}
+		}
+		return dataArray;
+	}
+	
+	private static void assertColumnsEqual(LongArrayList[] expectedDataArray, LongArrayList[] actualDataArray, long minMaxPos)
+	{
+		for (int relX = FullDataMinMaxPosUtil.getAdjMinX(minMaxPos); relX < FullDataMinMaxPosUtil.getAdjMaxX(minMaxPos); relX++)
+		{
+			for (int relZ = FullDataMinMaxPosUtil.getAdjMinZ(minMaxPos); relZ < FullDataMinMaxPosUtil.getAdjMaxZ(minMaxPos); relZ++)
+			{
+				int index = FullDataSourceV2.relativePosToIndex(relX, relZ);
+				Assert.assertEquals("column X["+relX+"] Z["+relZ+"]", expectedDataArray[index], actualDataArray[index]);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,285 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tests;
+
+import com.seibel.distanthorizons.core.multiplayer.fullData.FullDataPayload;
+import com.seibel.distanthorizons.core.multiplayer.fullData.FullDataPayloadSender;
+import com.seibel.distanthorizons.core.multiplayer.fullData.SharedBandwidthLimit;
+import com.seibel.distanthorizons.core.network.messages.AbstractNetworkMessage;
+import com.seibel.distanthorizons.core.network.messages.fullData.FullDataSplitMessage;
+import com.seibel.distanthorizons.core.network.session.NetworkSession;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.util.math.Vec3d;
+import com.seibel.distanthorizons.core.wrapperInterfaces.misc.IServerPlayerWrapper;
+import com.seibel.distanthorizons.core.wrapperInterfaces.world.IServerLevelWrapper;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Confirms {@link FullDataPayloadSender} sends the closest transfers first,
+ * resumes pre-empted transfers instead of restarting them,
+ * drops cancelled transfers,
+ * and that the {@link SharedBandwidthLimit} splits the global limit fairly between players.
+ */
+public class FullDataPayloadSenderTest
+{
+	private static final int SLICE_SIZE = FullDataPayloadSender.INTERLEAVE_SLICE_SIZE_IN_BYTES;
+	/** slightly more than {@link FullDataPayloadSender#MAX_ACTIVE_TRANSFER_COUNT} slices per tick */
+	private static final int FOUR_SLICES_PER_TICK_KBPS = (4 * SLICE_SIZE * SharedBandwidthLimit.TICK_RATE) / 1000 + 1;
+	private static final int MAX_TICK_COUNT = 100;
+	
+	
+	
+	@Test
+	public void closestTransfersAreSentFirst()
+	{
+		SharedBandwidthLimit bandwidthLimit = new SharedBandwidthLimit(() -> 0, false);
+		TestSession session = new TestSession();
+		ArrayList<Integer> finishedSectionX = new ArrayList<>();
+		
+		try (FullDataPayloadSender sender = new FullDataPayloadSender(session, () -> 0, bandwidthLimit))
+		{
+			for (int sectionX : new int[]{ 4, 1, 5, 0, 3, 2 })
+			{
+				queueTransfer(sender, sectionX, 1_000, () -> finishedSectionX.add(sectionX));
+			}
+			
+			tickUntilIdle(bandwidthLimit);
+		}
+		
+		Assert.assertArrayEquals(new Integer[]{ 0, 1, 2, 3, 4, 5 }, finishedSectionX.toArray(new Integer[0]));
+	}
+	
+	@Test
+	public void preemptedTransferIsResumed()
+	{
+		SharedBandwidthLimit bandwidthLimit = new SharedBandwidthLimit(() -> 0, false);
+		TestSession session = new TestSession();
+		ArrayList<Integer> finishedSectionX = new ArrayList<>();
+		HashMap<Integer, Integer> sizeByBufferId = new HashMap<>();
+		
+		try (FullDataPayloadSender sender = new FullDataPayloadSender(session, () -> FOUR_SLICES_PER_TICK_KBPS, bandwidthLimit))
+		{
+			// fill every active slot with far away transfers
+			for (int sectionX = 10; sectionX < 10 + FullDataPayloadSender.MAX_ACTIVE_TRANSFER_COUNT; sectionX++)
+			{
+				int finalSectionX = sectionX;
+				FullDataPayload payload = queueTransfer(sender, sectionX, 3 * SLICE_SIZE, () -> finishedSectionX.add(finalSectionX));
+				sizeByBufferId.put(payload.dtoBufferId, 3 * SLICE_SIZE);
+			}
+			bandwidthLimit.tick();
+			
+			// the closer transfer should pre-empt the furthest one
+			FullDataPayload payload = queueTransfer(sender, 0, 1_000, () -> finishedSectionX.add(0));
+			sizeByBufferId.put(payload.dtoBufferId, 1_000);
+			tickUntilIdle(bandwidthLimit);
+		}
+		
+		Assert.assertEquals(FullDataPayloadSender.MAX_ACTIVE_TRANSFER_COUNT + 1, finishedSectionX.size());
+		Assert.assertEquals("closer transfer wasn't sent first", 0, finishedSectionX.get(0).intValue());
+		
+		// a restarted transfer would be sent with a second first slice and more bytes than its size
+		for (int bufferId : sizeByBufferId.keySet())
+		{
+			Assert.assertEquals("transfer was restarted", 1, session.firstSliceCountByBufferId.get(bufferId).intValue());
+			Assert.assertEquals("transfer was resent", sizeByBufferId.get(bufferId), session.sentBytesByBufferId.get(bufferId));
+		}
+	}
+	
+	@Test
+	public void cancelledTransfersAreDropped()
+	{
+		SharedBandwidthLimit bandwidthLimit = new SharedBandwidthLimit(() -> 0, false);
+		TestSession session = new TestSession();
+		ArrayList<String> events = new ArrayList<>();
+		
+		FullDataPayload partialPayload;
+		FullDataPayload finishedPayload;
+		FullDataPayload waitingPayload;
+		try (FullDataPayloadSender sender = new FullDataPayloadSender(session, () -> FOUR_SLICES_PER_TICK_KBPS, bandwidthLimit))
+		{
+			partialPayload = queueTransfer(sender, 0, 8 * SLICE_SIZE, 1, events);
+			finishedPayload = queueTransfer(sender, 1, 8 * SLICE_SIZE, 2, events);
+			waitingPayload = queueTransfer(sender, 2, 8 * SLICE_SIZE, 3, events);
+			
+			// cancelled before anything was sent
+			Assert.assertTrue(sender.cancelTransfer(3));
+			
+			bandwidthLimit.tick();
+			Assert.assertTrue("transfer wasn't partially sent", session.sentBytesByBufferId.containsKey(partialPayload.dtoBufferId));
+			int partialSentBytes = session.sentBytesByBufferId.get(partialPayload.dtoBufferId);
+			
+			// cancelled part way through
+			Assert.assertTrue(sender.cancelTransfer(1));
+			Assert.assertFalse("transfer was cancelled twice", sender.cancelTransfer(1));
+			
+			tickUntilIdle(bandwidthLimit);
+			Assert.assertEquals("cancelled transfer was still sent", partialSentBytes, session.sentBytesByBufferId.get(partialPayload.dtoBufferId).intValue());
+			Assert.assertFalse("cancelled transfer was sent", session.sentBytesByBufferId.containsKey(waitingPayload.dtoBufferId));
+			Assert.assertFalse("finished transfer could be cancelled", sender.cancelTransfer(2));
+		}
+		
+		Assert.assertArrayEquals(new String[]{ "cancelled 3", "cancelled 1", "finished 2" }, events.toArray(new String[0]));
+		
+		// every reference held by the sender and the sent slices should be released
+		Assert.assertEquals(0, partialPayload.dtoBuffer.refCnt());
+		Assert.assertEquals(0, waitingPayload.dtoBuffer.refCnt());
+		Assert.assertEquals(0, finishedPayload.dtoBuffer.refCnt());
+	}
+	
+	@Test
+	public void bandwidthIsSharedFairly()
+	{
+		final int globalKBps = 2_000;
+		final int limitedPlayerKBps = 200;
+		final int tickCount = 20;
+		
+		SharedBandwidthLimit bandwidthLimit = new SharedBandwidthLimit(() -> globalKBps, false);
+		TestSession firstSession = new TestSession();
+		TestSession secondSession = new TestSession();
+		TestSession limitedSession = new TestSession();
+		
+		try (FullDataPayloadSender firstSender = new FullDataPayloadSender(firstSession, () -> 0, bandwidthLimit);
+			FullDataPayloadSender secondSender = new FullDataPayloadSender(secondSession, () -> 0, bandwidthLimit);
+			FullDataPayloadSender limitedSender = new FullDataPayloadSender(limitedSession, () -> limitedPlayerKBps, bandwidthLimit))
+		{
+			// more than can be sent during the test
+			for (int sectionX = 0; sectionX < 4; sectionX++)
+			{
+				queueTransfer(firstSender, sectionX, 8 * SLICE_SIZE, () -> { });
+				queueTransfer(secondSender, sectionX, 8 * SLICE_SIZE, () -> { });
+				queueTransfer(limitedSender, sectionX, 8 * SLICE_SIZE, () -> { });
+			}
+			
+			for (int i = 0; i < tickCount; i++)
+			{
+				bandwidthLimit.tick();
+			}
+		}
+		
+		// + 1 to match the rounding in the bandwidth limits
+		long globalTickBytes = (globalKBps * 1000L) / SharedBandwidthLimit.TICK_RATE + 1;
+		long limitedTickBytes = (limitedPlayerKBps * 1000L) / SharedBandwidthLimit.TICK_RATE + 1;
+		
+		Assert.assertEquals("player limit wasn't respected", tickCount * limitedTickBytes, limitedSession.getTotalSentBytes());
+		Assert.assertEquals("global limit wasn't used completely", tickCount * globalTickBytes,
+				firstSession.getTotalSentBytes() + secondSession.getTotalSentBytes() + limitedSession.getTotalSentBytes());
+		
+		// the limited player's unused share should be split between the other two
+		long expectedUnlimitedBytes = tickCount * (globalTickBytes - limitedTickBytes) / 2;
+		Assert.assertEquals(expectedUnlimitedBytes, firstSession.getTotalSentBytes(), SLICE_SIZE);
+		Assert.assertEquals(expectedUnlimitedBytes, secondSession.getTotalSentBytes(), SLICE_SIZE);
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	/** @return the queued payload, its buffer has already been released by the caller */
+	private static FullDataPayload queueTransfer(FullDataPayloadSender sender, int sectionX, int sizeInBytes, Runnable sendFinalMessage)
+	{
+		FullDataPayload payload = createPayload(sizeInBytes);
+		sender.sendInChunks(payload, DhSectionPos.encode(DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL, sectionX, 0), FullDataPayloadSender.ETransferType.GENERATION, sendFinalMessage);
+		payload.dtoBuffer.release();
+		return payload;
+	}
+	/** @return the queued payload, its buffer has already been released by the caller */
+	private static FullDataPayload queueTransfer(FullDataPayloadSender sender, int sectionX, int sizeInBytes, long requestId, ArrayList<String> events)
+	{
+		FullDataPayload payload = createPayload(sizeInBytes);
+		sender.sendInChunks(payload, DhSectionPos.encode(DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL, sectionX, 0), FullDataPayloadSender.ETransferType.GENERATION, requestId,
+				() -> events.add("finished " + requestId),
+				() -> events.add("cancelled " + requestId));
+		payload.dtoBuffer.release();
+		return payload;
+	}
+	
+	private static FullDataPayload createPayload(int sizeInBytes)
+	{ return new FullDataPayload(Unpooled.wrappedBuffer(new byte[sizeInBytes]), new ArrayList<>()); }
+	
+	private static void tickUntilIdle(SharedBandwidthLimit bandwidthLimit)
+	{
+		for (int i = 0; i < MAX_TICK_COUNT; i++)
+		{
+			bandwidthLimit.tick();
+		}
+	}
+	
+	
+	
+	//================//
+	// helper classes //
+	//================//
+	
+	/** Records every sent slice instead of sending it to a client. */
+	private static class TestSession extends NetworkSession
+	{
+		public final HashMap<Integer, Integer> sentBytesByBufferId = new HashMap<>();
+		public final HashMap<Integer, Integer> firstSliceCountByBufferId = new HashMap<>();
+		
+		public TestSession() { super(new TestServerPlayer()); }
+		
+		@Override
+		public void sendMessage(AbstractNetworkMessage message)
+		{
+			FullDataSplitMessage splitMessage = (FullDataSplitMessage) message;
+			this.sentBytesByBufferId.merge(splitMessage.bufferId, splitMessage.buffer.readableBytes(), Integer::sum);
+			if (splitMessage.isFirst)
+			{
+				this.firstSliceCountByBufferId.merge(splitMessage.bufferId, 1, Integer::sum);
+			}
+			
+			// normally released by the platform once the message is sent
+			splitMessage.buffer.release();
+		}
+		
+		public long getTotalSentBytes()
+		{
+			long totalBytes = 0;
+			for (int sentBytes : this.sentBytesByBufferId.values())
+			{
+				totalBytes += sentBytes;
+			}
+			return totalBytes;
+		}
+		
+	}
+	
+	/** Stands at the origin so a section's X position is also its distance order. */
+	private static class TestServerPlayer implements IServerPlayerWrapper
+	{
+		@Override
+		public String getName() { return "test"; }
+		@Override
+		public IServerLevelWrapper getLevel() { return null; }
+		@Override
+		public Vec3d getPosition() { return new Vec3d(0, 0, 0); }
+		@Override
+		public Object getWrappedMcObject() { return null; }
+		
+	}
+	
+}
@@ -0,0 +1,177 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tests;
+
+import com.seibel.distanthorizons.core.generation.tasks.WorldGenTask;
+import com.seibel.distanthorizons.core.generation.tasks.WorldGenTaskSpatialIndex;
+import com.seibel.distanthorizons.core.pos.DhSectionPos;
+import com.seibel.distanthorizons.core.util.math.Vec3f;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Confirms {@link WorldGenTaskSpatialIndex} returns the same
+ * tasks a linear scan over every task would.
+ */
+public class WorldGenTaskSpatialIndexTest
+{
+	private static final int TASK_COUNT = 2_000;
+	/** the positions are spread over +-30,000 blocks */
+	private static final int MAX_SECTION_COORDINATE = 30_000 / 64;
+	
+	
+	
+	@Test
+	public void pollBestMatchesLinearScan()
+	{
+		Random random = new Random(4321);
+		WorldGenTaskSpatialIndex index = new WorldGenTaskSpatialIndex();
+		HashMap<Long, WorldGenTask> tasksByPos = new HashMap<>();
+		addRandomTasks(random, index, tasksByPos);
+		
+		Vec3f[] lookDirections = { null, new Vec3f(1, 0, 0), new Vec3f(0, 0, -1), new Vec3f(0.7071f, 0, 0.7071f) };
+		int pollCount = 0;
+		while (!tasksByPos.isEmpty())
+		{
+			// move the target around to make sure nothing depends on where tasks were added from
+			int targetX = random.nextInt(40_000) - 20_000;
+			int targetZ = random.nextInt(40_000) - 20_000;
+			Vec3f lookDirection = lookDirections[pollCount % lookDirections.length];
+			
+			long expectedScore = Long.MAX_VALUE;
+			for (long pos : tasksByPos.keySet())
+			{
+				expectedScore = Math.min(expectedScore, WorldGenTaskSpatialIndex.getPriorityScore(pos, targetX, targetZ, lookDirection));
+			}
+			
+			WorldGenTask polledTask = index.pollBest(targetX, targetZ, lookDirection);
+			Assert.assertNotNull(polledTask);
+			Assert.assertEquals(expectedScore, WorldGenTaskSpatialIndex.getPriorityScore(polledTask.pos, targetX, targetZ, lookDirection));
+			Assert.assertSame(polledTask, tasksByPos.remove(polledTask.pos));
+			Assert.assertEquals(tasksByPos.size(), index.size());
+			pollCount++;
+		}
+		
+		Assert.assertNull(index.pollBest(0, 0, null));
+	}
+	
+	@Test
+	public void pollFurthest()
+	{
+		Random random = new Random(1234);
+		WorldGenTaskSpatialIndex index = new WorldGenTaskSpatialIndex();
+		HashMap<Long, WorldGenTask> tasksByPos = new HashMap<>();
+		addRandomTasks(random, index, tasksByPos);
+		
+		long expectedDistance = 0;
+		for (long pos : tasksByPos.keySet())
+		{
+			expectedDistance = Math.max(expectedDistance, WorldGenTaskSpatialIndex.getChebyshevBlockDistance(pos, 100, -100));
+		}
+		
+		Assert.assertNull(index.pollFurthestIfFurtherThan(100, -100, expectedDistance));
+		WorldGenTask furthestTask = index.pollFurthestIfFurtherThan(100, -100, expectedDistance - 1);
+		Assert.assertNotNull(furthestTask);
+		Assert.assertEquals(expectedDistance, WorldGenTaskSpatialIndex.getChebyshevBlockDistance(furthestTask.pos, 100, -100));
+		Assert.assertEquals(tasksByPos.size() - 1, index.size());
+	}
+	
+	@Test
+	public void removeIf()
+	{
+		Random random = new Random(5678);
+		WorldGenTaskSpatialIndex index = new WorldGenTaskSpatialIndex();
+		HashMap<Long, WorldGenTask> tasksByPos = new HashMap<>();
+		addRandomTasks(random, index, tasksByPos);
+		
+		// remove everything in the negative X half
+		int removedCount = index.removeIf((pos) -> DhSectionPos.getCenterBlockPosX(pos) < 0);
+		tasksByPos.keySet().removeIf((pos) -> DhSectionPos.getCenterBlockPosX(pos) < 0);
+		Assert.assertEquals(tasksByPos.size(), index.size());
+		Assert.assertTrue(removedCount > 0);
+		
+		// the remaining tasks should still be found
+		while (!tasksByPos.isEmpty())
+		{
+			WorldGenTask polledTask = index.pollBest(-20_000, 0, null);
+			Assert.assertNotNull(polledTask);
+			Assert.assertTrue(DhSectionPos.getCenterBlockPosX(polledTask.pos) >= 0);
+			Assert.assertSame(polledTask, tasksByPos.remove(polledTask.pos));
+		}
+		Assert.assertTrue(index.isEmpty());
+	}
+	
+	@Test
+	public void removeAllIfPresent()
+	{
+		WorldGenTaskSpatialIndex index = new WorldGenTaskSpatialIndex();
+		long parentPos = DhSectionPos.encode((byte) (DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL + 1), 3, -5);
+		LongArrayList childPositions = new LongArrayList();
+		DhSectionPos.forEachChild(parentPos, childPositions::add);
+		
+		// nothing should be removed if any task is missing
+		for (int i = 0; i < childPositions.size() - 1; i++)
+		{
+			index.put(new WorldGenTask(childPositions.getLong(i), (byte) 0, null, new CompletableFuture<>()));
+		}
+		Assert.assertNull(index.removeAllIfPresent(childPositions));
+		Assert.assertEquals(childPositions.size() - 1, index.size());
+		
+		index.put(new WorldGenTask(childPositions.getLong(childPositions.size() - 1), (byte) 0, null, new CompletableFuture<>()));
+		ArrayList<WorldGenTask> removedTasks = index.removeAllIfPresent(childPositions);
+		Assert.assertNotNull(removedTasks);
+		for (int i = 0; i < childPositions.size(); i++)
+		{
+			Assert.assertEquals(childPositions.getLong(i), removedTasks.get(i).pos);
+		}
+		Assert.assertTrue(index.isEmpty());
+		Assert.assertNull(index.pollBest(0, 0, null));
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	private static void addRandomTasks(Random random, WorldGenTaskSpatialIndex index, HashMap<Long, WorldGenTask> tasksByPos)
+	{
+		for (int i = 0; i < TASK_COUNT; i++)
+		{
+			byte detailLevel = (byte) (DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL + random.nextInt(4));
+			int maxCoordinate = MAX_SECTION_COORDINATE >> (detailLevel - DhSectionPos.SECTION_MINIMUM_DETAIL_LEVEL);
+			long pos = DhSectionPos.encode(detailLevel,
+					random.nextInt(maxCoordinate * 2) - maxCoordinate,
+					random.nextInt(maxCoordinate * 2) - maxCoordinate);
+			
+			WorldGenTask task = new WorldGenTask(pos, (byte) 0, null, new CompletableFuture<>());
+			WorldGenTask previousTask = index.put(task);
+			Assert.assertSame(tasksByPos.put(pos, task), previousTask);
+		}
+		Assert.assertEquals(tasksByPos.size(), index.size());
+	}
+	
+}
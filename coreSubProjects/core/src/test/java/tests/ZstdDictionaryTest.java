@@ -0,0 +1,161 @@
+/*
+ *    This file is part of the Distant Horizons mod
+ *    licensed under the GNU LGPL v3 License.
+ *
+ *    Copyright (C) 2020 James Seibel
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, version 3.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tests;
+
+import com.github.luben.zstd.Zstd;
+import com.seibel.distanthorizons.api.enums.config.EDhApiDataCompressionMode;
+import com.seibel.distanthorizons.core.util.objects.dataStreams.DhDataInputStream;
+import com.seibel.distanthorizons.core.util.objects.dataStreams.DhDataOutputStream;
+import com.seibel.distanthorizons.core.util.objects.dataStreams.ZstdDictionary;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Confirms {@link ZstdDictionary} round trips data
+ * and that blobs from unknown or unregistered dictionaries are rejected.
+ */
+public class ZstdDictionaryTest
+{
+	private static final int SAMPLE_COUNT = 2_000;
+	
+	
+	
+	@Test
+	public void roundTrip() throws IOException
+	{
+		Random random = new Random(1234);
+		ZstdDictionary dictionary = ZstdDictionary.train(createSamples(random));
+		Assert.assertNotNull(dictionary);
+		dictionary.register();
+		
+		byte[] sample = createSample(random);
+		byte[] compressed = dictionary.compress(sample);
+		Assert.assertArrayEquals(sample, ZstdDictionary.decompress(compressed));
+		
+		// small blobs that share most of their structure is exactly what the dictionary is for
+		Assert.assertTrue("dictionary compression was larger than block compression", compressed.length < Zstd.compress(sample, ZstdDictionary.COMPRESSION_LEVEL).length);
+		
+		
+		// the data streams should produce the same result
+		ByteArrayList compressedList = new ByteArrayList();
+		try (DhDataOutputStream compressedOut = DhDataOutputStream.create(EDhApiDataCompressionMode.Z_STD_DICTIONARY, compressedList, dictionary))
+		{
+			compressedOut.write(sample);
+		}
+		
+		byte[] decompressed = new byte[sample.length];
+		try (DhDataInputStream compressedIn = DhDataInputStream.create(compressedList, EDhApiDataCompressionMode.Z_STD_DICTIONARY))
+		{
+			compressedIn.readFully(decompressed);
+			Assert.assertEquals(-1, compressedIn.read());
+		}
+		Assert.assertArrayEquals(sample, decompressed);
+	}
+	
+	@Test
+	public void unknownDictionaryIsRejected()
+	{
+		Random random = new Random(5678);
+		ZstdDictionary dictionary = ZstdDictionary.train(createSamples(random));
+		Assert.assertNotNull(dictionary);
+		// intentionally not registered
+		
+		byte[] compressed = dictionary.compress(createSample(random));
+		try
+		{
+			ZstdDictionary.decompress(compressed);
+			Assert.fail("decompressed a blob without its dictionary");
+		}
+		catch (IOException ignore) { }
+		
+		try
+		{
+			ZstdDictionary.decompress(Arrays.copyOf(compressed, 3));
+			Assert.fail("decompressed a blob without a header");
+		}
+		catch (IOException ignore) { }
+	}
+	
+	@Test
+	public void unregisterRemovesDictionary() throws IOException
+	{
+		Random random = new Random(9012);
+		ZstdDictionary dictionary = ZstdDictionary.train(createSamples(random));
+		Assert.assertNotNull(dictionary);
+		
+		byte[] sample = createSample(random);
+		byte[] compressed = dictionary.compress(sample);
+		
+		// two levels with the same dictionary, IE a copied world
+		dictionary.register();
+		dictionary.register();
+		
+		dictionary.unregister();
+		Assert.assertArrayEquals("dictionary was removed while still registered", sample, ZstdDictionary.decompress(compressed));
+		
+		dictionary.unregister();
+		try
+		{
+			ZstdDictionary.decompress(compressed);
+			Assert.fail("dictionary was still registered after every level unregistered it");
+		}
+		catch (IOException ignore) { }
+	}
+	
+	
+	
+	//================//
+	// helper methods //
+	//================//
+	
+	private static ArrayList<byte[]> createSamples(Random random)
+	{
+		ArrayList<byte[]> samples = new ArrayList<>(SAMPLE_COUNT);
+		for (int i = 0; i < SAMPLE_COUNT; i++)
+		{
+			samples.add(createSample(random));
+		}
+		return samples;
+	}
+	
+	/** roughly imitates a serialized ID mapping, a list of similar names with a few random bytes between them */
+	private static byte[] createSample(Random random)
+	{
+		String[] names = { "minecraft:stone", "minecraft:dirt", "minecraft:grass_block", "minecraft:water", "minecraft:plains", "minecraft:deepslate", "minecraft:oak_leaves" };
+		
+		StringBuilder builder = new StringBuilder();
+		int entryCount = 8 + random.nextInt(16);
+		for (int i = 0; i < entryCount; i++)
+		{
+			builder.append(names[random.nextInt(names.length)]);
+			builder.append('|');
+			builder.append(random.nextInt(16));
+			builder.append(';');
+		}
+		return builder.toString().getBytes();
+	}
+	
+}